@@ -178,7 +178,15 @@ public abstract class AbstractDB {
 	 * @param r2	second relation
 	 * @return a reference to a relation containing the joined data
 	 * @throws DBException
-	 * @pre the common attributes in r1 must be unique
 	 */
 	public abstract Relation hashJoin(Relation r1, Relation r2) throws DBException;
+
+	/**
+	 * Performs a natural join between two relations using the sort-merge algorithm.
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return a reference to a relation containing the joined data
+	 * @throws DBException
+	 */
+	public abstract Relation sortMergeJoin(Relation r1, Relation r2) throws DBException;
 }
\ No newline at end of file
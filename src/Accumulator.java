@@ -0,0 +1,442 @@
+import java.util.HashSet;
+import java.util.Set;
+
+import exceptions.DBException;
+import solver.Row;
+import storage.ColumnStore;
+import storage.DoubleHashSet;
+import storage.HyperLogLog;
+import storage.IntHashSet;
+
+/**
+ * Running state of one aggregation function over one group. An accumulator
+ * reads the value at a fixed position of each row it is given; nulls are
+ * skipped, except by COUNT_ALL, which counts rows. A prototype is created
+ * once per requested function with create(), and fresh() then yields an
+ * empty accumulator of the same kind for each group.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public abstract class Accumulator {
+	protected final int pos;
+
+	protected Accumulator(int pos) {
+		this.pos = pos;
+	}
+
+	/**
+	 * Creates the accumulator for an aggregation function
+	 * @param fn	the aggregation function
+	 * @param pos	position of the aggregated attribute
+	 * @param type	type of the aggregated attribute
+	 * @return an empty accumulator
+	 * @throws DBException if the function cannot be applied to the attribute's type
+	 */
+	public static Accumulator create(Agg fn, int pos, Attribute.Type type) {
+		boolean numeric = type == Attribute.Type.NUMERIC;
+		switch (fn) {
+		case MAX:
+			return numeric ? new MaxNum(pos) : new Extreme(pos, 1);
+		case MIN:
+			return numeric ? new MinNum(pos) : new Extreme(pos, -1);
+		case COUNT:
+			return new Count(pos, false);
+		case COUNT_ALL:
+			return new Count(pos, true);
+		case COUNT_DISTINCT:
+			return numeric ? new NumDistinct(pos, fn) : new TextDistinct(pos);
+		case APPROX_COUNT_DISTINCT:
+			return new Approx(pos, numeric);
+		default:
+			break;
+		}
+		if (!numeric) {
+			throw new DBException(fn.name() + " can't be called on strings");
+		}
+		switch (fn) {
+		case SUM:
+			return new Sum(pos, false);
+		case AVG:
+			return new Sum(pos, true);
+		default:
+			return new NumDistinct(pos, fn);
+		}
+	}
+
+	/**
+	 * @param fn	an aggregation function
+	 * @param type	type of the aggregated attribute
+	 * @return type of the aggregated value
+	 */
+	public static Attribute.Type resultType(Agg fn, Attribute.Type type) {
+		return (fn == Agg.MAX || fn == Agg.MIN) ? type : Attribute.Type.NUMERIC;
+	}
+
+	/**
+	 * @return an empty accumulator of the same kind over the same position
+	 */
+	public abstract Accumulator fresh();
+
+	/**
+	 * Adds a row's value
+	 * @param row	a row
+	 */
+	public abstract void add(Row row);
+
+	/**
+	 * Folds in the state of an accumulator of the same kind that saw other rows,
+	 * so that partial aggregates computed in parallel can be combined
+	 * @param other	an accumulator created by fresh() on the same prototype
+	 */
+	public abstract void merge(Accumulator other);
+
+	/**
+	 * @return the aggregated value
+	 * @throws DBException if the value is undefined (MAX or MIN of no values)
+	 */
+	public abstract Comparable result();
+
+	private static class MaxNum extends Accumulator {
+		private double max = Double.NEGATIVE_INFINITY;
+		private boolean seen;
+
+		MaxNum(int pos) {
+			super(pos);
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new MaxNum(this.pos);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (!row.isNull(this.pos)) {
+				double v = row.getNumber(this.pos);
+				if (!this.seen || v > this.max) {
+					this.max = v;
+				}
+				this.seen = true;
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			MaxNum o = (MaxNum) other;
+			if (o.seen && (!this.seen || o.max > this.max)) {
+				this.max = o.max;
+				this.seen = true;
+			}
+		}
+
+		@Override
+		public Comparable result() {
+			if (!this.seen) {
+				throw new DBException("MAX is undefined over no values");
+			}
+			return this.max;
+		}
+	}
+
+	private static class MinNum extends Accumulator {
+		private double min = Double.POSITIVE_INFINITY;
+		private boolean seen;
+
+		MinNum(int pos) {
+			super(pos);
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new MinNum(this.pos);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (!row.isNull(this.pos)) {
+				double v = row.getNumber(this.pos);
+				if (!this.seen || v < this.min) {
+					this.min = v;
+				}
+				this.seen = true;
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			MinNum o = (MinNum) other;
+			if (o.seen && (!this.seen || o.min < this.min)) {
+				this.min = o.min;
+				this.seen = true;
+			}
+		}
+
+		@Override
+		public Comparable result() {
+			if (!this.seen) {
+				throw new DBException("MIN is undefined over no values");
+			}
+			return this.min;
+		}
+	}
+
+	/**
+	 * MAX (sign 1) or MIN (sign -1) of a TEXT attribute
+	 */
+	private static class Extreme extends Accumulator {
+		private final int sign;
+		private Comparable best;
+
+		Extreme(int pos, int sign) {
+			super(pos);
+			this.sign = sign;
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new Extreme(this.pos, this.sign);
+		}
+
+		@Override
+		public void add(Row row) {
+			Comparable v = row.get(this.pos);
+			if (v != null && (this.best == null || this.sign * v.compareTo(this.best) > 0)) {
+				this.best = v;
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			Comparable v = ((Extreme) other).best;
+			if (v != null && (this.best == null || this.sign * v.compareTo(this.best) > 0)) {
+				this.best = v;
+			}
+		}
+
+		@Override
+		public Comparable result() {
+			if (this.best == null) {
+				throw new DBException((this.sign > 0 ? "MAX" : "MIN") + " is undefined over no values");
+			}
+			return this.best;
+		}
+	}
+
+	/**
+	 * COUNT, or COUNT_ALL when all is set, which counts nulls too
+	 */
+	private static class Count extends Accumulator {
+		private final boolean all;
+		private long count;
+
+		Count(int pos, boolean all) {
+			super(pos);
+			this.all = all;
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new Count(this.pos, this.all);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (this.all || !row.isNull(this.pos)) {
+				this.count++;
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			this.count += ((Count) other).count;
+		}
+
+		@Override
+		public Comparable result() {
+			return (double) this.count;
+		}
+	}
+
+	/**
+	 * SUM, or AVG when average is set
+	 */
+	private static class Sum extends Accumulator {
+		private final boolean average;
+		private double sum;
+		private long count;
+
+		Sum(int pos, boolean average) {
+			super(pos);
+			this.average = average;
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new Sum(this.pos, this.average);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (!row.isNull(this.pos)) {
+				this.sum += row.getNumber(this.pos);
+				this.count++;
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			Sum o = (Sum) other;
+			this.sum += o.sum;
+			this.count += o.count;
+		}
+
+		@Override
+		public Comparable result() {
+			return this.average ? this.sum / this.count : this.sum;
+		}
+	}
+
+	/**
+	 * COUNT_DISTINCT, SUM_DISTINCT or AVG_DISTINCT of a NUMERIC attribute
+	 */
+	private static class NumDistinct extends Accumulator {
+		private final Agg fn;
+		private final DoubleHashSet values = new DoubleHashSet();
+		private double sum;
+
+		NumDistinct(int pos, Agg fn) {
+			super(pos);
+			this.fn = fn;
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new NumDistinct(this.pos, this.fn);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (!row.isNull(this.pos)) {
+				double v = row.getNumber(this.pos);
+				if (this.values.add(v)) {
+					this.sum += v;
+				}
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			for (double v : ((NumDistinct) other).values.toArray()) {
+				if (this.values.add(v)) {
+					this.sum += v;
+				}
+			}
+		}
+
+		@Override
+		public Comparable result() {
+			switch (this.fn) {
+			case COUNT_DISTINCT:
+				return (double) this.values.size();
+			case AVG_DISTINCT:
+				return this.sum / this.values.size();
+			default:
+				return this.sum;
+			}
+		}
+	}
+
+	/**
+	 * COUNT_DISTINCT of a TEXT attribute. Rows of a columnar relation are
+	 * counted by dictionary code; other rows by value.
+	 */
+	private static class TextDistinct extends Accumulator {
+		private final IntHashSet codes = new IntHashSet();
+		private Set<Comparable> values;
+
+		TextDistinct(int pos) {
+			super(pos);
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new TextDistinct(this.pos);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (row instanceof ColumnStore.Cursor) {
+				int code = ((ColumnStore.Cursor) row).getCode(this.pos);
+				if (code >= 0) {
+					this.codes.add(code);
+				}
+				return;
+			}
+			Comparable v = row.get(this.pos);
+			if (v != null) {
+				if (this.values == null) {
+					this.values = new HashSet<>();
+				}
+				this.values.add(v);
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			TextDistinct o = (TextDistinct) other;
+			for (int code : o.codes.toArray()) {
+				this.codes.add(code);
+			}
+			if (o.values != null) {
+				if (this.values == null) {
+					this.values = new HashSet<>();
+				}
+				this.values.addAll(o.values);
+			}
+		}
+
+		@Override
+		public Comparable result() {
+			return (double) (this.codes.size() + ((this.values == null) ? 0 : this.values.size()));
+		}
+	}
+
+	/**
+	 * APPROX_COUNT_DISTINCT, estimated with a HyperLogLog sketch of fixed size
+	 */
+	private static class Approx extends Accumulator {
+		private final boolean numeric;
+		private final HyperLogLog sketch = new HyperLogLog();
+
+		Approx(int pos, boolean numeric) {
+			super(pos);
+			this.numeric = numeric;
+		}
+
+		@Override
+		public Accumulator fresh() {
+			return new Approx(this.pos, this.numeric);
+		}
+
+		@Override
+		public void add(Row row) {
+			if (!row.isNull(this.pos)) {
+				if (this.numeric) {
+					this.sketch.add(row.getNumber(this.pos));
+				}
+				else {
+					this.sketch.add((String) row.get(this.pos));
+				}
+			}
+		}
+
+		@Override
+		public void merge(Accumulator other) {
+			this.sketch.merge(((Approx) other).sketch);
+		}
+
+		@Override
+		public Comparable result() {
+			return this.sketch.estimate();
+		}
+	}
+}
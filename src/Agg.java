@@ -1,4 +1,4 @@
 
 public enum Agg {
-	MAX, MIN, COUNT, AVG, SUM, COUNT_DISTINCT, AVG_DISTINCT, SUM_DISTINCT
+	MAX, MIN, COUNT, AVG, SUM, COUNT_DISTINCT, AVG_DISTINCT, SUM_DISTINCT, APPROX_COUNT_DISTINCT, COUNT_ALL
 }
@@ -0,0 +1,301 @@
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import exceptions.DBException;
+import storage.ColumnStore;
+import storage.Dictionary;
+import storage.DoubleHashSet;
+import storage.HyperLogLog;
+import storage.IntHashSet;
+import vector.Batch;
+import vector.BatchScan;
+
+/**
+ * Fused evaluation of several aggregation functions over a whole relation.
+ * Attribute positions are resolved once, and a single scan feeds every row to
+ * all requested functions, which keep their running state in primitive
+ * arrays indexed by function. Columnar relations are consumed a Batch at a
+ * time, each function running a tight loop over its column vector, so NUMERIC
+ * values are never boxed. DISTINCT functions use primitive hash sets: of
+ * doubles for NUMERIC attributes and of dictionary codes for TEXT attributes
+ * of columnar relations. Nulls are skipped, except by COUNT_ALL, which counts
+ * rows.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class AggregateKernel {
+	private final Agg[] fns;
+	private final int[] pos;
+	private final boolean[] numeric;
+	private final List<Attribute.Type> types = new ArrayList<>();
+	private final List<String> names = new ArrayList<>();
+
+	// running state, one slot per function
+	private double[] value;
+	private long[] count;
+	private Comparable[] text;
+	private DoubleHashSet[] number_sets;
+	private IntHashSet[] code_sets;
+	private Set<Comparable>[] text_sets;
+	private HyperLogLog[] sketches;
+
+	/**
+	 * @param r			relation over which to aggregate
+	 * @param agg_fns	the aggregation functions
+	 * @param attrs		names of the attribute each function applies to
+	 * @throws DBException if an attribute is unknown or ambiguous, or a function
+	 * 			cannot be applied to its attribute
+	 */
+	public AggregateKernel(Relation r, Agg[] agg_fns, String[] attrs) {
+		this.fns = agg_fns.clone();
+		this.pos = new int[agg_fns.length];
+		this.numeric = new boolean[agg_fns.length];
+		for (int k = 0; k < agg_fns.length; k++) {
+			this.pos[k] = r.lookup(attrs[k]);
+			Attribute.Type type = r.getAttributes().get(this.pos[k]).getType();
+			this.numeric[k] = type == Attribute.Type.NUMERIC;
+			if (!this.numeric[k] && (agg_fns[k] == Agg.SUM || agg_fns[k] == Agg.AVG
+					|| agg_fns[k] == Agg.SUM_DISTINCT || agg_fns[k] == Agg.AVG_DISTINCT)) {
+				throw new DBException(agg_fns[k].name() + " can't be called on strings");
+			}
+			this.types.add(Accumulator.resultType(agg_fns[k], type));
+			this.names.add(agg_fns[k].name() + "(" + attrs[k] + ")");
+		}
+	}
+
+	/**
+	 * @param owner	relation the attributes will belong to
+	 * @return new output attributes, one per function, in request order
+	 */
+	public List<Attribute> outputAttributes(Relation owner) {
+		List<Attribute> list = new ArrayList<>();
+		for (int k = 0; k < this.names.size(); k++) {
+			list.add(new Attribute(owner, this.types.get(k), this.names.get(k)));
+		}
+		return list;
+	}
+
+	/**
+	 * Aggregates the relation in one scan
+	 * @param r	the relation given to the constructor
+	 * @return the aggregated values, in request order
+	 * @throws DBException if MAX or MIN is taken over no values
+	 */
+	public List<Comparable> compute(Relation r) {
+		int n = this.fns.length;
+		this.value = new double[n];
+		this.count = new long[n];
+		this.text = new Comparable[n];
+		this.number_sets = new DoubleHashSet[n];
+		this.code_sets = new IntHashSet[n];
+		this.text_sets = new Set[n];
+		this.sketches = new HyperLogLog[n];
+		for (int k = 0; k < n; k++) {
+			if (this.fns[k] == Agg.APPROX_COUNT_DISTINCT) {
+				this.sketches[k] = new HyperLogLog();
+			}
+			if (this.fns[k] == Agg.COUNT_DISTINCT || this.fns[k] == Agg.SUM_DISTINCT
+					|| this.fns[k] == Agg.AVG_DISTINCT) {
+				this.number_sets[k] = new DoubleHashSet();
+				this.code_sets[k] = new IntHashSet();
+				this.text_sets[k] = new HashSet<>();
+			}
+		}
+
+		if (r.getStorage() == Relation.Storage.COLUMNAR) {
+			ColumnStore store = r.getColumns();
+			boolean[] columns = new boolean[store.columnCount()];
+			for (int k = 0; k < n; k++) {
+				columns[this.pos[k]] = true;
+			}
+			BatchScan scan = new BatchScan(store, columns);
+			Batch batch;
+			while ((batch = scan.next()) != null) {
+				for (int k = 0; k < n; k++) {
+					if (this.fns[k] == Agg.COUNT_ALL) {
+						this.count[k] += batch.selected();
+					}
+					else if (this.numeric[k]) {
+						this.addNumbers(k, batch);
+					}
+					else {
+						this.addCodes(k, batch);
+					}
+				}
+			}
+		}
+		else {
+			for (Tuple t : r.rows()) {
+				for (int k = 0; k < n; k++) {
+					Comparable v = t.data.get(this.pos[k]);
+					if (this.fns[k] == Agg.COUNT_ALL) {
+						this.count[k]++;
+						continue;
+					}
+					if (v == null) {
+						continue;
+					}
+					if (this.numeric[k]) {
+						this.addNumber(k, (Double) v);
+					}
+					else {
+						this.addText(k, v);
+					}
+				}
+			}
+		}
+
+		List<Comparable> results = new ArrayList<>(n);
+		for (int k = 0; k < n; k++) {
+			results.add(this.result(k));
+		}
+		return results;
+	}
+
+	/**
+	 * Feeds the selected rows of a batch to the function at k, which reads a NUMERIC column
+	 */
+	private void addNumbers(int k, Batch batch) {
+		double[] col = batch.numbers(this.pos[k]);
+		long[] nulls = batch.nulls(this.pos[k]);
+		int[] sel = batch.selection();
+		int n = batch.selected();
+		if (nulls != null) {
+			for (int i = 0; i < n; i++) {
+				int row = sel[i];
+				if ((nulls[row >>> 6] & (1L << row)) == 0) {
+					this.addNumber(k, col[row]);
+				}
+			}
+			return;
+		}
+		switch (this.fns[k]) {
+		case SUM:
+		case AVG:
+			double sum = 0.0;
+			for (int i = 0; i < n; i++) {
+				sum += col[sel[i]];
+			}
+			this.value[k] += sum;
+			this.count[k] += n;
+			break;
+		case COUNT:
+			this.count[k] += n;
+			break;
+		default:
+			for (int i = 0; i < n; i++) {
+				this.addNumber(k, col[sel[i]]);
+			}
+			break;
+		}
+	}
+
+	/**
+	 * Feeds the selected rows of a batch to the function at k, which reads a TEXT column
+	 */
+	private void addCodes(int k, Batch batch) {
+		int[] codes = batch.codes(this.pos[k]);
+		int[] sel = batch.selection();
+		int n = batch.selected();
+		Dictionary dictionary = batch.dictionary();
+		for (int i = 0; i < n; i++) {
+			int code = codes[sel[i]];
+			if (code < 0) {
+				continue;
+			}
+			switch (this.fns[k]) {
+			case COUNT:
+				this.count[k]++;
+				break;
+			case COUNT_DISTINCT:
+				this.code_sets[k].add(code);
+				break;
+			default:
+				this.addText(k, dictionary.decode(code));
+				break;
+			}
+		}
+	}
+
+	private void addNumber(int k, double v) {
+		switch (this.fns[k]) {
+		case MAX:
+			if (this.count[k]++ == 0 || v > this.value[k]) {
+				this.value[k] = v;
+			}
+			break;
+		case MIN:
+			if (this.count[k]++ == 0 || v < this.value[k]) {
+				this.value[k] = v;
+			}
+			break;
+		case SUM:
+		case AVG:
+			this.value[k] += v;
+			this.count[k]++;
+			break;
+		case COUNT:
+			this.count[k]++;
+			break;
+		case APPROX_COUNT_DISTINCT:
+			this.sketches[k].add(v);
+			break;
+		default:
+			if (this.number_sets[k].add(v)) {
+				this.value[k] += v;
+			}
+			break;
+		}
+	}
+
+	private void addText(int k, Comparable v) {
+		switch (this.fns[k]) {
+		case MAX:
+			if (this.text[k] == null || v.compareTo(this.text[k]) > 0) {
+				this.text[k] = v;
+			}
+			break;
+		case MIN:
+			if (this.text[k] == null || v.compareTo(this.text[k]) < 0) {
+				this.text[k] = v;
+			}
+			break;
+		case COUNT:
+			this.count[k]++;
+			break;
+		case APPROX_COUNT_DISTINCT:
+			this.sketches[k].add((String) v);
+			break;
+		default:
+			this.text_sets[k].add(v);
+			break;
+		}
+	}
+
+	private Comparable result(int k) {
+		switch (this.fns[k]) {
+		case MAX:
+		case MIN:
+			if (this.numeric[k] ? this.count[k] == 0 : this.text[k] == null) {
+				throw new DBException(this.fns[k].name() + " is undefined over no values");
+			}
+			return this.numeric[k] ? (Comparable) this.value[k] : this.text[k];
+		case SUM:
+			return this.value[k];
+		case AVG:
+			return this.value[k] / this.count[k];
+		case COUNT:
+		case COUNT_ALL:
+			return (double) this.count[k];
+		case COUNT_DISTINCT:
+			return (double) (this.number_sets[k].size() + this.code_sets[k].size() + this.text_sets[k].size());
+		case SUM_DISTINCT:
+			return this.value[k];
+		case APPROX_COUNT_DISTINCT:
+			return this.sketches[k].estimate();
+		default:
+			return this.value[k] / this.number_sets[k].size();
+		}
+	}
+}
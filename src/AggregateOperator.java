@@ -0,0 +1,80 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import solver.ListRow;
+import solver.Row;
+
+/**
+ * One-pass hash aggregation stage. open() consumes the whole input, looking
+ * up each row's group values in a hash table and feeding the row to that
+ * group's accumulators; next() then produces one row per group, holding the
+ * grouping attributes followed by one value per aggregation function, in the
+ * order the functions were requested. Without grouping attributes there is
+ * exactly one output row, even for an empty input.
+ */
+@SuppressWarnings("rawtypes")
+public class AggregateOperator extends Operator {
+	private final Operator input;
+	private final AggregateSpec spec;
+	private final ListRow row = new ListRow();
+
+	private Map<List<Comparable>, Accumulator[]> table;
+	private Iterator<Map.Entry<List<Comparable>, Accumulator[]>> groups;
+
+	/**
+	 * @param input		the input stage
+	 * @param agg_fns	the aggregation functions
+	 * @param attrs		names of the attribute each function applies to
+	 * @param groups	names of the grouping attributes (possibly none)
+	 * @throws DBException if an attribute is unknown or ambiguous, or a function
+	 * 			cannot be applied to its attribute
+	 */
+	public AggregateOperator(Operator input, Agg[] agg_fns, String[] attrs, String[] groups) {
+		this.input = input;
+		this.spec = new AggregateSpec(input.schema(), agg_fns, attrs, groups);
+	}
+
+	@Override
+	public List<Attribute> attributes() {
+		return this.spec.attributes();
+	}
+
+	@Override
+	public void open() {
+		this.table = new HashMap<>();
+		this.input.open();
+		try {
+			Row in;
+			while ((in = this.input.next()) != null) {
+				Accumulator[] accs = this.table.computeIfAbsent(this.spec.key(in), k -> this.spec.newGroup());
+				for (Accumulator acc : accs) {
+					acc.add(in);
+				}
+			}
+		} finally {
+			this.input.close();
+		}
+		if (!this.spec.isGrouped() && this.table.isEmpty()) {
+			this.table.put(new ArrayList<>(), this.spec.newGroup());
+		}
+		this.groups = this.table.entrySet().iterator();
+	}
+
+	@Override
+	public Row next() {
+		if (!this.groups.hasNext()) {
+			return null;
+		}
+		Map.Entry<List<Comparable>, Accumulator[]> e = this.groups.next();
+		return this.row.reset(this.spec.output(e.getKey(), e.getValue()));
+	}
+
+	@Override
+	public void close() {
+		this.table = null;
+		this.groups = null;
+	}
+}
@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.Row;
+
+/**
+ * Describes a grouped aggregation over a schema: the positions of the
+ * grouping attributes, an accumulator prototype per aggregation function,
+ * and the output attributes (the grouping attributes, then AGG(attr) per
+ * function in request order).
+ */
+@SuppressWarnings("rawtypes")
+public class AggregateSpec {
+	private final int[] group_pos;
+	private final Accumulator[] prototypes;
+	private final List<Attribute> attributes = new ArrayList<>();
+
+	/**
+	 * @param schema	relation whose attributes the rows have
+	 * @param agg_fns	the aggregation functions
+	 * @param attrs		names of the attribute each function applies to
+	 * @param groups	names of the grouping attributes (possibly none)
+	 * @throws DBException if an attribute is unknown or ambiguous, or a function
+	 * 			cannot be applied to its attribute
+	 */
+	public AggregateSpec(Relation schema, Agg[] agg_fns, String[] attrs, String[] groups) {
+		List<Attribute> in = schema.getAttributes();
+		this.group_pos = new int[groups.length];
+		for (int g = 0; g < groups.length; g++) {
+			this.group_pos[g] = schema.lookup(groups[g]);
+			this.attributes.add(new Attribute(null, in.get(this.group_pos[g]).getType(), groups[g]));
+		}
+		this.prototypes = new Accumulator[agg_fns.length];
+		for (int i = 0; i < agg_fns.length; i++) {
+			int pos = schema.lookup(attrs[i]);
+			Attribute.Type type = in.get(pos).getType();
+			this.prototypes[i] = Accumulator.create(agg_fns[i], pos, type);
+			this.attributes.add(new Attribute(null, Accumulator.resultType(agg_fns[i], type),
+					agg_fns[i].name() + "(" + attrs[i] + ")"));
+		}
+	}
+
+	/**
+	 * @return the output attributes; they belong to no relation yet
+	 */
+	public List<Attribute> attributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * @return true if there are grouping attributes
+	 */
+	public boolean isGrouped() {
+		return this.group_pos.length > 0;
+	}
+
+	/**
+	 * @param row	a row of the schema
+	 * @return a new list of the row's grouping values
+	 */
+	public List<Comparable> key(Row row) {
+		List<Comparable> key = new ArrayList<>(this.group_pos.length);
+		for (int p : this.group_pos) {
+			key.add(row.get(p));
+		}
+		return key;
+	}
+
+	/**
+	 * @return empty accumulators for a new group, one per function
+	 */
+	public Accumulator[] newGroup() {
+		Accumulator[] accs = new Accumulator[this.prototypes.length];
+		for (int i = 0; i < accs.length; i++) {
+			accs[i] = this.prototypes[i].fresh();
+		}
+		return accs;
+	}
+
+	/**
+	 * @param key	a group's values
+	 * @param accs	the group's accumulators
+	 * @return the group's output row values
+	 */
+	public List<Comparable> output(List<Comparable> key, Accumulator[] accs) {
+		List<Comparable> values = new ArrayList<>(key);
+		for (Accumulator acc : accs) {
+			values.add(acc.result());
+		}
+		return values;
+	}
+}
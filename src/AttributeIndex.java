@@ -0,0 +1,153 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+import exceptions.DBException;
+import index.BPlusTree;
+import solver.Row;
+
+/**
+ * A secondary index on one or more attributes of a relation, kept in a
+ * B+-tree file. Rows are numbered in the order they were added to the
+ * relation, and the index maps the attribute values of each row to its
+ * number. Relation.createIndex() builds an index, and the relation keeps its
+ * indexes up to date as tuples are added; select() uses them for comparisons
+ * of the first indexed attribute with a constant.
+ */
+@SuppressWarnings("rawtypes")
+public class AttributeIndex {
+	private final String file;
+	private final String[] names;
+	private final int[] positions;
+	private BPlusTree tree;
+
+	/**
+	 * @param file		path of the index file
+	 * @param names		names of the indexed attributes
+	 * @param positions	positions of the indexed attributes
+	 */
+	AttributeIndex(String file, String[] names, int[] positions) {
+		this.file = file;
+		this.names = names.clone();
+		this.positions = positions.clone();
+	}
+
+	/**
+	 * @return path of the index file
+	 */
+	public String getFile() {
+		return this.file;
+	}
+
+	/**
+	 * @return names of the indexed attributes, in key order
+	 */
+	public String[] getAttributes() {
+		return this.names.clone();
+	}
+
+	/**
+	 * @return position of the first indexed attribute, which range scans are on
+	 */
+	public int leadingPosition() {
+		return this.positions[0];
+	}
+
+	/**
+	 * @return true if some row's first indexed value is null
+	 */
+	public boolean hasLeadingNulls() {
+		return this.tree.leadingNulls() > 0;
+	}
+
+	/**
+	 * Reopens the index file if it was built over the given rows, or else
+	 * builds it afresh
+	 * @param numeric	for each indexed attribute, true if NUMERIC
+	 * @param rows		the relation's rows, by row number
+	 * @param count		the number of rows
+	 * @throws DBException if the index file cannot be read or written
+	 */
+	void open(boolean[] numeric, RowSource rows, int count) {
+		try {
+			BPlusTree existing = BPlusTree.open(this.file);
+			if (existing != null) {
+				long fingerprint = 0;
+				for (int i = 0; i < count; i++) {
+					fingerprint = BPlusTree.extend(fingerprint, this.key(rows.row(i)), i);
+				}
+				if (Arrays.equals(existing.layout(), numeric) && existing.size() == count
+						&& existing.fingerprint() == fingerprint) {
+					this.tree = existing;
+					return;
+				}
+				existing.close();
+			}
+			this.tree = BPlusTree.create(this.file, numeric);
+			for (int i = 0; i < count; i++) {
+				this.tree.insert(this.key(rows.row(i)), i);
+			}
+			this.tree.flush();
+		} catch (IOException e) {
+			throw new DBException("Cannot build index " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Adds a row to the index
+	 * @param row	the row's values
+	 * @param id	the row's number
+	 * @throws DBException if the index file cannot be written
+	 */
+	void insert(Row row, int id) {
+		try {
+			this.tree.insert(this.key(row), id);
+		} catch (IOException e) {
+			throw new DBException("Cannot update index " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Finds the rows whose first indexed value lies in a range, bounds
+	 * included; rows just outside the range may be returned too
+	 * @param low	lower bound, or null for none
+	 * @param high	upper bound, or null for none
+	 * @return the row numbers, in ascending order
+	 * @throws DBException if the index file cannot be read
+	 */
+	public int[] range(Comparable low, Comparable high) {
+		try {
+			int[] rows = this.tree.range(low, high);
+			Arrays.sort(rows);
+			return rows;
+		} catch (IOException e) {
+			throw new DBException("Cannot read index " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes the changed pages of the index to its file
+	 * @throws DBException if the index file cannot be written
+	 */
+	void flush() {
+		try {
+			this.tree.flush();
+		} catch (IOException e) {
+			throw new DBException("Cannot write index " + this.file + ": " + e.getMessage());
+		}
+	}
+
+	private Comparable[] key(Row row) {
+		Comparable[] key = new Comparable[this.positions.length];
+		for (int k = 0; k < key.length; k++) {
+			key[k] = row.get(this.positions[k]);
+		}
+		return key;
+	}
+
+	/**
+	 * Access to the rows of a relation by row number
+	 */
+	interface RowSource {
+		Row row(int id);
+	}
+}
@@ -0,0 +1,30 @@
+import java.io.File;
+
+/**
+ * Converts the text data files of a schema to binary column files, which
+ * Relation.read() loads without parsing. For each relation R of the schema
+ * with a file R.txt in the data directory, R.col is written next to it.
+ *
+ * Usage: java ConvertData data/classicmodels_schema.txt data
+ */
+public class ConvertData {
+	public static void main(String[] args) throws Exception {
+		if (args.length != 2) {
+			System.err.println("Usage: java ConvertData <schema file> <data directory>");
+			System.exit(1);
+		}
+		DavidDB db = new DavidDB(args[0]);
+		for (String name : db.relations.keySet()) {
+			File text = new File(args[1], name + ".txt");
+			if (!text.exists()) {
+				continue;
+			}
+			Relation r = (Relation) db.getRelation(name);
+			r.setStorage(Relation.Storage.COLUMNAR);
+			r.read(text.getPath());
+			File binary = new File(args[1], name + ".col");
+			r.write(binary.getPath());
+			System.out.println(text + " -> " + binary + " (" + r.size() + " rows)");
+		}
+	}
+}
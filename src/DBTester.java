@@ -48,7 +48,13 @@ public class DBTester {
 		System.out.println("Elapsed Time: " + db.getElapsedTime() + " ms\n");
 		db.resetElapsedTime();
 //		Elapsed Time: 0.213189 ms
-//// TODO and show that employees hashJoin offices doesn't work (uniqueness)
+
+		// employees repeat officeCode, so this needs a many-to-many hash join
+		Relation hj0r = db.hashJoin(employees, offices);
+		System.out.println(hj0r);
+		System.out.println("Rows Returned: " + hj0r.getTuples().size());
+		System.out.println("Elapsed Time: " + db.getElapsedTime() + " ms\n");
+		db.resetElapsedTime();
 
 
 		Relation nj1 = db.naturalJoin(customers, payments);
@@ -93,6 +99,7 @@ public class DBTester {
 		db.resetElapsedTime();
 //		Elapsed Time: 1.085564 ms
 
+		System.out.println(db.explainJoin(orders, orderdetails));
 		Relation nj4 = db.naturalJoin(orders,orderdetails);
 //		System.out.println(nj4);
 		System.out.println("Rows Returned: " + nj4.getTuples().size());
@@ -107,6 +114,21 @@ public class DBTester {
 		db.resetElapsedTime();
 //		Elapsed Time: 20.387921 ms
 
+		Relation smj4 = db.sortMergeJoin(orders,orderdetails);
+//		System.out.println(smj4);
+		System.out.println("Rows Returned: " + smj4.getTuples().size());
+		System.out.println("Elapsed Time: " + db.getElapsedTime() + " ms\n");
+		db.resetElapsedTime();
+//		Elapsed Time: 27.0 ms
+
+		String sql = "SELECT country, COUNT(*) AS payments, SUM(amount) AS total FROM customers "
+				+ "NATURAL JOIN payments WHERE amount > 1000 GROUP BY country ORDER BY total DESC LIMIT 5";
+		System.out.println(db.plan(sql));
+		Relation q0 = db.query(sql);
+		System.out.println(q0);
+		System.out.println("Rows Returned: " + q0.size());
+		System.out.println("Elapsed Time: " + db.getElapsedTime() + " ms\n");
+		db.resetElapsedTime();
 
 	}
 }
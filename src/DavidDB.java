@@ -1,11 +1,17 @@
 import exceptions.*;
 import perf.Timeable;
 import solver.*;
+import parallel.Morsels;
+import storage.ColumnStore;
+import vector.Batch;
+import vector.BatchScan;
+import vector.VectorFilter;
 import java.util.*;
 import java.lang.*;
 
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileReader;
 import java.io.FileNotFoundException;
 import java.io.IOException;
@@ -18,6 +24,15 @@ import java.io.IOException;
  */
 public class DavidDB extends AbstractDB implements Timeable {
 	protected double timeElapsed = 0;
+	protected boolean codegen = true;
+	protected boolean vectorized = true;
+	protected Morsels morsels = null;
+	protected JoinStrategy join_strategy = JoinStrategy.COST_BASED;
+	protected boolean optimize = true;
+	/** prepared statements by normalized query, least recently used first */
+	protected final Map<String, PreparedStatement> statements = new LinkedHashMap<>(16, 0.75f, true);
+	/** the most statements prepare() keeps */
+	public static final int STATEMENT_CACHE_SIZE = 256;
 	
 	/**
 	 * Creates a new instance of DavidDB.
@@ -67,8 +82,9 @@ public class DavidDB extends AbstractDB implements Timeable {
 										": " + pair[1]);
 						}
 					}
-					// add attributes
+					// add attributes; statistics are gathered when the planner first needs them
 					newRelation.setAttributes(list);
+					newRelation.setAutoAnalyze(true);
 
 					// instantiate the relation
 					this.relations.put(rel_name, newRelation);
@@ -80,6 +96,47 @@ public class DavidDB extends AbstractDB implements Timeable {
 		}
 	}
 
+	/**
+	 * Binds every relation of the schema to its data file in a directory, to be
+	 * read the first time the relation's data is used: R.col if present, else
+	 * R.txt. Relations with a column file are switched to COLUMNAR storage, so
+	 * that each column is copied out of the file only when a query uses it.
+	 * @param dir	the data directory
+	 */
+	public void attach(String dir) {
+		for (Map.Entry<String, AbstractRelation> e : this.relations.entrySet()) {
+			Relation r = (Relation) e.getValue();
+			File binary = new File(dir, e.getKey() + ".col");
+			File text = new File(dir, e.getKey() + ".txt");
+			if (binary.isFile()) {
+				r.setStorage(Relation.Storage.COLUMNAR);
+				r.attach(binary.getPath());
+			}
+			else if (text.isFile()) {
+				r.attach(text.getPath());
+			}
+		}
+	}
+
+	/**
+	 * Gathers the statistics the planner uses (see Statistics) for relations of
+	 * the schema, reading their data if it has not been read yet
+	 * @param names	names of the relations; all of them if none are given
+	 * @throws DBException if a relation does not exist
+	 */
+	public void analyze(String... names) {
+		if (names.length == 0) {
+			names = this.relations.keySet().toArray(new String[0]);
+		}
+		for (String name : names) {
+			AbstractRelation r = this.relations.get(name);
+			if (r == null) {
+				throw new DBException("Relation: " + name + " does not exist");
+			}
+			((Relation) r).analyze();
+		}
+	}
+
 	/**
 	 * Gets a reference to the stored relation with the given name
 	 * @param name	the name of the relation (case sensitive)
@@ -139,7 +196,7 @@ public class DavidDB extends AbstractDB implements Timeable {
 		double curr = System.currentTimeMillis();
 		// generate a new relation containing the union
 		Relation new_relation = (Relation) first.clone();
-		new_relation.getTuples().addAll(second.getTuples());
+		new_relation.getTuples().addAll(second.rows());
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return new_relation;
 	}
@@ -164,7 +221,7 @@ public class DavidDB extends AbstractDB implements Timeable {
 		double curr = System.currentTimeMillis();
 		// generate a new relation containing the diff
 		Relation new_relation = (Relation) first.clone();
-		new_relation.getTuples().removeAll(second.getTuples());
+		new_relation.getTuples().removeAll(second.rows());
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return new_relation;
 	}
@@ -182,24 +239,8 @@ public class DavidDB extends AbstractDB implements Timeable {
 			return null;
 		}
 		double curr = System.currentTimeMillis();
-		Relation left = (Relation) first.clone();
-		Relation right = (Relation) second.clone();
-		Relation new_relation = new Relation();
-
-		List<Attribute> new_attr = left.getAttributes();
-		new_attr.addAll(right.getAttributes());
-		new_relation.setAttributes(new_attr);
-
-		Set<Tuple> firstTuples = left.getTuples();
-		Set<Tuple> secondTuples = right.getTuples();
-		for (Tuple tuple : firstTuples) {
-			//concatenate current tuple with another tuple from second table
-			for (Tuple other_tuple : secondTuples) {
-				Tuple new_tuple = tuple.concat(other_tuple);
-				new_tuple.setRelation(new_relation);
-				new_relation.addTuple(new_tuple);
-			}
-		}
+		// stream the pairs; only the second relation is buffered
+		Relation new_relation = JoinOperator.product(new ScanOperator(first), new ScanOperator(second)).drain();
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return new_relation;
 	}
@@ -236,50 +277,136 @@ public class DavidDB extends AbstractDB implements Timeable {
 	 */
 	@Override
 	public Relation select(Relation r, String cond_str) throws DBException {
-		double curr = System.currentTimeMillis();
 		if (cond_str == null || cond_str.equals("")) {
-			timeElapsed += (System.currentTimeMillis()-curr);
 			return r;
 		}
-		Relation result = (Relation) r.clone();
-		result.getTuples().clear();
+		return this.select(r, Condition.parse(cond_str));
+	}
 
-		Set<Tuple> set = r.getTuples();
-		for (Tuple candidate : set) {
-			if (this.evaluate(candidate, cond_str)) {
-				result.addTuple(candidate);
+	/**
+	 * Evaluates an already parsed condition on the current relation
+	 * @param r	the relation to perform the selection
+	 * @param condition	an unbound condition, as Condition.parse() or SQLParser builds it
+	 * @return a reference to a relation which stores only the tuples
+	 *          for which the condition evaluated true
+	 * @throws DBException if the given condition is invalid
+	 */
+	public Relation select(Relation r, Node condition) throws DBException {
+		double curr = System.currentTimeMillis();
+		// bind the condition once, then test it against each tuple
+		Node bound = Condition.bind(condition, r);
+		Relation result;
+		IndexScan scan = IndexScan.plan(r, bound);
+		if (scan != null) {
+			// test only the rows in the range an index gives
+			result = this.emptyCopy(r);
+			scan.select(r, this.codegen ? Codegen.predicate(bound) : bound, result);
+		}
+		else if (r.getStorage() == Relation.Storage.COLUMNAR) {
+			// find the qualifying rows a range at a time, then copy them out in order
+			ColumnStore in = r.getColumns();
+			Predicate cond = this.vectorized ? null : (this.codegen ? Codegen.predicate(bound) : bound);
+			List<int[]> parts = this.morsels(in.size(), (from, to) -> this.filterRows(in, bound, cond, from, to));
+			ColumnStore out = in.emptyCopy();
+			for (int[] rows : parts) {
+				for (int i : rows) {
+					out.append(in, i);
+				}
 			}
+			result = this.emptyCopy(r);
+			result.setColumns(out);
+		}
+		else if (this.morsels != null) {
+			Predicate cond = this.codegen ? Codegen.predicate(bound) : bound;
+			Tuple[] tuples = r.rows().toArray(new Tuple[0]);
+			List<List<Tuple>> parts = this.morsels(tuples.length, (from, to) -> {
+				ListRow row = new ListRow();
+				List<Tuple> kept = new ArrayList<>();
+				for (int i = from; i < to; i++) {
+					if (cond.test(row.reset(tuples[i].data))) {
+						kept.add(tuples[i]);
+					}
+				}
+				return kept;
+			});
+			result = this.emptyCopy(r);
+			for (List<Tuple> kept : parts) {
+				for (Tuple t : kept) {
+					result.addTuple(new Tuple(t.data, result));
+				}
+			}
+		}
+		else {
+			Predicate cond = this.codegen ? Codegen.predicate(bound) : bound;
+			result = new FilterOperator(new ScanOperator(r), cond).drain();
 		}
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return result;
 	}
 
 	/**
-	 * (Hwk3 addition)
-	 * Evaluates a boolean expression given a tuple and its relation
-	 * @param t reference to a tuple
-	 * @param cond_str	a boolean condition
-	 * @return true if condition is true for the given tuple; false otherwise.
-	 * @throws DBException if the given condition is invalid
+	 * Finds the rows of a range of a column store that satisfy a condition
+	 * @param in	the store
+	 * @param bound	the bound condition, evaluated in batches
+	 * @param cond	the condition as a row predicate, or null to evaluate in batches
+	 * @param from	first row to test
+	 * @param to	row just past the last row to test
+	 * @return the qualifying rows, in ascending order
 	 */
-	private boolean evaluate(Tuple t, String cond_str) throws DBException {
-		// split up the condition into tokens
-		String[] tokens = cond_str.split("\\s+");
-
-		// run through each expression token and replace a variable with a value (if exists)
-		for (int i = 0; i < tokens.length; i++) {
-			try {
-				tokens[i] = t.valueOf(tokens[i]).toString();
-			} catch(DBException e) {
-				// ignore
+	private int[] filterRows(ColumnStore in, Node bound, Predicate cond, int from, int to) {
+		int[] rows = new int[to - from];
+		int count = 0;
+		if (cond == null) {
+			VectorFilter filter = VectorFilter.compile(bound, in.columnCount());
+			BatchScan scan = new BatchScan(in, filter.columns(), from, to);
+			Batch batch;
+			while ((batch = scan.next()) != null) {
+				filter.apply(batch);
+				int[] sel = batch.selection();
+				for (int k = 0; k < batch.selected(); k++) {
+					rows[count++] = batch.start() + sel[k];
+				}
 			}
 		}
-		//re-build the conditional
-		StringBuilder sb = new StringBuilder();
-		for (String tok : tokens) {
-			sb.append(tok + " ");
+		else {
+			ColumnStore.Cursor row = in.cursor();
+			for (int i = from; i < to; i++) {
+				row.setRow(i);
+				if (cond.test(row)) {
+					rows[count++] = i;
+				}
+			}
+		}
+		return Arrays.copyOf(rows, count);
+	}
+
+	/**
+	 * Runs a task over the morsels of [0, rows): in parallel if a parallelism
+	 * was set, otherwise as a single range on this thread
+	 * @param rows	number of rows
+	 * @param task	the work for one morsel
+	 * @return the results, in morsel order
+	 */
+	private <T> List<T> morsels(int rows, Morsels.Task<T> task) {
+		if (this.morsels == null) {
+			return Collections.singletonList(task.run(0, rows));
+		}
+		return this.morsels.map(rows, task);
+	}
+
+	/**
+	 * Creates an empty, unnamed relation holding a deep copy of the given relation's attributes
+	 * @param r	the relation whose attributes to copy
+	 * @return a relation with the same schema as r and no tuples
+	 */
+	private Relation emptyCopy(Relation r) {
+		Relation copy = new Relation();
+		List<Attribute> list = new ArrayList<>();
+		for (Attribute a : r.getAttributes()) {
+			list.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
 		}
-		return Expression.eval(sb.toString());
+		copy.setAttributes(list);
+		return copy;
 	}
 
 	/**
@@ -292,6 +419,7 @@ public class DavidDB extends AbstractDB implements Timeable {
 	 * 			if no attributes are given.
 	 * @throws DBException if an attribute name doesn't exist or is ambiguous
 	 */
+	@SuppressWarnings("rawtypes")
 	public Relation project(Relation r, String[] projection_list) throws DBException {
 		double curr = System.currentTimeMillis();
 		// get attributes of r
@@ -299,66 +427,102 @@ public class DavidDB extends AbstractDB implements Timeable {
 
 		// build attribute list of the project, and also check for ambiguity
 		List<Attribute> list = new ArrayList<>();
-		for (String attr_name : projection_list) {
-			list.add(attributes.get(r.lookup(attr_name)));
+		int[] positions = new int[projection_list.length];
+		for (int i = 0; i < projection_list.length; i++) {
+			positions[i] = r.lookup(projection_list[i]);
+			list.add(attributes.get(positions[i]));
 		}
-
 		//build new relation
 		Relation projection = new Relation();
 		projection.setAttributes(list);
-		for (Tuple t : r.getTuples()) {
-			//build up a tuple; examine and preserve only the given attributes
-			List<Comparable> new_values = new ArrayList<>();
-			for (int i = 0; i < list.size(); i++) {
-				new_values.add(t.valueOf(list.get(i).getPedanticName()));
+		if (r.getStorage() == Relation.Storage.COLUMNAR) {
+			ColumnStore in = r.getColumns();
+			List<ColumnStore> parts = this.morsels(in.size(), (from, to) -> in.project(positions, from, to));
+			ColumnStore out = parts.get(0);
+			for (int i = 1; i < parts.size(); i++) {
+				out.addAll(parts.get(i));
+			}
+			projection.setColumns(out);
+			timeElapsed += (System.currentTimeMillis()-curr);
+			return projection;
+		}
+		Projector projector = this.codegen ? Codegen.projector(positions) : new PositionProjector(positions);
+		if (this.morsels != null) {
+			Tuple[] tuples = r.rows().toArray(new Tuple[0]);
+			List<List<List<Comparable>>> parts = this.morsels(tuples.length, (from, to) -> {
+				ListRow row = new ListRow();
+				List<List<Comparable>> values = new ArrayList<>();
+				for (int i = from; i < to; i++) {
+					values.add(projector.project(row.reset(tuples[i].data)));
+				}
+				return values;
+			});
+			for (List<List<Comparable>> values : parts) {
+				for (List<Comparable> v : values) {
+					projection.addTuple(new Tuple(v, projection));
+				}
 			}
-			Tuple new_tuple = new Tuple(new_values, projection);
-			projection.addTuple(new_tuple);
+			timeElapsed += (System.currentTimeMillis()-curr);
+			return projection;
 		}
+		projection = new ProjectOperator(new ScanOperator(r), positions, projector).drain();
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return projection;
 	}
 
 	/**
 	 * (Hwk3 addition)
-	 * Performs a natural join between two relations.
+	 * Performs a natural join between two relations. By default the algorithm
+	 * with the lowest estimated cost is chosen for each join (see JoinPlan and
+	 * explainJoin). If a strategy is set other than PRODUCT, a hash index either
+	 * relation has on the common attributes is probed instead of running it.
 	 * @param r1	first relation
 	 * @param r2	second relation
 	 * @return a reference to a relation containing the joined data
 	 */
 	@Override
 	public Relation naturalJoin(Relation r1, Relation r2) throws DBException {
-		// determine common attributes
-		Set<Attribute> common = new HashSet<>(r1.getAttributes());
-		common.retainAll(r2.getAttributes());
-		if (common.size() == 0) {	// no common attributes, natural join reduces to product
-			return this.times(r1,r2);
-		}
-
-		// build expression to enforce equality
-		StringBuilder expr = new StringBuilder();
-		int count = 0;
-		for (Attribute c : common) {
-			if (count > 0) {
-				expr.append(" && ");
-			}
-			expr.append(r1.getName() + "." + c.getName() + " = " + r2.getName() + "." + c.getName());
-			count++;
-		}
-		// build projected attributes in order of: r1.a1, ..., r2.a1, ...
-		List<Attribute> project_attr = new ArrayList<>(r1.getAttributes());
-		for (Attribute a : r2.getAttributes()) {
-			if (!project_attr.contains(a)) {
-				project_attr.add(a);
+		if (this.join_strategy == JoinStrategy.COST_BASED) {
+			double curr = System.currentTimeMillis();
+			JoinPlan plan = JoinPlan.plan(r1, r2, this.join_strategy);
+			timeElapsed += (System.currentTimeMillis()-curr);
+			switch (plan.getStrategy()) {
+				case INDEX_NESTED_LOOP:
+					return this.indexJoin(r1, r2);
+				case HASH:
+					return this.hashJoin(r1, r2);
+				case SORT_MERGE:
+					return this.sortMergeJoin(r1, r2);
+				default:
+					return this.productJoin(r1, r2);
 			}
 		}
-		String[] project_array = new String[project_attr.size()];
-		for (int i = 0; i < project_attr.size(); i++) {
-			project_array[i] = project_attr.get(i).getPedanticName();
+		switch (this.join_strategy) {
+			case SORT_MERGE:
+				return this.hasJoinIndex(r1, r2) ? this.indexJoin(r1, r2) : this.sortMergeJoin(r1, r2);
+			case HASH:
+			case INDEX_NESTED_LOOP:
+				return this.hashJoin(r1, r2);
+			default:
+				return this.productJoin(r1, r2);
 		}
-		return this.project(this.select(this.times(r1,r2), expr.toString()), project_array);
 	}
 
+	/**
+	 * Performs a natural join by filtering the cartesian product of two relations.
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return a reference to a relation containing the joined data
+	 */
+	private Relation productJoin(Relation r1, Relation r2) throws DBException {
+		double curr = System.currentTimeMillis();
+		// compare each pair as it is formed rather than materializing the product
+		Relation output = JoinOperator.natural(new ScanOperator(r1), new ScanOperator(r2)).drain();
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return output;
+	}
+
+
 
 	/**
 	 * (Hwk3 addition)
@@ -441,63 +605,13 @@ public class DavidDB extends AbstractDB implements Timeable {
 			if(r.attribute_map.get(attr).getCount()>1) throw new DBException("Attribute cannot be ambiguous");
 		}
 		double curr = System.currentTimeMillis();
-		// Running the various aggregation helper functions to obtain aggregate values
-		List<Comparable> outputs = new ArrayList<Comparable>();
-		List<Attribute.Type> outputTypes = new ArrayList<Attribute.Type>();
-		for(int i = 0; i<agg_fns.length; i++) {
-			if(agg_fns[i] == Agg.MAX && r.attribute_list.get(r.attribute_map.get(attrs[i]).getPos()).getType() == Attribute.Type.NUMERIC) {
-				outputs.add(aggMaxNum(r,attrs[i]));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.MAX && r.attribute_list.get(r.attribute_map.get(attrs[i]).getPos()).getType() == Attribute.Type.TEXT) {
-				outputs.add(aggMaxStr(r,attrs[i]));
-				outputTypes.add(Attribute.Type.TEXT);
-			}
-			else if(agg_fns[i] == Agg.MIN && r.attribute_list.get(r.attribute_map.get(attrs[i]).getPos()).getType() == Attribute.Type.NUMERIC) {
-				outputs.add(aggMinNum(r,attrs[i]));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.MIN && r.attribute_list.get(r.attribute_map.get(attrs[i]).getPos()).getType() == Attribute.Type.TEXT) {
-				outputs.add(aggMinStr(r,attrs[i]));
-				outputTypes.add(Attribute.Type.TEXT);
-			}
-			else if(agg_fns[i] == Agg.AVG) {
-				outputs.add(aggAvg(r,attrs[i],false));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.COUNT) {
-				outputs.add(aggCount(r,attrs[i],false));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.SUM) {
-				outputs.add(aggSum(r,attrs[i],false));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.AVG_DISTINCT) {
-				outputs.add(aggAvg(r,attrs[i],true));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.COUNT_DISTINCT) {
-				outputs.add(aggCount(r,attrs[i],true));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-			else if(agg_fns[i] == Agg.SUM_DISTINCT) {
-				outputs.add(aggSum(r,attrs[i],true));
-				outputTypes.add(Attribute.Type.NUMERIC);
-			}
-		}
+		// Computing every aggregate in one scan
+		AggregateKernel kernel = new AggregateKernel(r,agg_fns,attrs);
+		List<Comparable> outputs = kernel.compute(r);
 		// Constructing new relation
 		Relation outputR = new Relation();
-		List<Attribute> outAttribs = new ArrayList<Attribute>();
-		// Constructing and adding attributes
-		for(int i = 0; i<agg_fns.length;i++) {
-			Attribute addAttrib = new Attribute(outputR,outputTypes.get(i), agg_fns[i].name() + "(" + attrs[i] + ")");
-			outAttribs.add(addAttrib);
-		}
-		outputR.setAttributes(outAttribs);
-		// Constructing and adding tuple
-		Tuple addTuple = new Tuple(outputs,outputR);
-		outputR.addTuple(addTuple);
+		outputR.setAttributes(kernel.outputAttributes(outputR));
+		outputR.addTuple(new Tuple(outputs,outputR));
 		// returning
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return outputR;
@@ -532,304 +646,565 @@ public class DavidDB extends AbstractDB implements Timeable {
 		if(groups == null){
 			return aggregate(r,agg_fns,attrs);
 		}
-		// finding permutations of the grouping
-		List<ArrayList<Comparable>> permutations = new ArrayList<ArrayList<Comparable>>();
-		for(Tuple tuple:r.tuples) {
-			ArrayList<Comparable> permutation = new ArrayList<Comparable>();
-			for(String attrib:groups) {
-				permutation.add(tuple.valueOf(attrib));
-			}
-			if(! permutations.contains(permutation)) permutations.add(permutation);
-		}
-		// Building strings needed to call select
-		List<ArrayList<String>> selectStrings = new ArrayList<ArrayList<String>>();
-		for(ArrayList<Comparable> permutation: permutations) {
-			ArrayList<String> singlePermutationStrings = new ArrayList<String>();
-			for(int i=0;i<permutation.size();i++) {
-				String addString = groups[i] + " = " + permutation.get(i);
-				singlePermutationStrings.add(addString);
-			}
-			selectStrings.add(singlePermutationStrings);
-		}
-		// Selecting using given strings
-		List<Relation> selected = new ArrayList<Relation>();
-		for(ArrayList<String> selectStringsPartial:selectStrings) {
-			Relation addSelected = multiSelect(r,selectStringsPartial);
-			selected.add(addSelected);
-		}
-		for(Relation relation:selected) {
-		}
-		ArrayList<Relation> products = new ArrayList<Relation>();
-		for(int i=0;i<agg_fns.length;i++) {
-			// Aggregating on selected
-			ArrayList<Relation> partials = new ArrayList<Relation>();
-			for(Relation partialSelected:selected) {
-				// Getting aggregated relation
-				Agg[] aggs = new Agg[1];
-				String[] attrss = new String[1];
-				aggs[0]=agg_fns[i];
-				attrss[0]= attrs[i];
-				Relation partialAggregated = aggregate(partialSelected,aggs,attrss);
-				// Getting relation with a single tuple containing the permutation of grouped atts
-				Relation groupingAttribs = project(partialSelected,groups);
-				// combining the previous two and adding to list
-				partials.add(naturalJoin(groupingAttribs,partialAggregated));
-			}
-			// Unioning aggregated partials
-			Relation nearProduct;
-			if(partials.size() == 1) nearProduct = partials.get(0);
-			else nearProduct = multiUnion(partials);
-			products.add(nearProduct);
-		}
-		products = multiRename(products);
-		// Joining the partial products
-		Relation nearProduct;
-		if(products.size() == 1) nearProduct = products.get(0);
-		else nearProduct = multiJoin(products);
-		// Starting grouping case by projecting
-		/*List<String> projectList = new ArrayList<String>();
-		for (String group:groups) projectList.add(group);
-		for (int i = nearProduct.attribute_list.size()-1;i>nearProduct.attribute_list.size()-(1+products.size());i--) {
-			 projectList.add(nearProduct.attribute_list.get(i).getName());
-		}
-		String[] combined = projectList.toArray(new String[projectList.size()]);
-		Relation finishedProduct = project(nearProduct,combined);*/
-		// Return
+		// one pass over r, keeping accumulators per group
+		Relation output;
+		if(this.morsels == null) output = new AggregateOperator(new ScanOperator(r),agg_fns,attrs,groups).drain();
+		else output = new ParallelHashAggregate(r,agg_fns,attrs,groups,this.morsels).aggregate(r);
 		timeElapsed += (System.currentTimeMillis()-curr);
-		return nearProduct;
+		return output;
 	}
 	
 	/**
 	 * (Hwk 6 addition)
 	 * Performs a natural join between two relations using the hash-join algorithm.
+	 * The smaller relation is used as the build side, and duplicate values of the
+	 * common attributes are allowed on both sides. When a parallelism is set, both
+	 * relations are partitioned on the join key and the partitions are joined in
+	 * parallel. If either relation has a hash index on the common attributes,
+	 * the index is probed instead and no table is built (see indexJoin).
 	 * @param r1	first relation
 	 * @param r2	second relation
-	 * @return a reference to a relation containing the joined data
+	 * @return a reference to a relation containing the joined data, with the
+	 * 			attributes of r1 followed by those of r2
 	 * @throws DBException
-	 * @pre the common attributes in r1 must be unique
 	 */
 	public Relation hashJoin(Relation r1, Relation r2) throws DBException{
-		double curr = System.currentTimeMillis();
-		// determine common attributes
-		Set<Attribute> common = new HashSet<>(r1.getAttributes());
-		common.retainAll(r2.getAttributes());
-		if (common.size() == 0) {	// no common attributes, natural join reduces to product
-			timeElapsed += (System.currentTimeMillis()-curr);
+		JoinSpec spec = new JoinSpec(r1, r2);
+		if (!spec.hasCommon()) {	// no common attributes, natural join reduces to product
 			return this.times(r1,r2);
 		}
-		// Composing map
-		HashMap<ArrayList<Comparable>,Tuple> r1Map = new HashMap<>();
-		for(Tuple tup: r1.tuples) {
-			ArrayList<Comparable> commonVals = new ArrayList<Comparable>();
-			for(Attribute attrib: common) {
-				commonVals.add(tup.valueOf(attrib.getName()));
-			}
-			if(r1Map.containsKey(commonVals)) {
-				throw new DBException("Common attributes of r1 must have unique values!");
+		if (new IndexJoin(spec).applies(r1, r2)) {
+			return this.indexJoin(r1, r2);
+		}
+		double curr = System.currentTimeMillis();
+		Relation output = (this.morsels == null) ? new HashJoin(spec).join(r1, r2)
+				: new PartitionedHashJoin(spec, this.morsels).join(r1, r2);
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return output;
+	}
+
+	/**
+	 * Performs a natural join between two relations by index nested loop: the
+	 * tuples of one relation are looked up in a hash index the other has on
+	 * exactly the common attributes (see Relation.createHashIndex), so there is
+	 * no build phase. Falls back to hashJoin if neither relation has one.
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return a reference to a relation containing the joined data, with the
+	 * 			same schema as naturalJoin
+	 * @throws DBException
+	 */
+	public Relation indexJoin(Relation r1, Relation r2) throws DBException {
+		JoinSpec spec = new JoinSpec(r1, r2);
+		IndexJoin join = new IndexJoin(spec);
+		if (!spec.hasCommon() || !join.applies(r1, r2)) {
+			return this.hashJoin(r1, r2);
+		}
+		double curr = System.currentTimeMillis();
+		Relation output = join.join(r1, r2);
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return output;
+	}
+
+	/**
+	 * @return true if either relation has a hash index on the common attributes
+	 */
+	private boolean hasJoinIndex(Relation r1, Relation r2) {
+		JoinSpec spec = new JoinSpec(r1, r2);
+		return spec.hasCommon() && new IndexJoin(spec).applies(r1, r2);
+	}
+
+	/**
+	 * Performs a natural join between two relations using the sort-merge algorithm.
+	 * Duplicate values of the common attributes are allowed on both sides.
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return a reference to a relation containing the joined data, with the
+	 * 			same schema as naturalJoin
+	 */
+	@Override
+	public Relation sortMergeJoin(Relation r1, Relation r2) throws DBException {
+		JoinSpec spec = new JoinSpec(r1, r2);
+		if (!spec.hasCommon()) {	// no common attributes, natural join reduces to product
+			return this.times(r1, r2);
+		}
+		double curr = System.currentTimeMillis();
+		Relation output = new SortMergeJoin(spec).join(r1, r2);
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return output;
+	}
+
+	/**
+	 * Describes how naturalJoin would join two relations under the current
+	 * strategy: the algorithm, and the estimated size and cost of the join
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return the plan; its toString() gives a readable description
+	 */
+	public JoinPlan explainJoin(Relation r1, Relation r2) {
+		return JoinPlan.plan(r1, r2, this.join_strategy);
+	}
+
+	/**
+	 * Performs a natural join of several relations. The joins run in the order
+	 * with the least estimated cost (see JoinOrder and explainJoinOrder), each
+	 * as naturalJoin runs it; the result is the same as joining the relations
+	 * one after another from left to right, attributes in the same order.
+	 * If a relation has two attributes of the same name and type, which one is
+	 * joined on depends on the order, so the relations are joined left to
+	 * right instead.
+	 * @param relations	the relations
+	 * @return a reference to a relation containing the joined data
+	 * @throws DBException if there are no relations
+	 */
+	@SuppressWarnings("rawtypes")
+	public Relation naturalJoin(Relation... relations) throws DBException {
+		double curr = System.currentTimeMillis();
+		if (relations.length == 0) {
+			throw new DBException("A join needs at least one relation");
+		}
+		if (relations.length == 1) {
+			return relations[0];
+		}
+		List<Attribute> attributes = relations[0].getAttributes();
+		for (int i = 1; i < relations.length; i++) {
+			attributes = new JoinSpec(attributes, relations[i].getAttributes()).outputAttributes();
+		}
+		boolean reorder = true;
+		for (Relation r : relations) {
+			reorder &= !hasDuplicates(r.getAttributes());
+		}
+		JoinOrder order = reorder ? JoinOrder.plan(relations) : null;
+		timeElapsed += (System.currentTimeMillis()-curr);
+		if (!reorder) {
+			Relation joined = relations[0];
+			for (int i = 1; i < relations.length; i++) {
+				joined = this.naturalJoin(joined, relations[i]);
 			}
-			r1Map.put(commonVals, tup);
+			return joined;
+		}
+		Relation joined = this.naturalJoin(order);
+
+		// put the attributes back in the left-to-right order
+		curr = System.currentTimeMillis();
+		int[] positions = new int[attributes.size()];
+		boolean same = true;
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = joined.getAttributes().indexOf(attributes.get(i));
+			same &= positions[i] == i;
+		}
+		if (same) {
+			// only the relations the common attributes belong to may differ
+			joined.setAttributes(attributes);
+			timeElapsed += (System.currentTimeMillis()-curr);
+			return joined;
 		}
-		// Joining up with r2
 		Relation output = new Relation();
-		
-		// build projected attributes in order of: r1.a1, ..., r2.a1, ...
-		List<Attribute> project_attr = new ArrayList<>(r1.getAttributes());
-		for (Attribute a : r2.getAttributes()) {
-			if (!project_attr.contains(a)) {
-				project_attr.add(a);
-			}
+		output.setAttributes(attributes);
+		if (joined.getStorage() == Relation.Storage.COLUMNAR) {
+			output.setColumns(joined.getColumns().project(positions));
 		}
-		output.setAttributes(project_attr);
-		
-		// Building tuples
-		for(Tuple tup2: r2.tuples) {
-			// Finding whether the common values line up with any in the map
-			ArrayList<Comparable> commonVals = new ArrayList<Comparable>();
-			for(Attribute attrib: common) {
-				commonVals.add(tup2.valueOf(attrib.getName()));
-			}
-			if(r1Map.containsKey(commonVals)) {
-				Tuple tup1 = r1Map.get(commonVals);
-				// Developing list of values in order to be inserted in new tuple
-				ArrayList<Comparable> insertVals = new ArrayList<>();
-				for(Comparable val: tup1.data) {
-					insertVals.add(val);
-				}
-				for(int i=0;i<tup2.data.size();i++) {
-					if(!common.contains(r2.attribute_list.get(i))) {
-						insertVals.add(tup2.data.get(i));
-					}
+		else {
+			for (Tuple t : joined.rows()) {
+				List<Comparable> values = new ArrayList<>(positions.length);
+				for (int p : positions) {
+					values.add(t.data.get(p));
 				}
-				// Creating tuple
-				Tuple addition = new Tuple(insertVals,output);
-				output.addTuple(addition);
+				output.addTuple(new Tuple(values, output));
 			}
 		}
-		
-		
 		timeElapsed += (System.currentTimeMillis()-curr);
 		return output;
 	}
-	
+
 	/**
-	 * @return the elapsed time (in milliseconds) since last reset.
+	 * Runs the joins of a join order
 	 */
-	public double getElapsedTime() {
-		return timeElapsed;
+	private Relation naturalJoin(JoinOrder order) throws DBException {
+		if (order.isLeaf()) {
+			return order.getRelation();
+		}
+		return this.naturalJoin(this.naturalJoin(order.getLeft()), this.naturalJoin(order.getRight()));
 	}
 
 	/**
-	 * Resets the elapsed time to zero.
+	 * Describes the order in which naturalJoin would join several relations
+	 * @param relations	the relations
+	 * @return the order; its toString() gives a readable description
 	 */
-	public void resetElapsedTime() {
-		timeElapsed= 0.0;
+	public JoinOrder explainJoinOrder(Relation... relations) {
+		return JoinOrder.plan(relations);
 	}
-	
-//----------------------------------------------------------------------------------------------
-	private double aggMaxNum(Relation r, String attr) {
-		//Fill a list with the values to be aggregated
-		List<Double> values =new ArrayList<Double>();
-		for(Tuple tuple :r.tuples) {
-			values.add((double) tuple.valueOf(attr));
-		}
-		//Aggregating
-		double maximum = values.get(0);
-		for(int i=0;i<values.size();i++) {
-			if(values.get(i)> maximum) maximum = values.get(i);
+
+	/**
+	 * @return true if two attributes of a list have the same name and type
+	 */
+	static boolean hasDuplicates(List<Attribute> attributes) {
+		for (int i = 0; i < attributes.size(); i++) {
+			if (attributes.lastIndexOf(attributes.get(i)) != i) {
+				return true;
+			}
 		}
-		return maximum;
+		return false;
 	}
-	
-	private double aggMinNum(Relation r, String attr) {
-		//Fill a list with the values to be aggregated
-		List<Double> values =new ArrayList<Double>();
-		for(Tuple tuple :r.tuples) {
-			values.add((double) tuple.valueOf(attr));
+
+	/**
+	 * Joins two relations on a condition. The conjuncts of the condition that
+	 * equate an attribute of r1 with one of r2 become the key of a hash join
+	 * (partitioned across threads when a parallelism is set), and the rest of
+	 * the condition is tested on the joined tuples. Without such a conjunct,
+	 * each pair is tested as it is formed, so the product is never materialized.
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @param cond	an unbound condition over the attributes of both relations
+	 * @return a reference to a relation containing the joined data, with all
+	 * 			attributes of r1 followed by all attributes of r2
+	 * @throws DBException if the condition is invalid for the joined attributes
+	 */
+	public Relation join(Relation r1, Relation r2, Node cond) throws DBException {
+		double curr = System.currentTimeMillis();
+		Operator product = JoinOperator.product(new ScanOperator(r1), new ScanOperator(r2));
+		Node bound = Condition.bind(cond, product.schema());
+
+		// split the condition into key pairs and the rest
+		List<Node> conjuncts = new ArrayList<>();
+		Optimizer.conjuncts(cond, conjuncts);
+		List<Integer> left = new ArrayList<>();
+		List<Integer> right = new ArrayList<>();
+		List<Node> rest = new ArrayList<>();
+		for (Node c : conjuncts) {
+			int[] pair = keyPair(c, r1, r2);
+			if (pair != null) {
+				left.add(pair[0]);
+				right.add(pair[1]);
+			}
+			else {
+				rest.add(c);
+			}
 		}
-		//Aggregating
-		double minimum = values.get(0);
-		for(int i=0;i<values.size();i++) {
-			if(values.get(i)< minimum) minimum = values.get(i);
+		Node residual = Optimizer.and(rest);
+
+		Relation output;
+		if (left.isEmpty()) {
+			output = new FilterOperator(product, this.codegen ? Codegen.predicate(bound) : bound).drain();
+			timeElapsed += (System.currentTimeMillis()-curr);
+			return output;
 		}
-		return minimum;
+		int[] left_keys = new int[left.size()];
+		int[] right_keys = new int[right.size()];
+		for (int k = 0; k < left_keys.length; k++) {
+			left_keys[k] = left.get(k);
+			right_keys[k] = right.get(k);
+		}
+		JoinSpec spec = new JoinSpec(r1.getAttributes(), r2.getAttributes(), left_keys, right_keys);
+		output = (this.morsels == null) ? new HashJoin(spec).join(r1, r2)
+				: new PartitionedHashJoin(spec, this.morsels).join(r1, r2);
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return (residual == null) ? output : this.select(output, residual);
 	}
-	
-	private String aggMaxStr(Relation r, String attr) {
-		//Fill a list with the values to be aggregated
-		List<String> values =new ArrayList<String>();
-		for(Tuple tuple :r.tuples) {
-			values.add((String) tuple.valueOf(attr));
+
+	/**
+	 * @return the positions in r1 and r2 of the attributes a conjunct equates,
+	 * 			or null if it does not equate an attribute of each
+	 */
+	private static int[] keyPair(Node c, Relation r1, Relation r2) {
+		if (!(c instanceof ComparisonNode) || ((ComparisonNode) c).getCode() != Ops.EQ) {
+			return null;
+		}
+		Node a = ((ComparisonNode) c).getLeft();
+		Node b = ((ComparisonNode) c).getRight();
+		if (!(a instanceof ColumnNode) || !(b instanceof ColumnNode)) {
+			return null;
 		}
-		// Aggregating
-		String maximum = values.get(0);
-		for(int i=0;i<values.size();i++) {
-			if(values.get(i).compareTo(maximum)> 0) maximum = values.get(i);
+		String x = ((ColumnNode) a).getName();
+		String y = ((ColumnNode) b).getName();
+		int[] pair = {position(r1, x), position(r2, y)};
+		if (pair[0] < 0 || pair[1] < 0) {
+			pair = new int[] {position(r1, y), position(r2, x)};
 		}
-		return maximum;
+		return (pair[0] < 0 || pair[1] < 0) ? null : pair;
 	}
-	
-	private String aggMinStr(Relation r, String attr) {
-		// Fill a list with the values to be aggregated
-		List<String> values =new ArrayList<String>();
-		for(Tuple tuple :r.tuples) {
-			values.add((String) tuple.valueOf(attr));
-		}
-		// Aggregating
-		String minimum = values.get(0);
-		for(int i=0;i<values.size();i++) {
-			if(values.get(i).compareTo(minimum)< 0) minimum = values.get(i);
-		}
-		return minimum;
-	}
-	private double aggAvg(Relation r, String attr, boolean distinct) throws DBException{
-		for(Attribute attribute : r.attribute_list) if(attribute.getName() == attr) if(attribute.getType() == Attribute.Type.TEXT) throw new DBException("This function can't be called on strings");
-		// Fill a list with the values to be aggregated
-		List<Double> values =new ArrayList<Double>();
-		if(distinct == false) {
-			for(Tuple tuple :r.tuples) {
-				values.add((double) tuple.valueOf(attr));
+
+	/**
+	 * @return the position of an attribute, or -1 if r does not have it or it is ambiguous
+	 */
+	private static int position(Relation r, String name) {
+		try {
+			return r.lookup(name);
+		} catch (DBException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Orders the tuples of a relation. Nulls come first, NUMERIC values are
+	 * ordered by value and TEXT values by content, as comparisons order them.
+	 * Tuples equal on every key are in no particular order.
+	 * @param r				the relation to order
+	 * @param attrs			names of the attributes to order by, most significant first
+	 * @param descending	for each attribute, true to order from largest to smallest
+	 * @return a reference to a COLUMNAR relation holding the tuples of r in
+	 * 			order; cursor() and toString() visit them in that order
+	 * @throws DBException if an attribute name doesn't exist or is ambiguous
+	 */
+	@SuppressWarnings("rawtypes")
+	public Relation orderBy(Relation r, String[] attrs, boolean[] descending) throws DBException {
+		double curr = System.currentTimeMillis();
+		int[] keys = new int[attrs.length];
+		boolean[] numeric = new boolean[attrs.length];
+		for (int k = 0; k < attrs.length; k++) {
+			keys[k] = r.lookup(attrs[k]);
+			numeric[k] = r.isNumeric(keys[k]);
+		}
+		int width = r.getAttributes().size();
+		List<List<Comparable>> rows = new ArrayList<>(r.size());
+		RowCursor row = r.cursor();
+		while (row.next()) {
+			List<Comparable> values = new ArrayList<>(width);
+			for (int i = 0; i < width; i++) {
+				values.add(row.get(i));
 			}
+			rows.add(values);
 		}
-		else {
-			for(Tuple tuple :r.tuples) {
-				if(!values.contains((double) tuple.valueOf(attr))) values.add((double) tuple.valueOf(attr));
+		rows.sort((a, b) -> {
+			for (int k = 0; k < keys.length; k++) {
+				int c = compareValues(a.get(keys[k]), b.get(keys[k]), numeric[k]);
+				if (c != 0) {
+					return descending[k] ? -c : c;
+				}
 			}
+			return 0;
+		});
+		ColumnStore store = new ColumnStore(numericFlags(r));
+		for (List<Comparable> values : rows) {
+			store.add(values);
 		}
-		// Aggregating
-		double sum = 0.0;
-		for(double value : values) {
-			sum += value;
+		Relation output = this.emptyCopy(r);
+		output.setColumns(store);
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return output;
+	}
+
+	/**
+	 * Compares two values of an attribute; nulls come first
+	 */
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	private static int compareValues(Comparable a, Comparable b, boolean numeric) {
+		if (a == null || b == null) {
+			return (a == null) ? ((b == null) ? 0 : -1) : 1;
 		}
-		return sum/values.size();
+		return numeric ? a.compareTo(b) : Ops.compareText((String) a, (String) b);
 	}
-	private double aggCount(Relation r, String attr, boolean distinct) throws DBException{
-		// Fill a list with the values to be aggregated
-		List<Comparable> values =new ArrayList<Comparable>();
-		if(distinct == false) {
-			for(Tuple tuple :r.tuples) {
-				values.add((Comparable) tuple.valueOf(attr));
+
+	/**
+	 * Keeps the first tuples of a relation: those cursor() visits first, which
+	 * for the result of orderBy() are the first in order
+	 * @param r	the relation
+	 * @param n	the number of tuples to keep
+	 * @return a reference to a COLUMNAR relation holding at most n tuples of r, in order
+	 * @throws DBException if n is negative
+	 */
+	@SuppressWarnings("rawtypes")
+	public Relation limit(Relation r, int n) throws DBException {
+		if (n < 0) {
+			throw new DBException("Limit must not be negative: " + n);
+		}
+		double curr = System.currentTimeMillis();
+		ColumnStore store;
+		if (r.getStorage() == Relation.Storage.COLUMNAR) {
+			ColumnStore in = r.getColumns();
+			store = in.emptyCopy();
+			for (int i = 0; i < Math.min(n, in.size()); i++) {
+				store.append(in, i);
 			}
 		}
 		else {
-			for(Tuple tuple :r.tuples) {
-				if(!values.contains((Comparable) tuple.valueOf(attr))) values.add((Comparable) tuple.valueOf(attr));
+			store = new ColumnStore(numericFlags(r));
+			int width = r.getAttributes().size();
+			RowCursor row = r.cursor();
+			while (store.size() < n && row.next()) {
+				List<Comparable> values = new ArrayList<>(width);
+				for (int i = 0; i < width; i++) {
+					values.add(row.get(i));
+				}
+				store.add(values);
 			}
 		}
-		// Aggregating
-		return (double) values.size();
+		Relation output = this.emptyCopy(r);
+		output.setColumns(store);
+		timeElapsed += (System.currentTimeMillis()-curr);
+		return output;
+	}
+
+	/**
+	 * @return for each attribute of r, true if it is NUMERIC
+	 */
+	private static boolean[] numericFlags(Relation r) {
+		boolean[] numeric = new boolean[r.getAttributes().size()];
+		for (int i = 0; i < numeric.length; i++) {
+			numeric[i] = r.isNumeric(i);
+		}
+		return numeric;
 	}
-	
-	private double aggSum(Relation r, String attr, boolean distinct) throws DBException{
-		for(Attribute attribute : r.attribute_list) if(attribute.getName() == attr) if(attribute.getType() == Attribute.Type.TEXT) throw new DBException("This function can't be called on strings");
-		// Fill a list with the values to be aggregated
-		List<Double> values =new ArrayList<Double>();
-		if(distinct == false) {
-			for(Tuple tuple :r.tuples) {
-				values.add((double) tuple.valueOf(attr));
+
+	/**
+	 * Parses a SQL query into a logical plan over the relations of this
+	 * database (see SQLParser for the syntax accepted), and rewrites the plan
+	 * with Optimizer unless that was turned off
+	 * @param sql	a query
+	 * @return the plan, which execute() runs; its toString() describes it
+	 * @throws DBException if the query is not well formed or does not fit the schema
+	 */
+	public LogicalPlan plan(String sql) throws DBException {
+		LogicalPlan plan = new SQLParser(this, sql).parse();
+		return this.optimize ? Optimizer.optimize(plan) : plan;
+	}
+
+	/**
+	 * Runs a logical plan as it is; see Optimizer to rewrite one built by hand
+	 * @param plan	a plan over the relations of this database
+	 * @return a reference to a relation containing the result
+	 * @throws DBException if an operation of the plan fails
+	 */
+	public Relation execute(LogicalPlan plan) throws DBException {
+		return plan.execute(this);
+	}
+
+	/**
+	 * Parses and runs a SQL query, e.g.
+	 * <pre>
+	 *   SELECT customerName, SUM(amount) AS paid FROM customers NATURAL JOIN payments
+	 *   WHERE country = 'USA' GROUP BY customerName ORDER BY paid DESC LIMIT 5
+	 * </pre>
+	 * @param sql	a query
+	 * @return a reference to a relation containing the result
+	 * @throws DBException if the query is invalid or an operation fails
+	 */
+	public Relation query(String sql) throws DBException {
+		return this.execute(this.plan(sql));
+	}
+
+	/**
+	 * Parses and plans a query with parameters (?) once, to run it many times
+	 * with different values; see PreparedStatement. Statements are cached by
+	 * the normalized text of the query (see SQLParser.normalized), so preparing
+	 * the same query again only costs tokenizing it, as long as the schema
+	 * version is the same.
+	 * @param sql	a query
+	 * @return the prepared statement
+	 * @throws DBException if the query is not well formed or does not fit the schema
+	 */
+	public PreparedStatement prepare(String sql) throws DBException {
+		SQLParser parser = new SQLParser(this, sql);
+		String key = parser.normalized();
+		long version = this.getSchemaVersion();
+		synchronized (this.statements) {
+			PreparedStatement cached = this.statements.get(key);
+			if (cached != null && cached.getVersion() == version) {
+				return cached;
 			}
 		}
-		else {
-			for(Tuple tuple :r.tuples) {
-				if(!values.contains((double) tuple.valueOf(attr))) values.add((double) tuple.valueOf(attr));
+		LogicalPlan plan = parser.parse();
+		if (this.optimize) {
+			plan = Optimizer.optimize(plan);
+		}
+		PreparedStatement statement = new PreparedStatement(this, sql, plan, parser.getParameterCount(), version);
+		synchronized (this.statements) {
+			this.statements.put(key, statement);
+			if (this.statements.size() > STATEMENT_CACHE_SIZE) {
+				this.statements.remove(this.statements.keySet().iterator().next());
 			}
 		}
-		// Aggregating
-		double sum = 0.0;
-		for(double value : values) {
-			sum += value;
+		return statement;
+	}
+
+	/**
+	 * @return a number that changes whenever a relation of the schema is
+	 * 			created, or its attributes or indexes change (see Relation.getVersion)
+	 */
+	public long getSchemaVersion() {
+		long version = 0;
+		for (AbstractRelation r : this.relations.values()) {
+			version = Math.max(version, ((Relation) r).getVersion());
+		}
+		return version;
+	}
+
+	/**
+	 * Chooses the algorithm naturalJoin uses. The default, COST_BASED, chooses
+	 * for each join.
+	 * @param strategy	the join algorithm
+	 */
+	public void setJoinStrategy(JoinStrategy strategy) {
+		this.join_strategy = strategy;
+	}
+
+	/**
+	 * Turns the rewriting of query plans by Optimizer on or off. When off,
+	 * plan() and query() run queries in the order they are written.
+	 * @param enabled	true to push predicates and projections down
+	 */
+	public void setOptimizer(boolean enabled) {
+		this.optimize = enabled;
+		synchronized (this.statements) {
+			this.statements.clear();	// their plans were made with the old setting
 		}
-		return sum;
 	}
-	
-	private Relation multiSelect(Relation r, ArrayList<String> selectStrings) {
-		if(selectStrings.size()==1) return select(r, selectStrings.remove(selectStrings.size()-1)); //shrinks selectStrings
-		Relation partialSelect = select(r, selectStrings.remove(selectStrings.size()-1)); //shrinks selectStrings
-		return multiSelect(partialSelect,selectStrings);
+
+	/**
+	 * Turns the code-generation tier for select() and project() on or off. When
+	 * off, conditions are evaluated by walking the parsed expression tree.
+	 * @param enabled	true to generate classes for conditions and projections
+	 */
+	public void setCodegen(boolean enabled) {
+		this.codegen = enabled;
 	}
 
-	private Relation multiUnion(ArrayList<Relation> relations) {
-		if(relations.size() == 2) return union(relations.get(0),relations.get(1));
-		Relation partialUnion = union(relations.remove(relations.size()-1),relations.remove(relations.size()-1));
-		relations.add(partialUnion);
-		return multiUnion(relations);
+	/**
+	 * Turns batch execution for columnar relations on or off. When on, select()
+	 * filters columnar relations a Batch of rows at a time; when off, it tests
+	 * them row by row.
+	 * @param enabled	true to filter columnar relations in batches
+	 */
+	public void setVectorized(boolean enabled) {
+		this.vectorized = enabled;
 	}
 
-	private Relation multiJoin(ArrayList<Relation> relations) {
-		if(relations.size() == 2) return naturalJoin(relations.get(0),relations.get(1));
-		Relation partialJoin = naturalJoin(relations.remove(relations.size()-1),relations.remove(relations.size()-1));
-		Integer newName = relations.size();
-		Relation newPartialJoin = renameRelation(partialJoin,newName.toString());
-		relations.add(newPartialJoin);
-		return multiJoin(relations);
+	/**
+	 * Sets the number of threads select(), project(), hashJoin() and grouped
+	 * aggregate() use. Relations are split into morsels of rows that are processed
+	 * on a ForkJoinPool; results are the same for any number of threads.
+	 * @param threads	number of worker threads; 1 to run on the calling thread
+	 */
+	public void setParallelism(int threads) {
+		this.setParallelism(threads, Morsels.DEFAULT_SIZE);
 	}
-	
-	private ArrayList<Relation> multiRename(ArrayList<Relation> relations) {
-		ArrayList<Relation> renamed = new ArrayList<Relation>();
-		for(Integer i=0;i<relations.size();i++) {
-			renamed.add(renameRelation(relations.get(i),i.toString()));
+
+	/**
+	 * Sets the number of threads select(), project(), hashJoin() and grouped
+	 * aggregate() use, and the morsel size
+	 * @param threads		number of worker threads; 1 to run on the calling thread
+	 * @param morsel_size	rows per morsel
+	 */
+	public void setParallelism(int threads, int morsel_size) {
+		if (this.morsels != null) {
+			this.morsels.shutdown();
 		}
-		return renamed;
+		this.morsels = (threads > 1) ? new Morsels(threads, morsel_size) : null;
+	}
+
+	/**
+	 * @return the elapsed time (in milliseconds) since last reset.
+	 */
+	public double getElapsedTime() {
+		return timeElapsed;
+	}
+
+	/**
+	 * Resets the elapsed time to zero.
+	 */
+	public void resetElapsedTime() {
+		timeElapsed= 0.0;
 	}
-	
 	
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+import java.util.List;
+
+import solver.Predicate;
+import solver.Row;
+
+/**
+ * Passes on the rows of its input for which a predicate holds.
+ */
+public class FilterOperator extends Operator {
+	private final Operator input;
+	private final Predicate predicate;
+
+	/**
+	 * @param input		the input stage
+	 * @param predicate	a predicate bound to the input's attributes
+	 */
+	public FilterOperator(Operator input, Predicate predicate) {
+		this.input = input;
+		this.predicate = predicate;
+	}
+
+	@Override
+	public List<Attribute> attributes() {
+		return this.input.attributes();
+	}
+
+	@Override
+	public void open() {
+		this.input.open();
+	}
+
+	@Override
+	public Row next() {
+		Row row;
+		while ((row = this.input.next()) != null) {
+			if (this.predicate.test(row)) {
+				return row;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void close() {
+		this.input.close();
+	}
+}
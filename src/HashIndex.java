@@ -0,0 +1,162 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import solver.Row;
+
+/**
+ * An in-memory hash index on one or more attributes of a relation. Rows are
+ * numbered as for an AttributeIndex, and the index maps each distinct
+ * combination of the indexed values to the numbers of the rows holding it.
+ * Relation.createHashIndex() builds an index, and the relation keeps it up to
+ * date as tuples are added. select() uses it for equality with a constant on
+ * every indexed attribute, and the joins probe it instead of building a hash
+ * table of their own. Values are matched as TEXT comparisons match them, so a
+ * quoted and an unquoted TEXT value are the same key; -0.0 and 0.0 are too.
+ */
+@SuppressWarnings("rawtypes")
+public class HashIndex {
+	private static final int[] NONE = new int[0];
+
+	private final String[] names;
+	private final int[] positions;
+	private final boolean[] numeric;
+	private final Map<List<Comparable>, Bucket> table = new HashMap<>();
+	private int numeric_nulls;
+
+	/**
+	 * @param names		names of the indexed attributes
+	 * @param positions	positions of the indexed attributes
+	 * @param numeric	for each indexed attribute, true if NUMERIC
+	 */
+	HashIndex(String[] names, int[] positions, boolean[] numeric) {
+		this.names = names.clone();
+		this.positions = positions.clone();
+		this.numeric = numeric.clone();
+	}
+
+	/**
+	 * @return names of the indexed attributes, in key order
+	 */
+	public String[] getAttributes() {
+		return this.names.clone();
+	}
+
+	/**
+	 * @return positions of the indexed attributes, in key order
+	 */
+	public int[] getPositions() {
+		return this.positions.clone();
+	}
+
+	/**
+	 * @return the number of distinct keys
+	 */
+	public int distinctKeys() {
+		return this.table.size();
+	}
+
+	/**
+	 * @return true if some row holds null in a NUMERIC indexed attribute
+	 */
+	public boolean hasNumericNulls() {
+		return this.numeric_nulls > 0;
+	}
+
+	/**
+	 * Indexes the given rows, discarding any rows indexed before
+	 * @param rows	the relation's rows, by row number
+	 * @param count	the number of rows
+	 */
+	void build(AttributeIndex.RowSource rows, int count) {
+		this.table.clear();
+		this.numeric_nulls = 0;
+		for (int i = 0; i < count; i++) {
+			this.insert(rows.row(i), i);
+		}
+	}
+
+	/**
+	 * Adds a row to the index
+	 * @param row	the row's values
+	 * @param id	the row's number
+	 */
+	void insert(Row row, int id) {
+		Comparable[] key = new Comparable[this.positions.length];
+		for (int k = 0; k < key.length; k++) {
+			key[k] = this.normalize(row.get(this.positions[k]), k);
+			if (key[k] == null && this.numeric[k]) {
+				this.numeric_nulls++;
+			}
+		}
+		this.table.computeIfAbsent(Arrays.asList(key), k -> new Bucket()).add(id);
+	}
+
+	/**
+	 * Finds the rows holding the given values
+	 * @param key	a value for each indexed attribute, in key order
+	 * @return the row numbers, in ascending order; must not be modified
+	 */
+	public int[] lookup(Comparable[] key) {
+		Comparable[] k = new Comparable[this.positions.length];
+		for (int i = 0; i < k.length; i++) {
+			k[i] = this.normalize(key[i], i);
+		}
+		return this.find(k);
+	}
+
+	/**
+	 * Finds the rows whose indexed values equal some values of another row,
+	 * as a join probes the index
+	 * @param values	the other row's values
+	 * @param probe		for each indexed attribute, the position of its value in values
+	 * @return the row numbers, in ascending order; must not be modified
+	 */
+	public int[] lookup(List<Comparable> values, int[] probe) {
+		Comparable[] k = new Comparable[probe.length];
+		for (int i = 0; i < k.length; i++) {
+			k[i] = this.normalize(values.get(probe[i]), i);
+		}
+		return this.find(k);
+	}
+
+	private int[] find(Comparable[] key) {
+		Bucket bucket = this.table.get(Arrays.asList(key));
+		return (bucket == null) ? NONE : bucket.ids();
+	}
+
+	private Comparable normalize(Comparable v, int k) {
+		if (v == null) {
+			return null;
+		}
+		if (this.numeric[k]) {
+			double d = (Double) v;
+			return (d == 0.0) ? 0.0 : v;
+		}
+		String s = (String) v;
+		if (s.length() >= 2 && s.charAt(0) == '\'' && s.charAt(s.length() - 1) == '\'') {
+			return s.substring(1, s.length() - 1);
+		}
+		return s;
+	}
+
+	/**
+	 * The numbers of the rows sharing a key, in the order they were added
+	 */
+	private static class Bucket {
+		private int[] ids = new int[1];
+		private int size;
+
+		void add(int id) {
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+			this.ids[this.size++] = id;
+		}
+
+		int[] ids() {
+			return (this.ids.length == this.size) ? this.ids : Arrays.copyOf(this.ids, this.size);
+		}
+	}
+}
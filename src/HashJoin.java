@@ -0,0 +1,57 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash implementation of the natural join. The smaller input is loaded into
+ * a hash table of buckets keyed on the common attributes, so any number of
+ * tuples may share a key; the other input then probes the table. Output
+ * columns are always r1's followed by r2's, whichever side was built.
+ */
+public class HashJoin {
+	private final JoinSpec spec;
+
+	/**
+	 * @param spec	the join to perform; must have common attributes
+	 */
+	public HashJoin(JoinSpec spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * Joins the two relations
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return the natural join, with the same schema naturalJoin produces
+	 */
+	public Relation join(Relation r1, Relation r2) {
+		boolean build_left = r1.size() <= r2.size();
+		Relation build = build_left ? r1 : r2;
+		Relation probe = build_left ? r2 : r1;
+		int[] build_keys = build_left ? this.spec.leftKeys() : this.spec.rightKeys();
+		int[] probe_keys = build_left ? this.spec.rightKeys() : this.spec.leftKeys();
+
+		// build phase: one bucket of tuples per distinct key
+		Map<JoinKey, List<Tuple>> table = new HashMap<>();
+		for (Tuple t : build.rows()) {
+			table.computeIfAbsent(new JoinKey(t.data, build_keys), k -> new ArrayList<>(1)).add(t);
+		}
+
+		// probe phase
+		Relation output = new Relation();
+		output.setAttributes(this.spec.outputAttributes());
+		for (Tuple t : probe.rows()) {
+			List<Tuple> bucket = table.get(new JoinKey(t.data, probe_keys));
+			if (bucket == null) {
+				continue;
+			}
+			for (Tuple match : bucket) {
+				Tuple left = build_left ? match : t;
+				Tuple right = build_left ? t : match;
+				output.addTuple(new Tuple(this.spec.combine(left.data, right.data), output));
+			}
+		}
+		return output;
+	}
+}
@@ -0,0 +1,100 @@
+import java.util.List;
+
+/**
+ * Index nested-loop implementation of the natural join. One input already has
+ * a hash index on exactly the common attributes, so there is no build phase:
+ * each tuple of the other input looks its key up in the index, and the rows
+ * found are joined with it. Output columns are always r1's followed by r2's,
+ * whichever side was indexed.
+ */
+@SuppressWarnings("rawtypes")
+public class IndexJoin {
+	private final JoinSpec spec;
+
+	/**
+	 * @param spec	the join to perform; must have common attributes
+	 */
+	public IndexJoin(JoinSpec spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * Finds a hash index of a relation on exactly the given attributes, in any order
+	 * @param r		a join input
+	 * @param keys	positions of the common attributes in r
+	 * @return the index, or null if r has none
+	 */
+	public static HashIndex find(Relation r, int[] keys) {
+		for (HashIndex index : r.getHashIndexes()) {
+			int[] positions = index.getPositions();
+			if (positions.length == keys.length && probeOrder(positions, keys, keys) != null
+					&& probeOrder(keys, positions, positions) != null) {
+				return index;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return true if one of the relations has an index the join can use
+	 */
+	public boolean applies(Relation r1, Relation r2) {
+		return find(r1, this.spec.leftKeys()) != null || find(r2, this.spec.rightKeys()) != null;
+	}
+
+	/**
+	 * Joins the two relations. If both are indexed, the larger one is looked
+	 * up into, so there are fewer probes.
+	 * @param r1	first relation
+	 * @param r2	second relation; r1 or r2 must have an index the join can use
+	 * @return the natural join, with the same schema naturalJoin produces
+	 */
+	public Relation join(Relation r1, Relation r2) {
+		HashIndex left = find(r1, this.spec.leftKeys());
+		HashIndex right = find(r2, this.spec.rightKeys());
+		boolean index_left = (left != null) && (right == null || r1.size() >= r2.size());
+		Relation indexed = index_left ? r1 : r2;
+		Relation probe = index_left ? r2 : r1;
+		HashIndex index = index_left ? left : right;
+		int[] indexed_keys = index_left ? this.spec.leftKeys() : this.spec.rightKeys();
+		int[] probe_keys = index_left ? this.spec.rightKeys() : this.spec.leftKeys();
+		int[] order = probeOrder(index.getPositions(), indexed_keys, probe_keys);
+
+		Relation output = new Relation();
+		output.setAttributes(this.spec.outputAttributes());
+		for (Tuple t : probe.rows()) {
+			for (int id : index.lookup(t.data, order)) {
+				List<Comparable> match = indexed.numberedTuple(id).data;
+				List<Comparable> values = index_left ? this.spec.combine(match, t.data)
+						: this.spec.combine(t.data, match);
+				output.addTuple(new Tuple(values, output));
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * Lines the probe side's key positions up with an index's attributes
+	 * @param positions		the index's attribute positions, in key order
+	 * @param indexed_keys	positions of the common attributes on the indexed side
+	 * @param probe_keys	positions of the same attributes on the probe side
+	 * @return for each index attribute, the position of the matching probe
+	 * 			attribute, or null if the index is not on the common attributes
+	 */
+	private static int[] probeOrder(int[] positions, int[] indexed_keys, int[] probe_keys) {
+		int[] order = new int[positions.length];
+		for (int k = 0; k < positions.length; k++) {
+			int i = 0;
+			while (i < indexed_keys.length && indexed_keys[i] != positions[k]) {
+				i++;
+			}
+			if (i == indexed_keys.length) {
+				return null;
+			}
+			order[k] = probe_keys[i];
+		}
+		return order;
+	}
+}
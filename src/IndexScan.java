@@ -0,0 +1,249 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.ColumnNode;
+import solver.ComparisonNode;
+import solver.ListRow;
+import solver.LiteralNode;
+import solver.LogicalNode;
+import solver.Node;
+import solver.Ops;
+import solver.Predicate;
+import storage.ColumnStore;
+
+/**
+ * Selection through an index. The conjuncts of a bound condition that compare
+ * an attribute with a constant (=, <, <=, >, >=) give bounds on the
+ * attribute; if a B+-tree index of the relation leads with one of the
+ * attributes, its range scan yields the candidate rows, and if every
+ * attribute of a hash index is bound by an equality, a lookup does. The whole
+ * condition is then tested on each candidate only. Conditions under || or !
+ * give no bounds. If statistics of the relation have been gathered, a B+-tree
+ * range expected to hold more than SCAN_FRACTION of the rows is not used:
+ * visiting rows by number costs more per row than scanning them all in order.
+ * Statistics are not gathered for this.
+ */
+@SuppressWarnings("rawtypes")
+public class IndexScan {
+	/** largest estimated fraction of the rows a B+-tree range scan is used for */
+	static final double SCAN_FRACTION = 0.2;
+
+	private final AttributeIndex index;
+	private final Comparable low;
+	private final Comparable high;
+	private final HashIndex hash;
+	private final Comparable[] key;
+
+	private IndexScan(AttributeIndex index, Comparable low, Comparable high) {
+		this.index = index;
+		this.low = low;
+		this.high = high;
+		this.hash = null;
+		this.key = null;
+	}
+
+	private IndexScan(HashIndex hash, Comparable[] key) {
+		this.index = null;
+		this.low = null;
+		this.high = null;
+		this.hash = hash;
+		this.key = key;
+	}
+
+	/**
+	 * Picks the index that bounds a condition best: a hash index whose
+	 * attributes are all bound by equalities, else an equality on a B+-tree
+	 * index, else a range bounded on both sides, else a range bounded on one side
+	 * @param r		the relation to select from
+	 * @param bound	the condition, bound to r
+	 * @return the scan, or null if no index applies
+	 */
+	public static IndexScan plan(Relation r, Node bound) {
+		if (r.getIndexes().isEmpty() && r.getHashIndexes().isEmpty()) {
+			return null;
+		}
+		List<ComparisonNode> conjuncts = new ArrayList<>();
+		conjuncts(bound, conjuncts);
+		IndexScan best = null;
+		for (HashIndex hash : r.getHashIndexes()) {
+			if (hash.hasNumericNulls()) {
+				continue;	// a null NUMERIC value compares as 0 in columnar storage
+			}
+			Comparable[] key = equalities(hash.getPositions(), conjuncts);
+			if (key != null && (best == null || key.length > best.key.length)) {
+				best = new IndexScan(hash, key);		// more attributes select fewer rows
+			}
+		}
+		if (best != null) {
+			return best;
+		}
+		int best_rank = 0;
+		for (AttributeIndex index : r.getIndexes()) {
+			int pos = index.leadingPosition();
+			boolean numeric = r.isNumeric(pos);
+			if (numeric && index.hasLeadingNulls()) {
+				continue;	// a null NUMERIC value compares as 0 in columnar storage
+			}
+			Comparable low = null;
+			Comparable high = null;
+			boolean equality = false;
+			for (ComparisonNode c : conjuncts) {
+				Comparable value = constant(c, pos);
+				if (value == null) {
+					continue;
+				}
+				int op = (c.getLeft() instanceof ColumnNode) ? c.getCode() : flip(c.getCode());
+				if (op == Ops.EQ || op == Ops.GT || op == Ops.GE) {
+					if (low == null || compare(value, low, numeric) > 0) {
+						low = value;
+					}
+				}
+				if (op == Ops.EQ || op == Ops.LT || op == Ops.LE) {
+					if (high == null || compare(value, high, numeric) < 0) {
+						high = value;
+					}
+				}
+				equality |= op == Ops.EQ;
+			}
+			int rank = equality ? 3 : (low != null && high != null) ? 2 : (low != null || high != null) ? 1 : 0;
+			if (rank == 0) {
+				continue;
+			}
+			if (rank < 3) {
+				// only statistics gathered already: analyzing would cost more than the scan saves
+				Statistics stats = r.gatheredStatistics();
+				if (stats != null && stats.getColumn(pos).range(low, high) > SCAN_FRACTION) {
+					continue;
+				}
+			}
+			if (rank > best_rank) {
+				best = new IndexScan(index, low, high);
+				best_rank = rank;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return the B+-tree index the scan uses, or null if it uses a hash index
+	 */
+	public AttributeIndex getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return the hash index the scan uses, or null if it uses a B+-tree index
+	 */
+	public HashIndex getHashIndex() {
+		return this.hash;
+	}
+
+	/**
+	 * Adds the rows of r satisfying the condition to an empty relation, in r's
+	 * storage layout
+	 * @param r			the relation given to plan()
+	 * @param cond		the whole condition, bound to r
+	 * @param result	an empty relation with r's attributes
+	 */
+	public void select(Relation r, Predicate cond, Relation result) {
+		int[] candidates = (this.hash != null) ? this.hash.lookup(this.key) : this.index.range(this.low, this.high);
+		if (r.getStorage() == Relation.Storage.COLUMNAR) {
+			ColumnStore in = r.getColumns();
+			ColumnStore out = in.emptyCopy();
+			ColumnStore.Cursor row = in.cursor();
+			for (int id : candidates) {
+				row.setRow(id);
+				if (cond.test(row)) {
+					out.append(in, id);
+				}
+			}
+			result.setColumns(out);
+			return;
+		}
+		ListRow row = new ListRow();
+		for (int id : candidates) {
+			Tuple t = r.numberedTuple(id);
+			if (cond.test(row.reset(t.data))) {
+				result.addTuple(new Tuple(t.data, result));
+			}
+		}
+	}
+
+	/**
+	 * Collects the comparisons joined by && at the top of a condition
+	 */
+	private static void conjuncts(Node n, List<ComparisonNode> out) {
+		if (n instanceof LogicalNode && ((LogicalNode) n).getOp().equals("&&")) {
+			conjuncts(((LogicalNode) n).getLeft(), out);
+			conjuncts(((LogicalNode) n).getRight(), out);
+		}
+		else if (n instanceof ComparisonNode) {
+			out.add((ComparisonNode) n);
+		}
+	}
+
+	/**
+	 * @return for each position, the constant an equality sets the attribute
+	 * 			there to, or null if some attribute has no equality
+	 */
+	private static Comparable[] equalities(int[] positions, List<ComparisonNode> conjuncts) {
+		Comparable[] key = new Comparable[positions.length];
+		for (int k = 0; k < positions.length; k++) {
+			for (ComparisonNode c : conjuncts) {
+				if (c.getCode() == Ops.EQ) {
+					key[k] = constant(c, positions[k]);
+					if (key[k] != null) {
+						break;
+					}
+				}
+			}
+			if (key[k] == null) {
+				return null;
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * @return the constant a comparison bounds the attribute at pos by, or null if it does not
+	 */
+	private static Comparable constant(ComparisonNode c, int pos) {
+		if (c.getCode() == Ops.NE || c.operandType() == Node.Type.NULL || c.operandType() == Node.Type.BOOLEAN) {
+			return null;
+		}
+		Node column = c.getLeft();
+		Node literal = c.getRight();
+		if (!(column instanceof ColumnNode)) {
+			column = c.getRight();
+			literal = c.getLeft();
+		}
+		if (!(column instanceof ColumnNode) || !(literal instanceof LiteralNode)
+				|| ((ColumnNode) column).getPos() != pos) {
+			return null;
+		}
+		return ((LiteralNode) literal).getValue();
+	}
+
+	/**
+	 * @return the operator with its operands swapped
+	 */
+	static int flip(int op) {
+		switch (op) {
+			case Ops.LT:
+				return Ops.GT;
+			case Ops.LE:
+				return Ops.GE;
+			case Ops.GT:
+				return Ops.LT;
+			case Ops.GE:
+				return Ops.LE;
+			default:
+				return op;
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int compare(Comparable a, Comparable b, boolean numeric) {
+		return numeric ? a.compareTo(b) : Ops.compareText((String) a, (String) b);
+	}
+}
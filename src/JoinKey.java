@@ -0,0 +1,67 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A hash key over some positions of a row's values. The values are not
+ * copied, so keys of the two join inputs can be compared directly even though
+ * the common attributes sit at different positions on each side.
+ */
+@SuppressWarnings("rawtypes")
+public class JoinKey {
+	private final List<Comparable> values;
+	private final int[] positions;
+	private final int hash;
+
+	/**
+	 * @param values	the row's values
+	 * @param positions	positions of the key attributes
+	 */
+	public JoinKey(List<Comparable> values, int[] positions) {
+		this.values = values;
+		this.positions = positions;
+		int h = 1;
+		for (int p : positions) {
+			Comparable v = values.get(p);
+			h = 31 * h + ((v == null) ? 0 : v.hashCode());
+		}
+		this.hash = h;
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hash;
+	}
+
+	/**
+	 * Two keys are equal if their values are equal position by position
+	 * @param other reference to another key
+	 * @return true if equal, false otherwise
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof JoinKey)) {
+			return false;
+		}
+		JoinKey k = (JoinKey) other;
+		if (this.hash != k.hash || this.positions.length != k.positions.length) {
+			return false;
+		}
+		for (int i = 0; i < this.positions.length; i++) {
+			Comparable a = this.values.get(this.positions[i]);
+			Comparable b = k.values.get(k.positions[i]);
+			if (a == null ? b != null : !a.equals(b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		Object[] key = new Object[this.positions.length];
+		for (int i = 0; i < key.length; i++) {
+			key[i] = this.values.get(this.positions[i]);
+		}
+		return Arrays.toString(key);
+	}
+}
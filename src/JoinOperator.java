@@ -0,0 +1,157 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.Row;
+
+/**
+ * Nested-loop join of two pipeline stages. The right input is buffered once;
+ * the left input is then streamed and each of its rows is compared with every
+ * buffered row, so memory is bounded by the right input rather than by the
+ * size of the cartesian product. Matching pairs are emitted as a view over
+ * both rows without copying.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class JoinOperator extends Operator {
+	private final Operator left;
+	private final Operator right;
+	private final int[] left_keys;
+	private final int[] right_keys;
+	private final int[] right_rest;
+	private final List<Attribute> attributes;
+	private final int left_width;
+	private final int right_width;
+	private final JoinedRow joined = new JoinedRow();
+
+	private List<List<Comparable>> buffered;
+	private Row current;
+	private int next_right;
+
+	private JoinOperator(Operator left, Operator right, int[] left_keys, int[] right_keys,
+			int[] right_rest, List<Attribute> attributes) {
+		this.left = left;
+		this.right = right;
+		this.left_keys = left_keys;
+		this.right_keys = right_keys;
+		this.right_rest = right_rest;
+		this.attributes = attributes;
+		this.left_width = left.attributes().size();
+		this.right_width = right.attributes().size();
+	}
+
+	/**
+	 * Natural join: pairs agreeing on every common attribute, with the schema
+	 * naturalJoin produces (all left attributes, then the right's non-common ones)
+	 * @param left	first input
+	 * @param right	second input, which is buffered
+	 * @return the join stage
+	 */
+	public static JoinOperator natural(Operator left, Operator right) {
+		JoinSpec spec = new JoinSpec(left.attributes(), right.attributes());
+		return new JoinOperator(left, right, spec.leftKeys(), spec.rightKeys(),
+				spec.rightRest(), spec.outputAttributes());
+	}
+
+	/**
+	 * Cartesian product: every pair, with all left attributes then all right attributes
+	 * @param left	first input
+	 * @param right	second input, which is buffered
+	 * @return the product stage
+	 */
+	public static JoinOperator product(Operator left, Operator right) {
+		List<Attribute> list = new ArrayList<>();
+		for (Attribute a : left.attributes()) {
+			list.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+		}
+		List<Attribute> right_attributes = right.attributes();
+		int[] rest = new int[right_attributes.size()];
+		for (int j = 0; j < rest.length; j++) {
+			Attribute a = right_attributes.get(j);
+			list.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+			rest[j] = j;
+		}
+		return new JoinOperator(left, right, new int[0], new int[0], rest, list);
+	}
+
+	@Override
+	public List<Attribute> attributes() {
+		return this.attributes;
+	}
+
+	@Override
+	public void open() {
+		this.buffered = new ArrayList<>();
+		this.right.open();
+		try {
+			Row row;
+			while ((row = this.right.next()) != null) {
+				this.buffered.add(values(row, this.right_width));
+			}
+		} finally {
+			this.right.close();
+		}
+		this.left.open();
+		this.current = null;
+	}
+
+	@Override
+	public Row next() {
+		while (true) {
+			if (this.current == null) {
+				this.current = this.left.next();
+				if (this.current == null) {
+					return null;
+				}
+				this.next_right = 0;
+			}
+			while (this.next_right < this.buffered.size()) {
+				List<Comparable> other = this.buffered.get(this.next_right++);
+				if (this.matches(this.current, other)) {
+					this.joined.other = other;
+					return this.joined;
+				}
+			}
+			this.current = null;
+		}
+	}
+
+	@Override
+	public void close() {
+		this.left.close();
+		this.buffered = null;
+		this.current = null;
+	}
+
+	/**
+	 * Compares the common attributes of a pair; nulls equal each other
+	 */
+	private boolean matches(Row row, List<Comparable> other) {
+		for (int k = 0; k < this.left_keys.length; k++) {
+			Comparable x = row.get(this.left_keys[k]);
+			Comparable y = other.get(this.right_keys[k]);
+			if (x == null || y == null) {
+				if (x != y) {
+					return false;
+				}
+			}
+			else if (x.compareTo(y) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The current left row followed by the kept values of a buffered right row
+	 */
+	private class JoinedRow implements Row {
+		private List<Comparable> other;
+
+		@Override
+		public Comparable get(int pos) {
+			if (pos < JoinOperator.this.left_width) {
+				return JoinOperator.this.current.get(pos);
+			}
+			return this.other.get(JoinOperator.this.right_rest[pos - JoinOperator.this.left_width]);
+		}
+	}
+}
@@ -0,0 +1,378 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import exceptions.DBException;
+import solver.RowCursor;
+import storage.ColumnStore;
+import storage.HyperLogLog;
+
+/**
+ * The order in which to join several relations by natural joins, as a tree of
+ * joins. The tree is chosen by dynamic programming over the subsets of the
+ * relations, as in System R: the best tree for a set of relations is the
+ * cheapest join of the best trees of two parts of it, so bushy trees are
+ * considered along with left-deep ones. Parts that share no attribute are
+ * only joined if every split of the set needs a product.
+ * <p>
+ * The size of a join is estimated from the sizes of the relations and the
+ * distinct counts of the attributes they share: each attribute common to k
+ * relations of a set divides the product of their sizes by its k - 1 largest
+ * distinct counts, which does not depend on the order of the joins. Distinct
+ * counts come from a relation's statistics if it has any (see Statistics),
+ * else from a HyperLogLog sketch of the attribute. Each join costs what
+ * JoinPlan estimates for a hash join of its inputs, or for a product if they
+ * share nothing, so the order that keeps the intermediate results small wins.
+ * Up to DP_LIMIT relations are ordered exhaustively; more are ordered
+ * greedily, by repeatedly joining the two parts whose join is smallest.
+ */
+public class JoinOrder {
+	/** the most relations ordered by dynamic programming */
+	static final int DP_LIMIT = 10;
+
+	private final Relation relation;
+	private final String name;
+	private final JoinOrder left;
+	private final JoinOrder right;
+	private final double rows;
+	private final double cost;
+
+	private JoinOrder(Relation relation, String name, double rows) {
+		this.relation = relation;
+		this.name = name;
+		this.left = null;
+		this.right = null;
+		this.rows = rows;
+		this.cost = 0;
+	}
+
+	private JoinOrder(JoinOrder left, JoinOrder right, double rows, double cost) {
+		this.relation = null;
+		this.name = null;
+		this.left = left;
+		this.right = right;
+		this.rows = rows;
+		this.cost = cost;
+	}
+
+	/**
+	 * Chooses the order to join relations in
+	 * @param relations	the relations
+	 * @return the tree of joins with the least estimated cost
+	 * @throws DBException if there are no relations, or more than 63
+	 */
+	public static JoinOrder plan(Relation... relations) {
+		if (relations.length == 0 || relations.length > Long.SIZE - 1) {
+			throw new DBException("A join needs between 1 and " + (Long.SIZE - 1) + " relations");
+		}
+		return new Estimates(relations).best();
+	}
+
+	/**
+	 * @return true if this is a single relation rather than a join
+	 */
+	public boolean isLeaf() {
+		return this.relation != null;
+	}
+
+	/**
+	 * @return the relation of a leaf, or null for a join
+	 */
+	public Relation getRelation() {
+		return this.relation;
+	}
+
+	/**
+	 * @return the first input of a join, or null for a leaf
+	 */
+	public JoinOrder getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * @return the second input of a join, or null for a leaf
+	 */
+	public JoinOrder getRight() {
+		return this.right;
+	}
+
+	/**
+	 * @return the estimated number of tuples of this tree's result
+	 */
+	public double getEstimatedRows() {
+		return this.rows;
+	}
+
+	/**
+	 * @return the estimated cost of the joins of this tree, in the units of JoinPlan
+	 */
+	public double getCost() {
+		return this.cost;
+	}
+
+	/**
+	 * @return the tree, with the joins parenthesized, and its estimates
+	 */
+	@Override
+	public String toString() {
+		return this.tree() + String.format("\n  estimated output: %d, estimated cost (ms): %.3f",
+				Math.round(this.rows), this.cost / 1e6);
+	}
+
+	private String tree() {
+		if (this.isLeaf()) {
+			return this.name;
+		}
+		return "(" + this.left.tree() + " JOIN " + this.right.tree() + ")";
+	}
+
+	/**
+	 * The sizes of a set of relations and the distinct counts of their common attributes
+	 */
+	@SuppressWarnings("rawtypes")
+	private static class Estimates {
+		private final Relation[] relations;
+		private final double[] rows;
+		private final double[][] distinct;	/* [relation][common attribute], or 0 if it lacks it */
+
+		Estimates(Relation[] relations) {
+			this.relations = relations;
+			int n = relations.length;
+			this.rows = new double[n];
+			List<Attribute> common = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				this.rows[i] = relations[i].size();
+				for (Attribute a : relations[i].getAttributes()) {
+					if (!common.contains(a) && this.count(a) > 1) {
+						common.add(a);
+					}
+				}
+			}
+			this.distinct = new double[n][common.size()];
+			for (int i = 0; i < n; i++) {
+				int[] positions = new int[common.size()];
+				for (int c = 0; c < positions.length; c++) {
+					positions[c] = relations[i].getAttributes().indexOf(common.get(c));
+				}
+				Statistics stats = relations[i].getStatistics();
+				double[] d = (stats != null) ? null : sketch(relations[i], positions);
+				for (int c = 0; c < positions.length; c++) {
+					if (positions[c] >= 0) {
+						double estimate = (stats != null) ? stats.getColumn(positions[c]).getDistinct() : d[c];
+						this.distinct[i][c] = Math.max(1, Math.min(estimate, this.rows[i]));
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the number of the relations that have an attribute
+		 */
+		private int count(Attribute a) {
+			int k = 0;
+			for (Relation r : this.relations) {
+				k += r.getAttributes().contains(a) ? 1 : 0;
+			}
+			return k;
+		}
+
+		/**
+		 * @return the estimated size of the join of the relations in a set
+		 */
+		double rows(long set) {
+			double rows = 1;
+			for (int i = 0; i < this.relations.length; i++) {
+				if ((set & (1L << i)) != 0) {
+					rows *= this.rows[i];
+				}
+			}
+			for (int c = 0; c < this.distinct[0].length; c++) {
+				// divide by all distinct counts of the attribute but the least
+				double least = Double.POSITIVE_INFINITY;
+				for (int i = 0; i < this.relations.length; i++) {
+					double d = this.distinct[i][c];
+					if ((set & (1L << i)) != 0 && d > 0) {
+						rows /= d;
+						least = Math.min(least, d);
+					}
+				}
+				if (least != Double.POSITIVE_INFINITY) {
+					rows *= least;
+				}
+			}
+			return rows;
+		}
+
+		/**
+		 * @return true if a relation of one set shares an attribute with one of another
+		 */
+		boolean connected(long a, long b) {
+			for (int c = 0; c < this.distinct[0].length; c++) {
+				boolean in_a = false;
+				boolean in_b = false;
+				for (int i = 0; i < this.relations.length; i++) {
+					if (this.distinct[i][c] > 0) {
+						in_a |= (a & (1L << i)) != 0;
+						in_b |= (b & (1L << i)) != 0;
+					}
+				}
+				if (in_a && in_b) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * @param left		a tree
+		 * @param right		another tree
+		 * @param connected	true if they share an attribute
+		 * @param out		the estimated size of their join
+		 * @return the tree joining them, with its cost
+		 */
+		JoinOrder join(JoinOrder left, JoinOrder right, boolean connected, double out) {
+			double n1 = left.rows;
+			double n2 = right.rows;
+			double cost = connected
+					? JoinPlan.BUILD * Math.min(n1, n2) + JoinPlan.PROBE * Math.max(n1, n2)
+					: JoinPlan.PAIR * n1 * n2;
+			cost += JoinPlan.OUTPUT * out + left.cost + right.cost;
+			return new JoinOrder(left, right, out, cost);
+		}
+
+		JoinOrder leaf(int i) {
+			String name = this.relations[i].getName();
+			return new JoinOrder(this.relations[i], (name != null) ? name : "r" + (i + 1), this.rows[i]);
+		}
+
+		JoinOrder best() {
+			int n = this.relations.length;
+			return (n <= DP_LIMIT) ? this.exhaustive() : this.greedy();
+		}
+
+		/**
+		 * @return the cheapest tree, found by dynamic programming over the subsets
+		 */
+		private JoinOrder exhaustive() {
+			int n = this.relations.length;
+			JoinOrder[] best = new JoinOrder[1 << n];
+			for (int i = 0; i < n; i++) {
+				best[1 << i] = this.leaf(i);
+			}
+			for (int set = 1; set < best.length; set++) {
+				if (Integer.bitCount(set) < 2) {
+					continue;
+				}
+				int lowest = set & -set;
+				double out = this.rows(set);
+				// first without products, then with them if there is no other way
+				for (int pass = 0; pass < 2 && best[set] == null; pass++) {
+					// each split once: the first part has the lowest relation of the set
+					for (int part = (set - 1) & set; part > 0; part = (part - 1) & set) {
+						int rest = set ^ part;
+						if ((part & lowest) == 0) {
+							continue;
+						}
+						boolean connected = this.connected(part, rest);
+						if (pass == 0 && !connected) {
+							continue;
+						}
+						JoinOrder tree = this.join(best[part], best[rest], connected, out);
+						if (best[set] == null || tree.cost < best[set].cost) {
+							best[set] = tree;
+						}
+					}
+				}
+			}
+			return best[best.length - 1];
+		}
+
+		/**
+		 * @return a tree built by joining the two parts with the smallest join until one is left
+		 */
+		private JoinOrder greedy() {
+			List<JoinOrder> trees = new ArrayList<>();
+			List<Long> sets = new ArrayList<>();
+			for (int i = 0; i < this.relations.length; i++) {
+				trees.add(this.leaf(i));
+				sets.add(1L << i);
+			}
+			while (trees.size() > 1) {
+				int best_i = -1;
+				int best_j = -1;
+				double best_rows = 0;
+				boolean best_connected = false;
+				for (int i = 0; i < trees.size(); i++) {
+					for (int j = i + 1; j < trees.size(); j++) {
+						boolean connected = this.connected(sets.get(i), sets.get(j));
+						double rows = this.rows(sets.get(i) | sets.get(j));
+						if (best_i < 0 || (connected && !best_connected)
+								|| (connected == best_connected && rows < best_rows)) {
+							best_i = i;
+							best_j = j;
+							best_rows = rows;
+							best_connected = connected;
+						}
+					}
+				}
+				JoinOrder tree = this.join(trees.get(best_i), trees.get(best_j), best_connected, best_rows);
+				long set = sets.get(best_i) | sets.get(best_j);
+				trees.remove(best_j);
+				sets.remove(best_j);
+				trees.set(best_i, tree);
+				sets.set(best_i, set);
+			}
+			return trees.get(0);
+		}
+
+		/**
+		 * Estimates the number of distinct values of some attributes in one pass,
+		 * with a HyperLogLog sketch each. Columns are read directly in COLUMNAR
+		 * storage, TEXT ones by their dictionary codes.
+		 * @param r			a relation
+		 * @param positions	positions of the attributes; those that are -1 are skipped
+		 * @return the estimates, aligned with positions
+		 */
+		private static double[] sketch(Relation r, int[] positions) {
+			HyperLogLog[] sketches = new HyperLogLog[positions.length];
+			for (int c = 0; c < positions.length; c++) {
+				sketches[c] = (positions[c] >= 0) ? new HyperLogLog() : null;
+			}
+			ColumnStore store = r.getColumns();
+			if (store != null) {
+				for (int c = 0; c < positions.length; c++) {
+					if (positions[c] < 0) {
+						continue;
+					}
+					if (store.isNumeric(positions[c])) {
+						double[] numbers = store.numbers(positions[c]);
+						for (int i = 0; i < store.size(); i++) {
+							sketches[c].add(numbers[i]);
+						}
+					}
+					else {
+						int[] codes = store.codes(positions[c]);
+						for (int i = 0; i < store.size(); i++) {
+							sketches[c].addKey(codes[i]);
+						}
+					}
+				}
+			}
+			else {
+				RowCursor row = r.cursor();
+				while (row.next()) {
+					for (int c = 0; c < positions.length; c++) {
+						if (positions[c] >= 0) {
+							Comparable v = row.get(positions[c]);
+							sketches[c].addKey((v == null) ? 0 : v.hashCode());
+						}
+					}
+				}
+			}
+			double[] estimates = new double[positions.length];
+			for (int c = 0; c < positions.length; c++) {
+				estimates[c] = (sketches[c] != null) ? sketches[c].estimate() : 0;
+			}
+			return estimates;
+		}
+	}
+}
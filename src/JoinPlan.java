@@ -0,0 +1,216 @@
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import solver.RowCursor;
+import storage.HyperLogLog;
+
+/**
+ * The algorithm chosen for a natural join, with the estimates behind the
+ * choice. The cost of each algorithm is estimated from the sizes of the
+ * inputs, the number of distinct keys on each side and the hash indexes
+ * available, in rough nanoseconds of work:
+ * <pre>
+ *   PRODUCT            PAIR * n1 * n2                           + OUTPUT * out
+ *   SORT_MERGE         SORT * (n1 log n1 + n2 log n2) + MERGE * (n1 + n2) + OUTPUT * out
+ *   HASH               BUILD * min(n1, n2) + PROBE * max(n1, n2) + OUTPUT * out
+ *   INDEX_NESTED_LOOP  LOOKUP * (rows of the side without the index) + OUTPUT * out
+ * </pre>
+ * where out = n1 * n2 / max(d1, d2) is the usual estimate of the join size
+ * from the distinct key counts d1 and d2. All but the product read their
+ * inputs as tuples, which costs MATERIALIZE per tuple of a COLUMNAR input
+ * (for the indexed side of an index join, per match). A hash index on the common
+ * attributes gives its side's distinct count exactly; otherwise it comes from
+ * the relation's statistics (see Statistics) if it has any, else it is
+ * estimated with a HyperLogLog sketch over the keys. Relations without
+ * common attributes can only be joined as a product.
+ */
+@SuppressWarnings("rawtypes")
+public class JoinPlan {
+	/** estimated cost of comparing one pair of tuples in a product */
+	static final double PAIR = 50;
+	/** estimated cost per comparison of sorting */
+	static final double SORT = 35;
+	/** estimated cost per tuple of merging sorted inputs */
+	static final double MERGE = 50;
+	/** estimated cost per tuple of building a hash table */
+	static final double BUILD = 300;
+	/** estimated cost per tuple of probing a hash table */
+	static final double PROBE = 250;
+	/** estimated cost per tuple of looking its key up in a hash index */
+	static final double LOOKUP = 200;
+	/** estimated cost per output tuple */
+	static final double OUTPUT = 200;
+	/** estimated cost of building a tuple from a row of a column store */
+	static final double MATERIALIZE = 600;
+
+	private final String left_name;
+	private final String right_name;
+	private final int left_rows;
+	private final int right_rows;
+	private final double left_distinct;
+	private final double right_distinct;
+	private final double rows;
+	private final HashIndex index;
+	private final boolean index_left;
+	private final Map<JoinStrategy, Double> costs = new EnumMap<>(JoinStrategy.class);
+	private final JoinStrategy strategy;
+
+	private JoinPlan(Relation r1, Relation r2, JoinStrategy requested) {
+		this.left_name = (r1.getName() != null) ? r1.getName() : "r1";
+		this.right_name = (r2.getName() != null) ? r2.getName() : "r2";
+		this.left_rows = r1.size();
+		this.right_rows = r2.size();
+		JoinSpec spec = new JoinSpec(r1, r2);
+		double n1 = this.left_rows;
+		double n2 = this.right_rows;
+
+		if (!spec.hasCommon()) {
+			this.left_distinct = 1;
+			this.right_distinct = 1;
+			this.rows = n1 * n2;
+			this.index = null;
+			this.index_left = false;
+			this.costs.put(JoinStrategy.PRODUCT, PAIR * n1 * n2 + OUTPUT * this.rows);
+			this.strategy = JoinStrategy.PRODUCT;
+			return;
+		}
+
+		HashIndex left = IndexJoin.find(r1, spec.leftKeys());
+		HashIndex right = IndexJoin.find(r2, spec.rightKeys());
+		this.left_distinct = (left != null) ? left.distinctKeys() : distinct(r1, spec.leftKeys());
+		this.right_distinct = (right != null) ? right.distinctKeys() : distinct(r2, spec.rightKeys());
+		this.rows = n1 * n2 / Math.max(1, Math.max(this.left_distinct, this.right_distinct));
+		// the same choice of side IndexJoin makes
+		this.index_left = (left != null) && (right == null || this.left_rows >= this.right_rows);
+		this.index = this.index_left ? left : right;
+
+		double output = OUTPUT * this.rows;
+		double m1 = (r1.getStorage() == Relation.Storage.COLUMNAR) ? MATERIALIZE : 0;
+		double m2 = (r2.getStorage() == Relation.Storage.COLUMNAR) ? MATERIALIZE : 0;
+		double tuples = m1 * n1 + m2 * n2;
+		this.costs.put(JoinStrategy.PRODUCT, PAIR * n1 * n2 + output);
+		this.costs.put(JoinStrategy.SORT_MERGE, SORT * (n1 * log2(n1) + n2 * log2(n2)) + MERGE * (n1 + n2)
+				+ tuples + output);
+		this.costs.put(JoinStrategy.HASH, BUILD * Math.min(n1, n2) + PROBE * Math.max(n1, n2) + tuples + output);
+		if (this.index != null) {
+			double probe = this.index_left ? (LOOKUP + m2) * n2 : (LOOKUP + m1) * n1;
+			this.costs.put(JoinStrategy.INDEX_NESTED_LOOP, probe + (this.index_left ? m1 : m2) * this.rows + output);
+		}
+
+		switch (requested) {
+			case COST_BASED:
+				JoinStrategy best = null;
+				for (Map.Entry<JoinStrategy, Double> e : this.costs.entrySet()) {
+					if (best == null || e.getValue() < this.costs.get(best)) {
+						best = e.getKey();
+					}
+				}
+				this.strategy = best;
+				break;
+			case PRODUCT:
+				this.strategy = JoinStrategy.PRODUCT;
+				break;
+			case SORT_MERGE:
+				this.strategy = (this.index != null) ? JoinStrategy.INDEX_NESTED_LOOP : JoinStrategy.SORT_MERGE;
+				break;
+			default:
+				this.strategy = (this.index != null) ? JoinStrategy.INDEX_NESTED_LOOP : JoinStrategy.HASH;
+				break;
+		}
+	}
+
+	/**
+	 * Plans a natural join
+	 * @param r1		first relation
+	 * @param r2		second relation
+	 * @param requested	the strategy set on the database; COST_BASED picks the
+	 * 					cheapest algorithm, and any other is followed as naturalJoin
+	 * 					follows it
+	 * @return the plan
+	 */
+	public static JoinPlan plan(Relation r1, Relation r2, JoinStrategy requested) {
+		return new JoinPlan(r1, r2, requested);
+	}
+
+	/**
+	 * @return the algorithm the join runs
+	 */
+	public JoinStrategy getStrategy() {
+		return this.strategy;
+	}
+
+	/**
+	 * @param strategy	an algorithm
+	 * @return its estimated cost, or NaN if it cannot run this join
+	 */
+	public double getCost(JoinStrategy strategy) {
+		Double cost = this.costs.get(strategy);
+		return (cost == null) ? Double.NaN : cost;
+	}
+
+	/**
+	 * @return the estimated number of joined tuples
+	 */
+	public double getEstimatedRows() {
+		return this.rows;
+	}
+
+	/**
+	 * @return the hash index an index nested-loop join would probe, or null if there is none
+	 */
+	public HashIndex getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return a description of the plan, in the style of EXPLAIN
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.left_name).append(" JOIN ").append(this.right_name).append(": ").append(this.strategy);
+		if (this.strategy == JoinStrategy.INDEX_NESTED_LOOP) {
+			sb.append(" (probe ").append(this.index_left ? this.right_name : this.left_name)
+				.append(" into the index on ").append(this.index_left ? this.left_name : this.right_name)
+				.append(Arrays.toString(this.index.getAttributes())).append(")");
+		}
+		else if (this.strategy == JoinStrategy.HASH) {
+			sb.append(" (build ").append(this.left_rows <= this.right_rows ? this.left_name : this.right_name).append(")");
+		}
+		sb.append("\n  rows: ").append(this.left_rows).append(" x ").append(this.right_rows)
+			.append(", distinct keys: ").append(Math.round(this.left_distinct))
+			.append(" x ").append(Math.round(this.right_distinct))
+			.append(", estimated output: ").append(Math.round(this.rows));
+		sb.append("\n  estimated cost (ms):");
+		for (Map.Entry<JoinStrategy, Double> e : this.costs.entrySet()) {
+			sb.append(String.format(" %s %.3f", e.getKey(), e.getValue() / 1e6));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return an estimate of the number of distinct keys of a relation
+	 */
+	private static double distinct(Relation r, int[] keys) {
+		Statistics stats = r.getStatistics();
+		if (stats != null) {
+			return stats.distinct(keys);
+		}
+		HyperLogLog sketch = new HyperLogLog();
+		RowCursor row = r.cursor();
+		while (row.next()) {
+			long key = 1;
+			for (int p : keys) {
+				Comparable v = row.get(p);
+				key = key * 0x9E3779B97F4A7C15L + ((v == null) ? 0 : v.hashCode());
+			}
+			sketch.addKey(key);
+		}
+		return Math.min(sketch.estimate(), r.size());
+	}
+
+	private static double log2(double n) {
+		return (n > 1) ? Math.log(n) / Math.log(2) : 0;
+	}
+}
@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Describes a natural join between two relations: the positions of the common
+ * attributes on each side, and the output schema r1.a1, ..., followed by the
+ * attributes of r2 that are not in r1 (the schema naturalJoin produces).
+ * An equi-join on given pairs of attributes can be described too, in which
+ * case the output keeps all the attributes of both relations.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class JoinSpec {
+	private final List<Attribute> left;
+	private final List<Attribute> right;
+	private final int[] left_keys;
+	private final int[] right_keys;
+	private final int[] right_rest;
+
+	/**
+	 * Determines the common attributes of two relations
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 */
+	public JoinSpec(Relation r1, Relation r2) {
+		this(r1.getAttributes(), r2.getAttributes());
+	}
+
+	/**
+	 * Determines the common attributes of two schemas
+	 * @param left	attributes of the first input
+	 * @param right	attributes of the second input
+	 */
+	public JoinSpec(List<Attribute> left, List<Attribute> right) {
+		this.left = left;
+		this.right = right;
+
+		// common attributes, in r1's order
+		List<Integer> lk = new ArrayList<>();
+		List<Integer> rk = new ArrayList<>();
+		for (int i = 0; i < left.size(); i++) {
+			int j = right.indexOf(left.get(i));
+			if (j >= 0) {
+				lk.add(i);
+				rk.add(j);
+			}
+		}
+		this.left_keys = toArray(lk);
+		this.right_keys = toArray(rk);
+
+		// attributes of r2 that the output keeps
+		List<Attribute> kept = new ArrayList<>(left);
+		List<Integer> rest = new ArrayList<>();
+		for (int j = 0; j < right.size(); j++) {
+			if (!kept.contains(right.get(j))) {
+				kept.add(right.get(j));
+				rest.add(j);
+			}
+		}
+		this.right_rest = toArray(rest);
+	}
+
+	/**
+	 * Describes an equi-join on the given pairs of attributes. Unlike a natural
+	 * join, the output keeps every attribute of both inputs: all of the first,
+	 * then all of the second.
+	 * @param left			attributes of the first input
+	 * @param right			attributes of the second input
+	 * @param left_keys		positions of the join attributes in the first input
+	 * @param right_keys	positions of the attributes they must equal in the second, aligned with left_keys
+	 */
+	public JoinSpec(List<Attribute> left, List<Attribute> right, int[] left_keys, int[] right_keys) {
+		this.left = left;
+		this.right = right;
+		this.left_keys = left_keys.clone();
+		this.right_keys = right_keys.clone();
+		this.right_rest = new int[right.size()];
+		for (int j = 0; j < this.right_rest.length; j++) {
+			this.right_rest[j] = j;
+		}
+	}
+
+	/**
+	 * @return true if the relations share at least one attribute
+	 */
+	public boolean hasCommon() {
+		return this.left_keys.length > 0;
+	}
+
+	/**
+	 * @return positions of the common attributes in r1
+	 */
+	public int[] leftKeys() {
+		return this.left_keys;
+	}
+
+	/**
+	 * @return positions of the common attributes in r2, aligned with leftKeys()
+	 */
+	public int[] rightKeys() {
+		return this.right_keys;
+	}
+
+	/**
+	 * @return positions of the attributes of r2 that the output keeps, in output order
+	 */
+	public int[] rightRest() {
+		return this.right_rest;
+	}
+
+	/**
+	 * @return a fresh copy of the output attributes: all of r1, then r2's non-common ones
+	 */
+	public List<Attribute> outputAttributes() {
+		List<Attribute> list = new ArrayList<>();
+		for (Attribute a : this.left) {
+			list.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+		}
+		for (int j : this.right_rest) {
+			Attribute a = this.right.get(j);
+			list.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+		}
+		return list;
+	}
+
+	/**
+	 * Builds an output row from a matching pair
+	 * @param left	values of an r1 tuple
+	 * @param right	values of an r2 tuple
+	 * @return the values of r1 followed by the non-common values of r2
+	 */
+	public List<Comparable> combine(List<Comparable> left, List<Comparable> right) {
+		List<Comparable> values = new ArrayList<>(left.size() + this.right_rest.length);
+		values.addAll(left);
+		for (int j : this.right_rest) {
+			values.add(right.get(j));
+		}
+		return values;
+	}
+
+	/**
+	 * Compares the join keys of two rows. Nulls order first and equal each other.
+	 * @param a		values of one row
+	 * @param a_keys	key positions in a
+	 * @param b		values of another row
+	 * @param b_keys	key positions in b
+	 * @return negative, zero or positive as a's key is less than, equal to or greater than b's
+	 */
+	public static int compareKeys(List<Comparable> a, int[] a_keys, List<Comparable> b, int[] b_keys) {
+		for (int k = 0; k < a_keys.length; k++) {
+			Comparable x = a.get(a_keys[k]);
+			Comparable y = b.get(b_keys[k]);
+			int c;
+			if (x == null || y == null) {
+				c = (x == null) ? ((y == null) ? 0 : -1) : 1;
+			}
+			else {
+				c = x.compareTo(y);
+			}
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] out = new int[list.size()];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = list.get(i);
+		}
+		return out;
+	}
+}
@@ -0,0 +1,15 @@
+/**
+ * Algorithms available behind naturalJoin
+ */
+public enum JoinStrategy {
+	/** filter the cartesian product on the common attributes */
+	PRODUCT,
+	/** sort both inputs on the common attributes and merge */
+	SORT_MERGE,
+	/** build a hash table on the smaller input and probe it with the other */
+	HASH,
+	/** probe a hash index one input has on the common attributes with the other */
+	INDEX_NESTED_LOOP,
+	/** pick the algorithm with the lowest estimated cost for each join; see JoinPlan */
+	COST_BASED
+}
@@ -0,0 +1,621 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import exceptions.DBException;
+import solver.Condition;
+import solver.Node;
+
+/**
+ * A query as a tree of relational operators, built by SQLParser (or by hand)
+ * and run by DavidDB.execute(). Each node knows its output attributes as soon
+ * as it is built, so attribute names and conditions are checked against the
+ * schema before any data is read. Running a node runs its inputs and then the
+ * DavidDB operation that implements it; since the whole tree is known first,
+ * it can be rewritten before it runs.
+ *
+ * Results are relations, i.e. sets, so every query behaves as SELECT DISTINCT.
+ * toString() describes the tree in the style of EXPLAIN.
+ */
+public abstract class LogicalPlan {
+	private final List<Attribute> attributes;
+
+	/**
+	 * @param attributes	the output attributes, in order
+	 */
+	protected LogicalPlan(List<Attribute> attributes) {
+		this.attributes = Collections.unmodifiableList(attributes);
+	}
+
+	/**
+	 * @return the output attributes, in order
+	 */
+	public List<Attribute> attributes() {
+		return this.attributes;
+	}
+
+	/**
+	 * @return an empty relation with the output attributes, for resolving
+	 * 			attribute names against this node's output
+	 */
+	public Relation schema() {
+		Relation schema = new Relation();
+		schema.setAttributes(new ArrayList<>(this.attributes));
+		return schema;
+	}
+
+	/**
+	 * @return the inputs of this node, in order
+	 */
+	public abstract List<LogicalPlan> inputs();
+
+	/**
+	 * Runs this node and its inputs
+	 * @param db	the database whose operations run the plan
+	 * @return the result
+	 * @throws DBException if an operation fails
+	 */
+	public abstract Relation execute(DavidDB db);
+
+	/**
+	 * @return a one-line description of this node alone
+	 */
+	protected abstract String describe();
+
+	/**
+	 * @return the tree rooted at this node, one node per line, inputs indented
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		this.explain(sb, "");
+		return sb.toString();
+	}
+
+	private void explain(StringBuilder sb, String indent) {
+		sb.append(indent).append(this.describe()).append("\n");
+		for (LogicalPlan input : this.inputs()) {
+			input.explain(sb, indent + "  ");
+		}
+	}
+
+	/**
+	 * @return fresh copies of the given attributes, still belonging to their relations
+	 */
+	private static List<Attribute> copy(List<Attribute> list) {
+		List<Attribute> out = new ArrayList<>();
+		for (Attribute a : list) {
+			out.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+		}
+		return out;
+	}
+
+	/**
+	 * Reads a stored relation
+	 */
+	public static class Scan extends LogicalPlan {
+		private final Relation relation;
+
+		/**
+		 * @param relation	a relation of the database
+		 */
+		public Scan(Relation relation) {
+			super(relation.getAttributes());
+			this.relation = relation;
+		}
+
+		/**
+		 * @return the relation read
+		 */
+		public Relation getRelation() {
+			return this.relation;
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			return this.relation;
+		}
+
+		@Override
+		protected String describe() {
+			return "Scan " + this.relation.getName();
+		}
+	}
+
+	/**
+	 * Keeps the rows of its input that satisfy a condition (WHERE)
+	 */
+	public static class Filter extends LogicalPlan {
+		private final LogicalPlan input;
+		private final Node condition;
+
+		/**
+		 * @param input		the rows to filter
+		 * @param condition	an unbound condition over the input's attributes
+		 * @throws DBException if the condition is invalid for the input
+		 */
+		public Filter(LogicalPlan input, Node condition) {
+			super(input.attributes());
+			Condition.bind(condition, input.schema());
+			this.input = input;
+			this.condition = condition;
+		}
+
+		/**
+		 * @return the input
+		 */
+		public LogicalPlan getInput() {
+			return this.input;
+		}
+
+		/**
+		 * @return the unbound condition
+		 */
+		public Node getCondition() {
+			return this.condition;
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Collections.singletonList(this.input);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			return db.select(this.input.execute(db), this.condition);
+		}
+
+		@Override
+		protected String describe() {
+			return "Filter " + this.condition;
+		}
+	}
+
+	/**
+	 * Natural join of two inputs (NATURAL JOIN), with the schema naturalJoin produces
+	 */
+	public static class NaturalJoin extends LogicalPlan {
+		private final LogicalPlan left;
+		private final LogicalPlan right;
+
+		/**
+		 * @param left	first input
+		 * @param right	second input
+		 */
+		public NaturalJoin(LogicalPlan left, LogicalPlan right) {
+			super(new JoinSpec(left.attributes(), right.attributes()).outputAttributes());
+			this.left = left;
+			this.right = right;
+		}
+
+		/**
+		 * @return the first input
+		 */
+		public LogicalPlan getLeft() {
+			return this.left;
+		}
+
+		/**
+		 * @return the second input
+		 */
+		public LogicalPlan getRight() {
+			return this.right;
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Arrays.asList(this.left, this.right);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			return db.naturalJoin(this.left.execute(db), this.right.execute(db));
+		}
+
+		@Override
+		protected String describe() {
+			return "NaturalJoin";
+		}
+	}
+
+	/**
+	 * Natural join of several inputs, with the schema joining them one after
+	 * another from left to right produces. The joins run in the order with the
+	 * least estimated cost for the inputs' actual sizes (see JoinOrder).
+	 * Optimizer.optimize() builds it from chains of NaturalJoin.
+	 */
+	public static class MultiJoin extends LogicalPlan {
+		private final List<LogicalPlan> inputs;
+
+		/**
+		 * @param inputs	the inputs, at least two
+		 * @throws DBException if there are fewer than two inputs
+		 */
+		public MultiJoin(List<LogicalPlan> inputs) {
+			super(chain(inputs));
+			this.inputs = Collections.unmodifiableList(new ArrayList<>(inputs));
+		}
+
+		private static List<Attribute> chain(List<LogicalPlan> inputs) {
+			if (inputs.size() < 2) {
+				throw new DBException("A join needs at least two inputs");
+			}
+			List<Attribute> attributes = inputs.get(0).attributes();
+			for (int i = 1; i < inputs.size(); i++) {
+				attributes = new JoinSpec(attributes, inputs.get(i).attributes()).outputAttributes();
+			}
+			return attributes;
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return this.inputs;
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			Relation[] relations = new Relation[this.inputs.size()];
+			for (int i = 0; i < relations.length; i++) {
+				relations[i] = this.inputs.get(i).execute(db);
+			}
+			return db.naturalJoin(relations);
+		}
+
+		@Override
+		protected String describe() {
+			return "MultiJoin";
+		}
+	}
+
+	/**
+	 * Join of two inputs on a condition (JOIN ... ON), or their cartesian
+	 * product if there is none (CROSS JOIN, or a comma in FROM). The output
+	 * keeps every attribute of both inputs.
+	 */
+	public static class Join extends LogicalPlan {
+		private final LogicalPlan left;
+		private final LogicalPlan right;
+		private final Node condition;
+
+		/**
+		 * @param left		first input
+		 * @param right		second input
+		 * @param condition	an unbound condition over the attributes of both, or null for a product
+		 * @throws DBException if the condition is invalid for the joined attributes
+		 */
+		public Join(LogicalPlan left, LogicalPlan right, Node condition) {
+			super(product(left, right));
+			this.left = left;
+			this.right = right;
+			this.condition = condition;
+			if (condition != null) {
+				Condition.bind(condition, this.schema());
+			}
+		}
+
+		private static List<Attribute> product(LogicalPlan left, LogicalPlan right) {
+			List<Attribute> list = copy(left.attributes());
+			list.addAll(copy(right.attributes()));
+			return list;
+		}
+
+		/**
+		 * @return the first input
+		 */
+		public LogicalPlan getLeft() {
+			return this.left;
+		}
+
+		/**
+		 * @return the second input
+		 */
+		public LogicalPlan getRight() {
+			return this.right;
+		}
+
+		/**
+		 * @return the unbound join condition, or null for a product
+		 */
+		public Node getCondition() {
+			return this.condition;
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Arrays.asList(this.left, this.right);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			Relation l = this.left.execute(db);
+			Relation r = this.right.execute(db);
+			return (this.condition == null) ? db.times(l, r) : db.join(l, r, this.condition);
+		}
+
+		@Override
+		protected String describe() {
+			return (this.condition == null) ? "Product" : "Join " + this.condition;
+		}
+	}
+
+	/**
+	 * Aggregates its input, possibly over groups (GROUP BY). The output is the
+	 * grouping attributes, then one attribute per function named FN(attr), as
+	 * aggregate() produces.
+	 */
+	public static class Aggregate extends LogicalPlan {
+		private final LogicalPlan input;
+		private final Agg[] functions;
+		private final String[] attrs;
+		private final String[] groups;
+
+		/**
+		 * @param input		the rows to aggregate
+		 * @param functions	the aggregation functions
+		 * @param attrs		for each function, the plain name of the attribute it applies to
+		 * @param groups	names of the grouping attributes; empty for a single group
+		 * @throws DBException if an attribute is unknown or ambiguous, or a function
+		 * 			cannot be applied to its attribute
+		 */
+		public Aggregate(LogicalPlan input, Agg[] functions, String[] attrs, String[] groups) {
+			super(new AggregateSpec(input.schema(), functions, attrs, groups).attributes());
+			if (functions.length == 0) {
+				throw new DBException("Must have agregation functions");
+			}
+			this.input = input;
+			this.functions = functions.clone();
+			this.attrs = attrs.clone();
+			this.groups = groups.clone();
+		}
+
+		/**
+		 * @return the input
+		 */
+		public LogicalPlan getInput() {
+			return this.input;
+		}
+
+		/**
+		 * @return the aggregation functions
+		 */
+		public Agg[] getFunctions() {
+			return this.functions.clone();
+		}
+
+		/**
+		 * @return for each function, the attribute it applies to
+		 */
+		public String[] getAttrs() {
+			return this.attrs.clone();
+		}
+
+		/**
+		 * @return names of the grouping attributes
+		 */
+		public String[] getGroups() {
+			return this.groups.clone();
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Collections.singletonList(this.input);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			return db.aggregate(this.input.execute(db), this.functions, this.attrs,
+					(this.groups.length == 0) ? null : this.groups);
+		}
+
+		@Override
+		protected String describe() {
+			List<String> fns = new ArrayList<>();
+			for (int i = 0; i < this.functions.length; i++) {
+				fns.add(this.functions[i].name() + "(" + this.attrs[i] + ")");
+			}
+			return "Aggregate " + fns + ((this.groups.length == 0) ? "" : " by " + Arrays.toString(this.groups));
+		}
+	}
+
+	/**
+	 * Orders its input (ORDER BY); see DavidDB.orderBy()
+	 */
+	public static class Sort extends LogicalPlan {
+		private final LogicalPlan input;
+		private final String[] keys;
+		private final boolean[] descending;
+
+		/**
+		 * @param input			the rows to order
+		 * @param keys			names of the attributes to order by, most significant first
+		 * @param descending	for each key, true to order it from largest to smallest
+		 * @throws DBException if a key is unknown or ambiguous
+		 */
+		public Sort(LogicalPlan input, String[] keys, boolean[] descending) {
+			super(input.attributes());
+			Relation schema = input.schema();
+			for (String key : keys) {
+				schema.lookup(key);
+			}
+			this.input = input;
+			this.keys = keys.clone();
+			this.descending = descending.clone();
+		}
+
+		/**
+		 * @return the input
+		 */
+		public LogicalPlan getInput() {
+			return this.input;
+		}
+
+		/**
+		 * @return names of the attributes ordered by
+		 */
+		public String[] getKeys() {
+			return this.keys.clone();
+		}
+
+		/**
+		 * @return for each key, true if it is ordered from largest to smallest
+		 */
+		public boolean[] getDescending() {
+			return this.descending.clone();
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Collections.singletonList(this.input);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			return db.orderBy(this.input.execute(db), this.keys, this.descending);
+		}
+
+		@Override
+		protected String describe() {
+			List<String> keys = new ArrayList<>();
+			for (int i = 0; i < this.keys.length; i++) {
+				keys.add(this.keys[i] + (this.descending[i] ? " DESC" : ""));
+			}
+			return "Sort " + keys;
+		}
+	}
+
+	/**
+	 * Keeps some attributes of its input, possibly renaming them (the SELECT list)
+	 */
+	public static class Project extends LogicalPlan {
+		private final LogicalPlan input;
+		private final String[] names;
+		private final String[] aliases;
+
+		/**
+		 * @param input		the rows to project
+		 * @param names		names of the attributes to keep, in output order
+		 * @param aliases	for each attribute, its name in the output, or null to keep its name
+		 * @throws DBException if an attribute is unknown or ambiguous
+		 */
+		public Project(LogicalPlan input, String[] names, String[] aliases) {
+			super(project(input, names, aliases));
+			this.input = input;
+			this.names = names.clone();
+			this.aliases = aliases.clone();
+		}
+
+		private static List<Attribute> project(LogicalPlan input, String[] names, String[] aliases) {
+			Relation schema = input.schema();
+			List<Attribute> list = new ArrayList<>();
+			for (int i = 0; i < names.length; i++) {
+				Attribute a = input.attributes().get(schema.lookup(names[i]));
+				list.add((aliases[i] == null) ? new Attribute(a.getRelation(), a.getType(), a.getName())
+						: new Attribute(null, a.getType(), aliases[i]));
+			}
+			return list;
+		}
+
+		/**
+		 * @return the input
+		 */
+		public LogicalPlan getInput() {
+			return this.input;
+		}
+
+		/**
+		 * @return names of the attributes kept
+		 */
+		public String[] getNames() {
+			return this.names.clone();
+		}
+
+		/**
+		 * @return for each attribute kept, its new name, or null if it keeps its name
+		 */
+		public String[] getAliases() {
+			return this.aliases.clone();
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Collections.singletonList(this.input);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			Relation output = db.project(this.input.execute(db), this.names);
+			for (String alias : this.aliases) {
+				if (alias != null) {
+					String[] list = new String[this.names.length];
+					for (int i = 0; i < list.length; i++) {
+						list[i] = this.attributes().get(i).getName();
+					}
+					return db.renameAttributes(output, list);
+				}
+			}
+			return output;
+		}
+
+		@Override
+		protected String describe() {
+			List<String> items = new ArrayList<>();
+			for (int i = 0; i < this.names.length; i++) {
+				items.add(this.names[i] + ((this.aliases[i] == null) ? "" : " AS " + this.aliases[i]));
+			}
+			return "Project " + items;
+		}
+	}
+
+	/**
+	 * Keeps the first rows of its input (LIMIT); see DavidDB.limit()
+	 */
+	public static class Limit extends LogicalPlan {
+		private final LogicalPlan input;
+		private final int count;
+
+		/**
+		 * @param input	the rows to limit
+		 * @param count	the number of rows to keep
+		 */
+		public Limit(LogicalPlan input, int count) {
+			super(input.attributes());
+			this.input = input;
+			this.count = count;
+		}
+
+		/**
+		 * @return the input
+		 */
+		public LogicalPlan getInput() {
+			return this.input;
+		}
+
+		/**
+		 * @return the number of rows kept
+		 */
+		public int getCount() {
+			return this.count;
+		}
+
+		@Override
+		public List<LogicalPlan> inputs() {
+			return Collections.singletonList(this.input);
+		}
+
+		@Override
+		public Relation execute(DavidDB db) {
+			return db.limit(this.input.execute(db), this.count);
+		}
+
+		@Override
+		protected String describe() {
+			return "Limit " + this.count;
+		}
+	}
+}
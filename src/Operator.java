@@ -0,0 +1,84 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.Row;
+
+/**
+ * A stage of a pull-based (Volcano) pipeline. A consumer calls open(), then
+ * next() until it returns null, then close(). Rows stream one at a time
+ * between stages, so a pipeline holds only what its blocking stages (the
+ * buffered side of a join, the groups of an aggregate) need.
+ *
+ * The Row returned by next() is only valid until the following call; a
+ * consumer that keeps a row must copy its values.
+ */
+@SuppressWarnings("rawtypes")
+public abstract class Operator {
+	/**
+	 * @return the output attributes, in row order
+	 */
+	public abstract List<Attribute> attributes();
+
+	/**
+	 * Prepares the operator (and its inputs) to produce rows
+	 */
+	public abstract void open();
+
+	/**
+	 * @return the next row, or null if there are no more
+	 */
+	public abstract Row next();
+
+	/**
+	 * Releases whatever the operator holds
+	 */
+	public abstract void close();
+
+	/**
+	 * @return an empty relation with the output attributes, for resolving
+	 * 			attribute names against this operator's rows
+	 */
+	public Relation schema() {
+		Relation schema = new Relation();
+		schema.setAttributes(new ArrayList<>(this.attributes()));
+		return schema;
+	}
+
+	/**
+	 * Runs the pipeline to completion
+	 * @return an unnamed relation holding every row produced
+	 */
+	public Relation drain() {
+		Relation output = new Relation();
+		List<Attribute> list = new ArrayList<>();
+		for (Attribute a : this.attributes()) {
+			AbstractRelation owner = (a.getRelation() == null) ? output : a.getRelation();
+			list.add(new Attribute(owner, a.getType(), a.getName()));
+		}
+		output.setAttributes(list);
+		int width = list.size();
+		this.open();
+		try {
+			Row row;
+			while ((row = this.next()) != null) {
+				output.addTuple(new Tuple(values(row, width), output));
+			}
+		} finally {
+			this.close();
+		}
+		return output;
+	}
+
+	/**
+	 * @param row	a row
+	 * @param width	number of values in the row
+	 * @return a new list holding the row's values
+	 */
+	protected static List<Comparable> values(Row row, int width) {
+		List<Comparable> values = new ArrayList<>(width);
+		for (int i = 0; i < width; i++) {
+			values.add(row.get(i));
+		}
+		return values;
+	}
+}
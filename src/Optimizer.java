@@ -0,0 +1,466 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import exceptions.DBException;
+import solver.ArithmeticNode;
+import solver.ColumnNode;
+import solver.ComparisonNode;
+import solver.LogicalNode;
+import solver.Node;
+import solver.NotNode;
+
+/**
+ * Rule-based rewriting of logical plans. Each rule keeps the result of the
+ * plan exactly the same:
+ * <ul>
+ * <li>Predicate pushdown: filter and join conditions are split into their
+ * conjuncts (the operands of top-level &&s), and each conjunct moves down to
+ * the lowest input whose attributes it reads, so rows are dropped before a
+ * join rather than after it. A conjunct on a common attribute of a natural
+ * join filters both inputs. A conjunct over a product that reads both sides
+ * becomes its join condition, which DavidDB.join() runs as a hash join when it
+ * equates attributes of the two sides.</li>
+ * <li>Projection pushdown: each input of a join keeps only the attributes the
+ * rest of the plan reads, and the attributes the join itself compares.
+ * Attributes are never dropped below an Aggregate: its input is a set, and
+ * dropping attributes would merge rows it must count separately. Nor are they
+ * dropped below a Limit, whose rows would change for the same reason.</li>
+ * <li>Join ordering: a chain of three or more natural joins becomes a single
+ * MultiJoin, which joins its inputs in the order with the least estimated
+ * cost once their sizes are known (see JoinOrder), after the predicates
+ * above have been pushed into them. Chains over inputs with two attributes
+ * of the same name and type are left alone, since which one they join on
+ * depends on the order.</li>
+ * </ul>
+ */
+public class Optimizer {
+
+	/**
+	 * Rewrites a plan
+	 * @param plan	a plan
+	 * @return an equivalent plan, with predicates and projections pushed down
+	 * 			and chains of natural joins reordered
+	 * @throws DBException if the plan is invalid
+	 */
+	public static LogicalPlan optimize(LogicalPlan plan) throws DBException {
+		plan = orderJoins(pushFilters(plan, new ArrayList<>()));
+		boolean[] all = new boolean[plan.attributes().size()];
+		Arrays.fill(all, true);
+		return pushProjections(plan, all);
+	}
+
+	/**
+	 * Collects the conjuncts of a condition: the operands of its top-level &&s
+	 * @param cond	a condition
+	 * @param out	the list the conjuncts are added to, in order
+	 */
+	public static void conjuncts(Node cond, List<Node> out) {
+		if (cond instanceof LogicalNode && ((LogicalNode) cond).getOp().equals("&&")) {
+			conjuncts(((LogicalNode) cond).getLeft(), out);
+			conjuncts(((LogicalNode) cond).getRight(), out);
+		}
+		else {
+			out.add(cond);
+		}
+	}
+
+	/**
+	 * @param conds	conditions
+	 * @return their conjunction, or null if there are none
+	 */
+	public static Node and(List<Node> conds) {
+		Node cond = null;
+		for (Node c : conds) {
+			cond = (cond == null) ? c : new LogicalNode("&&", cond, c);
+		}
+		return cond;
+	}
+
+	/**
+	 * Collects the attribute names an expression reads
+	 * @param n		an unbound expression
+	 * @param out	the list the names are added to
+	 */
+	public static void columns(Node n, List<String> out) {
+		if (n instanceof ColumnNode) {
+			out.add(((ColumnNode) n).getName());
+		}
+		else if (n instanceof ComparisonNode) {
+			columns(((ComparisonNode) n).getLeft(), out);
+			columns(((ComparisonNode) n).getRight(), out);
+		}
+		else if (n instanceof LogicalNode) {
+			columns(((LogicalNode) n).getLeft(), out);
+			columns(((LogicalNode) n).getRight(), out);
+		}
+		else if (n instanceof ArithmeticNode) {
+			columns(((ArithmeticNode) n).getLeft(), out);
+			columns(((ArithmeticNode) n).getRight(), out);
+		}
+		else if (n instanceof NotNode) {
+			columns(((NotNode) n).getChild(), out);
+		}
+	}
+
+	/**
+	 * Applies conjuncts to a plan, as low in it as they can go
+	 * @param plan	a plan
+	 * @param preds	conjuncts over the plan's output attributes, to apply on top of it
+	 * @return the rewritten plan
+	 */
+	private static LogicalPlan pushFilters(LogicalPlan plan, List<Node> preds) {
+		if (plan instanceof LogicalPlan.Filter) {
+			LogicalPlan.Filter filter = (LogicalPlan.Filter) plan;
+			List<Node> all = new ArrayList<>();
+			conjuncts(filter.getCondition(), all);
+			all.addAll(preds);
+			return pushFilters(filter.getInput(), all);
+		}
+		if (plan instanceof LogicalPlan.Join) {
+			LogicalPlan.Join join = (LogicalPlan.Join) plan;
+			List<Node> all = new ArrayList<>();
+			if (join.getCondition() != null) {
+				conjuncts(join.getCondition(), all);
+			}
+			all.addAll(preds);
+			Relation schema = plan.schema();
+			int width = join.getLeft().attributes().size();
+			List<Node> left = new ArrayList<>();
+			List<Node> right = new ArrayList<>();
+			List<Node> both = new ArrayList<>();
+			for (Node c : all) {
+				List<String> names = new ArrayList<>();
+				columns(c, names);
+				boolean in_left = !names.isEmpty();
+				boolean in_right = !names.isEmpty();
+				for (String name : names) {
+					int pos = schema.lookup(name);
+					in_left &= pos < width;
+					in_right &= pos >= width;
+				}
+				(in_left ? left : in_right ? right : both).add(c);
+			}
+			return new LogicalPlan.Join(pushFilters(join.getLeft(), left), pushFilters(join.getRight(), right),
+					and(both));
+		}
+		if (plan instanceof LogicalPlan.NaturalJoin) {
+			LogicalPlan.NaturalJoin join = (LogicalPlan.NaturalJoin) plan;
+			Relation schema = plan.schema();
+			Relation right_schema = join.getRight().schema();
+			JoinSpec spec = new JoinSpec(join.getLeft().attributes(), join.getRight().attributes());
+			int width = join.getLeft().attributes().size();
+			List<Node> left = new ArrayList<>();
+			List<Node> right = new ArrayList<>();
+			List<Node> above = new ArrayList<>();
+			for (Node c : preds) {
+				List<String> names = new ArrayList<>();
+				columns(c, names);
+				boolean in_left = !names.isEmpty();
+				boolean in_right = !names.isEmpty();
+				for (String name : names) {
+					int pos = schema.lookup(name);
+					in_left &= pos < width;
+					// a common attribute is on both sides, if the name finds it on the right too
+					int right_pos = (pos >= width) ? spec.rightRest()[pos - width] : rightKey(spec, pos);
+					in_right &= right_pos >= 0 && position(right_schema, name) == right_pos;
+				}
+				if (in_left) {
+					left.add(c);
+				}
+				if (in_right) {
+					right.add(c);
+				}
+				if (!in_left && !in_right) {
+					above.add(c);
+				}
+			}
+			return filter(new LogicalPlan.NaturalJoin(pushFilters(join.getLeft(), left),
+					pushFilters(join.getRight(), right)), above);
+		}
+		if (plan instanceof LogicalPlan.MultiJoin) {
+			// natural joins make attributes of the same name and type equal, so
+			// a conjunct goes to every input it can be evaluated on
+			Relation schema = plan.schema();
+			List<LogicalPlan> inputs = plan.inputs();
+			List<List<Node>> pushed = new ArrayList<>();
+			for (int k = 0; k < inputs.size(); k++) {
+				pushed.add(new ArrayList<>());
+			}
+			List<Node> above = new ArrayList<>();
+			for (Node c : preds) {
+				List<String> names = new ArrayList<>();
+				columns(c, names);
+				boolean placed = false;
+				for (int k = 0; k < inputs.size() && !names.isEmpty(); k++) {
+					Relation input_schema = inputs.get(k).schema();
+					boolean fits = true;
+					for (String name : names) {
+						int pos = position(input_schema, name);
+						fits &= pos >= 0
+								&& inputs.get(k).attributes().get(pos).equals(plan.attributes().get(schema.lookup(name)));
+					}
+					if (fits) {
+						pushed.get(k).add(c);
+						placed = true;
+					}
+				}
+				if (!placed) {
+					above.add(c);
+				}
+			}
+			List<LogicalPlan> filtered = new ArrayList<>();
+			for (int k = 0; k < inputs.size(); k++) {
+				filtered.add(pushFilters(inputs.get(k), pushed.get(k)));
+			}
+			return filter(new LogicalPlan.MultiJoin(filtered), above);
+		}
+		if (plan instanceof LogicalPlan.Scan) {
+			return filter(plan, preds);
+		}
+		return filter(rebuild(plan, pushFilters(input(plan), new ArrayList<>())), preds);
+	}
+
+	/**
+	 * Replaces chains of three or more natural joins with MultiJoins
+	 * @param plan	a plan
+	 * @return the rewritten plan
+	 */
+	private static LogicalPlan orderJoins(LogicalPlan plan) {
+		if (plan instanceof LogicalPlan.NaturalJoin) {
+			List<LogicalPlan> inputs = new ArrayList<>();
+			chain(plan, inputs);
+			boolean reorder = inputs.size() > 2;
+			for (LogicalPlan input : inputs) {
+				reorder &= !DavidDB.hasDuplicates(input.attributes());
+			}
+			if (reorder) {
+				List<LogicalPlan> ordered = new ArrayList<>();
+				for (LogicalPlan input : inputs) {
+					ordered.add(orderJoins(input));
+				}
+				return new LogicalPlan.MultiJoin(ordered);
+			}
+			LogicalPlan.NaturalJoin join = (LogicalPlan.NaturalJoin) plan;
+			return new LogicalPlan.NaturalJoin(orderJoins(join.getLeft()), orderJoins(join.getRight()));
+		}
+		if (plan instanceof LogicalPlan.Join) {
+			LogicalPlan.Join join = (LogicalPlan.Join) plan;
+			return new LogicalPlan.Join(orderJoins(join.getLeft()), orderJoins(join.getRight()), join.getCondition());
+		}
+		if (plan instanceof LogicalPlan.MultiJoin) {
+			List<LogicalPlan> ordered = new ArrayList<>();
+			for (LogicalPlan input : plan.inputs()) {
+				ordered.add(orderJoins(input));
+			}
+			return new LogicalPlan.MultiJoin(ordered);
+		}
+		if (plan instanceof LogicalPlan.Scan) {
+			return plan;
+		}
+		return rebuild(plan, orderJoins(input(plan)));
+	}
+
+	/**
+	 * Collects the inputs of a tree of natural joins, from left to right
+	 */
+	private static void chain(LogicalPlan plan, List<LogicalPlan> out) {
+		if (plan instanceof LogicalPlan.NaturalJoin) {
+			chain(((LogicalPlan.NaturalJoin) plan).getLeft(), out);
+			chain(((LogicalPlan.NaturalJoin) plan).getRight(), out);
+		}
+		else {
+			out.add(plan);
+		}
+	}
+
+	/**
+	 * @return the position on the right of the common attribute at a position on the left, or -1
+	 */
+	private static int rightKey(JoinSpec spec, int left_pos) {
+		int[] keys = spec.leftKeys();
+		for (int k = 0; k < keys.length; k++) {
+			if (keys[k] == left_pos) {
+				return spec.rightKeys()[k];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the plan filtered by the conjuncts, or the plan itself if there are none
+	 */
+	private static LogicalPlan filter(LogicalPlan plan, List<Node> preds) {
+		return preds.isEmpty() ? plan : new LogicalPlan.Filter(plan, and(preds));
+	}
+
+	/**
+	 * Drops the attributes that are not needed from the inputs of joins
+	 * @param plan		a plan
+	 * @param required	for each output attribute of the plan, true if it is read above
+	 * @return the rewritten plan. Its output keeps the required attributes in
+	 * 			order, though a join may drop some of the others
+	 */
+	private static LogicalPlan pushProjections(LogicalPlan plan, boolean[] required) {
+		Relation schema = plan.schema();
+		if (plan instanceof LogicalPlan.Join) {
+			LogicalPlan.Join join = (LogicalPlan.Join) plan;
+			boolean[] needed = required.clone();
+			if (join.getCondition() != null) {
+				read(schema, join.getCondition(), needed);
+			}
+			int width = join.getLeft().attributes().size();
+			return new LogicalPlan.Join(narrow(join.getLeft(), Arrays.copyOfRange(needed, 0, width)),
+					narrow(join.getRight(), Arrays.copyOfRange(needed, width, needed.length)), join.getCondition());
+		}
+		if (plan instanceof LogicalPlan.NaturalJoin) {
+			LogicalPlan.NaturalJoin join = (LogicalPlan.NaturalJoin) plan;
+			JoinSpec spec = new JoinSpec(join.getLeft().attributes(), join.getRight().attributes());
+			int width = join.getLeft().attributes().size();
+			boolean[] left = Arrays.copyOfRange(required, 0, width);
+			boolean[] right = new boolean[join.getRight().attributes().size()];
+			for (int k = 0; k < spec.leftKeys().length; k++) {
+				left[spec.leftKeys()[k]] = true;
+				right[spec.rightKeys()[k]] = true;
+			}
+			for (int j = 0; j < spec.rightRest().length; j++) {
+				right[spec.rightRest()[j]] = required[width + j];
+			}
+			return new LogicalPlan.NaturalJoin(narrow(join.getLeft(), left), narrow(join.getRight(), right));
+		}
+		if (plan instanceof LogicalPlan.MultiJoin) {
+			// each input keeps the attributes read above and those it is joined on
+			List<LogicalPlan> inputs = plan.inputs();
+			List<Attribute> attributes = plan.attributes();
+			List<LogicalPlan> narrowed = new ArrayList<>();
+			for (int k = 0; k < inputs.size(); k++) {
+				List<Attribute> own = inputs.get(k).attributes();
+				boolean[] needed = new boolean[own.size()];
+				for (int p = 0; p < needed.length; p++) {
+					needed[p] = required[attributes.indexOf(own.get(p))];
+					for (int j = 0; j < inputs.size() && !needed[p]; j++) {
+						needed[p] = j != k && inputs.get(j).attributes().contains(own.get(p));
+					}
+				}
+				narrowed.add(narrow(inputs.get(k), needed));
+			}
+			return new LogicalPlan.MultiJoin(narrowed);
+		}
+		if (plan instanceof LogicalPlan.Scan) {
+			return plan;
+		}
+
+		LogicalPlan input = input(plan);
+		Relation input_schema = input.schema();
+		boolean[] needed = new boolean[input.attributes().size()];
+		if (plan instanceof LogicalPlan.Filter) {
+			needed = required.clone();
+			read(input_schema, ((LogicalPlan.Filter) plan).getCondition(), needed);
+		}
+		else if (plan instanceof LogicalPlan.Sort) {
+			needed = required.clone();
+			for (String key : ((LogicalPlan.Sort) plan).getKeys()) {
+				needed[input_schema.lookup(key)] = true;
+			}
+		}
+		else if (plan instanceof LogicalPlan.Project) {
+			for (String name : ((LogicalPlan.Project) plan).getNames()) {
+				needed[input_schema.lookup(name)] = true;
+			}
+		}
+		else {
+			Arrays.fill(needed, true);
+		}
+		return rebuild(plan, pushProjections(input, needed));
+	}
+
+	/**
+	 * Marks the attributes a condition reads
+	 */
+	private static void read(Relation schema, Node cond, boolean[] needed) {
+		List<String> names = new ArrayList<>();
+		columns(cond, names);
+		for (String name : names) {
+			needed[schema.lookup(name)] = true;
+		}
+	}
+
+	/**
+	 * Projects an input of a join onto the attributes needed of it
+	 * @param plan		the input
+	 * @param required	for each of its attributes, true if needed
+	 * @return the input, projected if some attribute is not needed and the
+	 * 			needed ones can all be named
+	 */
+	private static LogicalPlan narrow(LogicalPlan plan, boolean[] required) {
+		List<Attribute> before = plan.attributes();
+		LogicalPlan pruned = pushProjections(plan, required);
+		// a join below may have dropped attributes already; the rest keep their order
+		Relation schema = pruned.schema();
+		List<Attribute> attributes = pruned.attributes();
+		List<String> names = new ArrayList<>();
+		int j = 0;
+		for (int i = 0; i < required.length && j < attributes.size(); i++) {
+			Attribute a = attributes.get(j);
+			if (!a.getPedanticName().equals(before.get(i).getPedanticName())) {
+				continue;
+			}
+			if (required[i]) {
+				String name = (position(schema, a.getPedanticName()) == j) ? a.getPedanticName()
+						: (position(schema, a.getName()) == j) ? a.getName() : null;
+				if (name == null) {
+					return pruned;
+				}
+				names.add(name);
+			}
+			j++;
+		}
+		if (names.size() == attributes.size() || names.isEmpty()) {
+			return pruned;
+		}
+		return new LogicalPlan.Project(pruned, names.toArray(new String[0]), new String[names.size()]);
+	}
+
+	/**
+	 * @return the position of an attribute, or -1 if it does not exist or is ambiguous
+	 */
+	private static int position(Relation schema, String name) {
+		try {
+			return schema.lookup(name);
+		} catch (DBException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the input of a node with a single input
+	 */
+	private static LogicalPlan input(LogicalPlan plan) {
+		return plan.inputs().get(0);
+	}
+
+	/**
+	 * @return a copy of a node with a single input, over a new input
+	 */
+	static LogicalPlan rebuild(LogicalPlan plan, LogicalPlan input) {
+		if (plan instanceof LogicalPlan.Filter) {
+			return new LogicalPlan.Filter(input, ((LogicalPlan.Filter) plan).getCondition());
+		}
+		if (plan instanceof LogicalPlan.Aggregate) {
+			LogicalPlan.Aggregate a = (LogicalPlan.Aggregate) plan;
+			return new LogicalPlan.Aggregate(input, a.getFunctions(), a.getAttrs(), a.getGroups());
+		}
+		if (plan instanceof LogicalPlan.Sort) {
+			LogicalPlan.Sort s = (LogicalPlan.Sort) plan;
+			return new LogicalPlan.Sort(input, s.getKeys(), s.getDescending());
+		}
+		if (plan instanceof LogicalPlan.Project) {
+			LogicalPlan.Project p = (LogicalPlan.Project) plan;
+			return new LogicalPlan.Project(input, p.getNames(), p.getAliases());
+		}
+		if (plan instanceof LogicalPlan.Limit) {
+			return new LogicalPlan.Limit(input, ((LogicalPlan.Limit) plan).getCount());
+		}
+		return plan;
+	}
+}
@@ -0,0 +1,105 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import parallel.Morsels;
+import solver.ListRow;
+import solver.Row;
+import storage.ColumnStore;
+
+/**
+ * Parallel hash aggregation. Each morsel of the relation is aggregated into
+ * its own group table by one worker, with no sharing between threads; the
+ * partial tables are then merged in morsel order with Accumulator.merge.
+ * Because morsel boundaries do not depend on the number of threads, neither
+ * does the result.
+ */
+@SuppressWarnings("rawtypes")
+public class ParallelHashAggregate {
+	private final AggregateSpec spec;
+	private final Morsels morsels;
+
+	/**
+	 * @param r			relation over which to aggregate
+	 * @param agg_fns	the aggregation functions
+	 * @param attrs		names of the attribute each function applies to
+	 * @param groups	names of the grouping attributes
+	 * @param morsels	the workers to run on
+	 * @throws DBException if an attribute is unknown or ambiguous, or a function
+	 * 			cannot be applied to its attribute
+	 */
+	public ParallelHashAggregate(Relation r, Agg[] agg_fns, String[] attrs, String[] groups, Morsels morsels) {
+		this.spec = new AggregateSpec(r, agg_fns, attrs, groups);
+		this.morsels = morsels;
+	}
+
+	/**
+	 * Aggregates the relation
+	 * @param r	the relation given to the constructor
+	 * @return a relation with one tuple per group
+	 */
+	public Relation aggregate(Relation r) {
+		List<Map<List<Comparable>, Accumulator[]>> partials;
+		if (r.getStorage() == Relation.Storage.COLUMNAR) {
+			ColumnStore store = r.getColumns();
+			partials = this.morsels.map(store.size(), (from, to) -> {
+				Map<List<Comparable>, Accumulator[]> table = new HashMap<>();
+				ColumnStore.Cursor row = store.cursor();
+				for (int i = from; i < to; i++) {
+					row.setRow(i);
+					this.add(table, row);
+				}
+				return table;
+			});
+		}
+		else {
+			Tuple[] tuples = r.rows().toArray(new Tuple[0]);
+			partials = this.morsels.map(tuples.length, (from, to) -> {
+				Map<List<Comparable>, Accumulator[]> table = new HashMap<>();
+				ListRow row = new ListRow();
+				for (int i = from; i < to; i++) {
+					this.add(table, row.reset(tuples[i].data));
+				}
+				return table;
+			});
+		}
+
+		// merge the partial tables into the first, in morsel order
+		Map<List<Comparable>, Accumulator[]> table = partials.get(0);
+		for (int m = 1; m < partials.size(); m++) {
+			for (Map.Entry<List<Comparable>, Accumulator[]> e : partials.get(m).entrySet()) {
+				Accumulator[] accs = table.get(e.getKey());
+				if (accs == null) {
+					table.put(e.getKey(), e.getValue());
+					continue;
+				}
+				Accumulator[] other = e.getValue();
+				for (int i = 0; i < accs.length; i++) {
+					accs[i].merge(other[i]);
+				}
+			}
+		}
+		if (!this.spec.isGrouped() && table.isEmpty()) {
+			table.put(new ArrayList<>(), this.spec.newGroup());
+		}
+
+		Relation output = new Relation();
+		List<Attribute> attributes = new ArrayList<>();
+		for (Attribute a : this.spec.attributes()) {
+			attributes.add(new Attribute(output, a.getType(), a.getName()));
+		}
+		output.setAttributes(attributes);
+		for (Map.Entry<List<Comparable>, Accumulator[]> e : table.entrySet()) {
+			output.addTuple(new Tuple(this.spec.output(e.getKey(), e.getValue()), output));
+		}
+		return output;
+	}
+
+	private void add(Map<List<Comparable>, Accumulator[]> table, Row row) {
+		Accumulator[] accs = table.computeIfAbsent(this.spec.key(row), k -> this.spec.newGroup());
+		for (Accumulator acc : accs) {
+			acc.add(row);
+		}
+	}
+}
@@ -0,0 +1,180 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import parallel.Morsels;
+
+/**
+ * Parallel, radix-partitioned implementation of the natural join. The hash of
+ * each tuple's common attributes is computed straight from its values at the
+ * key positions, and the high bits of the hash assign the tuple to one of a
+ * power-of-two number of partitions; both inputs are partitioned the same way,
+ * so matching tuples always land in partitions with the same number. Each
+ * partition pair is then joined on its own worker: the build side is chained
+ * into int arrays indexed by the low bits of the hash, and the probe side
+ * walks the chains, so no key objects are allocated. Outputs are collected in
+ * partition order.
+ */
+@SuppressWarnings("rawtypes")
+public class PartitionedHashJoin {
+	private final JoinSpec spec;
+	private final Morsels morsels;
+	private final int bits;
+
+	/**
+	 * @param spec		the join to perform; must have common attributes
+	 * @param morsels	the workers to run on
+	 */
+	public PartitionedHashJoin(JoinSpec spec, Morsels morsels) {
+		this.spec = spec;
+		this.morsels = morsels;
+		// a few partitions per worker evens out skewed partitions
+		int partitions = Math.min(1 << 10, Integer.highestOneBit(morsels.parallelism() * 4 - 1) << 1);
+		this.bits = Integer.numberOfTrailingZeros(partitions);
+	}
+
+	/**
+	 * Joins the two relations
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return the natural join, with the same schema naturalJoin produces
+	 */
+	public Relation join(Relation r1, Relation r2) {
+		boolean build_left = r1.size() <= r2.size();
+		Tuple[] build = (build_left ? r1 : r2).rows().toArray(new Tuple[0]);
+		Tuple[] probe = (build_left ? r2 : r1).rows().toArray(new Tuple[0]);
+		int[] build_keys = build_left ? this.spec.leftKeys() : this.spec.rightKeys();
+		int[] probe_keys = build_left ? this.spec.rightKeys() : this.spec.leftKeys();
+		Partitions b = this.partition(build, build_keys);
+		Partitions p = this.partition(probe, probe_keys);
+
+		List<List<List<Comparable>>> parts = this.morsels.map(1 << this.bits, 1, (from, to) -> {
+			List<List<Comparable>> out = new ArrayList<>();
+			for (int q = from; q < to; q++) {
+				this.joinPartition(q, build, b, build_keys, probe, p, probe_keys, build_left, out);
+			}
+			return out;
+		});
+
+		Relation output = new Relation();
+		output.setAttributes(this.spec.outputAttributes());
+		for (List<List<Comparable>> part : parts) {
+			for (List<Comparable> values : part) {
+				output.addTuple(new Tuple(values, output));
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * An input grouped by partition: the rows of partition q are
+	 * order[offsets[q]] ... order[offsets[q + 1] - 1]
+	 */
+	private static class Partitions {
+		int[] hashes;
+		int[] order;
+		int[] offsets;
+	}
+
+	/**
+	 * Hashes and partitions the rows of an input, a morsel per task
+	 */
+	private Partitions partition(Tuple[] rows, int[] keys) {
+		int partitions = 1 << this.bits;
+		int shift = 32 - this.bits;
+		Partitions out = new Partitions();
+		out.hashes = new int[rows.length];
+		out.order = new int[rows.length];
+		out.offsets = new int[partitions + 1];
+		int chunk = this.morsels.morselSize();
+
+		// count each morsel's rows per partition
+		List<int[]> counts = this.morsels.map(rows.length, chunk, (from, to) -> {
+			int[] count = new int[partitions];
+			for (int i = from; i < to; i++) {
+				int h = hash(rows[i].data, keys);
+				out.hashes[i] = h;
+				count[h >>> shift]++;
+			}
+			return count;
+		});
+
+		// turn the counts into each morsel's first slot in each partition
+		int[][] next = new int[counts.size()][partitions];
+		int slot = 0;
+		for (int q = 0; q < partitions; q++) {
+			out.offsets[q] = slot;
+			for (int m = 0; m < counts.size(); m++) {
+				next[m][q] = slot;
+				slot += counts.get(m)[q];
+			}
+		}
+		out.offsets[partitions] = slot;
+
+		// scatter; morsels write to disjoint slots
+		this.morsels.map(rows.length, chunk, (from, to) -> {
+			int[] pos = next[from / chunk];
+			for (int i = from; i < to; i++) {
+				out.order[pos[out.hashes[i] >>> shift]++] = i;
+			}
+			return null;
+		});
+		return out;
+	}
+
+	private void joinPartition(int q, Tuple[] build, Partitions b, int[] build_keys,
+			Tuple[] probe, Partitions p, int[] probe_keys, boolean build_left, List<List<Comparable>> out) {
+		int from = b.offsets[q];
+		int n = b.offsets[q + 1] - from;
+		if (n == 0 || p.offsets[q + 1] == p.offsets[q]) {
+			return;
+		}
+		// chain the build rows by the low bits of their hash
+		int mask = Integer.highestOneBit(Math.max(2 * n - 1, 1)) * 2 - 1;
+		int[] heads = new int[mask + 1];
+		Arrays.fill(heads, -1);
+		int[] chain = new int[n];
+		for (int k = 0; k < n; k++) {
+			int slot = b.hashes[b.order[from + k]] & mask;
+			chain[k] = heads[slot];
+			heads[slot] = k;
+		}
+		for (int j = p.offsets[q]; j < p.offsets[q + 1]; j++) {
+			int row = p.order[j];
+			int h = p.hashes[row];
+			List<Comparable> values = probe[row].data;
+			for (int k = heads[h & mask]; k >= 0; k = chain[k]) {
+				int match = b.order[from + k];
+				if (b.hashes[match] != h || !keysEqual(build[match].data, build_keys, values, probe_keys)) {
+					continue;
+				}
+				List<Comparable> other = build[match].data;
+				out.add(build_left ? this.spec.combine(other, values) : this.spec.combine(values, other));
+			}
+		}
+	}
+
+	/**
+	 * @return a well-mixed hash of the values at the key positions
+	 */
+	private static int hash(List<Comparable> values, int[] keys) {
+		int h = 1;
+		for (int k : keys) {
+			Comparable v = values.get(k);
+			h = 31 * h + ((v == null) ? 0 : v.hashCode());
+		}
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean keysEqual(List<Comparable> a, int[] a_keys, List<Comparable> b, int[] b_keys) {
+		for (int k = 0; k < a_keys.length; k++) {
+			Comparable x = a.get(a_keys[k]);
+			Comparable y = b.get(b_keys[k]);
+			if ((x == null) ? y != null : !x.equals(y)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,225 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import exceptions.DBException;
+import solver.Condition;
+import solver.LiteralNode;
+import solver.Node;
+import solver.ParameterNode;
+
+/**
+ * A SQL query parsed and planned once, to be run many times with different
+ * values for its parameters, e.g.
+ * <pre>
+ *   PreparedStatement s = db.prepare("SELECT * FROM customers WHERE customerNumber = ?");
+ *   Relation r = s.execute(103);
+ * </pre>
+ * Each parameter takes its type from where it is used, when the statement is
+ * prepared. execute() replaces the parameters of the plan by literals of the
+ * values and runs it, so conditions are never parsed again. Generated
+ * predicates are keyed by the shape of a condition rather than its literals
+ * (see solver.Codegen), so every execution reuses the classes generated for
+ * the first one, and an index still serves a parameter as it would a literal.
+ * <p>
+ * A statement does not change once prepared, so threads may share one.
+ * DavidDB.prepare() caches statements by the normalized text of the query;
+ * a statement executed after the relations it was planned for have changed
+ * (see DavidDB.getSchemaVersion) is prepared again.
+ */
+public class PreparedStatement {
+	private final DavidDB db;
+	private final String sql;
+	private final long version;
+	private final LogicalPlan plan;
+	private final Node.Type[] types;
+
+	/**
+	 * @param db		the database the query reads
+	 * @param sql		the query
+	 * @param plan		the plan of the query, with its parameters in place
+	 * @param count		the number of parameters
+	 * @param version	the schema version the plan was made for
+	 * @throws DBException if the type of a parameter cannot be inferred
+	 */
+	PreparedStatement(DavidDB db, String sql, LogicalPlan plan, int count, long version) {
+		this.db = db;
+		this.sql = sql;
+		this.plan = plan;
+		this.version = version;
+		this.types = new Node.Type[count];
+		types(plan, this.types);
+		for (int i = 0; i < count; i++) {
+			if (this.types[i] == null) {
+				throw new DBException("Invalid query: cannot infer the type of parameter ?" + (i + 1)
+						+ " in " + sql);
+			}
+		}
+	}
+
+	/**
+	 * Records the types bound conditions give the parameters of a plan
+	 */
+	private static void types(LogicalPlan plan, Node.Type[] types) {
+		Node cond = null;
+		Relation schema = null;
+		if (plan instanceof LogicalPlan.Filter) {
+			cond = ((LogicalPlan.Filter) plan).getCondition();
+			schema = ((LogicalPlan.Filter) plan).getInput().schema();
+		}
+		else if (plan instanceof LogicalPlan.Join) {
+			cond = ((LogicalPlan.Join) plan).getCondition();
+			schema = plan.schema();
+		}
+		if (cond != null) {
+			List<ParameterNode> params = new ArrayList<>();
+			Condition.parameters(Condition.bind(cond, schema), params);
+			for (ParameterNode p : params) {
+				types[p.getIndex() - 1] = p.type();
+			}
+		}
+		for (LogicalPlan input : plan.inputs()) {
+			types(input, types);
+		}
+	}
+
+	/**
+	 * Runs the query
+	 * @param values	the values of the parameters, in order: a Number for a
+	 * 					NUMBER parameter, a String (unquoted) for a TEXT one, a
+	 * 					Boolean for a BOOLEAN one
+	 * @return a reference to a relation containing the result
+	 * @throws DBException if the values do not fit the parameters, or an operation fails
+	 */
+	public Relation execute(Object... values) throws DBException {
+		if (this.version != this.db.getSchemaVersion()) {
+			return this.db.prepare(this.sql).execute(values);
+		}
+		return this.db.execute(this.bind(values));
+	}
+
+	/**
+	 * @param values	the values of the parameters, as for execute()
+	 * @return the plan execute() runs for the values
+	 * @throws DBException if the values do not fit the parameters
+	 */
+	public LogicalPlan bind(Object... values) throws DBException {
+		if (values.length != this.types.length) {
+			throw new DBException("The query has " + this.types.length + " parameters, but "
+					+ values.length + " values were given: " + this.sql);
+		}
+		Node[] literals = new Node[values.length];
+		for (int i = 0; i < values.length; i++) {
+			literals[i] = this.literal(i, values[i]);
+		}
+		return substitute(this.plan, literals);
+	}
+
+	private Node literal(int i, Object value) {
+		switch (this.types[i]) {
+			case NUMBER:
+				if (value instanceof Number) {
+					return new LiteralNode(Node.Type.NUMBER, ((Number) value).doubleValue());
+				}
+				break;
+			case TEXT:
+				if (value instanceof String) {
+					return new LiteralNode(Node.Type.TEXT, "'" + value + "'");
+				}
+				break;
+			case BOOLEAN:
+				if (value instanceof Boolean) {
+					return new LiteralNode(Node.Type.BOOLEAN, (Boolean) value);
+				}
+				break;
+			default:
+		}
+		throw new DBException("Parameter ?" + (i + 1) + " is " + this.types[i] + ", but its value is " + value);
+	}
+
+	/**
+	 * @return a copy of a plan with its parameters replaced; parts without parameters are shared
+	 */
+	private static LogicalPlan substitute(LogicalPlan plan, Node[] values) {
+		if (plan instanceof LogicalPlan.Scan) {
+			return plan;
+		}
+		if (plan instanceof LogicalPlan.Filter) {
+			LogicalPlan.Filter f = (LogicalPlan.Filter) plan;
+			LogicalPlan input = substitute(f.getInput(), values);
+			Node cond = Condition.substitute(f.getCondition(), values);
+			return (input == f.getInput() && cond == f.getCondition()) ? plan : new LogicalPlan.Filter(input, cond);
+		}
+		if (plan instanceof LogicalPlan.Join) {
+			LogicalPlan.Join j = (LogicalPlan.Join) plan;
+			LogicalPlan left = substitute(j.getLeft(), values);
+			LogicalPlan right = substitute(j.getRight(), values);
+			Node cond = (j.getCondition() == null) ? null : Condition.substitute(j.getCondition(), values);
+			if (left == j.getLeft() && right == j.getRight() && cond == j.getCondition()) {
+				return plan;
+			}
+			return new LogicalPlan.Join(left, right, cond);
+		}
+		if (plan instanceof LogicalPlan.NaturalJoin) {
+			LogicalPlan.NaturalJoin j = (LogicalPlan.NaturalJoin) plan;
+			LogicalPlan left = substitute(j.getLeft(), values);
+			LogicalPlan right = substitute(j.getRight(), values);
+			return (left == j.getLeft() && right == j.getRight()) ? plan : new LogicalPlan.NaturalJoin(left, right);
+		}
+		if (plan instanceof LogicalPlan.MultiJoin) {
+			List<LogicalPlan> inputs = new ArrayList<>();
+			boolean same = true;
+			for (LogicalPlan input : plan.inputs()) {
+				inputs.add(substitute(input, values));
+				same &= inputs.get(inputs.size() - 1) == input;
+			}
+			return same ? plan : new LogicalPlan.MultiJoin(inputs);
+		}
+		LogicalPlan input = plan.inputs().get(0);
+		LogicalPlan bound = substitute(input, values);
+		return (bound == input) ? plan : Optimizer.rebuild(plan, bound);
+	}
+
+	/**
+	 * @return the number of parameters
+	 */
+	public int getParameterCount() {
+		return this.types.length;
+	}
+
+	/**
+	 * @param index	the number of a parameter, from 1
+	 * @return the type of the parameter
+	 */
+	public Node.Type getParameterType(int index) {
+		return this.types[index - 1];
+	}
+
+	/**
+	 * @return the plan, with the parameters in place
+	 */
+	public LogicalPlan getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * @return the schema version the plan was made for
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return the query the statement was prepared from
+	 */
+	public String getSQL() {
+		return this.sql;
+	}
+
+	/**
+	 * @return the plan, as LogicalPlan.toString() describes it
+	 */
+	@Override
+	public String toString() {
+		return this.plan.toString();
+	}
+}
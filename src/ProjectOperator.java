@@ -0,0 +1,52 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.ListRow;
+import solver.Projector;
+import solver.Row;
+
+/**
+ * Keeps some attributes of each input row. Duplicates the projection may
+ * create are removed when the rows are collected into a relation.
+ */
+public class ProjectOperator extends Operator {
+	private final Operator input;
+	private final Projector projector;
+	private final List<Attribute> attributes = new ArrayList<>();
+	private final ListRow row = new ListRow();
+
+	/**
+	 * @param input		the input stage
+	 * @param positions	input positions to keep, in output order
+	 * @param projector	a projector of the same positions
+	 */
+	public ProjectOperator(Operator input, int[] positions, Projector projector) {
+		this.input = input;
+		this.projector = projector;
+		List<Attribute> in = input.attributes();
+		for (int p : positions) {
+			this.attributes.add(in.get(p));
+		}
+	}
+
+	@Override
+	public List<Attribute> attributes() {
+		return this.attributes;
+	}
+
+	@Override
+	public void open() {
+		this.input.open();
+	}
+
+	@Override
+	public Row next() {
+		Row in = this.input.next();
+		return (in == null) ? null : this.row.reset(this.projector.project(in));
+	}
+
+	@Override
+	public void close() {
+		this.input.close();
+	}
+}
@@ -1,19 +1,49 @@
 import exceptions.DBException;
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import solver.ListRow;
+import solver.Row;
+import solver.RowCursor;
+import solver.Schema;
+import storage.ColumnFile;
+import storage.ColumnStore;
+import storage.TextLoader;
 
 /**
  * This class represents a relation in DavidDB.
  * @author David
  * @version 6/5/18
  */
-public class Relation extends AbstractRelation {
+public class Relation extends AbstractRelation implements Schema {
+	/**
+	 * Storage layouts for the data of a relation
+	 */
+	public enum Storage {
+		/** a set of Tuple objects */
+		ROW,
+		/** primitive column arrays; see storage.ColumnStore */
+		COLUMNAR
+	}
+
+	private static final AtomicLong versions = new AtomicLong();
+
 	protected Map<String, AttributeMapEntry> attribute_map;
+	protected ColumnStore columns;	/* the data in COLUMNAR storage, null in ROW storage */
+	private String source;			/* data file to read on first use of the data, or null */
+	private List<AttributeIndex> indexes = new ArrayList<>();
+	private List<HashIndex> hash_indexes = new ArrayList<>();
+	private List<Tuple> numbered;	/* ROW storage with indexes: the tuples by row number */
+	private boolean bulk;			/* true while read() adds tuples; indexes are flushed at its end */
+	private Statistics statistics;	/* gathered by analyze(), or null */
+	private boolean auto_analyze;	/* true if getStatistics() analyzes when there are none */
+	private long version;			/* stamp of the last change of the attributes or indexes */
 
 	/**
 	 * Creates an empty relation without a name
@@ -32,56 +62,315 @@ public class Relation extends AbstractRelation {
 	}
 
 	/**
-	 * Populates this relation with data from the given file.
+	 * Populates this relation with data from the given file, which is either
+	 * pipe-delimited text or a binary column file written by write(). Text is
+	 * parsed in parallel by a storage.TextLoader.
 	 * @param infile the name of the data file
 	 * @throws FileNotFoundException if file does not exist
 	 * @throws DBException if an attribute value does not match the attribute's type
 	 */
 	@Override
 	public void read(String infile) throws FileNotFoundException, DBException {
-		BufferedReader fin = new BufferedReader(new FileReader(infile));
-		String line;
+		this.load();
+		int first = this.storedSize();
+		this.bulk = true;
 		try {
-			// each line contains actual data
-			while ((line = fin.readLine()) != null) {
-				String[] attr_val = line.split("\\|");
-				Comparable[] tuple_values = new Comparable[attr_val.length];
-
-				// ensure each data value matches the attribute's type
-				for (int i = 0; i < this.attribute_list.size(); i++) {
-					Attribute.Type type = this.attribute_list.get(i).getType();
-					switch (type) {
-						case TEXT:
-							if (attr_val[i].matches("^'.*'$")) {
-								tuple_values[i] = attr_val[i];
-							}
-							else if (attr_val[i].equalsIgnoreCase("null")) {
-								tuple_values[i] = null;
-							}
-							else {
-								throw new DBException("Type mismatch for TEXT attribute: "
-										+ attr_val[i] + " in " + infile);
-							}
-							break;
-						case NUMERIC:
-							try {
-								tuple_values[i] = Double.parseDouble(attr_val[i]);
-							} catch (NumberFormatException e) {
-								throw new DBException("Type mismatch for NUMERIC attribute: "
-										+ attr_val[i] + " in " + infile);
-							}
-							break;
-						default:
-							// code should not reach here
-					}
+			if (ColumnFile.isColumnFile(infile)) {
+				this.readColumns(infile);
+			}
+			else {
+				this.readText(infile);
+			}
+			if (this.columns != null && this.isIndexed()) {
+				// the loaders add to the column store directly
+				ColumnStore.Cursor row = this.columns.cursor();
+				for (int i = first; i < this.columns.size(); i++) {
+					row.setRow(i);
+					this.index(row, i);
 				}
-				// add the tuple to the set
-				this.addTuple(new Tuple(tuple_values,this));
 			}
-			fin.close();
-		} catch(IOException e) {
-			e.printStackTrace();
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			throw new DBException("Cannot read " + infile + ": " + e.getMessage());
+		} finally {
+			this.bulk = false;
+		}
+		for (AttributeIndex index : this.indexes) {
+			index.flush();
+		}
+		if (this.statistics != null) {
+			this.statistics.added(this.storedSize() - first);
+		}
+	}
+
+	/**
+	 * Populates this relation from a pipe-delimited text file
+	 * @param infile the name of the text file
+	 * @throws DBException if an attribute value does not match the attribute's type
+	 */
+	private void readText(String infile) throws IOException {
+		ColumnStore store = (this.columns != null) ? this.columns : new ColumnStore(this.numericFlags());
+		new TextLoader(this.numericFlags()).load(infile, store);
+		if (this.columns == null) {
+			for (int i = 0; i < store.size(); i++) {
+				this.addTuple(new Tuple(store.row(i), this));
+			}
+		}
+	}
+
+	/**
+	 * Binds a data file to this relation without reading it. The file is read
+	 * the first time the relation's data is used, so a relation no query
+	 * touches is never loaded.
+	 * @param infile the name of the data file
+	 */
+	public void attach(String infile) {
+		this.source = infile;
+	}
+
+	/**
+	 * Reads the attached data file, if any
+	 * @throws DBException if the file is missing or a value does not match its attribute's type
+	 */
+	private void load() {
+		if (this.source == null) {
+			return;
+		}
+		String infile = this.source;
+		this.source = null;
+		try {
+			this.read(infile);
+		} catch (FileNotFoundException e) {
+			throw new DBException("Data file not found: " + infile);
+		}
+	}
+
+	/**
+	 * Populates this relation from a binary column file. The file is memory
+	 * mapped without parsing; in COLUMNAR storage each column is copied out of
+	 * the mapping only when a query first uses it.
+	 * @param infile the name of the column file
+	 * @throws DBException if the file's columns do not match the attributes' types
+	 */
+	private void readColumns(String infile) throws IOException {
+		ColumnFile file = ColumnFile.open(infile);
+		boolean[] numeric = this.numericFlags();
+		if (file.columnCount() != numeric.length) {
+			throw new DBException("Column count mismatch: " + file.columnCount() + " in " + infile
+					+ " but relation contains " + numeric.length + " attributes.");
+		}
+		for (int c = 0; c < numeric.length; c++) {
+			if (file.isNumeric(c) != numeric[c]) {
+				throw new DBException("Type mismatch for " + (numeric[c] ? "NUMERIC" : "TEXT")
+						+ " attribute: " + this.attribute_list.get(c).getName() + " in " + infile);
+			}
+		}
+		ColumnStore store = file.store();
+		if (this.columns != null && this.columns.size() == 0) {
+			this.columns = store;
+			return;
+		}
+		for (int i = 0; i < store.size(); i++) {
+			this.addTuple(new Tuple(store.row(i), this));
+		}
+	}
+
+	/**
+	 * Creates a B+-tree index on some attributes, kept in the given file. If
+	 * the file holds an index built over exactly the current rows, it is
+	 * reused; otherwise it is built afresh. The index is kept up to date as
+	 * tuples are added with addTuple() or read(); changes made directly to the
+	 * set returned by getTuples() are not seen by it.
+	 * @param file	path of the index file
+	 * @param attrs	names of the indexed attributes; range scans are on the first
+	 * @return the index
+	 * @throws DBException if an attribute is unknown or ambiguous, or the file cannot be written
+	 */
+	public AttributeIndex createIndex(String file, String... attrs) {
+		this.load();
+		if (attrs.length == 0) {
+			throw new DBException("An index needs at least one attribute");
+		}
+		int[] positions = new int[attrs.length];
+		boolean[] numeric = new boolean[attrs.length];
+		for (int k = 0; k < attrs.length; k++) {
+			positions[k] = this.lookup(attrs[k]);
+			numeric[k] = this.isNumeric(positions[k]);
+		}
+		this.numberRows();
+		AttributeIndex index = new AttributeIndex(file, attrs, positions);
+		index.open(numeric, this::numberedRow, this.storedSize());
+		this.indexes.add(index);
+		this.version = versions.incrementAndGet();
+		return index;
+	}
+
+	/**
+	 * Creates an in-memory hash index on some attributes. The index is kept up
+	 * to date as tuples are added with addTuple() or read(); changes made
+	 * directly to the set returned by getTuples() are not seen by it.
+	 * @param attrs	names of the indexed attributes
+	 * @return the index
+	 * @throws DBException if an attribute is unknown or ambiguous
+	 */
+	public HashIndex createHashIndex(String... attrs) {
+		this.load();
+		if (attrs.length == 0) {
+			throw new DBException("An index needs at least one attribute");
+		}
+		int[] positions = new int[attrs.length];
+		boolean[] numeric = new boolean[attrs.length];
+		for (int k = 0; k < attrs.length; k++) {
+			positions[k] = this.lookup(attrs[k]);
+			numeric[k] = this.isNumeric(positions[k]);
+		}
+		this.numberRows();
+		HashIndex index = new HashIndex(attrs, positions, numeric);
+		index.build(this::numberedRow, this.storedSize());
+		this.hash_indexes.add(index);
+		this.version = versions.incrementAndGet();
+		return index;
+	}
+
+	/**
+	 * Gathers statistics of the data for the planner (see Statistics), in
+	 * place of any gathered before. They are kept up to date as tuples are
+	 * added with addTuple() or read(), and gathered afresh by getStatistics()
+	 * once they are stale; changes made directly to the set returned by
+	 * getTuples() are not seen by them.
+	 * @return the statistics
+	 */
+	public Statistics analyze() {
+		this.load();
+		this.statistics = Statistics.analyze(this);
+		return this.statistics;
+	}
+
+	/**
+	 * @return the statistics of this relation, gathered afresh if they are
+	 * 			stale; null if analyze() has not been called, unless the
+	 * 			relation analyzes itself on demand
+	 */
+	public Statistics getStatistics() {
+		this.load();
+		if ((this.statistics == null) ? this.auto_analyze : this.statistics.isStale()) {
+			this.analyze();
+		}
+		return this.statistics;
+	}
+
+	/**
+	 * @return the statistics of this relation as they are, without gathering
+	 * 			them; null if they have not been gathered
+	 */
+	Statistics gatheredStatistics() {
+		return this.statistics;
+	}
+
+	/**
+	 * @param enabled	true to have getStatistics() analyze the relation the
+	 * 					first time it is called, rather than return null
+	 */
+	public void setAutoAnalyze(boolean enabled) {
+		this.auto_analyze = enabled;
+	}
+
+	/**
+	 * @return a stamp renewed whenever the attributes or indexes of this
+	 * 			relation change, so that plans made for them can be told stale;
+	 * 			stamps only grow, across all relations
+	 */
+	public long getVersion() {
+		return this.version;
+	}
+
+	/**
+	 * @return the B+-tree indexes of this relation
+	 */
+	public List<AttributeIndex> getIndexes() {
+		return this.indexes;
+	}
+
+	/**
+	 * @return the hash indexes of this relation
+	 */
+	public List<HashIndex> getHashIndexes() {
+		return this.hash_indexes;
+	}
+
+	/**
+	 * @return true if the relation has an index of either kind
+	 */
+	private boolean isIndexed() {
+		return !this.indexes.isEmpty() || !this.hash_indexes.isEmpty();
+	}
+
+	/**
+	 * In ROW storage, numbers the tuples in the order of the set if they are
+	 * not numbered yet; COLUMNAR rows are numbered by their position
+	 */
+	private void numberRows() {
+		if (this.columns == null && this.numbered == null) {
+			this.numbered = new ArrayList<>(this.tuples);
+		}
+	}
+
+	/**
+	 * @param id	a row number (see AttributeIndex)
+	 * @return the row with the given number
+	 */
+	public Row numberedRow(int id) {
+		if (this.columns != null) {
+			ColumnStore.Cursor row = this.columns.cursor();
+			row.setRow(id);
+			return row;
+		}
+		return new ListRow().reset(this.numbered.get(id).data);
+	}
+
+	/**
+	 * @param id	a row number (see AttributeIndex)
+	 * @return the tuple with the given number, in either storage
+	 */
+	public Tuple numberedTuple(int id) {
+		if (this.columns != null) {
+			return new Tuple(this.columns.row(id), this);
+		}
+		return this.numbered.get(id);
+	}
+
+	/**
+	 * Adds a new row to every index
+	 */
+	private void index(Row row, int id) {
+		for (AttributeIndex index : this.indexes) {
+			index.insert(row, id);
+			if (!this.bulk) {
+				index.flush();
+			}
+		}
+		for (HashIndex index : this.hash_indexes) {
+			index.insert(row, id);
+		}
+	}
+
+	/**
+	 * Writes the data of this relation to a binary column file, which read()
+	 * loads without parsing
+	 * @param outfile the name of the column file, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(String outfile) throws IOException {
+		this.load();
+		ColumnStore store = this.columns;
+		if (store == null) {
+			store = new ColumnStore(this.numericFlags());
+			for (Tuple t : this.tuples) {
+				store.add(t.data);
+			}
 		}
+		ColumnFile.write(store, outfile);
 	}
 
 	/**
@@ -91,6 +380,7 @@ public class Relation extends AbstractRelation {
 	@Override
 	public void setAttributes(List<Attribute> list) {
 		super.setAttributes(list);
+		this.version = versions.incrementAndGet();
 		this.attribute_map.clear();
 		for (int i = 0; i < attribute_list.size(); i++) {
 			AttributeMapEntry entry = this.attribute_map.get(this.attribute_list.get(i).getName());
@@ -116,9 +406,27 @@ public class Relation extends AbstractRelation {
 	 */
 	@Override
 	public void addTuple(Tuple new_tuple) {
+		this.load();
 		if (new_tuple != null) {
 			if (new_tuple.size() == this.attribute_list.size()) {
-				this.tuples.add(new_tuple);
+				boolean added;
+				if (this.columns != null) {
+					added = this.columns.add(new_tuple.data);
+					if (added && this.isIndexed() && !this.bulk) {
+						this.index(new ListRow().reset(new_tuple.data), this.columns.size() - 1);
+					}
+				}
+				else {
+					added = this.tuples.add(new_tuple);
+					if (added && this.numbered != null) {
+						this.numbered.add(new_tuple);
+						this.index(new ListRow().reset(new_tuple.data), this.numbered.size() - 1);
+					}
+				}
+				if (added && this.statistics != null && !this.bulk) {
+					// read() counts its tuples once it is done
+					this.statistics.add(new ListRow().reset(new_tuple.data));
+				}
 			}
 			else {
 				throw new IllegalArgumentException("Tuple size mismatch: " +
@@ -128,6 +436,172 @@ public class Relation extends AbstractRelation {
 		}
 	}
 
+	/**
+	 * @return the storage layout of this relation
+	 */
+	public Storage getStorage() {
+		return (this.columns != null) ? Storage.COLUMNAR : Storage.ROW;
+	}
+
+	/**
+	 * Switches the storage layout, converting any data already stored
+	 * @param mode	the new layout
+	 */
+	public void setStorage(Storage mode) {
+		if (mode == this.getStorage()) {
+			return;
+		}
+		if (this.source != null && this.storedSize() == 0) {
+			// nothing read yet: the attached file will be read into the new layout
+			this.columns = (mode == Storage.COLUMNAR) ? new ColumnStore(this.numericFlags()) : null;
+			return;
+		}
+		this.load();
+		if (mode == Storage.COLUMNAR) {
+			// keep the row numbers of the indexes
+			ColumnStore store = new ColumnStore(this.numericFlags());
+			for (Tuple t : (this.numbered != null) ? this.numbered : this.tuples) {
+				store.add(t.data);
+			}
+			this.tuples.clear();
+			this.numbered = null;
+			this.columns = store;
+		}
+		else {
+			Set<Tuple> materialized = this.rows();
+			if (this.isIndexed()) {
+				this.numbered = new ArrayList<>();
+				for (int i = 0; i < this.columns.size(); i++) {
+					this.numbered.add(new Tuple(this.columns.row(i), this));
+				}
+				materialized = new HashSet<>(this.numbered);
+			}
+			this.columns = null;
+			this.tuples = materialized;
+		}
+	}
+
+	/**
+	 * @return the column store of a COLUMNAR relation, or null in ROW storage
+	 */
+	public ColumnStore getColumns() {
+		this.load();
+		return this.columns;
+	}
+
+	/**
+	 * Replaces the data of this relation with the given columns and switches to
+	 * COLUMNAR storage. The store's layout must match the attributes.
+	 * @param store	the new data
+	 */
+	public void setColumns(ColumnStore store) {
+		this.source = null;
+		this.tuples.clear();
+		this.numbered = null;
+		this.columns = store;
+		this.statistics = null;
+		for (AttributeIndex index : this.indexes) {
+			index.open(this.indexLayout(index), this::numberedRow, store.size());
+		}
+		for (HashIndex index : this.hash_indexes) {
+			index.build(this::numberedRow, store.size());
+		}
+	}
+
+	/**
+	 * @return the number of tuples in this relation
+	 */
+	public int size() {
+		this.load();
+		return this.storedSize();
+	}
+
+	/**
+	 * @return the number of tuples read so far
+	 */
+	private int storedSize() {
+		return (this.columns != null) ? this.columns.size() : this.tuples.size();
+	}
+
+	/**
+	 * In COLUMNAR storage the tuples are materialized and the relation switches
+	 * to ROW storage, since callers may modify the returned set.
+	 * @return the set of tuples currently stored
+	 */
+	@Override
+	public Set<Tuple> getTuples() {
+		this.load();
+		this.setStorage(Storage.ROW);
+		return this.tuples;
+	}
+
+	/**
+	 * Read-only access to the tuples that does not change the storage layout.
+	 * In COLUMNAR storage the tuples are materialized on each call.
+	 * @return the tuples of this relation; must not be modified
+	 */
+	public Set<Tuple> rows() {
+		this.load();
+		if (this.columns == null) {
+			return this.tuples;
+		}
+		Set<Tuple> set = new HashSet<>();
+		for (int i = 0; i < this.columns.size(); i++) {
+			set.add(new Tuple(this.columns.row(i), this));
+		}
+		return set;
+	}
+
+	/**
+	 * @return a cursor over the rows of this relation, in either storage
+	 */
+	public RowCursor cursor() {
+		this.load();
+		return (this.columns != null) ? this.columns.cursor() : new TupleCursor(this.tuples);
+	}
+
+	/**
+	 * @return a deep copy of this relation, in the same storage layout
+	 */
+	@Override
+	public Object clone() {
+		this.load();
+		if (this.columns == null) {
+			return super.clone();
+		}
+		Relation r = new Relation();
+		List<Attribute> list = new ArrayList<>();
+		for (Attribute a : this.attribute_list) {
+			list.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+		}
+		r.setAttributes(list);
+		r.setColumns(this.columns.copy());
+		return r;
+	}
+
+	/**
+	 * @return for each attribute of an index, true if it is NUMERIC
+	 */
+	private boolean[] indexLayout(AttributeIndex index) {
+		String[] attrs = index.getAttributes();
+		boolean[] numeric = new boolean[attrs.length];
+		for (int k = 0; k < attrs.length; k++) {
+			numeric[k] = this.isNumeric(this.lookup(attrs[k]));
+		}
+		return numeric;
+	}
+
+	/**
+	 * @return for each attribute, true if it is NUMERIC
+	 */
+	private boolean[] numericFlags() {
+		boolean[] flags = new boolean[this.attribute_list.size()];
+		for (int i = 0; i < flags.length; i++) {
+			flags[i] = this.isNumeric(i);
+		}
+		return flags;
+	}
+
 	/**
 	 * @return the string representation of the relation's definition
 	 */
@@ -155,6 +629,7 @@ public class Relation extends AbstractRelation {
 	 */
 	@Override
 	public String toString() {
+		this.load();
 		StringBuilder ret = new StringBuilder();
 		StringBuilder line = new StringBuilder();
 
@@ -197,11 +672,17 @@ public class Relation extends AbstractRelation {
 		ret.append(line);
 
 		// now put each tuple on a separate row
-		if (this.tuples.isEmpty()) {
+		if (this.size() == 0) {
 			ret.append("(Empty)\n");
 		}
+		else if (this.columns != null) {
+			// in storage order, which keeps the order of an ordered result
+			for (int i = 0; i < this.columns.size(); i++) {
+				ret.append(new Tuple(this.columns.row(i), this).toString()).append("\n");
+			}
+		}
 		else {
-			for (Tuple t : this.tuples) {
+			for (Tuple t : this.rows()) {
 				ret.append(t.toString()).append("\n");
 			}
 		}
@@ -246,6 +727,16 @@ public class Relation extends AbstractRelation {
 		return entry.getPos();
 	}
 
+	/**
+	 * Tells expression binding whether the attribute at a position is numeric
+	 * @param pos	position of the attribute in the list
+	 * @return true if the attribute is NUMERIC, false if TEXT
+	 */
+	@Override
+	public boolean isNumeric(int pos) {
+		return this.attribute_list.get(pos).getType() == Attribute.Type.NUMERIC;
+	}
+
 	/**
 	 * Inner class to provide fast location for attributes
 	 */
@@ -0,0 +1,778 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import exceptions.DBException;
+import solver.ArithmeticNode;
+import solver.ColumnNode;
+import solver.ComparisonNode;
+import solver.LiteralNode;
+import solver.LogicalNode;
+import solver.Node;
+import solver.NotNode;
+import solver.ParameterNode;
+import solver.Token;
+
+/**
+ * Recursive-descent parser for SQL queries over the relations of a database.
+ * A query becomes a LogicalPlan of the shape
+ * <pre>
+ *   Scan / Join (FROM) - Filter (WHERE) - Aggregate (GROUP BY, or aggregates
+ *   in the select list) - Sort (ORDER BY) - Project (select list) - Limit (LIMIT)
+ * </pre>
+ * from the following grammar. Keywords are case-insensitive; names are not.
+ * <pre>
+ *   query   := SELECT [DISTINCT] items FROM from [WHERE cond]
+ *              [GROUP BY column (',' column)*] [ORDER BY key (',' key)*] [LIMIT NUMBER] [';']
+ *   items   := '*' | item (',' item)*
+ *   item    := (column | agg) [[AS] NAME]
+ *   agg     := (MAX | MIN | COUNT | SUM | AVG) '(' [DISTINCT] column ')' | COUNT '(' '*' ')'
+ *   from    := table (',' table | CROSS JOIN table | NATURAL JOIN table | [INNER] JOIN table ON cond)*
+ *   table   := NAME [[AS] NAME]
+ *   key     := (column | agg | NAME) [ASC | DESC]		the NAME being a select list alias
+ *   column  := NAME | NAME.NAME
+ *   cond    := and ((OR | '||') and)*
+ *   and     := not ((AND | '&&') not)*
+ *   not     := (NOT | '!') not | cmp
+ *   cmp     := sum [('=' | '!=' | '<>' | '<' | '<=' | '>' | '>=') sum | IS [NOT] NULL]
+ *   sum     := product (('+' | '-') product)*
+ *   product := unary (('*' | '/' | '%') unary)*
+ *   unary   := ('-' | '+') unary | primary
+ *   primary := NUMBER | TEXT | NULL | TRUE | FALSE | '?' | column | '(' cond ')'
+ * </pre>
+ * Text literals are quoted with ' (a quote inside is doubled); a name may be
+ * quoted with " to use a keyword or other characters. A table alias qualifies
+ * columns in place of the table's name. Conditions become the same expression
+ * trees as select() conditions, so they are bound and compiled the same way.
+ * A ? is a parameter of a prepared query (see PreparedStatement).
+ * Results are sets, so DISTINCT is implied. HAVING, expressions in the select
+ * list, subqueries, outer joins and a table appearing twice in FROM are not
+ * supported.
+ */
+public class SQLParser {
+	private static final Set<String> KEYWORDS = new HashSet<>();
+	static {
+		for (String k : new String[] {"SELECT", "DISTINCT", "FROM", "WHERE", "GROUP", "BY", "ORDER",
+				"ASC", "DESC", "LIMIT", "JOIN", "NATURAL", "CROSS", "INNER", "ON", "AS", "AND", "OR",
+				"NOT", "IS", "NULL", "TRUE", "FALSE", "HAVING"}) {
+			KEYWORDS.add(k);
+		}
+	}
+
+	private final AbstractDB db;
+	private final String src;
+	private final List<Token> tokens;
+	private int next;
+	private int parameters;
+
+	/** table alias or name, to table name */
+	private final Map<String, String> tables = new HashMap<>();
+
+	/**
+	 * Creates a parser for the given query
+	 * @param db	the database whose relations the query reads
+	 * @param sql	a query
+	 * @throws DBException if the query cannot be tokenized
+	 */
+	public SQLParser(AbstractDB db, String sql) throws DBException {
+		this.db = db;
+		this.src = sql;
+		this.tokens = this.tokenize();
+		this.next = 0;
+		this.parameters = 0;
+	}
+
+	/**
+	 * @return the number of parameters (?) the parsed query has
+	 */
+	public int getParameterCount() {
+		return this.parameters;
+	}
+
+	/**
+	 * Writes the query in a canonical form: its tokens separated by single
+	 * spaces, with keywords in upper case. Queries that differ only in layout
+	 * or in the case of keywords have the same form.
+	 * @return the normalized query
+	 */
+	public String normalized() {
+		StringBuilder sb = new StringBuilder();
+		for (Token t : this.tokens) {
+			if (t.getKind() == Token.Kind.EOF) {
+				break;
+			}
+			if (sb.length() > 0) {
+				sb.append(' ');
+			}
+			String text = t.getText();
+			if (this.isKeyword(t)) {
+				sb.append(text.toUpperCase(Locale.ROOT));
+			}
+			else if (t.getKind() == Token.Kind.TEXT || (t.getKind() == Token.Kind.IDENT && text.charAt(0) == '"')) {
+				// double the quotes inside again, so that the form cannot be misread
+				String quote = text.substring(0, 1);
+				String inner = text.substring(1, text.length() - 1);
+				sb.append(quote).append(inner.replace(quote, quote + quote)).append(quote);
+			}
+			else {
+				sb.append(text);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return the plan of the query
+	 * @throws DBException if the query is not well formed or does not fit the schema
+	 */
+	public LogicalPlan parse() throws DBException {
+		this.expectKeyword("SELECT");
+		this.acceptKeyword("DISTINCT");		// results are sets anyway
+		List<Item> items = this.parseItems();
+		this.expectKeyword("FROM");
+		LogicalPlan plan = this.parseFrom();
+		if (this.acceptKeyword("WHERE")) {
+			plan = new LogicalPlan.Filter(plan, this.parseOr());
+		}
+		List<String> groups = new ArrayList<>();
+		if (this.acceptKeyword("GROUP")) {
+			this.expectKeyword("BY");
+			do {
+				groups.add(this.resolve(this.expectName()));
+			} while (this.acceptOp(","));
+		}
+		if (this.peekKeyword("HAVING")) {
+			throw this.error("HAVING is not supported");
+		}
+		List<Item> keys = new ArrayList<>();
+		List<Boolean> descending = new ArrayList<>();
+		if (this.acceptKeyword("ORDER")) {
+			this.expectKeyword("BY");
+			do {
+				keys.add(this.parseItem());
+				descending.add(!this.acceptKeyword("ASC") && this.acceptKeyword("DESC"));
+			} while (this.acceptOp(","));
+		}
+		int limit = -1;
+		if (this.acceptKeyword("LIMIT")) {
+			Token t = this.peek();
+			if (t.getKind() != Token.Kind.NUMBER || !t.getText().matches("\\d+")) {
+				throw this.error("LIMIT needs a row count");
+			}
+			try {
+				limit = Integer.parseInt(t.getText());
+			} catch (NumberFormatException e) {
+				throw this.error("LIMIT is too large");
+			}
+			this.next++;
+		}
+		this.acceptOp(";");
+		if (this.peek().getKind() != Token.Kind.EOF) {
+			throw this.error("unexpected '" + this.peek() + "'");
+		}
+
+		// what the select list and sort keys read
+		for (Item item : items) {
+			if (item.column != null) {
+				item.column = this.resolve(item.column);
+			}
+		}
+		for (Item key : keys) {
+			key.ref = (key.fn == null) ? this.alias(items, key.column) : null;
+			if (key.ref == null && key.column != null) {
+				key.column = this.resolve(key.column);
+			}
+		}
+		boolean star = items.get(0).star;
+		boolean aggregated = !groups.isEmpty();
+		for (Item item : items) {
+			aggregated |= item.fn != null;
+		}
+		for (Item key : keys) {
+			aggregated |= key.fn != null;
+		}
+		if (aggregated) {
+			if (star) {
+				throw new DBException("Invalid query: SELECT * cannot be combined with aggregates "
+						+ "or GROUP BY in " + this.src);
+			}
+			plan = this.aggregate(plan, items, keys, groups);
+		}
+		else {
+			for (Item item : items) {
+				item.input = item.column;
+			}
+			for (Item key : keys) {
+				key.input = key.column;
+			}
+		}
+
+		if (!keys.isEmpty()) {
+			String[] names = new String[keys.size()];
+			boolean[] desc = new boolean[keys.size()];
+			for (int k = 0; k < names.length; k++) {
+				Item key = keys.get(k);
+				names[k] = (key.ref != null) ? key.ref.input : key.input;
+				desc[k] = descending.get(k);
+			}
+			plan = new LogicalPlan.Sort(plan, names, desc);
+		}
+		if (!star) {
+			String[] names = new String[items.size()];
+			String[] aliases = new String[items.size()];
+			for (int i = 0; i < names.length; i++) {
+				Item item = items.get(i);
+				names[i] = item.input;
+				aliases[i] = item.alias;
+				if (aliases[i] == null && item.fn == Agg.COUNT_ALL) {
+					aliases[i] = "COUNT(*)";
+				}
+			}
+			plan = new LogicalPlan.Project(plan, names, aliases);
+		}
+		if (limit >= 0) {
+			plan = new LogicalPlan.Limit(plan, limit);
+		}
+		return plan;
+	}
+
+	/**
+	 * Adds the Aggregate node, and names each select item and sort key after
+	 * the aggregate's output attribute it reads
+	 */
+	private LogicalPlan aggregate(LogicalPlan input, List<Item> items, List<Item> keys, List<String> groups) {
+		Relation schema = input.schema();
+		List<Attribute> attributes = input.attributes();
+
+		// grouping attributes, by the shortest name that identifies them
+		String[] group_names = new String[groups.size()];
+		int[] group_pos = new int[groups.size()];
+		for (int g = 0; g < group_names.length; g++) {
+			group_pos[g] = schema.lookup(groups.get(g));
+			group_names[g] = this.shortName(schema, group_pos[g], groups.get(g));
+		}
+
+		// each distinct function and attribute once
+		List<Agg> fns = new ArrayList<>();
+		List<String> attrs = new ArrayList<>();
+		List<Item> all = new ArrayList<>(items);
+		all.addAll(keys);
+		for (Item item : all) {
+			if (item.ref != null) {
+				continue;
+			}
+			if (item.fn == null) {
+				int pos = schema.lookup(item.column);
+				int g = 0;
+				while (g < group_pos.length && group_pos[g] != pos) {
+					g++;
+				}
+				if (g == group_pos.length) {
+					throw new DBException("Invalid query: " + item.column + " must appear in GROUP BY "
+							+ "or in an aggregate function in " + this.src);
+				}
+				item.input = group_names[g];
+				continue;
+			}
+			String attr;
+			if (item.column == null) {
+				// COUNT(*) counts every row, whichever attribute it reads
+				attr = null;
+				for (int i = 0; i < attributes.size() && attr == null; i++) {
+					String name = attributes.get(i).getName();
+					if (this.position(schema, name) == i) {
+						attr = name;
+					}
+				}
+				if (attr == null) {
+					throw new DBException("COUNT(*) needs an attribute with a unique name");
+				}
+			}
+			else {
+				int pos = schema.lookup(item.column);
+				attr = attributes.get(pos).getName();
+				if (this.position(schema, attr) != pos) {
+					throw new DBException("Attribute: " + item.column + " is ambiguous; "
+							+ "aggregates need a unique attribute name");
+				}
+			}
+			int k = 0;
+			while (k < fns.size() && !(fns.get(k) == item.fn && attrs.get(k).equals(attr))) {
+				k++;
+			}
+			if (k == fns.size()) {
+				fns.add(item.fn);
+				attrs.add(attr);
+			}
+			item.input = item.fn.name() + "(" + attr + ")";
+		}
+		return new LogicalPlan.Aggregate(input, fns.toArray(new Agg[0]), attrs.toArray(new String[0]),
+				group_names);
+	}
+
+	/**
+	 * @return the plain name of the attribute at pos if that identifies it, else the given name
+	 */
+	private String shortName(Relation schema, int pos, String name) {
+		String plain = schema.getAttributes().get(pos).getName();
+		return (this.position(schema, plain) == pos) ? plain : name;
+	}
+
+	/**
+	 * @return the position of an attribute, or -1 if it does not exist or is ambiguous
+	 */
+	private int position(Relation schema, String name) {
+		try {
+			return schema.lookup(name);
+		} catch (DBException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @return the select item with the given alias, or null if none
+	 */
+	private Item alias(List<Item> items, String name) {
+		for (Item item : items) {
+			if (name != null && name.equals(item.alias)) {
+				return item;
+			}
+		}
+		return null;
+	}
+
+	private List<Item> parseItems() {
+		List<Item> items = new ArrayList<>();
+		if (this.acceptOp("*")) {
+			Item star = new Item();
+			star.star = true;
+			items.add(star);
+			return items;
+		}
+		do {
+			Item item = this.parseItem();
+			if (this.acceptKeyword("AS")) {
+				item.alias = this.expectName();
+			}
+			else if (this.peek().getKind() == Token.Kind.IDENT && !this.isKeyword(this.peek())) {
+				item.alias = this.expectName();
+			}
+			items.add(item);
+		} while (this.acceptOp(","));
+		return items;
+	}
+
+	/**
+	 * Parses a column or an aggregate
+	 */
+	private Item parseItem() {
+		Item item = new Item();
+		Token t = this.peek();
+		String name = this.expectName();
+		if (t.getKind() == Token.Kind.IDENT && this.peek().getKind() == Token.Kind.LPAREN) {
+			this.next++;
+			boolean distinct = this.acceptKeyword("DISTINCT");
+			String fn = name.toUpperCase(Locale.ROOT);
+			if (fn.equals("COUNT") && !distinct && this.acceptOp("*")) {
+				item.fn = Agg.COUNT_ALL;
+			}
+			else {
+				item.column = this.expectName();
+				item.fn = function(fn, distinct);
+				if (item.fn == null) {
+					throw new DBException("Invalid query: unknown aggregate function " + name
+							+ (distinct ? "(DISTINCT ...)" : "") + " in " + this.src);
+				}
+			}
+			this.expect(Token.Kind.RPAREN, ")");
+			return item;
+		}
+		item.column = name;
+		return item;
+	}
+
+	/**
+	 * @return the aggregation function of a SQL aggregate, or null if there is none
+	 */
+	private static Agg function(String fn, boolean distinct) {
+		switch (fn) {
+			case "COUNT":
+				return distinct ? Agg.COUNT_DISTINCT : Agg.COUNT;
+			case "SUM":
+				return distinct ? Agg.SUM_DISTINCT : Agg.SUM;
+			case "AVG":
+				return distinct ? Agg.AVG_DISTINCT : Agg.AVG;
+			case "MAX":
+				return Agg.MAX;
+			case "MIN":
+				return Agg.MIN;
+			default:
+				return null;
+		}
+	}
+
+	private LogicalPlan parseFrom() {
+		LogicalPlan plan = this.parseTable();
+		while (true) {
+			if (this.acceptOp(",")) {
+				plan = new LogicalPlan.Join(plan, this.parseTable(), null);
+			}
+			else if (this.acceptKeyword("CROSS")) {
+				this.expectKeyword("JOIN");
+				plan = new LogicalPlan.Join(plan, this.parseTable(), null);
+			}
+			else if (this.acceptKeyword("NATURAL")) {
+				this.expectKeyword("JOIN");
+				plan = new LogicalPlan.NaturalJoin(plan, this.parseTable());
+			}
+			else if (this.peekKeyword("INNER") || this.peekKeyword("JOIN")) {
+				this.acceptKeyword("INNER");
+				this.expectKeyword("JOIN");
+				LogicalPlan right = this.parseTable();
+				if (!this.acceptKeyword("ON")) {
+					throw this.error("JOIN needs ON (or use NATURAL JOIN or CROSS JOIN)");
+				}
+				plan = new LogicalPlan.Join(plan, right, this.parseOr());
+			}
+			else {
+				return plan;
+			}
+		}
+	}
+
+	private LogicalPlan parseTable() {
+		Token t = this.peek();
+		String name = this.expectName();
+		AbstractRelation r = this.db.getRelation(name);
+		if (!(r instanceof Relation)) {
+			throw new DBException("Invalid query: no relation " + name + " at position " + t.getPos()
+					+ " in " + this.src);
+		}
+		String alias = name;
+		if (this.acceptKeyword("AS") || (this.peek().getKind() == Token.Kind.IDENT && !this.isKeyword(this.peek()))) {
+			alias = this.expectName();
+		}
+		if (this.tables.containsValue(name) || this.tables.containsKey(alias)) {
+			throw new DBException("Invalid query: " + name + " appears twice in FROM in " + this.src);
+		}
+		this.tables.put(alias, name);
+		this.tables.put(name, name);
+		return new LogicalPlan.Scan((Relation) r);
+	}
+
+	/**
+	 * Replaces a table alias qualifying a column name with the table's name
+	 */
+	private String resolve(String column) {
+		int dot = column.indexOf('.');
+		if (dot > 0) {
+			String table = this.tables.get(column.substring(0, dot));
+			if (table != null) {
+				return table + column.substring(dot);
+			}
+		}
+		return column;
+	}
+
+	private Node parseOr() {
+		Node left = this.parseAnd();
+		while (this.acceptKeyword("OR") || this.acceptOp("||")) {
+			left = new LogicalNode("||", left, this.parseAnd());
+		}
+		return left;
+	}
+
+	private Node parseAnd() {
+		Node left = this.parseNot();
+		while (this.acceptKeyword("AND") || this.acceptOp("&&")) {
+			left = new LogicalNode("&&", left, this.parseNot());
+		}
+		return left;
+	}
+
+	private Node parseNot() {
+		if (this.acceptKeyword("NOT") || this.acceptOp("!")) {
+			return new NotNode(this.parseNot());
+		}
+		return this.parseComparison();
+	}
+
+	private Node parseComparison() {
+		Node left = this.parseSum();
+		Token t = this.peek();
+		if (this.acceptKeyword("IS")) {
+			boolean not = this.acceptKeyword("NOT");
+			this.expectKeyword("NULL");
+			return new ComparisonNode(not ? "!=" : "=", left, new LiteralNode(Node.Type.NULL, null));
+		}
+		if (t.getKind() == Token.Kind.OP) {
+			switch (t.getText()) {
+				case "=":
+				case "!=":
+				case "<":
+				case "<=":
+				case ">":
+				case ">=":
+					this.next++;
+					return new ComparisonNode(t.getText(), left, this.parseSum());
+				default:
+			}
+		}
+		return left;
+	}
+
+	private Node parseSum() {
+		Node left = this.parseProduct();
+		while (this.peek().is(Token.Kind.OP, "+") || this.peek().is(Token.Kind.OP, "-")) {
+			String op = this.tokens.get(this.next++).getText();
+			left = new ArithmeticNode(op, left, this.parseProduct());
+		}
+		return left;
+	}
+
+	private Node parseProduct() {
+		Node left = this.parseUnary();
+		while (this.peek().is(Token.Kind.OP, "*") || this.peek().is(Token.Kind.OP, "/")
+				|| this.peek().is(Token.Kind.OP, "%")) {
+			String op = this.tokens.get(this.next++).getText();
+			left = new ArithmeticNode(op, left, this.parseUnary());
+		}
+		return left;
+	}
+
+	private Node parseUnary() {
+		if (this.acceptOp("-")) {
+			if (this.peek().getKind() == Token.Kind.NUMBER) {
+				return new LiteralNode(Node.Type.NUMBER, -this.parseNumber(this.tokens.get(this.next++)));
+			}
+			return new ArithmeticNode("-", new LiteralNode(Node.Type.NUMBER, 0.0), this.parseUnary());
+		}
+		if (this.acceptOp("+")) {
+			return this.parseUnary();
+		}
+		return this.parsePrimary();
+	}
+
+	private Node parsePrimary() {
+		Token t = this.peek();
+		switch (t.getKind()) {
+			case NUMBER:
+				this.next++;
+				return new LiteralNode(Node.Type.NUMBER, this.parseNumber(t));
+			case TEXT:
+				this.next++;
+				return new LiteralNode(Node.Type.TEXT, t.getText());
+			case LPAREN:
+				this.next++;
+				Node inner = this.parseOr();
+				this.expect(Token.Kind.RPAREN, ")");
+				return inner;
+			default:
+		}
+		if (this.acceptOp("?")) {
+			return new ParameterNode(++this.parameters);
+		}
+		if (this.acceptKeyword("NULL")) {
+			return new LiteralNode(Node.Type.NULL, null);
+		}
+		if (this.acceptKeyword("TRUE")) {
+			return new LiteralNode(Node.Type.BOOLEAN, true);
+		}
+		if (this.acceptKeyword("FALSE")) {
+			return new LiteralNode(Node.Type.BOOLEAN, false);
+		}
+		return new ColumnNode(this.resolve(this.expectName()));
+	}
+
+	private double parseNumber(Token t) {
+		try {
+			return Double.parseDouble(t.getText());
+		} catch (NumberFormatException e) {
+			throw this.error("bad number '" + t + "'");
+		}
+	}
+
+	private Token peek() {
+		return this.tokens.get(this.next);
+	}
+
+	/**
+	 * @return true if the token is an unquoted keyword
+	 */
+	private boolean isKeyword(Token t) {
+		return t.getKind() == Token.Kind.IDENT && t.getText().charAt(0) != '"'
+				&& KEYWORDS.contains(t.getText().toUpperCase(Locale.ROOT));
+	}
+
+	private boolean peekKeyword(String keyword) {
+		Token t = this.peek();
+		return this.isKeyword(t) && t.getText().equalsIgnoreCase(keyword);
+	}
+
+	private boolean acceptKeyword(String keyword) {
+		if (this.peekKeyword(keyword)) {
+			this.next++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expectKeyword(String keyword) {
+		if (!this.acceptKeyword(keyword)) {
+			throw this.error("expected " + keyword);
+		}
+	}
+
+	private boolean acceptOp(String op) {
+		if (this.peek().is(Token.Kind.OP, op)) {
+			this.next++;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(Token.Kind kind, String text) {
+		if (!this.peek().is(kind, text)) {
+			throw this.error("expected '" + text + "'");
+		}
+		this.next++;
+	}
+
+	/**
+	 * @return a name, unquoted
+	 */
+	private String expectName() {
+		Token t = this.peek();
+		if (t.getKind() != Token.Kind.IDENT || this.isKeyword(t)) {
+			throw this.error("expected a name");
+		}
+		this.next++;
+		String name = t.getText();
+		return (name.charAt(0) == '"') ? name.substring(1, name.length() - 1) : name;
+	}
+
+	private DBException error(String what) {
+		Token t = this.peek();
+		String at = (t.getKind() == Token.Kind.EOF) ? "at end" : "at position " + t.getPos();
+		return new DBException("Invalid query: " + what + " " + at + " in " + this.src);
+	}
+
+	/**
+	 * Splits the query into tokens. Names keep their quotes so keywords can be
+	 * told from quoted names; text literals are normalized to how TEXT values
+	 * are stored, in single quotes.
+	 * @return the tokens, terminated by an EOF token
+	 * @throws DBException if the query contains an unexpected character
+	 */
+	private List<Token> tokenize() {
+		List<Token> tokens = new ArrayList<>();
+		int pos = 0;
+		int n = this.src.length();
+		while (true) {
+			while (pos < n && Character.isWhitespace(this.src.charAt(pos))) {
+				pos++;
+			}
+			if (pos >= n) {
+				tokens.add(new Token(Token.Kind.EOF, "", pos));
+				return tokens;
+			}
+			int start = pos;
+			char c = this.src.charAt(pos);
+			if (c == '\'' || c == '"') {
+				StringBuilder sb = new StringBuilder().append(c);
+				pos++;
+				while (true) {
+					if (pos >= n) {
+						throw new DBException("Invalid query: unterminated " + ((c == '"') ? "name" : "text")
+								+ " at position " + start + " in " + this.src);
+					}
+					char d = this.src.charAt(pos++);
+					if (d == c) {
+						if (pos < n && this.src.charAt(pos) == c) {
+							pos++;		// a doubled quote stands for itself
+						}
+						else {
+							break;
+						}
+					}
+					sb.append(d);
+				}
+				String text = sb.append(c).toString();
+				if (c == '"' && text.length() == 2) {
+					throw new DBException("Invalid query: empty name at position " + start + " in " + this.src);
+				}
+				tokens.add(new Token((c == '"') ? Token.Kind.IDENT : Token.Kind.TEXT, text, start));
+			}
+			else if (Character.isDigit(c) || (c == '.' && pos + 1 < n && Character.isDigit(this.src.charAt(pos + 1)))) {
+				while (pos < n && Character.isDigit(this.src.charAt(pos))) {
+					pos++;
+				}
+				if (pos < n && this.src.charAt(pos) == '.') {
+					pos++;
+					while (pos < n && Character.isDigit(this.src.charAt(pos))) {
+						pos++;
+					}
+				}
+				if (pos < n && (this.src.charAt(pos) == 'e' || this.src.charAt(pos) == 'E')) {
+					int exp = pos + 1;
+					if (exp < n && (this.src.charAt(exp) == '+' || this.src.charAt(exp) == '-')) {
+						exp++;
+					}
+					if (exp < n && Character.isDigit(this.src.charAt(exp))) {
+						pos = exp;
+						while (pos < n && Character.isDigit(this.src.charAt(pos))) {
+							pos++;
+						}
+					}
+				}
+				tokens.add(new Token(Token.Kind.NUMBER, this.src.substring(start, pos), start));
+			}
+			else if (Character.isLetter(c) || c == '_' || c == '$') {
+				while (pos < n && (Character.isLetterOrDigit(this.src.charAt(pos)) || this.src.charAt(pos) == '_'
+						|| this.src.charAt(pos) == '$' || this.src.charAt(pos) == '.')) {
+					pos++;
+				}
+				tokens.add(new Token(Token.Kind.IDENT, this.src.substring(start, pos), start));
+			}
+			else if (c == '(') {
+				tokens.add(new Token(Token.Kind.LPAREN, "(", pos++));
+			}
+			else if (c == ')') {
+				tokens.add(new Token(Token.Kind.RPAREN, ")", pos++));
+			}
+			else {
+				String op = null;
+				for (String o : new String[] {"==", "!=", "<>", "<=", ">=", "&&", "||",
+						"=", "<", ">", "!", "+", "-", "*", "/", "%", ",", ";", "?"}) {
+					if (this.src.startsWith(o, pos)) {
+						op = o;
+						break;
+					}
+				}
+				if (op == null) {
+					throw new DBException("Invalid query: unexpected '" + c + "' at position " + pos
+							+ " in " + this.src);
+				}
+				pos += op.length();
+				tokens.add(new Token(Token.Kind.OP, op.equals("==") ? "=" : op.equals("<>") ? "!=" : op, start));
+			}
+		}
+	}
+
+	/**
+	 * A select list item or sort key as written, and the attribute it reads
+	 * once the plan below the projection is built
+	 */
+	private static class Item {
+		private boolean star;
+		private Agg fn;			/* aggregation function, or null for a plain column */
+		private String column;	/* column as written (aggregated column for fn), null for COUNT(*) */
+		private String alias;
+		private Item ref;		/* for a sort key naming a select list alias, that item */
+		private String input;	/* name of the attribute read, set while building the plan */
+	}
+}
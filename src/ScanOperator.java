@@ -0,0 +1,45 @@
+import java.util.ArrayList;
+import java.util.List;
+
+import solver.Row;
+import solver.RowCursor;
+
+/**
+ * Leaf of a pipeline: produces the rows of a stored relation. Columnar
+ * relations are read in place through their column cursor.
+ */
+public class ScanOperator extends Operator {
+	private final Relation relation;
+	private final List<Attribute> attributes = new ArrayList<>();
+	private RowCursor cursor;
+
+	/**
+	 * @param r	the relation to scan
+	 */
+	public ScanOperator(Relation r) {
+		this.relation = r;
+		for (Attribute a : r.getAttributes()) {
+			this.attributes.add(new Attribute(a.getRelation(), a.getType(), a.getName()));
+		}
+	}
+
+	@Override
+	public List<Attribute> attributes() {
+		return this.attributes;
+	}
+
+	@Override
+	public void open() {
+		this.cursor = this.relation.cursor();
+	}
+
+	@Override
+	public Row next() {
+		return this.cursor.next() ? this.cursor : null;
+	}
+
+	@Override
+	public void close() {
+		this.cursor = null;
+	}
+}
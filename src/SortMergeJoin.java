@@ -0,0 +1,78 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Sort-merge implementation of the natural join. Both inputs are sorted on
+ * their common attributes and merged; every tuple of a run of equal keys in
+ * r1 is paired with every tuple of the matching run in r2, so duplicate keys
+ * on either side are handled.
+ */
+public class SortMergeJoin {
+	private final JoinSpec spec;
+
+	/**
+	 * @param spec	the join to perform; must have common attributes
+	 */
+	public SortMergeJoin(JoinSpec spec) {
+		this.spec = spec;
+	}
+
+	/**
+	 * Joins the two relations
+	 * @param r1	first relation
+	 * @param r2	second relation
+	 * @return the natural join, with the same schema naturalJoin produces
+	 */
+	public Relation join(Relation r1, Relation r2) {
+		int[] lk = this.spec.leftKeys();
+		int[] rk = this.spec.rightKeys();
+		List<Tuple> left = sorted(r1, lk);
+		List<Tuple> right = sorted(r2, rk);
+
+		Relation output = new Relation();
+		output.setAttributes(this.spec.outputAttributes());
+		int i = 0;
+		int j = 0;
+		while (i < left.size() && j < right.size()) {
+			int c = JoinSpec.compareKeys(left.get(i).data, lk, right.get(j).data, rk);
+			if (c < 0) {
+				i++;
+			}
+			else if (c > 0) {
+				j++;
+			}
+			else {
+				// find the end of the run of equal keys on each side
+				int i_end = i + 1;
+				while (i_end < left.size() &&
+						JoinSpec.compareKeys(left.get(i).data, lk, left.get(i_end).data, lk) == 0) {
+					i_end++;
+				}
+				int j_end = j + 1;
+				while (j_end < right.size() &&
+						JoinSpec.compareKeys(right.get(j).data, rk, right.get(j_end).data, rk) == 0) {
+					j_end++;
+				}
+				for (int a = i; a < i_end; a++) {
+					for (int b = j; b < j_end; b++) {
+						output.addTuple(new Tuple(this.spec.combine(left.get(a).data, right.get(b).data), output));
+					}
+				}
+				i = i_end;
+				j = j_end;
+			}
+		}
+		return output;
+	}
+
+	/**
+	 * @param r		a relation
+	 * @param keys	key positions
+	 * @return the tuples of r sorted on the given positions
+	 */
+	private static List<Tuple> sorted(Relation r, int[] keys) {
+		List<Tuple> list = new ArrayList<>(r.rows());
+		list.sort((a, b) -> JoinSpec.compareKeys(a.data, keys, b.data, keys));
+		return list;
+	}
+}
@@ -0,0 +1,590 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import solver.ColumnNode;
+import solver.ComparisonNode;
+import solver.LiteralNode;
+import solver.LogicalNode;
+import solver.Node;
+import solver.NotNode;
+import solver.Ops;
+import solver.Row;
+import solver.RowCursor;
+import storage.HyperLogLog;
+
+/**
+ * Statistics of a relation for the planner, as gathered by Relation.analyze():
+ * the number of rows, and for each attribute the number of distinct values,
+ * the number of nulls, the least and greatest values and an equi-depth
+ * histogram. A relation of up to SAMPLE_ROWS rows is read in full; a larger
+ * one is analyzed from a random sample of about that many rows, with the
+ * counts scaled up to the whole relation and the number of distinct values
+ * estimated from how often values repeat in the sample.
+ * <p>
+ * Tuples added one at a time with addTuple() update the statistics as they
+ * come: the counts, the least and greatest values, the bucket each value
+ * falls in, and a HyperLogLog sketch that tells values not seen before. The
+ * buckets drift from equal depth as they do, so once more than STALE of the
+ * analyzed rows have been added the statistics are stale, and the relation
+ * gathers them afresh.
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class Statistics {
+	/** relations with more rows than this are analyzed from a sample of about this many */
+	public static final int SAMPLE_ROWS = 30000;
+	/** number of buckets of a histogram */
+	public static final int BUCKETS = 32;
+	/** fraction of the analyzed rows that may be added before the statistics are stale */
+	static final double STALE = 0.2;
+	/** rows that may be added to a small relation before its statistics are stale */
+	static final int STALE_ROWS = 100;
+	/** selectivity assumed for a condition the statistics say nothing about */
+	static final double UNKNOWN = 1.0 / 3;
+	/** seed of the sampling, so the same data always gives the same statistics */
+	private static final long SEED = 0x5EED;
+
+	private final Column[] columns;
+	private final int analyzed;
+	private final boolean sampled;
+	private int rows;
+	private int changes;
+
+	private Statistics(Column[] columns, int rows, boolean sampled) {
+		this.columns = columns;
+		this.analyzed = rows;
+		this.rows = rows;
+		this.sampled = sampled;
+	}
+
+	/**
+	 * Gathers the statistics of a relation, from a sample if it has more than
+	 * SAMPLE_ROWS rows
+	 * @param r	a relation
+	 * @return its statistics
+	 */
+	public static Statistics analyze(Relation r) {
+		return analyze(r, SAMPLE_ROWS);
+	}
+
+	/**
+	 * Gathers the statistics of a relation
+	 * @param r			a relation
+	 * @param sample	the relation is read in full if it has at most this many
+	 * 					rows, else a random sample of about this many is
+	 * @return its statistics
+	 */
+	public static Statistics analyze(Relation r, int sample) {
+		int n = r.size();
+		int width = r.getAttributes().size();
+		List<Comparable>[] values = new List[width];
+		int[] nulls = new int[width];
+		for (int c = 0; c < width; c++) {
+			values[c] = new ArrayList<>();
+		}
+		double p = (n > sample) ? (double) sample / n : 1;
+		Random random = new Random(SEED);
+		RowCursor row = r.cursor();
+		int read = 0;
+		while (row.next()) {
+			if (p < 1 && random.nextDouble() >= p) {
+				continue;
+			}
+			read++;
+			for (int c = 0; c < width; c++) {
+				Comparable v = row.get(c);
+				if (v == null) {
+					nulls[c]++;
+				}
+				else {
+					values[c].add(v);
+				}
+			}
+		}
+		Column[] columns = new Column[width];
+		for (int c = 0; c < width; c++) {
+			columns[c] = new Column(r.getAttributes().get(c).getName(), r.isNumeric(c), values[c], nulls[c],
+					read, n, p < 1);
+		}
+		return new Statistics(columns, n, p < 1);
+	}
+
+	/**
+	 * Counts a tuple added to the relation
+	 * @param row	values of the tuple
+	 */
+	void add(Row row) {
+		this.rows++;
+		this.changes++;
+		for (int c = 0; c < this.columns.length; c++) {
+			this.columns[c].add(row.get(c));
+		}
+	}
+
+	/**
+	 * Counts tuples added to the relation in bulk, whose values are not looked at
+	 * @param count	the number of tuples
+	 */
+	void added(int count) {
+		this.rows += count;
+		this.changes += count;
+	}
+
+	/**
+	 * @return true if enough tuples have been added since the analysis that it should be redone
+	 */
+	public boolean isStale() {
+		return this.changes > Math.max(STALE * this.analyzed, STALE_ROWS);
+	}
+
+	/**
+	 * @return true if the statistics were gathered from a sample
+	 */
+	public boolean isSampled() {
+		return this.sampled;
+	}
+
+	/**
+	 * @return the number of rows of the relation
+	 */
+	public int getRows() {
+		return this.rows;
+	}
+
+	/**
+	 * @param pos	position of an attribute
+	 * @return the statistics of the attribute
+	 */
+	public Column getColumn(int pos) {
+		return this.columns[pos];
+	}
+
+	/**
+	 * Estimates the number of distinct combinations of some attributes, as the
+	 * product of their distinct counts up to the number of rows
+	 * @param positions	positions of the attributes
+	 * @return the estimate, at least 1
+	 */
+	public double distinct(int[] positions) {
+		double d = 1;
+		for (int p : positions) {
+			d *= Math.max(1, this.columns[p].getDistinct());
+		}
+		return Math.max(1, Math.min(d, this.rows));
+	}
+
+	/**
+	 * Estimates the fraction of the rows that satisfy a condition. Comparisons
+	 * of an attribute with a constant are estimated from its histogram, and
+	 * an equality of two attributes from their distinct counts. A lower and
+	 * an upper bound on the same attribute are taken together as a range;
+	 * other conjuncts are taken to be independent. Anything else is assumed
+	 * to keep UNKNOWN of the rows.
+	 * @param bound	a condition, bound to the relation
+	 * @return the estimated selectivity, from 0 to 1
+	 */
+	public double selectivity(Node bound) {
+		if (bound instanceof LogicalNode && ((LogicalNode) bound).getOp().equals("&&")) {
+			List<Node> conjuncts = new ArrayList<>();
+			Optimizer.conjuncts(bound, conjuncts);
+			// the tightest lower and upper bound on each attribute
+			double[] lower = new double[this.columns.length];
+			double[] upper = new double[this.columns.length];
+			Arrays.fill(lower, Double.NaN);
+			Arrays.fill(upper, Double.NaN);
+			double s = 1;
+			for (Node c : conjuncts) {
+				int pos = bounded(c);
+				double v = this.selectivity(c);
+				if (pos < 0) {
+					s *= v;
+				}
+				else {
+					int op = ((ComparisonNode) c).getCode();
+					if (((ComparisonNode) c).getLeft() instanceof LiteralNode) {
+						op = IndexScan.flip(op);
+					}
+					double[] side = (op == Ops.GT || op == Ops.GE) ? lower : upper;
+					side[pos] = Double.isNaN(side[pos]) ? v : Math.min(side[pos], v);
+				}
+			}
+			for (int pos = 0; pos < this.columns.length; pos++) {
+				if (!Double.isNaN(lower[pos]) && !Double.isNaN(upper[pos])) {
+					// the rows below the upper bound that are not below the lower one
+					s *= Math.max(0, lower[pos] + upper[pos] - this.columns[pos].nonNull());
+				}
+				else if (!Double.isNaN(lower[pos]) || !Double.isNaN(upper[pos])) {
+					s *= Double.isNaN(lower[pos]) ? upper[pos] : lower[pos];
+				}
+			}
+			return s;
+		}
+		if (bound instanceof LogicalNode) {
+			LogicalNode n = (LogicalNode) bound;
+			double a = this.selectivity(n.getLeft());
+			double b = this.selectivity(n.getRight());
+			return a + b - a * b;
+		}
+		if (bound instanceof NotNode) {
+			return 1 - this.selectivity(((NotNode) bound).getChild());
+		}
+		if (bound instanceof LiteralNode && ((LiteralNode) bound).type() == Node.Type.BOOLEAN) {
+			return ((Boolean) ((LiteralNode) bound).getValue()) ? 1 : 0;
+		}
+		if (!(bound instanceof ComparisonNode)) {
+			return UNKNOWN;
+		}
+		ComparisonNode c = (ComparisonNode) bound;
+		Node l = c.getLeft();
+		Node r = c.getRight();
+		if (l instanceof ColumnNode && r instanceof ColumnNode) {
+			if (c.getCode() != Ops.EQ && c.getCode() != Ops.NE) {
+				return UNKNOWN;
+			}
+			Column a = this.columns[((ColumnNode) l).getPos()];
+			Column b = this.columns[((ColumnNode) r).getPos()];
+			double eq = Math.min(a.nonNull(), b.nonNull()) / Math.max(1, Math.max(a.getDistinct(), b.getDistinct()));
+			return (c.getCode() == Ops.EQ) ? eq : Math.min(a.nonNull(), b.nonNull()) - eq;
+		}
+		int op = c.getCode();
+		if (!(l instanceof ColumnNode)) {
+			Node t = l;
+			l = r;
+			r = t;
+			op = IndexScan.flip(op);
+		}
+		if (!(l instanceof ColumnNode) || !(r instanceof LiteralNode)) {
+			return UNKNOWN;
+		}
+		return this.columns[((ColumnNode) l).getPos()].selectivity(op, ((LiteralNode) r).getValue());
+	}
+
+	/**
+	 * @return the position of the attribute a comparison with a constant
+	 * 			bounds from below or above, or -1 if it is not such a comparison
+	 */
+	private static int bounded(Node n) {
+		if (!(n instanceof ComparisonNode)) {
+			return -1;
+		}
+		ComparisonNode c = (ComparisonNode) n;
+		int op = c.getCode();
+		if (op == Ops.EQ || op == Ops.NE || c.operandType() == Node.Type.NULL) {
+			return -1;
+		}
+		if (c.getLeft() instanceof ColumnNode && c.getRight() instanceof LiteralNode) {
+			return ((ColumnNode) c.getLeft()).getPos();
+		}
+		if (c.getRight() instanceof ColumnNode && c.getLeft() instanceof LiteralNode) {
+			return ((ColumnNode) c.getRight()).getPos();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a description of the statistics, one line per attribute
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(this.rows).append(" rows");
+		if (this.sampled) {
+			sb.append(" (sampled)");
+		}
+		if (this.isStale()) {
+			sb.append(" (stale)");
+		}
+		for (Column c : this.columns) {
+			sb.append("\n  ").append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Statistics of one attribute. Counts are of the whole relation, scaled up
+	 * from the sample if there was one.
+	 */
+	public static class Column {
+		private final String name;
+		private final boolean numeric;
+		private double nulls;
+		private double values;
+		private final double distinct;
+		private Comparable[] bounds;	/* bounds[i] to bounds[i+1] is bucket i */
+		private double[] depths;		/* the number of values in each bucket */
+		private double[] spreads;		/* the number of distinct values in each bucket */
+		private final HyperLogLog sketch = new HyperLogLog();
+		private final double sketched;	/* the sketch's estimate at the analysis */
+
+		/**
+		 * @param name		name of the attribute
+		 * @param numeric	true if it is NUMERIC
+		 * @param sample	the values of the attribute that are not null, in any order
+		 * @param nulls		the number of nulls in the sample
+		 * @param read		the number of rows in the sample
+		 * @param rows		the number of rows of the relation
+		 * @param sampled	true if the sample is not the whole relation
+		 */
+		Column(String name, boolean numeric, List<Comparable> sample, int nulls, int read, int rows,
+				boolean sampled) {
+			this.name = name;
+			this.numeric = numeric;
+			double scale = (read > 0) ? (double) rows / read : 0;
+			this.nulls = nulls * scale;
+			this.values = sample.size() * scale;
+
+			sample.sort(this::compare);
+			int k = sample.size();
+			// starts[i] is true if sample[i] differs from the value before it
+			boolean[] starts = new boolean[k];
+			int runs = 0;
+			int singles = 0;
+			for (int i = 0; i < k; ) {
+				int j = i + 1;
+				while (j < k && this.compare(sample.get(i), sample.get(j)) == 0) {
+					j++;
+				}
+				starts[i] = true;
+				runs++;
+				singles += (j - i == 1) ? 1 : 0;
+				i = j;
+			}
+			// values seen once in a sample stand for unseen ones (the Duj1 estimator of Haas et al.),
+			// so a sample of all-distinct values estimates a key
+			this.distinct = (sampled && k > 0)
+					? Math.min(this.values, k * (double) runs / (k - singles + singles * k / this.values)) : runs;
+
+			int b = Math.min(BUCKETS, k);
+			this.bounds = new Comparable[(b > 0) ? b + 1 : 0];
+			this.depths = new double[b];
+			this.spreads = new double[b];
+			for (int i = 0; i < b; i++) {
+				int from = (int) ((long) i * k / b);
+				int to = (int) ((long) (i + 1) * k / b);
+				this.bounds[i] = sample.get(from);
+				this.depths[i] = (to - from) * scale;
+				int in = 1;
+				for (int j = from + 1; j < to; j++) {
+					in += starts[j] ? 1 : 0;
+				}
+				this.spreads[i] = in * this.distinct / Math.max(1, runs);
+			}
+			if (b > 0) {
+				this.bounds[b] = sample.get(k - 1);
+			}
+			for (Comparable v : sample) {
+				this.sketch(v);
+			}
+			this.sketched = this.sketch.estimate();
+		}
+
+		/**
+		 * Counts a value added to the relation
+		 */
+		void add(Comparable v) {
+			if (v == null) {
+				this.nulls++;
+				return;
+			}
+			this.values++;
+			this.sketch(v);
+			int last = this.depths.length - 1;
+			if (last < 0) {
+				this.bounds = new Comparable[] {v, v};
+				this.depths = new double[] {1};
+				this.spreads = new double[] {1};
+			}
+			else if (this.compare(v, this.bounds[0]) < 0) {
+				this.bounds[0] = v;
+				this.depths[0]++;
+			}
+			else if (this.compare(v, this.bounds[last + 1]) > 0) {
+				this.bounds[last + 1] = v;
+				this.depths[last]++;
+			}
+			else {
+				int i = 0;
+				while (this.compare(v, this.bounds[i + 1]) > 0) {
+					i++;
+				}
+				this.depths[i]++;
+			}
+		}
+
+		/**
+		 * @return the name of the attribute
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * @return the estimated number of nulls
+		 */
+		public double getNulls() {
+			return this.nulls;
+		}
+
+		/**
+		 * @return the estimated number of distinct values other than null
+		 */
+		public double getDistinct() {
+			double seen = Math.max(0, this.sketch.estimate() - this.sketched);
+			return Math.min(this.values, this.distinct + seen);
+		}
+
+		/**
+		 * @return the least value, or null if every value is null
+		 */
+		public Comparable getMin() {
+			return (this.bounds.length > 0) ? this.bounds[0] : null;
+		}
+
+		/**
+		 * @return the greatest value, or null if every value is null
+		 */
+		public Comparable getMax() {
+			return (this.bounds.length > 0) ? this.bounds[this.bounds.length - 1] : null;
+		}
+
+		/**
+		 * @return the bounds of the histogram's buckets: bucket i holds the values from bounds[i] to bounds[i+1]
+		 */
+		public Comparable[] getBounds() {
+			return this.bounds.clone();
+		}
+
+		/**
+		 * @return the estimated number of values in each bucket of the histogram
+		 */
+		public double[] getDepths() {
+			return this.depths.clone();
+		}
+
+		/**
+		 * Estimates the fraction of the rows whose value compares with a constant as given
+		 * @param op	an operator code (see Ops)
+		 * @param value	the constant, or null
+		 * @return the estimated selectivity, from 0 to 1
+		 */
+		public double selectivity(int op, Comparable value) {
+			double all = this.values + this.nulls;
+			if (all == 0) {
+				return 0;
+			}
+			if (value == null) {
+				return ((op == Ops.EQ) ? this.nulls : this.values) / all;
+			}
+			double eq = this.equal(value);
+			double fraction;
+			switch (op) {
+				case Ops.EQ:
+					fraction = eq;
+					break;
+				case Ops.NE:
+					fraction = 1 - eq;
+					break;
+				case Ops.LT:
+					fraction = this.below(value);
+					break;
+				case Ops.LE:
+					fraction = this.below(value) + eq;
+					break;
+				case Ops.GT:
+					fraction = 1 - this.below(value) - eq;
+					break;
+				default:
+					fraction = 1 - this.below(value);
+					break;
+			}
+			return Math.max(0, Math.min(1, fraction)) * this.values / all;
+		}
+
+		/**
+		 * Estimates the fraction of the rows whose value is in a range
+		 * @param low	the least value of the range, or null if unbounded
+		 * @param high	the greatest value of the range, or null if unbounded
+		 * @return the estimated selectivity, from 0 to 1
+		 */
+		public double range(Comparable low, Comparable high) {
+			double all = this.values + this.nulls;
+			if (all == 0) {
+				return 0;
+			}
+			double to = (high == null) ? 1 : this.below(high) + this.equal(high);
+			double from = (low == null) ? 0 : this.below(low);
+			return Math.max(0, Math.min(1, to - from)) * this.values / all;
+		}
+
+		/**
+		 * @return the rows that are not null
+		 */
+		double nonNull() {
+			double all = this.values + this.nulls;
+			return (all == 0) ? 0 : this.values / all;
+		}
+
+		/**
+		 * Estimates the fraction of the values other than null that equal a
+		 * constant. Each bucket the constant falls in adds an equal share of its
+		 * values, so a value frequent enough to fill buckets is estimated by them.
+		 */
+		private double equal(Comparable value) {
+			double total = 0;
+			double count = 0;
+			for (int i = 0; i < this.depths.length; i++) {
+				total += this.depths[i];
+				if (this.compare(this.bounds[i], value) <= 0 && this.compare(value, this.bounds[i + 1]) <= 0) {
+					count += this.depths[i] / Math.max(1, this.spreads[i]);
+				}
+			}
+			return (total == 0) ? 0 : Math.min(1, count / total);
+		}
+
+		/**
+		 * @return the estimated fraction of the values other than null that are less than a constant
+		 */
+		private double below(Comparable value) {
+			double total = 0;
+			double count = 0;
+			for (int i = 0; i < this.depths.length; i++) {
+				total += this.depths[i];
+				Comparable lo = this.bounds[i];
+				Comparable hi = this.bounds[i + 1];
+				if (this.compare(hi, value) < 0) {
+					count += this.depths[i];
+				}
+				else if (this.compare(lo, value) < 0) {
+					// assume the values of a bucket spread evenly between its bounds
+					double part = this.numeric ? ((Double) value - (Double) lo) / ((Double) hi - (Double) lo) : 0.5;
+					count += this.depths[i] * part;
+				}
+			}
+			return (total == 0) ? 0 : count / total;
+		}
+
+		private void sketch(Comparable v) {
+			if (this.numeric) {
+				this.sketch.add((Double) v);
+			}
+			else {
+				this.sketch.add((String) v);
+			}
+		}
+
+		private int compare(Comparable a, Comparable b) {
+			return this.numeric ? a.compareTo(b) : Ops.compareText((String) a, (String) b);
+		}
+
+		/**
+		 * @return the attribute's statistics on one line
+		 */
+		@Override
+		public String toString() {
+			return String.format("%s %s: %d distinct, %d nulls, %s to %s, %d buckets", this.name,
+					this.numeric ? "NUMERIC" : "TEXT", Math.round(this.getDistinct()), Math.round(this.nulls),
+					this.getMin(), this.getMax(), this.depths.length);
+		}
+	}
+}
@@ -0,0 +1,40 @@
+import java.util.Iterator;
+import java.util.Set;
+import solver.RowCursor;
+
+/**
+ * A RowCursor over a set of tuples.
+ */
+@SuppressWarnings("rawtypes")
+public class TupleCursor implements RowCursor {
+	private final Iterator<Tuple> it;
+	private Tuple current;
+
+	/**
+	 * @param tuples	the tuples to step through
+	 */
+	public TupleCursor(Set<Tuple> tuples) {
+		this.it = tuples.iterator();
+	}
+
+	/**
+	 * @return the tuple the cursor is on
+	 */
+	public Tuple current() {
+		return this.current;
+	}
+
+	@Override
+	public boolean next() {
+		if (!this.it.hasNext()) {
+			return false;
+		}
+		this.current = this.it.next();
+		return true;
+	}
+
+	@Override
+	public Comparable get(int pos) {
+		return this.current.data.get(pos);
+	}
+}
@@ -0,0 +1,526 @@
+package index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A B+-tree over the rows of a relation, stored in a PageFile. Each entry
+ * pairs a key (the values of one or more attributes) with a row number;
+ * entries are ordered by key and then by row, so duplicate keys are allowed.
+ * Leaves are chained left to right for range scans.
+ *
+ * Keys are normalized before they are stored: -0.0 becomes 0.0, and TEXT
+ * values lose their quotes (they are ordered by content, as conditions
+ * compare them) and are cut to a prefix of at most textLimit() characters.
+ * Cutting keeps the order of keys, so a range scan over normalized bounds
+ * returns every row whose key lies in the range, and possibly more; callers
+ * re-test the rows they get.
+ *
+ * Page 0 holds the header; every other page holds one node. Nodes are cached
+ * in memory and written back when evicted and on flush().
+ */
+@SuppressWarnings({"rawtypes", "unchecked"})
+public class BPlusTree {
+	private static final int MAGIC = 0x54504244;		// "DBPT" read little-endian
+	private static final int VERSION = 1;
+	private static final int CACHE_PAGES = 1024;
+	private static final int NODE_HEADER = 9;			// type, count, next leaf or first child
+
+	private static final byte NULL = 0, NUMBER = 1, TEXT = 2;
+
+	private final PageFile file;
+	private final boolean[] numeric;
+	private final int text_limit;
+	private int root;
+	private int size;
+	private int leading_nulls;
+	private long fingerprint;
+	private boolean header_dirty;
+
+	/* decoded nodes by page, least recently used first */
+	private final LinkedHashMap<Integer, Node> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+	private BPlusTree(PageFile file, boolean[] numeric) {
+		this.file = file;
+		this.numeric = numeric.clone();
+		this.text_limit = Math.max(16, 256 / Math.max(1, numeric.length));
+	}
+
+	/**
+	 * Creates an empty tree, replacing any file at the path
+	 * @param path		path of the tree's file
+	 * @param numeric	for each key attribute, true if NUMERIC and false if TEXT
+	 * @return the new tree
+	 * @throws IOException if the file cannot be written
+	 */
+	public static BPlusTree create(String path, boolean[] numeric) throws IOException {
+		if (numeric.length == 0 || numeric.length > 64) {
+			throw new IllegalArgumentException("a key has 1 to 64 attributes");
+		}
+		BPlusTree tree = new BPlusTree(new PageFile(path, true), numeric);
+		tree.file.allocate();		// header
+		Node leaf = new Node(tree.file.allocate(), true);
+		tree.root = leaf.page;
+		tree.remember(leaf);
+		tree.header_dirty = true;
+		tree.flush();
+		return tree;
+	}
+
+	/**
+	 * Opens a tree written by an earlier process
+	 * @param path	path of the tree's file
+	 * @return the tree, or null if the file is not a tree
+	 * @throws IOException if the file cannot be read
+	 */
+	public static BPlusTree open(String path) throws IOException {
+		PageFile file = new PageFile(path, false);
+		ByteBuffer b = (file.pages() > 0) ? file.read(0) : null;
+		if (b == null || b.getInt() != MAGIC || b.getInt() != VERSION || b.getInt() != PageFile.PAGE_SIZE) {
+			file.close();
+			return null;
+		}
+		boolean[] numeric = new boolean[b.getInt()];
+		BPlusTree tree = new BPlusTree(file, numeric);
+		tree.root = b.getInt();
+		tree.size = b.getInt();
+		tree.leading_nulls = b.getInt();
+		tree.fingerprint = b.getLong();
+		for (int c = 0; c < numeric.length; c++) {
+			tree.numeric[c] = b.get() != 0;
+		}
+		return tree;
+	}
+
+	/**
+	 * @return for each key attribute, true if NUMERIC
+	 */
+	public boolean[] layout() {
+		return this.numeric.clone();
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of entries whose first key value is null
+	 */
+	public int leadingNulls() {
+		return this.leading_nulls;
+	}
+
+	/**
+	 * @return a hash of every entry inserted, in order; see extend()
+	 */
+	public long fingerprint() {
+		return this.fingerprint;
+	}
+
+	/**
+	 * @return the most characters of a TEXT value a key keeps
+	 */
+	public int textLimit() {
+		return this.text_limit;
+	}
+
+	/**
+	 * Extends the fingerprint of a sequence of inserts by one more insert
+	 * @param fingerprint	fingerprint of the earlier inserts (0 for none)
+	 * @param key			the key values
+	 * @param row			the row number
+	 * @return the fingerprint including the insert
+	 */
+	public static long extend(long fingerprint, Comparable[] key, int row) {
+		long h = fingerprint * 1000003L + row;
+		for (Comparable v : key) {
+			h = h * 31 + ((v == null) ? 0 : v.hashCode());
+		}
+		return h;
+	}
+
+	/**
+	 * Adds an entry
+	 * @param key	the key values (Double, String, or null), one per key attribute
+	 * @param row	the row number
+	 * @throws IOException if a page cannot be read or written
+	 */
+	public void insert(Comparable[] key, int row) throws IOException {
+		Comparable[] k = this.normalize(key);
+		Split split = this.insert(this.root, k, row);
+		if (split != null) {
+			Node root = new Node(this.file.allocate(), false);
+			root.children.add(this.root);
+			root.keys.add(split.key);
+			root.rows.add(split.row);
+			root.children.add(split.page);
+			this.remember(root);
+			this.root = root.page;
+		}
+		this.size++;
+		if (key[0] == null) {
+			this.leading_nulls++;
+		}
+		this.fingerprint = extend(this.fingerprint, key, row);
+		this.header_dirty = true;
+		this.trim();
+	}
+
+	/**
+	 * Finds the rows whose first key value lies in a range, bounds included.
+	 * Rows just outside the range may be returned too (see the class comment).
+	 * @param low	lower bound, or null for none
+	 * @param high	upper bound, or null for none
+	 * @return the row numbers, in key order
+	 * @throws IOException if a page cannot be read
+	 */
+	public int[] range(Comparable low, Comparable high) throws IOException {
+		Comparable lo = (low == null) ? null : this.normalize(low, 0);
+		Comparable hi = (high == null) ? null : this.normalize(high, 0);
+		Node n = this.node(this.root);
+		while (!n.leaf) {
+			int i = 0;
+			while (lo != null && i < n.keys.size() && compareValues(n.keys.get(i)[0], lo) < 0) {
+				i++;
+			}
+			n = this.node(n.children.get(i));
+		}
+		int[] rows = new int[16];
+		int count = 0;
+		scan:
+		while (true) {
+			for (int i = 0; i < n.keys.size(); i++) {
+				Comparable v = n.keys.get(i)[0];
+				if (lo != null && compareValues(v, lo) < 0) {
+					continue;
+				}
+				if (hi != null && compareValues(v, hi) > 0) {
+					break scan;
+				}
+				if (count == rows.length) {
+					rows = Arrays.copyOf(rows, count * 2);
+				}
+				rows[count++] = n.rows.get(i);
+			}
+			if (n.next < 0) {
+				break;
+			}
+			n = this.node(n.next);
+		}
+		this.trim();
+		return Arrays.copyOf(rows, count);
+	}
+
+	/**
+	 * Writes every changed page to the file
+	 * @throws IOException if a page cannot be written
+	 */
+	public void flush() throws IOException {
+		for (Node n : this.cache.values()) {
+			if (n.dirty) {
+				this.write(n);
+			}
+		}
+		if (this.header_dirty) {
+			ByteBuffer b = PageFile.buffer();
+			b.putInt(MAGIC).putInt(VERSION).putInt(PageFile.PAGE_SIZE).putInt(this.numeric.length);
+			b.putInt(this.root).putInt(this.size).putInt(this.leading_nulls).putLong(this.fingerprint);
+			for (boolean flag : this.numeric) {
+				b.put((byte) (flag ? 1 : 0));
+			}
+			this.file.write(0, b);
+			this.header_dirty = false;
+		}
+	}
+
+	/**
+	 * Writes every changed page and closes the file
+	 * @throws IOException if a page cannot be written
+	 */
+	public void close() throws IOException {
+		this.flush();
+		this.file.close();
+	}
+
+	private Split insert(int page, Comparable[] key, int row) throws IOException {
+		Node n = this.node(page);
+		// first entry greater than (key, row)
+		int lo = 0;
+		int hi = n.keys.size();
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (this.compare(n.keys.get(mid), n.rows.get(mid), key, row) <= 0) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		if (n.leaf) {
+			n.keys.add(lo, key);
+			n.rows.add(lo, row);
+		}
+		else {
+			Split split = this.insert(n.children.get(lo), key, row);
+			if (split == null) {
+				return null;
+			}
+			n.keys.add(lo, split.key);
+			n.rows.add(lo, split.row);
+			n.children.add(lo + 1, split.page);
+		}
+		n.dirty = true;
+		return (this.bytes(n) <= PageFile.PAGE_SIZE) ? null : this.split(n);
+	}
+
+	/**
+	 * Splits an overfull node in two halves of about the same number of bytes
+	 * @return the separator and page of the new right node
+	 */
+	private Split split(Node n) throws IOException {
+		int total = this.bytes(n);
+		int mid = 0;
+		for (int used = NODE_HEADER; mid < n.keys.size() - 1 && used < total / 2; mid++) {
+			used += this.entryBytes(n, mid);
+		}
+		mid = Math.max(mid, 1);
+		Node right = new Node(this.file.allocate(), n.leaf);
+		Split split = new Split();
+		if (n.leaf) {
+			right.keys.addAll(n.keys.subList(mid, n.keys.size()));
+			right.rows.addAll(n.rows.subList(mid, n.rows.size()));
+			right.next = n.next;
+			n.next = right.page;
+			split.key = right.keys.get(0);
+			split.row = right.rows.get(0);
+		}
+		else {
+			split.key = n.keys.get(mid);
+			split.row = n.rows.get(mid);
+			right.keys.addAll(n.keys.subList(mid + 1, n.keys.size()));
+			right.rows.addAll(n.rows.subList(mid + 1, n.rows.size()));
+			right.children.addAll(n.children.subList(mid + 1, n.children.size()));
+			n.children.subList(mid + 1, n.children.size()).clear();
+		}
+		n.keys.subList(mid, n.keys.size()).clear();
+		n.rows.subList(mid, n.rows.size()).clear();
+		split.page = right.page;
+		this.remember(right);
+		return split;
+	}
+
+	private int compare(Comparable[] a, int a_row, Comparable[] b, int b_row) {
+		for (int c = 0; c < a.length; c++) {
+			int cmp = compareValues(a[c], b[c]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return Integer.compare(a_row, b_row);
+	}
+
+	/**
+	 * Orders normalized values, null first
+	 */
+	private static int compareValues(Comparable a, Comparable b) {
+		if (a == null || b == null) {
+			return (a == null) ? ((b == null) ? 0 : -1) : 1;
+		}
+		return a.compareTo(b);
+	}
+
+	private Comparable[] normalize(Comparable[] key) {
+		if (key.length != this.numeric.length) {
+			throw new IllegalArgumentException("key has " + key.length + " values but the tree has "
+					+ this.numeric.length + " attributes");
+		}
+		Comparable[] k = new Comparable[key.length];
+		for (int c = 0; c < key.length; c++) {
+			k[c] = this.normalize(key[c], c);
+		}
+		return k;
+	}
+
+	private Comparable normalize(Comparable v, int col) {
+		if (v == null) {
+			return null;
+		}
+		if (this.numeric[col]) {
+			double d = (Double) v;
+			return (d == 0.0) ? 0.0 : d;
+		}
+		String s = (String) v;
+		if (s.length() >= 2 && s.charAt(0) == '\'' && s.charAt(s.length() - 1) == '\'') {
+			s = s.substring(1, s.length() - 1);
+		}
+		if (s.length() <= this.text_limit) {
+			return s;
+		}
+		int end = this.text_limit;
+		if (Character.isHighSurrogate(s.charAt(end - 1))) {
+			end--;		// do not split a surrogate pair
+		}
+		return s.substring(0, end);
+	}
+
+	private int bytes(Node n) {
+		int total = NODE_HEADER;
+		for (int i = 0; i < n.keys.size(); i++) {
+			total += this.entryBytes(n, i);
+		}
+		return total;
+	}
+
+	private int entryBytes(Node n, int i) {
+		int total = n.leaf ? 4 : 8;
+		for (Comparable v : n.keys.get(i)) {
+			total += 1;
+			if (v instanceof Double) {
+				total += 8;
+			}
+			else if (v != null) {
+				total += 2 + utf8Length((String) v);
+			}
+		}
+		return total;
+	}
+
+	private static int utf8Length(String s) {
+		int n = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if (ch < 0x80) {
+				n += 1;
+			}
+			else if (ch < 0x800) {
+				n += 2;
+			}
+			else if (Character.isHighSurrogate(ch)) {
+				n += 4;
+				i++;
+			}
+			else {
+				n += 3;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * @return the node stored at a page, read from the file if not cached
+	 */
+	private Node node(int page) throws IOException {
+		Node n = this.cache.get(page);
+		if (n != null) {
+			return n;
+		}
+		ByteBuffer b = this.file.read(page);
+		n = new Node(page, b.get() == 0);
+		int count = b.getInt();
+		int link = b.getInt();
+		if (n.leaf) {
+			n.next = link;
+		}
+		else {
+			n.children.add(link);
+		}
+		for (int i = 0; i < count; i++) {
+			Comparable[] key = new Comparable[this.numeric.length];
+			for (int c = 0; c < key.length; c++) {
+				byte tag = b.get();
+				if (tag == NUMBER) {
+					key[c] = b.getDouble();
+				}
+				else if (tag == TEXT) {
+					byte[] bytes = new byte[b.getShort() & 0xFFFF];
+					b.get(bytes);
+					key[c] = new String(bytes, StandardCharsets.UTF_8);
+				}
+			}
+			n.keys.add(key);
+			n.rows.add(b.getInt());
+			if (!n.leaf) {
+				n.children.add(b.getInt());
+			}
+		}
+		this.cache.put(page, n);
+		return n;
+	}
+
+	private void write(Node n) throws IOException {
+		ByteBuffer b = PageFile.buffer();
+		b.put((byte) (n.leaf ? 0 : 1));
+		b.putInt(n.keys.size());
+		b.putInt(n.leaf ? n.next : n.children.get(0));
+		for (int i = 0; i < n.keys.size(); i++) {
+			for (Comparable v : n.keys.get(i)) {
+				if (v == null) {
+					b.put(NULL);
+				}
+				else if (v instanceof Double) {
+					b.put(NUMBER).putDouble((Double) v);
+				}
+				else {
+					byte[] bytes = ((String) v).getBytes(StandardCharsets.UTF_8);
+					b.put(TEXT).putShort((short) bytes.length).put(bytes);
+				}
+			}
+			b.putInt(n.rows.get(i));
+			if (!n.leaf) {
+				b.putInt(n.children.get(i + 1));
+			}
+		}
+		this.file.write(n.page, b);
+		n.dirty = false;
+	}
+
+	private void remember(Node n) {
+		n.dirty = true;
+		this.cache.put(n.page, n);
+	}
+
+	/**
+	 * Evicts the least recently used nodes beyond the cache size, writing back changed ones
+	 */
+	private void trim() throws IOException {
+		Iterator<Map.Entry<Integer, Node>> it = this.cache.entrySet().iterator();
+		while (this.cache.size() > CACHE_PAGES && it.hasNext()) {
+			Node n = it.next().getValue();
+			if (n.dirty) {
+				this.write(n);
+			}
+			it.remove();
+		}
+	}
+
+	private static class Node {
+		final int page;
+		final boolean leaf;
+		final List<Comparable[]> keys = new ArrayList<>();
+		final List<Integer> rows = new ArrayList<>();
+		final List<Integer> children = new ArrayList<>();	// internal nodes: one more than keys
+		int next = -1;		// leaves: page of the next leaf, or -1
+		boolean dirty;
+
+		Node(int page, boolean leaf) {
+			this.page = page;
+			this.leaf = leaf;
+		}
+	}
+
+	private static class Split {
+		Comparable[] key;
+		int row;
+		int page;
+	}
+}
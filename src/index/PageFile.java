@@ -0,0 +1,98 @@
+package index;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * A file of fixed-size pages, numbered from 0. Pages are read and written
+ * whole through little-endian buffers of PAGE_SIZE bytes.
+ */
+public class PageFile {
+	/** bytes per page */
+	public static final int PAGE_SIZE = 4096;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private int pages;
+
+	/**
+	 * Opens a page file, creating it if needed
+	 * @param path		path of the file
+	 * @param truncate	true to discard any pages already in the file
+	 * @throws IOException if the file cannot be opened
+	 */
+	public PageFile(String path, boolean truncate) throws IOException {
+		this.file = new RandomAccessFile(path, "rw");
+		this.channel = this.file.getChannel();
+		if (truncate) {
+			this.file.setLength(0);
+		}
+		this.pages = (int) (this.channel.size() / PAGE_SIZE);
+	}
+
+	/**
+	 * @return the number of pages
+	 */
+	public int pages() {
+		return this.pages;
+	}
+
+	/**
+	 * @return a new zeroed buffer of one page
+	 */
+	public static ByteBuffer buffer() {
+		return ByteBuffer.allocate(PAGE_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	/**
+	 * Adds a page at the end of the file; it holds zeros until written
+	 * @return the number of the new page
+	 */
+	public int allocate() {
+		return this.pages++;
+	}
+
+	/**
+	 * Reads a page
+	 * @param page	number of the page
+	 * @return a buffer holding the page, positioned at its start
+	 * @throws IOException if the page cannot be read
+	 */
+	public ByteBuffer read(int page) throws IOException {
+		ByteBuffer b = buffer();
+		long at = (long) page * PAGE_SIZE;
+		while (b.hasRemaining()) {
+			if (this.channel.read(b, at + b.position()) < 0) {
+				break;		// past the end of the file: the rest reads as zeros
+			}
+		}
+		b.clear();
+		return b;
+	}
+
+	/**
+	 * Writes a page
+	 * @param page	number of the page
+	 * @param b		a buffer of PAGE_SIZE bytes
+	 * @throws IOException if the page cannot be written
+	 */
+	public void write(int page, ByteBuffer b) throws IOException {
+		b.clear();
+		long at = (long) page * PAGE_SIZE;
+		while (b.hasRemaining()) {
+			this.channel.write(b, at + b.position());
+		}
+	}
+
+	/**
+	 * Closes the file
+	 * @throws IOException if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		this.channel.close();
+		this.file.close();
+	}
+}
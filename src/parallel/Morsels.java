@@ -0,0 +1,105 @@
+package parallel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Morsel-driven parallelism: a range of rows is cut into fixed-size morsels
+ * that are processed as independent tasks on a ForkJoinPool. Results are
+ * returned in morsel order, so a caller that combines them in that order gets
+ * the same output whatever the number of threads.
+ */
+public class Morsels {
+	/** default rows per morsel */
+	public static final int DEFAULT_SIZE = 16384;
+
+	/**
+	 * Work done on one morsel
+	 * @param <T>	type of the per-morsel result
+	 */
+	public interface Task<T> {
+		/**
+		 * @param from	first row of the morsel
+		 * @param to	row just past the last row of the morsel
+		 * @return the result for rows [from, to)
+		 */
+		T run(int from, int to);
+	}
+
+	private final ForkJoinPool pool;
+	private final int morsel_size;
+
+	/**
+	 * @param parallelism	number of worker threads
+	 * @param morsel_size	rows per morsel
+	 */
+	public Morsels(int parallelism, int morsel_size) {
+		if (parallelism < 1 || morsel_size < 1) {
+			throw new IllegalArgumentException("parallelism and morsel size must be positive");
+		}
+		this.pool = new ForkJoinPool(parallelism);
+		this.morsel_size = morsel_size;
+	}
+
+	/**
+	 * @return number of worker threads
+	 */
+	public int parallelism() {
+		return this.pool.getParallelism();
+	}
+
+	/**
+	 * @return rows per morsel
+	 */
+	public int morselSize() {
+		return this.morsel_size;
+	}
+
+	/**
+	 * Runs a task over every morsel of [0, rows)
+	 * @param rows	number of rows
+	 * @param task	the work for one morsel
+	 * @param <T>	type of the per-morsel result
+	 * @return the results, in morsel order
+	 */
+	public <T> List<T> map(int rows, Task<T> task) {
+		return this.map(rows, this.morsel_size, task);
+	}
+
+	/**
+	 * Runs a task over every chunk of [0, rows); chunk i covers rows
+	 * [i * chunk, min(rows, (i + 1) * chunk))
+	 * @param rows	number of rows
+	 * @param chunk	rows per task
+	 * @param task	the work for one chunk
+	 * @param <T>	type of the per-chunk result
+	 * @return the results, in chunk order
+	 */
+	public <T> List<T> map(int rows, int chunk, Task<T> task) {
+		List<T> results = new ArrayList<>();
+		if (rows <= chunk) {
+			// a single chunk is not worth a hand-off to the pool
+			results.add(task.run(0, rows));
+			return results;
+		}
+		List<ForkJoinTask<T>> tasks = new ArrayList<>();
+		for (int from = 0; from < rows; from += chunk) {
+			int start = from;
+			int end = Math.min(rows, from + chunk);
+			tasks.add(this.pool.submit(() -> task.run(start, end)));
+		}
+		for (ForkJoinTask<T> t : tasks) {
+			results.add(t.join());
+		}
+		return results;
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown() {
+		this.pool.shutdown();
+	}
+}
@@ -0,0 +1,85 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * A binary arithmetic operation (+ - * / %) on NUMBER operands.
+ */
+public class ArithmeticNode extends Node {
+	private final String op;
+	private final char code;
+	private final Node left;
+	private final Node right;
+
+	/**
+	 * Creates an arithmetic operation
+	 * @param op	one of + - * / %
+	 * @param left	left operand
+	 * @param right	right operand
+	 */
+	public ArithmeticNode(String op, Node left, Node right) {
+		this.op = op;
+		this.code = op.charAt(0);
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * @return the operator
+	 */
+	public String getOp() {
+		return this.op;
+	}
+
+	/**
+	 * @return the left operand
+	 */
+	public Node getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * @return the right operand
+	 */
+	public Node getRight() {
+		return this.right;
+	}
+
+	@Override
+	public Type type() {
+		return (this.left.type() == null) ? null : Type.NUMBER;
+	}
+
+	@Override
+	public Node bind(Schema schema) throws DBException {
+		Node l = ParameterNode.infer(this.left.bind(schema), Type.NUMBER);
+		Node r = ParameterNode.infer(this.right.bind(schema), Type.NUMBER);
+		if (l.type() != Type.NUMBER || r.type() != Type.NUMBER) {
+			throw mismatch(this.op, l, r);
+		}
+		return new ArithmeticNode(this.op, l, r);
+	}
+
+	@Override
+	public double number(Row row) {
+		double a = this.left.number(row);
+		double b = this.right.number(row);
+		switch (this.code) {
+			case '+':
+				return a + b;
+			case '-':
+				return a - b;
+			case '*':
+				return a * b;
+			case '/':
+				return a / b;
+			default:
+				return a % b;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "(" + this.left + " " + this.op + " " + this.right + ")";
+	}
+}
@@ -0,0 +1,175 @@
+package solver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for JVM class files, just enough to emit the generated
+ * predicate and projection classes. Classes are written as version 49 so the
+ * verifier infers stack frames itself (no StackMapTable is emitted).
+ */
+class ClassBuilder {
+	private static final int VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private final ByteArrayOutputStream pool_bytes = new ByteArrayOutputStream();
+	private final DataOutputStream pool = new DataOutputStream(pool_bytes);
+	private final Map<String, Integer> pool_index = new HashMap<>();
+	private int pool_count = 1;
+
+	private final int this_class;
+	private final int super_class;
+	private final int[] interfaces;
+	private final List<byte[]> methods = new ArrayList<>();
+
+	/**
+	 * Starts a public final class
+	 * @param name			internal name of the class (e.g. "solver/gen/P0")
+	 * @param super_name	internal name of the superclass
+	 * @param interface_names	internal names of implemented interfaces
+	 */
+	ClassBuilder(String name, String super_name, String... interface_names) {
+		this.this_class = this.classRef(name);
+		this.super_class = this.classRef(super_name);
+		this.interfaces = new int[interface_names.length];
+		for (int i = 0; i < interface_names.length; i++) {
+			this.interfaces[i] = this.classRef(interface_names[i]);
+		}
+	}
+
+	int utf8(String s) {
+		return this.entry("U" + s, 1, out -> out.writeUTF(s));
+	}
+
+	int classRef(String internal_name) {
+		int name = this.utf8(internal_name);
+		return this.entry("C" + internal_name, 7, out -> out.writeShort(name));
+	}
+
+	int nameAndType(String name, String desc) {
+		int n = this.utf8(name);
+		int d = this.utf8(desc);
+		return this.entry("N" + name + ":" + desc, 12, out -> {
+			out.writeShort(n);
+			out.writeShort(d);
+		});
+	}
+
+	int fieldRef(String owner, String name, String desc) {
+		return this.memberRef(9, owner, name, desc);
+	}
+
+	int methodRef(String owner, String name, String desc) {
+		return this.memberRef(10, owner, name, desc);
+	}
+
+	int interfaceMethodRef(String owner, String name, String desc) {
+		return this.memberRef(11, owner, name, desc);
+	}
+
+	private int memberRef(int tag, String owner, String name, String desc) {
+		int c = this.classRef(owner);
+		int nt = this.nameAndType(name, desc);
+		return this.entry(tag + owner + "." + name + ":" + desc, tag, out -> {
+			out.writeShort(c);
+			out.writeShort(nt);
+		});
+	}
+
+	/**
+	 * Adds a public method
+	 * @param name	method name
+	 * @param desc	method descriptor
+	 * @param code	the method body
+	 * @param max_locals	number of local variable slots, including this and the arguments
+	 */
+	void addMethod(String name, String desc, CodeBuilder code, int max_locals) {
+		int name_index = this.utf8(name);
+		int desc_index = this.utf8(desc);
+		int code_attr = this.utf8("Code");
+		byte[] body = code.toBytes();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeShort(ACC_PUBLIC);
+			out.writeShort(name_index);
+			out.writeShort(desc_index);
+			out.writeShort(1);					// attributes: Code
+			out.writeShort(code_attr);
+			out.writeInt(12 + body.length);
+			out.writeShort(code.getMaxStack());
+			out.writeShort(max_locals);
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(0);					// exception table
+			out.writeShort(0);					// code attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		this.methods.add(bytes.toByteArray());
+	}
+
+	/**
+	 * @return the bytes of the class file
+	 */
+	byte[] toBytes() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			out.writeShort(this.pool_count);
+			out.write(this.pool_bytes.toByteArray());
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(this.this_class);
+			out.writeShort(this.super_class);
+			out.writeShort(this.interfaces.length);
+			for (int i : this.interfaces) {
+				out.writeShort(i);
+			}
+			out.writeShort(0);					// fields
+			out.writeShort(this.methods.size());
+			for (byte[] m : this.methods) {
+				out.write(m);
+			}
+			out.writeShort(0);					// class attributes
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Adds a constant pool entry unless an identical one exists
+	 * @param key	unique description of the entry
+	 * @param tag	constant pool tag
+	 * @param body	writes the entry's payload
+	 * @return index of the entry
+	 */
+	private int entry(String key, int tag, Payload body) {
+		Integer index = this.pool_index.get(key);
+		if (index != null) {
+			return index;
+		}
+		try {
+			this.pool.writeByte(tag);
+			body.write(this.pool);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		this.pool_index.put(key, this.pool_count);
+		return this.pool_count++;
+	}
+
+	private interface Payload {
+		void write(DataOutputStream out) throws IOException;
+	}
+}
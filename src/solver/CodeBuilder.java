@@ -0,0 +1,174 @@
+package solver;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates the bytecode of one method, resolving forward branches and
+ * tracking the operand stack depth to size max_stack.
+ */
+class CodeBuilder {
+	static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04;
+	static final int BIPUSH = 0x10, SIPUSH = 0x11;
+	static final int ALOAD = 0x19, ASTORE = 0x3a;
+	static final int DALOAD = 0x31, AALOAD = 0x32;
+	static final int POP = 0x57, DUP = 0x59;
+	static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DREM = 0x73;
+	static final int DCMPL = 0x97, DCMPG = 0x98;
+	static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+	static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, GOTO = 0xa7;
+	static final int IRETURN = 0xac, ARETURN = 0xb0, RETURN = 0xb1;
+	static final int GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7;
+	static final int INVOKESTATIC = 0xb8, INVOKEINTERFACE = 0xb9;
+	static final int NEW = 0xbb, CHECKCAST = 0xc0;
+
+	/**
+	 * A branch target
+	 */
+	static class Label {
+		private int pos = -1;
+		private int depth = -1;
+		private final List<Integer> branches = new ArrayList<>();
+	}
+
+	private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+	private int depth = 0;
+	private int max_depth = 0;
+	private final List<Label> labels = new ArrayList<>();
+
+	/**
+	 * Emits an instruction without operands
+	 * @param opcode	the instruction
+	 * @param delta		its effect on the operand stack depth (in slots)
+	 */
+	void op(int opcode, int delta) {
+		this.code.write(opcode);
+		this.adjust(delta);
+	}
+
+	/**
+	 * Emits an instruction with a two-byte operand (constant pool index or immediate)
+	 * @param opcode	the instruction
+	 * @param operand	the operand
+	 * @param delta		its effect on the operand stack depth (in slots)
+	 */
+	void op2(int opcode, int operand, int delta) {
+		this.code.write(opcode);
+		this.u2(operand);
+		this.adjust(delta);
+	}
+
+	/**
+	 * Emits an instruction with a one-byte local variable index
+	 * @param opcode	ALOAD or ASTORE
+	 * @param local		the local variable slot
+	 * @param delta		its effect on the operand stack depth (in slots)
+	 */
+	void local(int opcode, int local, int delta) {
+		this.code.write(opcode);
+		this.code.write(local);
+		this.adjust(delta);
+	}
+
+	/**
+	 * Pushes an int constant
+	 * @param value	a value between -32768 and 32767
+	 */
+	void iconst(int value) {
+		if (value >= -1 && value <= 5) {
+			this.op(ICONST_0 + value, 1);
+		}
+		else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+			this.code.write(BIPUSH);
+			this.code.write(value);
+			this.adjust(1);
+		}
+		else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+			this.op2(SIPUSH, value, 1);
+		}
+		else {
+			throw new IllegalArgumentException("Constant out of range: " + value);
+		}
+	}
+
+	/**
+	 * Emits invokeinterface
+	 * @param index	constant pool index of the interface method
+	 * @param arg_slots	number of argument slots, including the receiver
+	 * @param delta	effect on the operand stack depth (in slots)
+	 */
+	void invokeInterface(int index, int arg_slots, int delta) {
+		this.code.write(INVOKEINTERFACE);
+		this.u2(index);
+		this.code.write(arg_slots);
+		this.code.write(0);
+		this.adjust(delta);
+	}
+
+	/**
+	 * Emits a conditional or unconditional branch
+	 * @param opcode	the branch instruction
+	 * @param target	the label to branch to
+	 * @param delta		its effect on the operand stack depth (in slots)
+	 */
+	void jump(int opcode, Label target, int delta) {
+		this.adjust(delta);
+		target.depth = this.depth;
+		target.branches.add(this.code.size());
+		this.code.write(opcode);
+		this.u2(0);
+		if (!this.labels.contains(target)) {
+			this.labels.add(target);
+		}
+	}
+
+	/**
+	 * Binds a label to the current position
+	 * @param label	the label
+	 */
+	void mark(Label label) {
+		label.pos = this.code.size();
+		if (label.depth >= 0) {
+			this.depth = label.depth;
+		}
+		if (!this.labels.contains(label)) {
+			this.labels.add(label);
+		}
+	}
+
+	/**
+	 * @return the maximum operand stack depth reached
+	 */
+	int getMaxStack() {
+		return this.max_depth;
+	}
+
+	/**
+	 * @return the method's bytecode with all branch offsets resolved
+	 */
+	byte[] toBytes() {
+		byte[] bytes = this.code.toByteArray();
+		for (Label l : this.labels) {
+			for (int at : l.branches) {
+				int offset = l.pos - at;
+				if (l.pos < 0 || offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+					throw new IllegalStateException("Unresolvable branch in generated code");
+				}
+				bytes[at + 1] = (byte) (offset >> 8);
+				bytes[at + 2] = (byte) offset;
+			}
+		}
+		return bytes;
+	}
+
+	private void u2(int value) {
+		this.code.write(value >> 8);
+		this.code.write(value);
+	}
+
+	private void adjust(int delta) {
+		this.depth += delta;
+		this.max_depth = Math.max(this.max_depth, this.depth);
+	}
+}
@@ -0,0 +1,171 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Code-generation tier for bound conditions and projections. Each distinct
+ * shape is translated once into a JVM class with the column positions baked
+ * in, so the JIT sees straight-line comparisons instead of a tree walk.
+ * Generated classes are cached by the normalized condition text, in which
+ * attributes are replaced by their bound position and type and literals by
+ * "?"; relations with the same layout therefore share classes, and
+ * conditions differing only in their constants reuse one class.
+ *
+ * If a class cannot be generated, or the JVM rejects it, the interpreted tree
+ * is used instead. The failure is recorded for the shape (see failures()), so
+ * the class is not generated again for every condition of that shape.
+ */
+public class Codegen {
+	private static final Map<String, Class<?>> classes = new ConcurrentHashMap<>();
+	private static final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+	private static final AtomicInteger counter = new AtomicInteger();
+	private static final Loader loader = new Loader(Codegen.class.getClassLoader());
+
+	/**
+	 * Returns a generated predicate for the given bound condition
+	 * @param bound	a bound BOOLEAN expression (see Condition.bind)
+	 * @return a generated predicate, or the bound tree itself if generation fails
+	 */
+	public static Predicate predicate(Node bound) {
+		PredicateGenerator gen;
+		try {
+			gen = new PredicateGenerator(bound);
+		} catch (IllegalArgumentException e) {
+			return bound;	// a node the generator does not translate
+		}
+		String key = "P" + gen.shape();
+		Class<?> c = load(key, "Predicate", gen::generate);
+		if (c == null) {
+			return bound;
+		}
+		CompiledPredicate p = (CompiledPredicate) instantiate(key, c);
+		if (p == null) {
+			return bound;
+		}
+		p.setConstants(gen.numbers(), gen.texts());
+		return p;
+	}
+
+	/**
+	 * Returns a generated projection of the given positions
+	 * @param positions	positions to extract, in output order
+	 * @return a generated projector, or an interpreted one if generation fails
+	 */
+	public static Projector projector(int[] positions) {
+		String key = "J" + Arrays.toString(positions);
+		Class<?> c = load(key, "Projector", name -> generateProjector(name, positions));
+		Projector p = (c == null) ? null : (Projector) instantiate(key, c);
+		return (p != null) ? p : new PositionProjector(positions);
+	}
+
+	/**
+	 * @return the number of generated classes currently cached
+	 */
+	public static int cacheSize() {
+		return classes.size();
+	}
+
+	/**
+	 * @return the shapes no class could be generated for, with the reason
+	 */
+	public static Map<String, Throwable> failures() {
+		return Collections.unmodifiableMap(failures);
+	}
+
+	/**
+	 * Returns the class of a shape, generating and loading it on first use.
+	 * The class is instantiated once before it is cached, so that the JVM
+	 * verifies it here rather than at some later use.
+	 * @param key		the shape
+	 * @param kind		the simple name of the class, before its number
+	 * @param generator	writes the class file for an internal class name
+	 * @return the class, or null if it failed to generate or load, now or before
+	 */
+	private static Class<?> load(String key, String kind, Function<String, byte[]> generator) {
+		Class<?> c = classes.get(key);
+		if (c != null || failures.containsKey(key)) {
+			return c;
+		}
+		synchronized (classes) {
+			c = classes.get(key);
+			if (c != null || failures.containsKey(key)) {
+				return c;
+			}
+			try {
+				String name = "solver/gen/" + kind + counter.getAndIncrement();
+				c = loader.define(name, generator.apply(name));
+				c.getDeclaredConstructor().newInstance();
+			} catch (IllegalArgumentException | IllegalStateException | LinkageError | ReflectiveOperationException e) {
+				// the builders reject what they cannot encode; the JVM rejects malformed or unverifiable code
+				failures.put(key, e);
+				return null;
+			}
+			classes.put(key, c);
+			return c;
+		}
+	}
+
+	/**
+	 * @return a new instance of a class load() returned, or null if that failed
+	 */
+	private static Object instantiate(String key, Class<?> c) {
+		try {
+			return c.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			classes.remove(key);
+			failures.put(key, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Generates a Projector whose project() adds row.get(p) for each position to a new ArrayList
+	 */
+	private static byte[] generateProjector(String internal_name, int[] positions) {
+		ClassBuilder cls = new ClassBuilder(internal_name, "java/lang/Object", "solver/Projector");
+		CodeBuilder init = new CodeBuilder();
+		init.local(CodeBuilder.ALOAD, 0, 1);
+		init.op2(CodeBuilder.INVOKESPECIAL, cls.methodRef("java/lang/Object", "<init>", "()V"), -1);
+		init.op(CodeBuilder.RETURN, 0);
+		cls.addMethod("<init>", "()V", init, 1);
+
+		int get = cls.interfaceMethodRef("solver/Row", "get", "(I)Ljava/lang/Comparable;");
+		int add = cls.methodRef("java/util/ArrayList", "add", "(Ljava/lang/Object;)Z");
+		CodeBuilder code = new CodeBuilder();
+		code.op2(CodeBuilder.NEW, cls.classRef("java/util/ArrayList"), 1);
+		code.op(CodeBuilder.DUP, 1);
+		code.iconst(positions.length);
+		code.op2(CodeBuilder.INVOKESPECIAL, cls.methodRef("java/util/ArrayList", "<init>", "(I)V"), -2);
+		code.local(CodeBuilder.ASTORE, 2, -1);
+		for (int p : positions) {
+			code.local(CodeBuilder.ALOAD, 2, 1);
+			code.local(CodeBuilder.ALOAD, 1, 1);
+			code.iconst(p);
+			code.invokeInterface(get, 2, -1);
+			code.op2(CodeBuilder.INVOKEVIRTUAL, add, -1);
+			code.op(CodeBuilder.POP, -1);
+		}
+		code.local(CodeBuilder.ALOAD, 2, 1);
+		code.op(CodeBuilder.ARETURN, -1);
+		cls.addMethod("project", "(Lsolver/Row;)Ljava/util/List;", code, 3);
+		return cls.toBytes();
+	}
+
+	/**
+	 * Class loader for generated classes
+	 */
+	private static class Loader extends ClassLoader {
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String internal_name, byte[] bytes) {
+			return this.defineClass(internal_name.replace('/', '.'), bytes, 0, bytes.length);
+		}
+	}
+}
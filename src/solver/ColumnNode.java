@@ -0,0 +1,73 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * A reference to an attribute of the row.
+ */
+@SuppressWarnings("rawtypes")
+public class ColumnNode extends Node {
+	private final String name;
+	private final int pos;
+	private final Type type;
+
+	/**
+	 * Creates an unbound attribute reference
+	 * @param name	(pedantic) name of the attribute
+	 */
+	public ColumnNode(String name) {
+		this(name, -1, null);
+	}
+
+	/**
+	 * Creates a bound attribute reference
+	 * @param name	(pedantic) name of the attribute
+	 * @param pos	position of the attribute in the row
+	 * @param type	NUMBER or TEXT
+	 */
+	public ColumnNode(String name, int pos, Type type) {
+		this.name = name;
+		this.pos = pos;
+		this.type = type;
+	}
+
+	/**
+	 * @return the attribute name as written in the condition
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * @return the position of the attribute, or -1 if unbound
+	 */
+	public int getPos() {
+		return this.pos;
+	}
+
+	@Override
+	public Type type() {
+		return this.type;
+	}
+
+	@Override
+	public Node bind(Schema schema) throws DBException {
+		int p = schema.lookup(this.name);
+		return new ColumnNode(this.name, p, schema.isNumeric(p) ? Type.NUMBER : Type.TEXT);
+	}
+
+	@Override
+	public double number(Row row) {
+		return row.getNumber(this.pos);
+	}
+
+	@Override
+	public Comparable value(Row row) {
+		return row.get(this.pos);
+	}
+
+	@Override
+	public String toString() {
+		return this.name;
+	}
+}
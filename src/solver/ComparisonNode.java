@@ -0,0 +1,130 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * A comparison (=, !=, <, <=, >, >=) between two operands of the same type.
+ * TEXT operands are ordered by content; a comparison against null is only
+ * defined for = and !=.
+ */
+@SuppressWarnings("rawtypes")
+public class ComparisonNode extends Node {
+	private final String op;
+	private final int code;
+	private final Type mode;
+	private final Node left;
+	private final Node right;
+
+	/**
+	 * Creates a comparison
+	 * @param op	one of = != < <= > >=
+	 * @param left	left operand
+	 * @param right	right operand
+	 */
+	public ComparisonNode(String op, Node left, Node right) {
+		this.op = op;
+		this.code = Ops.code(op);
+		this.left = left;
+		this.right = right;
+		if (left.type() == Type.NULL || right.type() == Type.NULL) {
+			this.mode = Type.NULL;
+		}
+		else {
+			this.mode = left.type();
+		}
+	}
+
+	/**
+	 * @return the operator
+	 */
+	public String getOp() {
+		return this.op;
+	}
+
+	/**
+	 * @return the left operand
+	 */
+	public Node getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * @return the right operand
+	 */
+	public Node getRight() {
+		return this.right;
+	}
+
+	/**
+	 * @return the operator code (see Ops)
+	 */
+	public int getCode() {
+		return this.code;
+	}
+
+	/**
+	 * @return the type both operands are compared as
+	 */
+	public Type operandType() {
+		return this.mode;
+	}
+
+	@Override
+	public Type type() {
+		return (this.left.type() == null) ? null : Type.BOOLEAN;
+	}
+
+	@Override
+	public Node bind(Schema schema) throws DBException {
+		Node l = this.left.bind(schema);
+		Node r = this.right.bind(schema);
+		l = ParameterNode.infer(l, r.type());
+		r = ParameterNode.infer(r, l.type());
+		boolean equality = this.code == Ops.EQ || this.code == Ops.NE;
+		if (l.type() == Type.NULL || r.type() == Type.NULL) {
+			if (!equality) {
+				throw mismatch(this.op, l, r);
+			}
+		}
+		else if (l.type() != r.type() || (l.type() == Type.BOOLEAN && !equality)) {
+			throw mismatch(this.op, l, r);
+		}
+		return new ComparisonNode(this.op, l, r);
+	}
+
+	@Override
+	public boolean test(Row row) {
+		switch (this.mode) {
+			case NUMBER:
+				double a = this.left.number(row);
+				double b = this.right.number(row);
+				switch (this.code) {
+					case Ops.EQ:
+						return a == b;
+					case Ops.NE:
+						return a != b;
+					case Ops.LT:
+						return a < b;
+					case Ops.LE:
+						return a <= b;
+					case Ops.GT:
+						return a > b;
+					default:
+						return a >= b;
+				}
+			case TEXT:
+				return Ops.testText((String) this.left.value(row), (String) this.right.value(row), this.code);
+			case BOOLEAN:
+				return (this.left.test(row) == this.right.test(row)) == (this.code == Ops.EQ);
+			default:
+				Comparable v = this.left.value(row);
+				Comparable w = this.right.value(row);
+				return Ops.bothNull(v, w) == (this.code == Ops.EQ);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "(" + this.left + " " + this.op + " " + this.right + ")";
+	}
+}
@@ -0,0 +1,24 @@
+package solver;
+
+/**
+ * Base class of generated predicates. The literals of a condition are not
+ * baked into the generated code but read from these arrays, so one class
+ * serves every condition of the same shape (e.g. "orderNumber = 10100" and
+ * "orderNumber = 10101").
+ *
+ * @see Codegen
+ */
+public abstract class CompiledPredicate implements Predicate {
+	protected double[] nums;
+	protected String[] texts;
+
+	/**
+	 * Supplies the literals of the condition this instance evaluates
+	 * @param nums	NUMBER literals, in the order assigned by the generator
+	 * @param texts	TEXT literals, in the order assigned by the generator
+	 */
+	void setConstants(double[] nums, String[] texts) {
+		this.nums = nums;
+		this.texts = texts;
+	}
+}
@@ -0,0 +1,107 @@
+package solver;
+
+import java.util.List;
+
+import exceptions.DBException;
+
+/**
+ * Compiles condition strings into predicates that can be evaluated per row.
+ */
+public class Condition {
+	/**
+	 * Parses a condition without resolving its attribute names
+	 * @param cond	a condition string
+	 * @return the unbound expression tree
+	 * @throws DBException if the condition is not well formed
+	 */
+	public static Node parse(String cond) throws DBException {
+		return new Parser(cond).parse();
+	}
+
+	/**
+	 * Parses a condition and binds it to the given schema
+	 * @param cond		a condition string
+	 * @param schema	the schema of the rows the condition will be tested on
+	 * @return a bound predicate
+	 * @throws DBException if the condition is invalid for the schema
+	 */
+	public static Predicate compile(String cond, Schema schema) throws DBException {
+		return bind(parse(cond), schema);
+	}
+
+	/**
+	 * Binds a parsed condition to the given schema
+	 * @param root		an unbound expression tree
+	 * @param schema	the schema of the rows the condition will be tested on
+	 * @return the bound tree
+	 * @throws DBException if the tree is invalid for the schema or is not boolean
+	 */
+	public static Node bind(Node root, Schema schema) throws DBException {
+		Node bound = root.bind(schema);
+		if (bound.type() != Node.Type.BOOLEAN) {
+			throw new DBException("Invalid expression: not a condition: " + root);
+		}
+		return bound;
+	}
+
+	/**
+	 * Replaces the parameters of a condition by values, without parsing it again
+	 * @param root		a condition, bound or not
+	 * @param values	the value of parameter i at i - 1, as literals
+	 * @return the condition with its parameters replaced; parts without parameters are shared
+	 */
+	public static Node substitute(Node root, Node[] values) {
+		if (root instanceof ParameterNode) {
+			return values[((ParameterNode) root).getIndex() - 1];
+		}
+		if (root instanceof ComparisonNode) {
+			ComparisonNode c = (ComparisonNode) root;
+			Node l = substitute(c.getLeft(), values);
+			Node r = substitute(c.getRight(), values);
+			return (l == c.getLeft() && r == c.getRight()) ? root : new ComparisonNode(c.getOp(), l, r);
+		}
+		if (root instanceof LogicalNode) {
+			LogicalNode c = (LogicalNode) root;
+			Node l = substitute(c.getLeft(), values);
+			Node r = substitute(c.getRight(), values);
+			return (l == c.getLeft() && r == c.getRight()) ? root : new LogicalNode(c.getOp(), l, r);
+		}
+		if (root instanceof ArithmeticNode) {
+			ArithmeticNode a = (ArithmeticNode) root;
+			Node l = substitute(a.getLeft(), values);
+			Node r = substitute(a.getRight(), values);
+			return (l == a.getLeft() && r == a.getRight()) ? root : new ArithmeticNode(a.getOp(), l, r);
+		}
+		if (root instanceof NotNode) {
+			Node c = substitute(((NotNode) root).getChild(), values);
+			return (c == ((NotNode) root).getChild()) ? root : new NotNode(c);
+		}
+		return root;
+	}
+
+	/**
+	 * Collects the parameters of a condition
+	 * @param root	a condition; once bound, its parameters have types
+	 * @param out	the list the parameters are added to, in order
+	 */
+	public static void parameters(Node root, List<ParameterNode> out) {
+		if (root instanceof ParameterNode) {
+			out.add((ParameterNode) root);
+		}
+		else if (root instanceof ComparisonNode) {
+			parameters(((ComparisonNode) root).getLeft(), out);
+			parameters(((ComparisonNode) root).getRight(), out);
+		}
+		else if (root instanceof LogicalNode) {
+			parameters(((LogicalNode) root).getLeft(), out);
+			parameters(((LogicalNode) root).getRight(), out);
+		}
+		else if (root instanceof ArithmeticNode) {
+			parameters(((ArithmeticNode) root).getLeft(), out);
+			parameters(((ArithmeticNode) root).getRight(), out);
+		}
+		else if (root instanceof NotNode) {
+			parameters(((NotNode) root).getChild(), out);
+		}
+	}
+}
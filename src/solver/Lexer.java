@@ -0,0 +1,195 @@
+package solver;
+
+import exceptions.DBException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a condition string into tokens. Accepts the syntax that used to be
+ * handed to the script engine: attribute names (plain, pedantic such as "R.A",
+ * or aggregate columns such as "SUM(x)"), numbers, quoted text, the comparison
+ * operators =, ==, !=, <>, <, <=, >, >=, the logical operators &&, ||, ! and
+ * arithmetic + - * / %.
+ *
+ * @see Parser
+ */
+public class Lexer {
+	private final String src;
+	private int pos;
+
+	/**
+	 * Creates a lexer over the given condition
+	 * @param src	a condition string
+	 */
+	public Lexer(String src) {
+		this.src = src;
+		this.pos = 0;
+	}
+
+	/**
+	 * @return the list of tokens in the condition, terminated by an EOF token
+	 * @throws DBException if the condition contains an unexpected character
+	 */
+	public List<Token> tokenize() throws DBException {
+		List<Token> tokens = new ArrayList<>();
+		while (true) {
+			// skip whitespace
+			while (pos < src.length() && Character.isWhitespace(src.charAt(pos))) {
+				pos++;
+			}
+			if (pos >= src.length()) {
+				tokens.add(new Token(Token.Kind.EOF, "", pos));
+				return tokens;
+			}
+			char c = src.charAt(pos);
+			if (c == '\'' || c == '"') {
+				tokens.add(readText(c));
+			}
+			else if (isWordChar(c)) {
+				tokens.add(readWord());
+			}
+			else if (c == '(') {
+				tokens.add(new Token(Token.Kind.LPAREN, "(", pos++));
+			}
+			else if (c == ')') {
+				tokens.add(new Token(Token.Kind.RPAREN, ")", pos++));
+			}
+			else {
+				tokens.add(readOperator());
+			}
+		}
+	}
+
+	/**
+	 * Reads a quoted text literal. The literal is normalized to single quotes,
+	 * which is how TEXT values are stored in tuples.
+	 * @param quote	the opening quote character
+	 * @return a TEXT token
+	 */
+	private Token readText(char quote) {
+		int start = pos++;
+		StringBuilder sb = new StringBuilder("'");
+		while (pos < src.length() && src.charAt(pos) != quote) {
+			char c = src.charAt(pos++);
+			if (c == '\\' && pos < src.length()) {
+				c = src.charAt(pos++);
+			}
+			sb.append(c);
+		}
+		if (pos >= src.length()) {
+			throw new DBException("Invalid expression: unterminated text literal in " + src);
+		}
+		pos++;
+		return new Token(Token.Kind.TEXT, sb.append('\'').toString(), start);
+	}
+
+	/**
+	 * Reads a number or a name. A run that starts like a number but continues with
+	 * name characters (e.g. "0.SUM(x)" produced by renamed relations) is a name.
+	 * @return a NUMBER or IDENT token
+	 */
+	private Token readWord() {
+		int start = pos;
+		int end = scanNumber(start);
+		if (end > start && (end >= src.length() || !isWordChar(src.charAt(end)))) {
+			pos = end;
+			return new Token(Token.Kind.NUMBER, src.substring(start, end), start);
+		}
+		while (pos < src.length() && isWordChar(src.charAt(pos))) {
+			pos++;
+		}
+		// aggregate columns are named like "MAX(priceEach)"
+		if (pos < src.length() && src.charAt(pos) == '(') {
+			int close = src.indexOf(')', pos);
+			if (close > pos + 1 && isName(src.substring(pos + 1, close))) {
+				pos = close + 1;
+			}
+		}
+		return new Token(Token.Kind.IDENT, src.substring(start, pos), start);
+	}
+
+	/**
+	 * @param from	offset at which to start
+	 * @return the end offset of a numeric literal starting at from, or from if none
+	 */
+	private int scanNumber(int from) {
+		int i = from;
+		while (i < src.length() && Character.isDigit(src.charAt(i))) {
+			i++;
+		}
+		if (i < src.length() && src.charAt(i) == '.') {
+			int frac = i + 1;
+			while (frac < src.length() && Character.isDigit(src.charAt(frac))) {
+				frac++;
+			}
+			if (frac == i + 1 && i == from) {
+				return from;	// a lone "."
+			}
+			i = frac;
+		}
+		if (i == from) {
+			return from;
+		}
+		if (i < src.length() && (src.charAt(i) == 'e' || src.charAt(i) == 'E')) {
+			int exp = i + 1;
+			if (exp < src.length() && (src.charAt(exp) == '+' || src.charAt(exp) == '-')) {
+				exp++;
+			}
+			int digits = exp;
+			while (digits < src.length() && Character.isDigit(src.charAt(digits))) {
+				digits++;
+			}
+			if (digits > exp) {
+				i = digits;
+			}
+		}
+		return i;
+	}
+
+	/**
+	 * Reads an operator, normalizing its spelling (== and === become =, <> and !== become !=)
+	 * @return an OP token
+	 * @throws DBException if no operator starts at the current position
+	 */
+	private Token readOperator() throws DBException {
+		int start = pos;
+		String[] ops = {"===", "!==", "==", "!=", "<>", "<=", ">=", "&&", "||",
+				"=", "<", ">", "!", "+", "-", "*", "/", "%"};
+		for (String op : ops) {
+			if (src.startsWith(op, pos)) {
+				pos += op.length();
+				String text = op;
+				if (op.equals("===") || op.equals("==")) {
+					text = "=";
+				}
+				else if (op.equals("!==") || op.equals("<>")) {
+					text = "!=";
+				}
+				return new Token(Token.Kind.OP, text, start);
+			}
+		}
+		throw new DBException("Invalid expression: unexpected '" + src.charAt(pos) +
+				"' at position " + pos + " in " + src);
+	}
+
+	/**
+	 * @param c	a character
+	 * @return true if c may appear in a name or number
+	 */
+	private static boolean isWordChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '.' || c == '$';
+	}
+
+	/**
+	 * @param s	a string
+	 * @return true if s consists only of name characters
+	 */
+	private static boolean isName(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (!isWordChar(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
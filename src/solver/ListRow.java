@@ -0,0 +1,27 @@
+package solver;
+
+import java.util.List;
+
+/**
+ * A reusable Row view over a list of values, so that a scan can evaluate an
+ * expression on each tuple without allocating.
+ */
+@SuppressWarnings("rawtypes")
+public class ListRow implements Row {
+	private List<Comparable> values;
+
+	/**
+	 * Points this view at another list of values
+	 * @param values	the values of the current row
+	 * @return this view
+	 */
+	public ListRow reset(List<Comparable> values) {
+		this.values = values;
+		return this;
+	}
+
+	@Override
+	public Comparable get(int pos) {
+		return this.values.get(pos);
+	}
+}
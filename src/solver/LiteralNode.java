@@ -0,0 +1,67 @@
+package solver;
+
+/**
+ * A constant: a number, a quoted text, true/false, or null.
+ */
+@SuppressWarnings("rawtypes")
+public class LiteralNode extends Node {
+	private final Type type;
+	private final Comparable value;
+	private final double number;
+	private final boolean bool;
+
+	/**
+	 * Creates a literal
+	 * @param type	the literal's type
+	 * @param value	the literal's value (Double, quoted String, Boolean, or null)
+	 */
+	public LiteralNode(Type type, Comparable value) {
+		this.type = type;
+		this.value = value;
+		this.number = (type == Type.NUMBER) ? (Double) value : 0.0;
+		this.bool = (type == Type.BOOLEAN) && (Boolean) value;
+	}
+
+	/**
+	 * @return the value of this literal
+	 */
+	public Comparable getValue() {
+		return this.value;
+	}
+
+	@Override
+	public Type type() {
+		return this.type;
+	}
+
+	@Override
+	public Node bind(Schema schema) {
+		return this;
+	}
+
+	@Override
+	public boolean test(Row row) {
+		if (this.type != Type.BOOLEAN) {
+			return super.test(row);
+		}
+		return this.bool;
+	}
+
+	@Override
+	public double number(Row row) {
+		if (this.type != Type.NUMBER) {
+			return super.number(row);
+		}
+		return this.number;
+	}
+
+	@Override
+	public Comparable value(Row row) {
+		return this.value;
+	}
+
+	@Override
+	public String toString() {
+		return String.valueOf(this.value);
+	}
+}
@@ -0,0 +1,75 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * A short-circuiting conjunction (&&) or disjunction (||) of two conditions.
+ */
+public class LogicalNode extends Node {
+	private final String op;
+	private final boolean and;
+	private final Node left;
+	private final Node right;
+
+	/**
+	 * Creates a conjunction or disjunction
+	 * @param op	&& or ||
+	 * @param left	left condition
+	 * @param right	right condition
+	 */
+	public LogicalNode(String op, Node left, Node right) {
+		this.op = op;
+		this.and = op.equals("&&");
+		this.left = left;
+		this.right = right;
+	}
+
+	/**
+	 * @return the operator
+	 */
+	public String getOp() {
+		return this.op;
+	}
+
+	/**
+	 * @return the left condition
+	 */
+	public Node getLeft() {
+		return this.left;
+	}
+
+	/**
+	 * @return the right condition
+	 */
+	public Node getRight() {
+		return this.right;
+	}
+
+	@Override
+	public Type type() {
+		return (this.left.type() == null) ? null : Type.BOOLEAN;
+	}
+
+	@Override
+	public Node bind(Schema schema) throws DBException {
+		Node l = this.left.bind(schema);
+		Node r = this.right.bind(schema);
+		if (l.type() != Type.BOOLEAN || r.type() != Type.BOOLEAN) {
+			throw mismatch(this.op, l, r);
+		}
+		return new LogicalNode(this.op, l, r);
+	}
+
+	@Override
+	public boolean test(Row row) {
+		if (this.and) {
+			return this.left.test(row) && this.right.test(row);
+		}
+		return this.left.test(row) || this.right.test(row);
+	}
+
+	@Override
+	public String toString() {
+		return "(" + this.left + " " + this.op + " " + this.right + ")";
+	}
+}
@@ -0,0 +1,89 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * A node of a parsed condition. A tree is produced by the Parser with
+ * attribute names unresolved; bind() resolves the names against a Schema,
+ * checks operand types, and returns a tree that can be evaluated per row.
+ *
+ * @see Parser
+ * @see Condition
+ */
+@SuppressWarnings("rawtypes")
+public abstract class Node implements Predicate {
+	/**
+	 * Result types of expression nodes
+	 */
+	public enum Type {
+		NUMBER, TEXT, BOOLEAN, NULL
+	}
+
+	/**
+	 * @return the result type of this node, or null if the node is not yet bound
+	 */
+	public abstract Type type();
+
+	/**
+	 * Resolves attribute names and checks operand types
+	 * @param schema	the schema the expression will be evaluated against
+	 * @return a bound copy of this node
+	 * @throws DBException if an attribute is unknown or ambiguous, or the types do not match
+	 */
+	public abstract Node bind(Schema schema) throws DBException;
+
+	/**
+	 * Evaluates a BOOLEAN node
+	 * @param row	the row to evaluate on
+	 * @return the result of the condition
+	 */
+	@Override
+	public boolean test(Row row) {
+		throw new DBException("Not a boolean expression: " + this);
+	}
+
+	/**
+	 * Evaluates a NUMBER node
+	 * @param row	the row to evaluate on
+	 * @return the numeric result
+	 */
+	public double number(Row row) {
+		throw new DBException("Not a numeric expression: " + this);
+	}
+
+	/**
+	 * Evaluates this node to a boxed value
+	 * @param row	the row to evaluate on
+	 * @return the result as a Double, String, Boolean, or null
+	 */
+	public Comparable value(Row row) {
+		switch (this.type()) {
+			case NUMBER:
+				return this.number(row);
+			case BOOLEAN:
+				return this.test(row);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * @return the condition text of this node, fully parenthesized
+	 */
+	@Override
+	public abstract String toString();
+
+	/**
+	 * Builds the exception for operands of an unexpected type
+	 * @param op	the operator
+	 * @param operands	the offending operands
+	 * @return an exception describing the mismatch
+	 */
+	protected static DBException mismatch(String op, Node... operands) {
+		StringBuilder sb = new StringBuilder("Type mismatch for '" + op + "':");
+		for (Node n : operands) {
+			sb.append(" ").append(n).append(" (").append(n.type()).append(")");
+		}
+		return new DBException(sb.toString());
+	}
+}
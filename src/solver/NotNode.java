@@ -0,0 +1,49 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * The negation (!) of a condition.
+ */
+public class NotNode extends Node {
+	private final Node child;
+
+	/**
+	 * Creates a negation
+	 * @param child	the condition to negate
+	 */
+	public NotNode(Node child) {
+		this.child = child;
+	}
+
+	/**
+	 * @return the negated condition
+	 */
+	public Node getChild() {
+		return this.child;
+	}
+
+	@Override
+	public Type type() {
+		return (this.child.type() == null) ? null : Type.BOOLEAN;
+	}
+
+	@Override
+	public Node bind(Schema schema) throws DBException {
+		Node c = this.child.bind(schema);
+		if (c.type() != Type.BOOLEAN) {
+			throw mismatch("!", c);
+		}
+		return new NotNode(c);
+	}
+
+	@Override
+	public boolean test(Row row) {
+		return !this.child.test(row);
+	}
+
+	@Override
+	public String toString() {
+		return "(!" + this.child + ")";
+	}
+}
@@ -0,0 +1,109 @@
+package solver;
+
+/**
+ * Value operations shared by the evaluators.
+ */
+public final class Ops {
+	/** comparison operator codes, in the order of OPS */
+	public static final int EQ = 0, NE = 1, LT = 2, LE = 3, GT = 4, GE = 5;
+	public static final String[] OPS = {"=", "!=", "<", "<=", ">", ">="};
+
+	private Ops() {
+	}
+
+	/**
+	 * @param op	a comparison operator
+	 * @return its code, or -1 if op is not a comparison
+	 */
+	public static int code(String op) {
+		for (int i = 0; i < OPS.length; i++) {
+			if (OPS[i].equals(op)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares two TEXT values. Equality treats two nulls as equal; any
+	 * ordering involving null is false.
+	 * @param a		left value, possibly null
+	 * @param b		right value, possibly null
+	 * @param op	comparison operator code
+	 * @return the result of the comparison
+	 */
+	public static boolean testText(String a, String b, int op) {
+		if (op == EQ) {
+			return equalsText(a, b);
+		}
+		if (op == NE) {
+			return !equalsText(a, b);
+		}
+		if (a == null || b == null) {
+			return false;
+		}
+		int c = compareText(a, b);
+		switch (op) {
+			case LT:
+				return c < 0;
+			case LE:
+				return c <= 0;
+			case GT:
+				return c > 0;
+			default:
+				return c >= 0;
+		}
+	}
+
+	/**
+	 * @param a	a value
+	 * @param b	another value
+	 * @return true if both values are null
+	 */
+	public static boolean bothNull(Object a, Object b) {
+		return a == null && b == null;
+	}
+
+	/**
+	 * Compares two TEXT values by their content. Stored values keep their quotes
+	 * (e.g. 'Paris'), so the quotes are skipped to order them as plain strings.
+	 * @param a	one value
+	 * @param b	another value
+	 * @return negative, zero or positive as a is less than, equal to or greater than b
+	 */
+	public static int compareText(String a, String b) {
+		int a_from = quoted(a) ? 1 : 0;
+		int b_from = quoted(b) ? 1 : 0;
+		int a_len = a.length() - 2 * a_from;
+		int b_len = b.length() - 2 * b_from;
+		int n = Math.min(a_len, b_len);
+		for (int i = 0; i < n; i++) {
+			char x = a.charAt(a_from + i);
+			char y = b.charAt(b_from + i);
+			if (x != y) {
+				return x - y;
+			}
+		}
+		return a_len - b_len;
+	}
+
+	/**
+	 * @param a	one TEXT value, possibly null
+	 * @param b	another TEXT value, possibly null
+	 * @return true if both are null or both have the same content
+	 */
+	public static boolean equalsText(String a, String b) {
+		if (a == null || b == null) {
+			return a == b;
+		}
+		return a.equals(b) || compareText(a, b) == 0;
+	}
+
+	/**
+	 * @param s	a TEXT value
+	 * @return true if the value is wrapped in single quotes
+	 */
+	private static boolean quoted(String s) {
+		return s.length() >= 2 && s.charAt(0) == '\'' && s.charAt(s.length() - 1) == '\'';
+	}
+}
@@ -0,0 +1,83 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * A parameter of a prepared query, written ? and numbered from 1 in the order
+ * the parameters appear. A parameter has no type until it is bound: it takes
+ * the type of the operand it is compared with, or NUMBER in arithmetic. It
+ * has no value either; Condition.substitute() replaces it by a literal before
+ * the condition is evaluated.
+ */
+public class ParameterNode extends Node {
+	private final int index;
+	private final Type type;
+
+	/**
+	 * Creates an untyped parameter
+	 * @param index	the number of the parameter, from 1
+	 */
+	public ParameterNode(int index) {
+		this(index, null);
+	}
+
+	private ParameterNode(int index, Type type) {
+		this.index = index;
+		this.type = type;
+	}
+
+	/**
+	 * @return the number of this parameter, from 1
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	@Override
+	public Type type() {
+		return this.type;
+	}
+
+	@Override
+	public Node bind(Schema schema) {
+		return this;
+	}
+
+	/**
+	 * Gives an untyped parameter the type of the operand it is used with
+	 * @param n		a bound node
+	 * @param type	the type the context gives it
+	 * @return n, typed if it is an untyped parameter
+	 * @throws DBException if the context does not determine a type
+	 */
+	static Node infer(Node n, Type type) throws DBException {
+		if (!(n instanceof ParameterNode) || n.type() != null) {
+			return n;
+		}
+		if (type == null || type == Type.NULL) {
+			throw new DBException("Cannot infer the type of parameter " + n);
+		}
+		return new ParameterNode(((ParameterNode) n).index, type);
+	}
+
+	@Override
+	public boolean test(Row row) {
+		throw new DBException("No value for parameter " + this);
+	}
+
+	@Override
+	public double number(Row row) {
+		throw new DBException("No value for parameter " + this);
+	}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public Comparable value(Row row) {
+		throw new DBException("No value for parameter " + this);
+	}
+
+	@Override
+	public String toString() {
+		return "?" + this.index;
+	}
+}
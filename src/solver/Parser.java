@@ -0,0 +1,175 @@
+package solver;
+
+import exceptions.DBException;
+import java.util.List;
+
+/**
+ * Recursive-descent parser for conditions. Operator precedence follows the
+ * JavaScript rules the conditions were originally evaluated with:
+ * <pre>
+ *   or      := and ('||' and)*
+ *   and     := cmp ('&&' cmp)*
+ *   cmp     := sum (('=' | '!=' | '<' | '<=' | '>' | '>=') sum)?
+ *   sum     := product (('+' | '-') product)*
+ *   product := unary (('*' | '/' | '%') unary)*
+ *   unary   := ('!' | '-' | '+') unary | primary
+ *   primary := NUMBER | TEXT | null | true | false | NAME | '(' or ')'
+ * </pre>
+ * The resulting tree is unbound; see Node.bind().
+ */
+public class Parser {
+	private final String src;
+	private final List<Token> tokens;
+	private int next;
+
+	/**
+	 * Creates a parser for the given condition
+	 * @param src	a condition string
+	 * @throws DBException if the condition cannot be tokenized
+	 */
+	public Parser(String src) throws DBException {
+		this.src = src;
+		this.tokens = new Lexer(src).tokenize();
+		this.next = 0;
+	}
+
+	/**
+	 * @return the root of the parsed (unbound) tree
+	 * @throws DBException if the condition is not well formed
+	 */
+	public Node parse() throws DBException {
+		Node root = this.parseOr();
+		if (this.peek().getKind() != Token.Kind.EOF) {
+			throw this.error("unexpected '" + this.peek() + "'");
+		}
+		return root;
+	}
+
+	private Node parseOr() {
+		Node left = this.parseAnd();
+		while (this.peek().is(Token.Kind.OP, "||")) {
+			this.next++;
+			left = new LogicalNode("||", left, this.parseAnd());
+		}
+		return left;
+	}
+
+	private Node parseAnd() {
+		Node left = this.parseComparison();
+		while (this.peek().is(Token.Kind.OP, "&&")) {
+			this.next++;
+			left = new LogicalNode("&&", left, this.parseComparison());
+		}
+		return left;
+	}
+
+	private Node parseComparison() {
+		Node left = this.parseSum();
+		Token t = this.peek();
+		if (t.getKind() == Token.Kind.OP) {
+			switch (t.getText()) {
+				case "=":
+				case "!=":
+				case "<":
+				case "<=":
+				case ">":
+				case ">=":
+					this.next++;
+					return new ComparisonNode(t.getText(), left, this.parseSum());
+				default:
+			}
+		}
+		return left;
+	}
+
+	private Node parseSum() {
+		Node left = this.parseProduct();
+		while (this.peek().is(Token.Kind.OP, "+") || this.peek().is(Token.Kind.OP, "-")) {
+			String op = this.tokens.get(this.next++).getText();
+			left = new ArithmeticNode(op, left, this.parseProduct());
+		}
+		return left;
+	}
+
+	private Node parseProduct() {
+		Node left = this.parseUnary();
+		while (this.peek().is(Token.Kind.OP, "*") || this.peek().is(Token.Kind.OP, "/")
+				|| this.peek().is(Token.Kind.OP, "%")) {
+			String op = this.tokens.get(this.next++).getText();
+			left = new ArithmeticNode(op, left, this.parseUnary());
+		}
+		return left;
+	}
+
+	private Node parseUnary() {
+		Token t = this.peek();
+		if (t.is(Token.Kind.OP, "!")) {
+			this.next++;
+			return new NotNode(this.parseUnary());
+		}
+		if (t.is(Token.Kind.OP, "-")) {
+			this.next++;
+			if (this.peek().getKind() == Token.Kind.NUMBER) {
+				return new LiteralNode(Node.Type.NUMBER, -this.parseNumber(this.tokens.get(this.next++)));
+			}
+			return new ArithmeticNode("-", new LiteralNode(Node.Type.NUMBER, 0.0), this.parseUnary());
+		}
+		if (t.is(Token.Kind.OP, "+")) {
+			this.next++;
+			return this.parseUnary();
+		}
+		return this.parsePrimary();
+	}
+
+	private Node parsePrimary() {
+		Token t = this.tokens.get(this.next);
+		switch (t.getKind()) {
+			case NUMBER:
+				this.next++;
+				return new LiteralNode(Node.Type.NUMBER, this.parseNumber(t));
+			case TEXT:
+				this.next++;
+				return new LiteralNode(Node.Type.TEXT, t.getText());
+			case IDENT:
+				this.next++;
+				switch (t.getText()) {
+					case "null":
+						return new LiteralNode(Node.Type.NULL, null);
+					case "true":
+						return new LiteralNode(Node.Type.BOOLEAN, true);
+					case "false":
+						return new LiteralNode(Node.Type.BOOLEAN, false);
+					default:
+						return new ColumnNode(t.getText());
+				}
+			case LPAREN:
+				this.next++;
+				Node inner = this.parseOr();
+				if (this.peek().getKind() != Token.Kind.RPAREN) {
+					throw this.error("missing ')'");
+				}
+				this.next++;
+				return inner;
+			default:
+				throw this.error((t.getKind() == Token.Kind.EOF) ? "unexpected end" :
+						"unexpected '" + t + "'");
+		}
+	}
+
+	private double parseNumber(Token t) {
+		try {
+			return Double.parseDouble(t.getText());
+		} catch (NumberFormatException e) {
+			throw this.error("bad number '" + t + "'");
+		}
+	}
+
+	private Token peek() {
+		return this.tokens.get(this.next);
+	}
+
+	private DBException error(String what) {
+		return new DBException("Invalid expression: " + what + " at position " +
+				this.peek().getPos() + " in " + this.src);
+	}
+}
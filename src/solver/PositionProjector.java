@@ -0,0 +1,28 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interpreted projection over an array of positions.
+ */
+@SuppressWarnings("rawtypes")
+public class PositionProjector implements Projector {
+	private final int[] positions;
+
+	/**
+	 * @param positions	positions to extract, in output order
+	 */
+	public PositionProjector(int[] positions) {
+		this.positions = positions;
+	}
+
+	@Override
+	public List<Comparable> project(Row row) {
+		List<Comparable> values = new ArrayList<>(this.positions.length);
+		for (int p : this.positions) {
+			values.add(row.get(p));
+		}
+		return values;
+	}
+}
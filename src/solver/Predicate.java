@@ -0,0 +1,12 @@
+package solver;
+
+/**
+ * A boolean condition that has been bound to a schema.
+ */
+public interface Predicate {
+	/**
+	 * @param row	the row to test
+	 * @return true if the condition holds for the row
+	 */
+	boolean test(Row row);
+}
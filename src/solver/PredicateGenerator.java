@@ -0,0 +1,319 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates a bound condition into the bytecode of a CompiledPredicate
+ * subclass. Column positions and operators are baked into the code; literals
+ * are collected into constant arrays and described by "?" in the shape, which
+ * serves as the cache key for the generated class.
+ */
+class PredicateGenerator {
+	private static final String ROW = "solver/Row";
+	private static final String OPS = "solver/Ops";
+	private static final String BASE = "solver/CompiledPredicate";
+
+	private final Node root;
+	private final String shape;
+	private final List<Double> nums = new ArrayList<>();
+	private final List<String> texts = new ArrayList<>();
+	private final Map<Node, Integer> slots = new IdentityHashMap<>();
+
+	private ClassBuilder cls;
+	private CodeBuilder code;
+	private String class_name;
+
+	/**
+	 * @param root	a bound BOOLEAN expression
+	 */
+	PredicateGenerator(Node root) {
+		this.root = root;
+		StringBuilder sb = new StringBuilder();
+		this.describe(root, sb);
+		this.shape = sb.toString();
+	}
+
+	/**
+	 * @return the condition with literals replaced by "?" and attributes by their bound position and type
+	 */
+	String shape() {
+		return this.shape;
+	}
+
+	/**
+	 * @return the NUMBER literals of the condition
+	 */
+	double[] numbers() {
+		double[] out = new double[this.nums.size()];
+		for (int i = 0; i < out.length; i++) {
+			out[i] = this.nums.get(i);
+		}
+		return out;
+	}
+
+	/**
+	 * @return the TEXT literals of the condition
+	 */
+	String[] texts() {
+		return this.texts.toArray(new String[0]);
+	}
+
+	/**
+	 * Generates the predicate class
+	 * @param internal_name	internal name for the class
+	 * @return the class file bytes
+	 */
+	byte[] generate(String internal_name) {
+		this.class_name = internal_name;
+		this.cls = new ClassBuilder(internal_name, BASE);
+
+		// constructor: super()
+		CodeBuilder init = new CodeBuilder();
+		init.local(CodeBuilder.ALOAD, 0, 1);
+		init.op2(CodeBuilder.INVOKESPECIAL, this.cls.methodRef(BASE, "<init>", "()V"), -1);
+		init.op(CodeBuilder.RETURN, 0);
+		this.cls.addMethod("<init>", "()V", init, 1);
+
+		// boolean test(Row row)
+		this.code = new CodeBuilder();
+		CodeBuilder.Label fail = new CodeBuilder.Label();
+		this.jump(this.root, false, fail);
+		this.code.iconst(1);
+		this.code.op(CodeBuilder.IRETURN, -1);
+		this.code.mark(fail);
+		this.code.iconst(0);
+		this.code.op(CodeBuilder.IRETURN, -1);
+		this.cls.addMethod("test", "(L" + ROW + ";)Z", this.code, 2);
+		return this.cls.toBytes();
+	}
+
+	/**
+	 * Writes the shape of a node and assigns constant slots to its literals
+	 */
+	private void describe(Node n, StringBuilder sb) {
+		if (n instanceof ColumnNode) {
+			ColumnNode c = (ColumnNode) n;
+			sb.append('$').append(c.getPos()).append(c.type() == Node.Type.NUMBER ? 'n' : 't');
+		}
+		else if (n instanceof LiteralNode) {
+			LiteralNode l = (LiteralNode) n;
+			if (l.type() == Node.Type.NUMBER) {
+				this.slots.put(n, this.nums.size());
+				this.nums.add((Double) l.getValue());
+				sb.append("?n");
+			}
+			else if (l.type() == Node.Type.TEXT) {
+				this.slots.put(n, this.texts.size());
+				this.texts.add((String) l.getValue());
+				sb.append("?t");
+			}
+			else {
+				sb.append(l.getValue());
+			}
+		}
+		else if (n instanceof ArithmeticNode) {
+			ArithmeticNode a = (ArithmeticNode) n;
+			this.binary(a.getLeft(), a.getOp(), a.getRight(), sb);
+		}
+		else if (n instanceof ComparisonNode) {
+			ComparisonNode c = (ComparisonNode) n;
+			this.binary(c.getLeft(), c.getOp(), c.getRight(), sb);
+		}
+		else if (n instanceof LogicalNode) {
+			LogicalNode l = (LogicalNode) n;
+			this.binary(l.getLeft(), l.getOp(), l.getRight(), sb);
+		}
+		else if (n instanceof NotNode) {
+			sb.append('!');
+			this.describe(((NotNode) n).getChild(), sb);
+		}
+		else {
+			throw new IllegalArgumentException("Cannot generate code for " + n);
+		}
+	}
+
+	private void binary(Node left, String op, Node right, StringBuilder sb) {
+		sb.append('(');
+		this.describe(left, sb);
+		sb.append(op);
+		this.describe(right, sb);
+		sb.append(')');
+	}
+
+	/**
+	 * Emits code that branches to target if the BOOLEAN node evaluates to when, and falls through otherwise
+	 */
+	private void jump(Node n, boolean when, CodeBuilder.Label target) {
+		if (n instanceof LogicalNode) {
+			LogicalNode l = (LogicalNode) n;
+			boolean and = l.getOp().equals("&&");
+			if (and != when) {
+				// &&: any false operand decides; ||: any true operand decides
+				this.jump(l.getLeft(), when, target);
+				this.jump(l.getRight(), when, target);
+			}
+			else {
+				CodeBuilder.Label skip = new CodeBuilder.Label();
+				this.jump(l.getLeft(), !when, skip);
+				this.jump(l.getRight(), when, target);
+				this.code.mark(skip);
+			}
+		}
+		else if (n instanceof NotNode) {
+			this.jump(((NotNode) n).getChild(), !when, target);
+		}
+		else if (n instanceof LiteralNode) {
+			if (((LiteralNode) n).getValue().equals(when)) {
+				this.code.jump(CodeBuilder.GOTO, target, 0);
+			}
+		}
+		else {
+			this.compare((ComparisonNode) n, when, target);
+		}
+	}
+
+	private void compare(ComparisonNode c, boolean when, CodeBuilder.Label target) {
+		int op = c.getCode();
+		switch (c.operandType()) {
+			case NUMBER:
+				this.number(c.getLeft());
+				this.number(c.getRight());
+				// dcmpg for < and <=, dcmpl otherwise, so that NaN compares false
+				boolean less = op == Ops.LT || op == Ops.LE;
+				this.code.op(less ? CodeBuilder.DCMPG : CodeBuilder.DCMPL, -3);
+				int[] if_true = {CodeBuilder.IFEQ, CodeBuilder.IFNE, CodeBuilder.IFLT,
+						CodeBuilder.IFLE, CodeBuilder.IFGT, CodeBuilder.IFGE};
+				int[] if_false = {CodeBuilder.IFNE, CodeBuilder.IFEQ, CodeBuilder.IFGE,
+						CodeBuilder.IFGT, CodeBuilder.IFLE, CodeBuilder.IFLT};
+				this.code.jump(when ? if_true[op] : if_false[op], target, -1);
+				break;
+			case TEXT:
+				this.text(c.getLeft());
+				this.text(c.getRight());
+				this.code.iconst(op);
+				this.code.op2(CodeBuilder.INVOKESTATIC, this.cls.methodRef(OPS, "testText",
+						"(Ljava/lang/String;Ljava/lang/String;I)Z"), -2);
+				this.code.jump(when ? CodeBuilder.IFNE : CodeBuilder.IFEQ, target, -1);
+				break;
+			case BOOLEAN:
+				this.bool(c.getLeft());
+				this.bool(c.getRight());
+				this.code.jump((when == (op == Ops.EQ)) ? CodeBuilder.IF_ICMPEQ : CodeBuilder.IF_ICMPNE,
+						target, -2);
+				break;
+			default:
+				this.value(c.getLeft());
+				this.value(c.getRight());
+				this.code.op2(CodeBuilder.INVOKESTATIC, this.cls.methodRef(OPS, "bothNull",
+						"(Ljava/lang/Object;Ljava/lang/Object;)Z"), -1);
+				this.code.jump((when == (op == Ops.EQ)) ? CodeBuilder.IFNE : CodeBuilder.IFEQ,
+						target, -1);
+		}
+	}
+
+	/**
+	 * Emits code pushing the double value of a NUMBER node
+	 */
+	private void number(Node n) {
+		if (n instanceof ColumnNode) {
+			this.code.local(CodeBuilder.ALOAD, 1, 1);
+			this.code.iconst(((ColumnNode) n).getPos());
+			this.code.invokeInterface(this.cls.interfaceMethodRef(ROW, "getNumber", "(I)D"), 2, 0);
+		}
+		else if (n instanceof LiteralNode) {
+			this.code.local(CodeBuilder.ALOAD, 0, 1);
+			this.code.op2(CodeBuilder.GETFIELD, this.cls.fieldRef(this.class_name, "nums", "[D"), 0);
+			this.code.iconst(this.slots.get(n));
+			this.code.op(CodeBuilder.DALOAD, 0);
+		}
+		else {
+			ArithmeticNode a = (ArithmeticNode) n;
+			this.number(a.getLeft());
+			this.number(a.getRight());
+			switch (a.getOp()) {
+				case "+":
+					this.code.op(CodeBuilder.DADD, -2);
+					break;
+				case "-":
+					this.code.op(CodeBuilder.DSUB, -2);
+					break;
+				case "*":
+					this.code.op(CodeBuilder.DMUL, -2);
+					break;
+				case "/":
+					this.code.op(CodeBuilder.DDIV, -2);
+					break;
+				default:
+					this.code.op(CodeBuilder.DREM, -2);
+			}
+		}
+	}
+
+	/**
+	 * Emits code pushing the String value of a TEXT node
+	 */
+	private void text(Node n) {
+		if (n instanceof ColumnNode) {
+			this.column(((ColumnNode) n).getPos());
+			this.code.op2(CodeBuilder.CHECKCAST, this.cls.classRef("java/lang/String"), 0);
+		}
+		else {
+			this.code.local(CodeBuilder.ALOAD, 0, 1);
+			this.code.op2(CodeBuilder.GETFIELD, this.cls.fieldRef(this.class_name, "texts",
+					"[Ljava/lang/String;"), 0);
+			this.code.iconst(this.slots.get(n));
+			this.code.op(CodeBuilder.AALOAD, -1);
+		}
+	}
+
+	/**
+	 * Emits code pushing 1 or 0 for a BOOLEAN node
+	 */
+	private void bool(Node n) {
+		CodeBuilder.Label no = new CodeBuilder.Label();
+		CodeBuilder.Label done = new CodeBuilder.Label();
+		this.jump(n, false, no);
+		this.code.iconst(1);
+		this.code.jump(CodeBuilder.GOTO, done, 0);
+		this.code.mark(no);
+		this.code.iconst(0);
+		this.code.mark(done);
+	}
+
+	/**
+	 * Emits code pushing the boxed value of any node
+	 */
+	private void value(Node n) {
+		if (n instanceof ColumnNode) {
+			this.column(((ColumnNode) n).getPos());
+		}
+		else if (n.type() == Node.Type.NULL) {
+			this.code.op(CodeBuilder.ACONST_NULL, 1);
+		}
+		else if (n.type() == Node.Type.TEXT) {
+			this.text(n);
+		}
+		else if (n.type() == Node.Type.NUMBER) {
+			this.number(n);
+			this.code.op2(CodeBuilder.INVOKESTATIC, this.cls.methodRef("java/lang/Double", "valueOf",
+					"(D)Ljava/lang/Double;"), -1);
+		}
+		else {
+			this.bool(n);
+			this.code.op2(CodeBuilder.INVOKESTATIC, this.cls.methodRef("java/lang/Boolean", "valueOf",
+					"(Z)Ljava/lang/Boolean;"), 0);
+		}
+	}
+
+	/**
+	 * Emits row.get(pos)
+	 */
+	private void column(int pos) {
+		this.code.local(CodeBuilder.ALOAD, 1, 1);
+		this.code.iconst(pos);
+		this.code.invokeInterface(this.cls.interfaceMethodRef(ROW, "get", "(I)Ljava/lang/Comparable;"), 2, -1);
+	}
+}
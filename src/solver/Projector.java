@@ -0,0 +1,15 @@
+package solver;
+
+import java.util.List;
+
+/**
+ * Extracts a fixed list of positions from a row.
+ */
+@SuppressWarnings("rawtypes")
+public interface Projector {
+	/**
+	 * @param row	the source row
+	 * @return a new list holding the projected values, in projection order
+	 */
+	List<Comparable> project(Row row);
+}
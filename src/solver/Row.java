@@ -0,0 +1,29 @@
+package solver;
+
+/**
+ * Positional access to the values of one row, as seen by a bound expression.
+ */
+@SuppressWarnings("rawtypes")
+public interface Row {
+	/**
+	 * @param pos	position of an attribute
+	 * @return the value at the given position (Double, String, or null)
+	 */
+	Comparable get(int pos);
+
+	/**
+	 * @param pos	position of a NUMERIC attribute
+	 * @return the value at the given position as a primitive
+	 */
+	default double getNumber(int pos) {
+		return ((Double) this.get(pos)).doubleValue();
+	}
+
+	/**
+	 * @param pos	position of an attribute
+	 * @return true if the value at the given position is null
+	 */
+	default boolean isNull(int pos) {
+		return this.get(pos) == null;
+	}
+}
@@ -0,0 +1,12 @@
+package solver;
+
+/**
+ * A Row that steps through the rows of a relation.
+ */
+public interface RowCursor extends Row {
+	/**
+	 * Advances to the next row
+	 * @return false if there are no more rows
+	 */
+	boolean next();
+}
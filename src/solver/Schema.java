@@ -0,0 +1,22 @@
+package solver;
+
+import exceptions.DBException;
+
+/**
+ * Resolves attribute names to column positions when binding an expression.
+ */
+public interface Schema {
+	/**
+	 * Looks up the list position of the given attribute
+	 * @param attr_name	a (pedantic) name for the attribute
+	 * @return	position of the attribute in the list
+	 * @throws DBException if attribute does not exist or is ambiguous
+	 */
+	int lookup(String attr_name) throws DBException;
+
+	/**
+	 * @param pos	position of an attribute
+	 * @return true if the attribute holds NUMERIC values, false if it holds TEXT
+	 */
+	boolean isNumeric(int pos);
+}
@@ -0,0 +1,66 @@
+package solver;
+
+/**
+ * A lexical token of a condition string.
+ *
+ * @see Lexer
+ */
+public class Token {
+	/**
+	 * Token categories
+	 */
+	public enum Kind {
+		NUMBER, TEXT, IDENT, OP, LPAREN, RPAREN, EOF
+	}
+
+	private final Kind kind;
+	private final String text;
+	private final int pos;
+
+	/**
+	 * Creates a token
+	 * @param kind	category of the token
+	 * @param text	the token's text (operators and names verbatim, text literals with quotes)
+	 * @param pos	offset of the token in the source string
+	 */
+	public Token(Kind kind, String text, int pos) {
+		this.kind = kind;
+		this.text = text;
+		this.pos = pos;
+	}
+
+	/**
+	 * @return the category of this token
+	 */
+	public Kind getKind() {
+		return this.kind;
+	}
+
+	/**
+	 * @return the text of this token
+	 */
+	public String getText() {
+		return this.text;
+	}
+
+	/**
+	 * @return offset of this token in the source string
+	 */
+	public int getPos() {
+		return this.pos;
+	}
+
+	/**
+	 * @param kind	a token category
+	 * @param text	a token text
+	 * @return true if this token has the given category and text
+	 */
+	public boolean is(Kind kind, String text) {
+		return this.kind == kind && this.text.equals(text);
+	}
+
+	@Override
+	public String toString() {
+		return this.text;
+	}
+}
@@ -0,0 +1,356 @@
+package storage;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.BitSet;
+
+/**
+ * Binary columnar file holding the rows of one relation, read through a
+ * memory mapping. Columns are served as typed buffer views over the mapping,
+ * so nothing is parsed or copied until a column is touched. All values are
+ * little-endian and every section starts on an 8-byte boundary:
+ *
+ * <pre>
+ * header       magic "DDBC", version, rows, columns, dictionary size, unused (6 ints)
+ * layout       one byte per column: 1 for NUMERIC, 0 for TEXT
+ * directory    per column: offset of its values, offset of its null bitmap or 0 (2 longs)
+ * dictionary   end offset of each value in the string area (ints), then the UTF-8 string area
+ * columns      NUMERIC: rows doubles, then the null bitmap (one bit per row, in longs) if any;
+ *              TEXT: rows dictionary codes (ints), -1 for null
+ * </pre>
+ */
+public class ColumnFile {
+	/** first four bytes of every column file */
+	public static final int MAGIC = 0x43424444;		// "DDBC" read little-endian
+	private static final int VERSION = 1;
+	private static final int HEADER = 24;
+
+	private final MappedByteBuffer map;
+	private final int rows;
+	private final boolean[] numeric;
+	private final long[] offsets;
+	private final long[] null_offsets;
+	private final int dictionary_size;
+	private final int dictionary_offset;
+
+	private ColumnFile(MappedByteBuffer map) throws IOException {
+		this.map = map;
+		map.order(ByteOrder.LITTLE_ENDIAN);
+		if (map.capacity() < HEADER || map.getInt(0) != MAGIC) {
+			throw new IOException("not a column file");
+		}
+		if (map.getInt(4) != VERSION) {
+			throw new IOException("unsupported column file version " + map.getInt(4));
+		}
+		this.rows = map.getInt(8);
+		int columns = map.getInt(12);
+		this.dictionary_size = map.getInt(16);
+		this.numeric = new boolean[columns];
+		for (int c = 0; c < columns; c++) {
+			this.numeric[c] = map.get(HEADER + c) != 0;
+		}
+		int directory = align(HEADER + columns);
+		this.offsets = new long[columns];
+		this.null_offsets = new long[columns];
+		for (int c = 0; c < columns; c++) {
+			this.offsets[c] = map.getLong(directory + 16 * c);
+			this.null_offsets[c] = map.getLong(directory + 16 * c + 8);
+		}
+		this.dictionary_offset = directory + 16 * columns;
+	}
+
+	/**
+	 * Maps a column file read-only. The mapping stays valid after the file is closed.
+	 * @param path	path of the file
+	 * @return the mapped file
+	 * @throws IOException if the file cannot be read or is not a column file
+	 */
+	public static ColumnFile open(String path) throws IOException {
+		try (RandomAccessFile file = new RandomAccessFile(path, "r");
+				FileChannel channel = file.getChannel()) {
+			return new ColumnFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	/**
+	 * @param path	path of a file
+	 * @return true if the file starts with the column file magic number
+	 * @throws IOException if the file cannot be read
+	 */
+	public static boolean isColumnFile(String path) throws IOException {
+		try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+			return Integer.reverseBytes(in.readInt()) == MAGIC;
+		} catch (EOFException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the rows of a store to a column file
+	 * @param store	the rows to write
+	 * @param path	path of the file, replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(ColumnStore store, String path) throws IOException {
+		int rows = store.size();
+		int columns = store.columnCount();
+		Dictionary dictionary = store.getDictionary();
+		byte[][] strings = new byte[dictionary.size()][];
+		long string_bytes = 0;
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = dictionary.decode(i).getBytes(StandardCharsets.UTF_8);
+			string_bytes += strings[i].length;
+		}
+
+		// lay out the sections
+		long directory = align(HEADER + columns);
+		long dictionary_offset = directory + 16L * columns;
+		long position = align(dictionary_offset + 4L * strings.length + string_bytes);
+		long[] offsets = new long[columns];
+		long[] null_offsets = new long[columns];
+		for (int c = 0; c < columns; c++) {
+			offsets[c] = position;
+			if (store.isNumeric(c)) {
+				position += 8L * rows;
+				if (store.nulls(c) != null && !store.nulls(c).isEmpty()) {
+					null_offsets[c] = position;
+					position += 8L * words(rows);
+				}
+			}
+			else {
+				position = align(position + 4L * rows);
+			}
+		}
+
+		try (RandomAccessFile file = new RandomAccessFile(path, "rw");
+				FileChannel channel = file.getChannel()) {
+			file.setLength(0);
+			ByteBuffer out = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+			out.putInt(MAGIC).putInt(VERSION).putInt(rows).putInt(columns).putInt(strings.length).putInt(0);
+			for (int c = 0; c < columns; c++) {
+				out.put((byte) (store.isNumeric(c) ? 1 : 0));
+			}
+			out = pad(channel, out, directory);
+			for (int c = 0; c < columns; c++) {
+				out = reserve(channel, out, 16);
+				out.putLong(offsets[c]).putLong(null_offsets[c]);
+			}
+			int end = 0;
+			for (byte[] s : strings) {
+				end += s.length;
+				out = reserve(channel, out, 4);
+				out.putInt(end);
+			}
+			for (byte[] s : strings) {
+				out = reserve(channel, out, s.length);
+				out.put(s);
+			}
+			for (int c = 0; c < columns; c++) {
+				out = pad(channel, out, offsets[c]);
+				if (store.isNumeric(c)) {
+					double[] values = store.numbers(c);
+					for (int i = 0; i < rows; i++) {
+						out = reserve(channel, out, 8);
+						out.putDouble(values[i]);
+					}
+					if (null_offsets[c] != 0) {
+						long[] bits = store.nulls(c).toLongArray();
+						for (int w = 0; w < words(rows); w++) {
+							out = reserve(channel, out, 8);
+							out.putLong((w < bits.length) ? bits[w] : 0L);
+						}
+					}
+				}
+				else {
+					int[] codes = store.codes(c);
+					for (int i = 0; i < rows; i++) {
+						out = reserve(channel, out, 4);
+						out.putInt(codes[i]);
+					}
+				}
+			}
+			out = pad(channel, out, position);
+			flush(channel, out);
+		}
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return this.rows;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int columnCount() {
+		return this.numeric.length;
+	}
+
+	/**
+	 * @param col	a column
+	 * @return true if the column is NUMERIC
+	 */
+	public boolean isNumeric(int col) {
+		return this.numeric[col];
+	}
+
+	/**
+	 * @param col	a NUMERIC column
+	 * @return a view of the column's values over the mapping
+	 */
+	public DoubleBuffer numbers(int col) {
+		return this.slice(this.offsets[col], 8L * this.rows).asDoubleBuffer();
+	}
+
+	/**
+	 * @param col	a TEXT column
+	 * @return a view of the column's dictionary codes over the mapping
+	 */
+	public IntBuffer codes(int col) {
+		return this.slice(this.offsets[col], 4L * this.rows).asIntBuffer();
+	}
+
+	/**
+	 * @param col	a NUMERIC column
+	 * @return a view of the column's null bitmap over the mapping, or null if no row is null
+	 */
+	public LongBuffer nulls(int col) {
+		if (this.null_offsets[col] == 0) {
+			return null;
+		}
+		return this.slice(this.null_offsets[col], 8L * words(this.rows)).asLongBuffer();
+	}
+
+	/**
+	 * @return a store over the file whose columns, and dictionary values, are
+	 * 			copied from the mapping only when first used
+	 */
+	public ColumnStore store() {
+		return new ColumnStore(this, new Dictionary(this));
+	}
+
+	/**
+	 * Copies the whole file into a column store with bulk reads of each column
+	 * @return a new store holding the rows of the file
+	 */
+	public ColumnStore load() {
+		ColumnStore store = this.store();
+		store.requireAll();
+		return store;
+	}
+
+	/**
+	 * @return the number of values in the file's dictionary
+	 */
+	int dictionarySize() {
+		return this.dictionary_size;
+	}
+
+	/**
+	 * @param code	a code of the file's dictionary
+	 * @return the value with the given code
+	 */
+	String dictionaryValue(int code) {
+		int start = (code == 0) ? 0 : this.map.getInt(this.dictionary_offset + 4 * (code - 1));
+		int end = this.map.getInt(this.dictionary_offset + 4 * code);
+		byte[] bytes = new byte[end - start];
+		ByteBuffer s = this.map.duplicate();
+		s.position(this.dictionary_offset + 4 * this.dictionary_size + start);
+		s.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param col		a NUMERIC column
+	 * @param capacity	length of the array, at least size()
+	 * @return a new array holding the column's values
+	 */
+	double[] copyNumbers(int col, int capacity) {
+		double[] values = new double[capacity];
+		this.numbers(col).get(values, 0, this.rows);
+		return values;
+	}
+
+	/**
+	 * @param col		a TEXT column
+	 * @param capacity	length of the array, at least size()
+	 * @return a new array holding the column's codes
+	 */
+	int[] copyCodes(int col, int capacity) {
+		int[] values = new int[capacity];
+		this.codes(col).get(values, 0, this.rows);
+		return values;
+	}
+
+	/**
+	 * @param col	a NUMERIC column
+	 * @return a new null bitmap of the column, or null if no row is null
+	 */
+	BitSet copyNulls(int col) {
+		LongBuffer bits = this.nulls(col);
+		return (bits == null) ? null : BitSet.valueOf(bits);
+	}
+
+	private ByteBuffer slice(long offset, long length) {
+		ByteBuffer b = this.map.duplicate();
+		b.position((int) offset);
+		b.limit((int) (offset + length));
+		return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+	private static int words(int rows) {
+		return (rows + 63) >>> 6;
+	}
+
+	private static int align(long offset) {
+		return (int) ((offset + 7) & ~7L);
+	}
+
+	/**
+	 * Makes room for n more bytes, flushing the buffer to the channel if needed
+	 */
+	private static ByteBuffer reserve(FileChannel channel, ByteBuffer out, int n) throws IOException {
+		if (out.remaining() >= n) {
+			return out;
+		}
+		flush(channel, out);
+		if (out.capacity() < n) {
+			return ByteBuffer.allocate(n).order(ByteOrder.LITTLE_ENDIAN);
+		}
+		return out;
+	}
+
+	/**
+	 * Writes zero bytes up to the given file offset
+	 */
+	private static ByteBuffer pad(FileChannel channel, ByteBuffer out, long offset) throws IOException {
+		long written = channel.position() + out.position();
+		while (written < offset) {
+			out = reserve(channel, out, 1);
+			out.put((byte) 0);
+			written++;
+		}
+		return out;
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer out) throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+		out.clear();
+	}
+}
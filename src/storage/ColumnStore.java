@@ -0,0 +1,553 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import solver.RowCursor;
+
+/**
+ * Column-oriented storage for the rows of a relation. NUMERIC columns are
+ * kept in double arrays; TEXT columns are dictionary-encoded into int arrays
+ * of codes. Like the tuple set of a row-stored relation, a store holds each
+ * distinct row once: add() drops rows that are already present. A store over
+ * a ColumnFile copies each column out of the file only when it is first used.
+ */
+@SuppressWarnings("rawtypes")
+public class ColumnStore {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final boolean[] numeric;
+	private final double[][] nums;
+	private final int[][] codes;
+	private final BitSet[] nulls;
+	private final Dictionary dictionary;
+	private int size;
+	private int capacity;
+
+	/* open-addressing table of row numbers (plus one) for duplicate detection; null until needed */
+	private int[] slots;
+
+	/* file whose columns are copied in on first use; null once every column is loaded */
+	private volatile ColumnFile source;
+	private boolean[] loaded;
+
+	/**
+	 * Creates an empty store with its own dictionary
+	 * @param numeric	for each column, true if NUMERIC and false if TEXT
+	 */
+	public ColumnStore(boolean[] numeric) {
+		this(numeric, new Dictionary());
+	}
+
+	/**
+	 * Creates an empty store
+	 * @param numeric		for each column, true if NUMERIC and false if TEXT
+	 * @param dictionary	dictionary for the TEXT columns, possibly shared with other stores
+	 */
+	public ColumnStore(boolean[] numeric, Dictionary dictionary) {
+		this.numeric = numeric.clone();
+		this.nums = new double[numeric.length][];
+		this.codes = new int[numeric.length][];
+		this.nulls = new BitSet[numeric.length];
+		this.dictionary = dictionary;
+		this.size = 0;
+		this.capacity = INITIAL_CAPACITY;
+		for (int c = 0; c < numeric.length; c++) {
+			if (numeric[c]) {
+				this.nums[c] = new double[this.capacity];
+			}
+			else {
+				this.codes[c] = new int[this.capacity];
+			}
+		}
+	}
+
+	/**
+	 * Wraps existing column arrays, which must hold distinct rows
+	 * @param numeric		for each column, true if NUMERIC and false if TEXT
+	 * @param nums			values of each NUMERIC column (null for TEXT columns)
+	 * @param codes			dictionary codes of each TEXT column (null for NUMERIC columns)
+	 * @param nulls			null bitmap of each NUMERIC column, or null where none
+	 * @param dictionary	dictionary the codes refer to
+	 * @param size			number of rows; the arrays may be longer
+	 */
+	ColumnStore(boolean[] numeric, double[][] nums, int[][] codes, BitSet[] nulls, Dictionary dictionary, int size) {
+		this.numeric = numeric.clone();
+		this.nums = nums;
+		this.codes = codes;
+		this.nulls = nulls;
+		this.dictionary = dictionary;
+		this.size = size;
+		this.capacity = Integer.MAX_VALUE;
+		for (int c = 0; c < numeric.length; c++) {
+			this.capacity = Math.min(this.capacity, numeric[c] ? nums[c].length : codes[c].length);
+		}
+	}
+
+	/**
+	 * Creates a store over a column file whose columns are copied from the
+	 * mapping only when first used
+	 * @param file			the column file
+	 * @param dictionary	dictionary the file's codes refer to
+	 */
+	ColumnStore(ColumnFile file, Dictionary dictionary) {
+		int n = file.columnCount();
+		this.numeric = new boolean[n];
+		for (int c = 0; c < n; c++) {
+			this.numeric[c] = file.isNumeric(c);
+		}
+		this.nums = new double[n][];
+		this.codes = new int[n][];
+		this.nulls = new BitSet[n];
+		this.dictionary = dictionary;
+		this.size = file.size();
+		this.capacity = Math.max(this.size, 1);
+		this.loaded = new boolean[n];
+		this.source = (n > 0) ? file : null;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the number of columns
+	 */
+	public int columnCount() {
+		return this.numeric.length;
+	}
+
+	/**
+	 * @param col	a column
+	 * @return true if the column is NUMERIC
+	 */
+	public boolean isNumeric(int col) {
+		return this.numeric[col];
+	}
+
+	/**
+	 * @return the dictionary of the TEXT columns
+	 */
+	public Dictionary getDictionary() {
+		return this.dictionary;
+	}
+
+	/**
+	 * @param col	a NUMERIC column
+	 * @return the column's backing array; only the first size() entries are rows
+	 */
+	public double[] numbers(int col) {
+		this.require(col);
+		return this.nums[col];
+	}
+
+	/**
+	 * @param col	a TEXT column
+	 * @return the column's backing code array; only the first size() entries are rows
+	 */
+	public int[] codes(int col) {
+		this.require(col);
+		return this.codes[col];
+	}
+
+	/**
+	 * @param row	a row
+	 * @param col	a NUMERIC column
+	 * @return the value at the given row and column
+	 */
+	public double getNumber(int row, int col) {
+		this.require(col);
+		return this.nums[col][row];
+	}
+
+	/**
+	 * @param row	a row
+	 * @param col	a TEXT column
+	 * @return the dictionary code at the given row and column (-1 for null)
+	 */
+	public int getCode(int row, int col) {
+		this.require(col);
+		return this.codes[col][row];
+	}
+
+	/**
+	 * @param col	a NUMERIC column
+	 * @return the column's null bitmap, or null if no row of the column was ever null
+	 */
+	public BitSet nulls(int col) {
+		this.require(col);
+		return this.nulls[col];
+	}
+
+	/**
+	 * @param row	a row
+	 * @param col	a column
+	 * @return true if the value at the given row and column is null
+	 */
+	public boolean isNull(int row, int col) {
+		this.require(col);
+		if (this.numeric[col]) {
+			return this.nulls[col] != null && this.nulls[col].get(row);
+		}
+		return this.codes[col][row] < 0;
+	}
+
+	/**
+	 * @param row	a row
+	 * @param col	a column
+	 * @return the boxed value at the given row and column (Double, String or null)
+	 */
+	public Comparable get(int row, int col) {
+		this.require(col);
+		if (this.numeric[col]) {
+			return this.isNull(row, col) ? null : this.nums[col][row];
+		}
+		return this.dictionary.decode(this.codes[col][row]);
+	}
+
+	/**
+	 * @param row	a row
+	 * @return a new list holding the boxed values of the row
+	 */
+	public List<Comparable> row(int row) {
+		List<Comparable> values = new ArrayList<>(this.numeric.length);
+		for (int c = 0; c < this.numeric.length; c++) {
+			values.add(this.get(row, c));
+		}
+		return values;
+	}
+
+	/**
+	 * Adds a row unless an equal row is already stored
+	 * @param values	the row's values (Double for NUMERIC, String for TEXT, or null)
+	 * @return true if the row was added
+	 */
+	public boolean add(List<Comparable> values) {
+		this.requireAll();
+		this.ensureCapacity(this.size + 1);
+		for (int c = 0; c < this.numeric.length; c++) {
+			Comparable v = values.get(c);
+			if (this.numeric[c]) {
+				this.setNull(this.size, c, v == null);
+				this.nums[c][this.size] = (v == null) ? 0.0 : (Double) v;
+			}
+			else {
+				this.codes[c][this.size] = this.dictionary.encode((String) v);
+			}
+		}
+		return this.commitUnique();
+	}
+
+	/**
+	 * Adds some columns of another store's row unless an equal row is already stored
+	 * @param src		the source store
+	 * @param row		row of the source store
+	 * @param positions	source column for each column of this store
+	 * @return true if the row was added
+	 */
+	public boolean add(ColumnStore src, int row, int[] positions) {
+		this.requireAll();
+		this.ensureCapacity(this.size + 1);
+		this.stage(src, row, positions);
+		return this.commitUnique();
+	}
+
+	/**
+	 * Appends a row of another store with the same layout, without checking for
+	 * duplicates; the caller guarantees the row is not already stored.
+	 * @param src	the source store
+	 * @param row	row of the source store
+	 */
+	public void append(ColumnStore src, int row) {
+		this.requireAll();
+		this.ensureCapacity(this.size + 1);
+		this.stage(src, row, null);
+		this.size++;
+		this.slots = null;		// rebuilt on the next add()
+	}
+
+	/**
+	 * @return an empty store with the same layout, sharing this store's dictionary
+	 */
+	public ColumnStore emptyCopy() {
+		return new ColumnStore(this.numeric, this.dictionary);
+	}
+
+	/**
+	 * @return a copy of this store, sharing this store's dictionary
+	 */
+	public ColumnStore copy() {
+		this.requireAll();
+		ColumnStore copy = this.emptyCopy();
+		copy.ensureCapacity(this.size);
+		for (int c = 0; c < this.numeric.length; c++) {
+			if (this.numeric[c]) {
+				System.arraycopy(this.nums[c], 0, copy.nums[c], 0, this.size);
+				if (this.nulls[c] != null) {
+					copy.nulls[c] = (BitSet) this.nulls[c].clone();
+				}
+			}
+			else {
+				System.arraycopy(this.codes[c], 0, copy.codes[c], 0, this.size);
+			}
+		}
+		copy.size = this.size;
+		return copy;
+	}
+
+	/**
+	 * Projects this store onto some of its columns, dropping duplicate rows
+	 * @param positions	columns to keep, in output order
+	 * @return a new store sharing this store's dictionary
+	 */
+	public ColumnStore project(int[] positions) {
+		return this.project(positions, 0, this.size);
+	}
+
+	/**
+	 * Projects a range of rows of this store onto some of its columns, dropping duplicate rows
+	 * @param positions	columns to keep, in output order
+	 * @param from		first row to project
+	 * @param to		row just past the last row to project
+	 * @return a new store sharing this store's dictionary
+	 */
+	public ColumnStore project(int[] positions, int from, int to) {
+		boolean[] layout = new boolean[positions.length];
+		for (int k = 0; k < positions.length; k++) {
+			layout[k] = this.numeric[positions[k]];
+		}
+		ColumnStore out = new ColumnStore(layout, this.dictionary);
+		for (int i = from; i < to; i++) {
+			out.add(this, i, positions);
+		}
+		return out;
+	}
+
+	/**
+	 * Adds every row of another store with the same layout, dropping rows already stored
+	 * @param src	the source store
+	 */
+	public void addAll(ColumnStore src) {
+		this.requireAll();
+		for (int i = 0; i < src.size; i++) {
+			this.ensureCapacity(this.size + 1);
+			this.stage(src, i, null);
+			this.commitUnique();
+		}
+	}
+
+	/**
+	 * @return a cursor positioned before the first row
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Writes a source row into the slot just past the last row
+	 */
+	private void stage(ColumnStore src, int row, int[] positions) {
+		boolean same_dictionary = src.dictionary == this.dictionary;
+		for (int c = 0; c < this.numeric.length; c++) {
+			int s = (positions == null) ? c : positions[c];
+			src.require(s);
+			if (this.numeric[c]) {
+				this.nums[c][this.size] = src.nums[s][row];
+				this.setNull(this.size, c, src.isNull(row, s));
+			}
+			else if (same_dictionary) {
+				this.codes[c][this.size] = src.codes[s][row];
+			}
+			else {
+				this.codes[c][this.size] = this.dictionary.encode(src.dictionary.decode(src.codes[s][row]));
+			}
+		}
+	}
+
+	/**
+	 * Keeps the staged row if no equal row is stored
+	 * @return true if the staged row was kept
+	 */
+	private boolean commitUnique() {
+		if (this.slots == null || this.size * 2 >= this.slots.length) {
+			this.rehash(Math.max(this.size + 1, this.capacity));
+		}
+		int mask = this.slots.length - 1;
+		int i = this.hash(this.size) & mask;
+		while (this.slots[i] != 0) {
+			if (this.rowsEqual(this.slots[i] - 1, this.size)) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		this.slots[i] = ++this.size;
+		return true;
+	}
+
+	private void rehash(int rows) {
+		int n = Integer.highestOneBit(Math.max(rows, 8) * 4 - 1) << 1;
+		this.slots = new int[n];
+		int mask = n - 1;
+		for (int r = 0; r < this.size; r++) {
+			int i = this.hash(r) & mask;
+			while (this.slots[i] != 0) {
+				i = (i + 1) & mask;
+			}
+			this.slots[i] = r + 1;
+		}
+	}
+
+	private int hash(int row) {
+		int h = 1;
+		for (int c = 0; c < this.numeric.length; c++) {
+			int v;
+			if (this.numeric[c]) {
+				v = this.isNull(row, c) ? 0 : Double.hashCode(this.nums[c][row]);
+			}
+			else {
+				v = this.codes[c][row];
+			}
+			h = 31 * h + v;
+		}
+		return h ^ (h >>> 16);
+	}
+
+	private boolean rowsEqual(int a, int b) {
+		for (int c = 0; c < this.numeric.length; c++) {
+			if (this.numeric[c]) {
+				if (this.isNull(a, c) != this.isNull(b, c) || Double.doubleToLongBits(this.nums[c][a])
+						!= Double.doubleToLongBits(this.nums[c][b])) {
+					return false;
+				}
+			}
+			else if (this.codes[c][a] != this.codes[c][b]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies a column in from the source file if it is not loaded yet
+	 */
+	private void require(int col) {
+		if (this.source != null) {
+			this.load(col);
+		}
+	}
+
+	/**
+	 * Copies in every column not loaded yet
+	 */
+	void requireAll() {
+		for (int c = 0; this.source != null && c < this.numeric.length; c++) {
+			this.load(c);
+		}
+	}
+
+	private synchronized void load(int col) {
+		ColumnFile file = this.source;
+		if (file == null || this.loaded[col]) {
+			return;
+		}
+		if (this.numeric[col]) {
+			this.nums[col] = file.copyNumbers(col, this.capacity);
+			this.nulls[col] = file.copyNulls(col);
+		}
+		else {
+			this.codes[col] = file.copyCodes(col, this.capacity);
+		}
+		this.loaded[col] = true;
+		for (boolean l : this.loaded) {
+			if (!l) {
+				return;
+			}
+		}
+		this.source = null;
+	}
+
+	private void setNull(int row, int col, boolean is_null) {
+		if (is_null) {
+			if (this.nulls[col] == null) {
+				this.nulls[col] = new BitSet();
+			}
+			this.nulls[col].set(row);
+		}
+		else if (this.nulls[col] != null) {
+			this.nulls[col].clear(row);
+		}
+	}
+
+	private void ensureCapacity(int rows) {
+		if (rows <= this.capacity) {
+			return;
+		}
+		int n = Math.max(rows, this.capacity * 2);
+		for (int c = 0; c < this.numeric.length; c++) {
+			if (this.numeric[c]) {
+				this.nums[c] = Arrays.copyOf(this.nums[c], n);
+			}
+			else {
+				this.codes[c] = Arrays.copyOf(this.codes[c], n);
+			}
+		}
+		this.capacity = n;
+	}
+
+	/**
+	 * A Row view over one row of the store at a time. NUMERIC values are read
+	 * straight from the column arrays without boxing.
+	 */
+	public class Cursor implements RowCursor {
+		private int row = -1;
+
+		/**
+		 * Positions the cursor
+		 * @param row	a row of the store
+		 */
+		public void setRow(int row) {
+			this.row = row;
+		}
+
+		/**
+		 * @return the current row
+		 */
+		public int getRow() {
+			return this.row;
+		}
+
+		@Override
+		public boolean next() {
+			return ++this.row < ColumnStore.this.size;
+		}
+
+		@Override
+		public Comparable get(int pos) {
+			return ColumnStore.this.get(this.row, pos);
+		}
+
+		@Override
+		public double getNumber(int pos) {
+			ColumnStore.this.require(pos);
+			return ColumnStore.this.nums[pos][this.row];
+		}
+
+		@Override
+		public boolean isNull(int pos) {
+			return ColumnStore.this.isNull(this.row, pos);
+		}
+
+		/**
+		 * @param pos	a TEXT column
+		 * @return the dictionary code at the current row (-1 for null)
+		 */
+		public int getCode(int pos) {
+			ColumnStore.this.require(pos);
+			return ColumnStore.this.codes[pos][this.row];
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps TEXT values to dense integer codes. Code -1 stands for null. The
+ * dictionary of a ColumnFile decodes each value from the file when it is
+ * first asked for.
+ */
+public class Dictionary {
+	private final Map<String, Integer> codes = new HashMap<>();
+	private final List<String> values = new ArrayList<>();
+
+	/* file holding the values not decoded yet; null once every value is decoded */
+	private ColumnFile source;
+
+	public Dictionary() {
+	}
+
+	/**
+	 * Creates the dictionary of a column file
+	 * @param file	the column file
+	 */
+	Dictionary(ColumnFile file) {
+		for (int i = 0; i < file.dictionarySize(); i++) {
+			this.values.add(null);
+		}
+		this.source = (file.dictionarySize() > 0) ? file : null;
+	}
+
+	/**
+	 * Returns the code of a value, assigning a new one if needed
+	 * @param value	a TEXT value, or null
+	 * @return the value's code, or -1 for null
+	 */
+	public int encode(String value) {
+		if (value == null) {
+			return -1;
+		}
+		this.decodeAll();
+		Integer code = this.codes.get(value);
+		if (code == null) {
+			code = this.values.size();
+			this.values.add(value);
+			this.codes.put(value, code);
+		}
+		return code;
+	}
+
+	/**
+	 * Returns the code of a value without assigning one
+	 * @param value	a TEXT value
+	 * @return the value's code, or -1 if the value has no code
+	 */
+	public int lookup(String value) {
+		this.decodeAll();
+		Integer code = (value == null) ? null : this.codes.get(value);
+		return (code == null) ? -1 : code;
+	}
+
+	/**
+	 * @param code	a code returned by encode
+	 * @return the value with the given code, or null for -1
+	 */
+	public String decode(int code) {
+		if (code < 0) {
+			return null;
+		}
+		String value = this.values.get(code);
+		if (value == null) {
+			value = this.source.dictionaryValue(code);
+			this.values.set(code, value);
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes every value still in the source file, so that values can be looked up
+	 */
+	private synchronized void decodeAll() {
+		if (this.source == null) {
+			return;
+		}
+		for (int code = 0; code < this.values.size(); code++) {
+			this.codes.put(this.decode(code), code);
+		}
+		this.source = null;
+	}
+
+	/**
+	 * @return the number of distinct values
+	 */
+	public int size() {
+		return this.values.size();
+	}
+}
@@ -0,0 +1,113 @@
+package storage;
+
+/**
+ * Open-addressing hash set of primitive doubles. Values are compared by their
+ * bit patterns, as Double.equals does, so NaN equals NaN and 0.0 differs from
+ * -0.0. Nothing is boxed.
+ */
+public class DoubleHashSet {
+	private static final long EMPTY = Double.doubleToLongBits(0.0);
+
+	private long[] slots;
+	private boolean has_zero;	// 0.0 itself is stored out of line since its bits mark empty slots
+	private int size;
+
+	public DoubleHashSet() {
+		this.slots = new long[16];
+	}
+
+	/**
+	 * Adds a value
+	 * @param value	a value
+	 * @return true if the value was not already in the set
+	 */
+	public boolean add(double value) {
+		long bits = Double.doubleToLongBits(value);
+		if (bits == EMPTY) {
+			if (this.has_zero) {
+				return false;
+			}
+			this.has_zero = true;
+			this.size++;
+			return true;
+		}
+		if ((this.size + 1) * 2 > this.slots.length) {
+			this.resize();
+		}
+		int mask = this.slots.length - 1;
+		int i = mix(bits) & mask;
+		while (this.slots[i] != EMPTY) {
+			if (this.slots[i] == bits) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		this.slots[i] = bits;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * @param value	a value
+	 * @return true if the value is in the set
+	 */
+	public boolean contains(double value) {
+		long bits = Double.doubleToLongBits(value);
+		if (bits == EMPTY) {
+			return this.has_zero;
+		}
+		int mask = this.slots.length - 1;
+		int i = mix(bits) & mask;
+		while (this.slots[i] != EMPTY) {
+			if (this.slots[i] == bits) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of values in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the values of the set, in no particular order
+	 */
+	public double[] toArray() {
+		double[] out = new double[this.size];
+		int n = 0;
+		if (this.has_zero) {
+			out[n++] = 0.0;
+		}
+		for (long bits : this.slots) {
+			if (bits != EMPTY) {
+				out[n++] = Double.longBitsToDouble(bits);
+			}
+		}
+		return out;
+	}
+
+	private void resize() {
+		long[] old = this.slots;
+		this.slots = new long[old.length * 2];
+		int mask = this.slots.length - 1;
+		for (long bits : old) {
+			if (bits != EMPTY) {
+				int i = mix(bits) & mask;
+				while (this.slots[i] != EMPTY) {
+					i = (i + 1) & mask;
+				}
+				this.slots[i] = bits;
+			}
+		}
+	}
+
+	private static int mix(long bits) {
+		long h = bits * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+}
@@ -0,0 +1,137 @@
+package storage;
+
+/**
+ * HyperLogLog sketch for estimating the number of distinct values. Memory is
+ * fixed at 2^precision one-byte registers regardless of how many values are
+ * added; the standard error is about 1.04 / sqrt(2^precision), roughly 1.6%
+ * at the default precision. Sketches of the same precision can be merged,
+ * giving the sketch of the union of their inputs, so partitions of a relation
+ * may be sketched independently.
+ */
+public class HyperLogLog {
+	/** default precision: 4096 registers */
+	public static final int DEFAULT_PRECISION = 12;
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog() {
+		this(DEFAULT_PRECISION);
+	}
+
+	/**
+	 * @param precision	log2 of the number of registers, from 4 to 16
+	 */
+	public HyperLogLog(int precision) {
+		if (precision < 4 || precision > 16) {
+			throw new IllegalArgumentException("precision must be between 4 and 16");
+		}
+		this.precision = precision;
+		this.registers = new byte[1 << precision];
+	}
+
+	/**
+	 * Adds a NUMERIC value
+	 * @param value	a value
+	 */
+	public void add(double value) {
+		this.addHash(mix(Double.doubleToLongBits(value)));
+	}
+
+	/**
+	 * Adds a TEXT value
+	 * @param value	a non-null value
+	 */
+	public void add(String value) {
+		long h = 0xCBF29CE484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			h = (h ^ value.charAt(i)) * 0x100000001B3L;
+		}
+		this.addHash(mix(h));
+	}
+
+	/**
+	 * Adds a value by a 64-bit key, such as a combination of the hash codes of
+	 * several values; the key is mixed before use
+	 * @param key	key of the value
+	 */
+	public void addKey(long key) {
+		this.addHash(mix(key));
+	}
+
+	/**
+	 * Adds a value by its 64-bit hash, which must be well mixed
+	 * @param hash	hash of the value
+	 */
+	public void addHash(long hash) {
+		int index = (int) (hash >>> (64 - this.precision));
+		// rank of the first one bit in the remaining bits; the sentinel bit bounds it
+		int rank = Long.numberOfLeadingZeros((hash << this.precision) | (1L << (this.precision - 1))) + 1;
+		if (rank > this.registers[index]) {
+			this.registers[index] = (byte) rank;
+		}
+	}
+
+	/**
+	 * Folds another sketch into this one
+	 * @param other	a sketch with the same precision
+	 */
+	public void merge(HyperLogLog other) {
+		if (other.precision != this.precision) {
+			throw new IllegalArgumentException("cannot merge sketches of different precision");
+		}
+		for (int i = 0; i < this.registers.length; i++) {
+			if (other.registers[i] > this.registers[i]) {
+				this.registers[i] = other.registers[i];
+			}
+		}
+	}
+
+	/**
+	 * @return the estimated number of distinct values added
+	 */
+	public double estimate() {
+		int m = this.registers.length;
+		double sum = 0.0;
+		int zeros = 0;
+		for (byte r : this.registers) {
+			sum += 1.0 / (1L << r);
+			if (r == 0) {
+				zeros++;
+			}
+		}
+		double alpha;
+		switch (m) {
+		case 16:
+			alpha = 0.673;
+			break;
+		case 32:
+			alpha = 0.697;
+			break;
+		case 64:
+			alpha = 0.709;
+			break;
+		default:
+			alpha = 0.7213 / (1.0 + 1.079 / m);
+			break;
+		}
+		double estimate = alpha * m * m / sum;
+		if (estimate <= 2.5 * m && zeros > 0) {
+			// small range: linear counting is more accurate
+			estimate = m * Math.log((double) m / zeros);
+		}
+		return Math.round(estimate);
+	}
+
+	/**
+	 * Finalization step of MurmurHash3, spreading the bits of a 64-bit key
+	 */
+	private static long mix(long k) {
+		k ^= k >>> 33;
+		k *= 0xFF51AFD7ED558CCDL;
+		k ^= k >>> 33;
+		k *= 0xC4CEB9FE1A85EC53L;
+		k ^= k >>> 33;
+		return k;
+	}
+}
@@ -0,0 +1,95 @@
+package storage;
+
+/**
+ * Open-addressing hash set of non-negative ints, such as dictionary codes.
+ * Nothing is boxed.
+ */
+public class IntHashSet {
+	private int[] slots;	// value + 1, or 0 for an empty slot
+	private int size;
+
+	public IntHashSet() {
+		this.slots = new int[16];
+	}
+
+	/**
+	 * Adds a value
+	 * @param value	a non-negative value
+	 * @return true if the value was not already in the set
+	 */
+	public boolean add(int value) {
+		if ((this.size + 1) * 2 > this.slots.length) {
+			this.resize();
+		}
+		int stored = value + 1;
+		int mask = this.slots.length - 1;
+		int i = mix(value) & mask;
+		while (this.slots[i] != 0) {
+			if (this.slots[i] == stored) {
+				return false;
+			}
+			i = (i + 1) & mask;
+		}
+		this.slots[i] = stored;
+		this.size++;
+		return true;
+	}
+
+	/**
+	 * @param value	a non-negative value
+	 * @return true if the value is in the set
+	 */
+	public boolean contains(int value) {
+		int stored = value + 1;
+		int mask = this.slots.length - 1;
+		int i = mix(value) & mask;
+		while (this.slots[i] != 0) {
+			if (this.slots[i] == stored) {
+				return true;
+			}
+			i = (i + 1) & mask;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the number of values in the set
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the values of the set, in no particular order
+	 */
+	public int[] toArray() {
+		int[] out = new int[this.size];
+		int n = 0;
+		for (int stored : this.slots) {
+			if (stored != 0) {
+				out[n++] = stored - 1;
+			}
+		}
+		return out;
+	}
+
+	private void resize() {
+		int[] old = this.slots;
+		this.slots = new int[old.length * 2];
+		int mask = this.slots.length - 1;
+		for (int stored : old) {
+			if (stored != 0) {
+				int i = mix(stored - 1) & mask;
+				while (this.slots[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				this.slots[i] = stored;
+			}
+		}
+	}
+
+	private static int mix(int value) {
+		int h = value * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,393 @@
+package storage;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import exceptions.DBException;
+import parallel.Morsels;
+
+/**
+ * Loads a pipe-delimited text data file into a column store. The file is
+ * memory mapped and cut into byte ranges on line boundaries, which are parsed
+ * in parallel straight from the mapping: fields are found by scanning for the
+ * delimiter, NUMERIC values are parsed without building strings, and each
+ * range keeps a dictionary of the distinct TEXT values it has seen so that a
+ * String is created only once per distinct value. The ranges are then merged
+ * into the store in file order, interning their TEXT values into the store's
+ * dictionary. Values are checked as before: TEXT values must be quoted or
+ * null (in any case), and NUMERIC values must parse as a double. Fields past
+ * the last attribute are ignored.
+ */
+public class TextLoader {
+	/** default bytes per range */
+	public static final int DEFAULT_RANGE = 1 << 20;
+
+	private static final double[] POWERS = new double[23];
+	static {
+		POWERS[0] = 1.0;
+		for (int i = 1; i < POWERS.length; i++) {
+			POWERS[i] = POWERS[i - 1] * 10.0;
+		}
+	}
+
+	private static Morsels shared;
+
+	private final boolean[] numeric;
+	private final int range;
+
+	/**
+	 * @param numeric	for each attribute, true if NUMERIC and false if TEXT
+	 */
+	public TextLoader(boolean[] numeric) {
+		this(numeric, DEFAULT_RANGE);
+	}
+
+	/**
+	 * @param numeric	for each attribute, true if NUMERIC and false if TEXT
+	 * @param range		bytes per range
+	 */
+	public TextLoader(boolean[] numeric, int range) {
+		if (range < 1) {
+			throw new IllegalArgumentException("range must be positive");
+		}
+		this.numeric = numeric.clone();
+		this.range = range;
+	}
+
+	/**
+	 * Adds the rows of a data file to a store, dropping rows already stored
+	 * @param path		path of the data file
+	 * @param target	store with the same layout as the attributes
+	 * @throws IOException if the file cannot be read
+	 * @throws DBException if a value does not match its attribute's type
+	 */
+	public void load(String path, ColumnStore target) throws IOException {
+		ByteBuffer map;
+		try (RandomAccessFile file = new RandomAccessFile(path, "r");
+				FileChannel channel = file.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(path + " is larger than 2 GB");
+			}
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		int length = map.capacity();
+		int ranges = Math.max(1, (int) ((length + (long) this.range - 1) / this.range));
+		Morsels.Task<Part> task = (from, to) -> {
+			Part part = new Part(map, path);
+			part.parse(lineStart(map, (long) from * this.range), lineStart(map, (long) to * this.range));
+			return part;
+		};
+		List<Part> parts = (ranges == 1) ? Arrays.asList(task.run(0, 1)) : pool().map(ranges, 1, task);
+
+		Dictionary dictionary = target.getDictionary();
+		for (Part part : parts) {
+			target.addAll(part.toStore(dictionary));
+		}
+	}
+
+	/**
+	 * @return the workers shared by all loaders, started on first use
+	 */
+	private static synchronized Morsels pool() {
+		if (shared == null) {
+			shared = new Morsels(Runtime.getRuntime().availableProcessors(), 1);
+		}
+		return shared;
+	}
+
+	/**
+	 * @return the start of the first line that starts at or after the given offset
+	 */
+	private static int lineStart(ByteBuffer map, long offset) {
+		int length = map.capacity();
+		if (offset <= 0) {
+			return 0;
+		}
+		if (offset >= length) {
+			return length;
+		}
+		int i = (int) offset - 1;
+		while (i < length && map.get(i) != '\n') {
+			i++;
+		}
+		return Math.min(i + 1, length);
+	}
+
+	/**
+	 * The rows of one byte range, with TEXT values coded against a dictionary
+	 * local to the range
+	 */
+	private class Part {
+		private final ByteBuffer map;
+		private final String path;
+		private final Charset charset = Charset.defaultCharset();
+		private final double[][] nums;
+		private final int[][] codes;
+		private int rows;
+
+		// local dictionary: open-addressing table of codes (plus one) over the values' bytes
+		private final List<String> values = new ArrayList<>();
+		private int[] starts = new int[16];
+		private int[] lengths = new int[16];
+		private int[] slots = new int[32];
+		private byte[] scratch = new byte[64];
+
+		Part(ByteBuffer map, String path) {
+			this.map = map;
+			this.path = path;
+			int n = TextLoader.this.numeric.length;
+			this.nums = new double[n][];
+			this.codes = new int[n][];
+			for (int c = 0; c < n; c++) {
+				if (TextLoader.this.numeric[c]) {
+					this.nums[c] = new double[16];
+				}
+				else {
+					this.codes[c] = new int[16];
+				}
+			}
+		}
+
+		/**
+		 * Parses the lines in [from, to)
+		 */
+		void parse(int from, int to) {
+			boolean[] numeric = TextLoader.this.numeric;
+			int pos = from;
+			while (pos < to) {
+				int end = pos;
+				while (end < to && this.map.get(end) != '\n') {
+					end++;
+				}
+				int next = end + 1;
+				if (end > pos && this.map.get(end - 1) == '\r') {
+					end--;
+				}
+				this.grow();
+				int start = pos;
+				for (int c = 0; c < numeric.length; c++) {
+					if (start > end) {
+						throw new DBException("Missing value for attribute " + (c + 1) + " in " + this.path);
+					}
+					int stop = start;
+					while (stop < end && this.map.get(stop) != '|') {
+						stop++;
+					}
+					if (numeric[c]) {
+						this.nums[c][this.rows] = this.number(start, stop);
+					}
+					else {
+						this.codes[c][this.rows] = this.text(start, stop);
+					}
+					start = stop + 1;
+				}
+				this.rows++;
+				pos = next;
+			}
+		}
+
+		/**
+		 * @return the code of the TEXT value in [from, to), or -1 for null
+		 */
+		private int text(int from, int to) {
+			int n = to - from;
+			if (n == 4 && (this.map.get(from) | 0x20) == 'n' && (this.map.get(from + 1) | 0x20) == 'u'
+					&& (this.map.get(from + 2) | 0x20) == 'l' && (this.map.get(from + 3) | 0x20) == 'l') {
+				return -1;
+			}
+			if (n < 2 || this.map.get(from) != '\'' || this.map.get(to - 1) != '\'') {
+				throw new DBException("Type mismatch for TEXT attribute: " + this.string(from, to) + " in " + this.path);
+			}
+			int h = 0x811C9DC5;
+			for (int i = from; i < to; i++) {
+				h = (h ^ this.map.get(i)) * 0x01000193;
+			}
+			int mask = this.slots.length - 1;
+			int i = (h ^ (h >>> 16)) & mask;
+			while (this.slots[i] != 0) {
+				int code = this.slots[i] - 1;
+				if (this.lengths[code] == n && this.sameBytes(this.starts[code], from, n)) {
+					return code;
+				}
+				i = (i + 1) & mask;
+			}
+			int code = this.values.size();
+			if (code == this.starts.length) {
+				this.starts = Arrays.copyOf(this.starts, code * 2);
+				this.lengths = Arrays.copyOf(this.lengths, code * 2);
+			}
+			this.starts[code] = from;
+			this.lengths[code] = n;
+			this.values.add(this.string(from, to));
+			this.slots[i] = code + 1;
+			if (this.values.size() * 2 > this.slots.length) {
+				this.rehash();
+			}
+			return code;
+		}
+
+		/**
+		 * @return the NUMERIC value in [from, to)
+		 */
+		private double number(int from, int to) {
+			// fast path: [+-]digits[.digits][(e|E)[+-]digits] with at most 15
+			// significant digits and a small exponent, computed exactly with one rounding
+			int i = from;
+			boolean negative = false;
+			if (i < to && (this.map.get(i) == '-' || this.map.get(i) == '+')) {
+				negative = this.map.get(i) == '-';
+				i++;
+			}
+			long mantissa = 0;
+			int digits = 0;
+			int significant = 0;
+			int scale = 0;
+			boolean point = false;
+			for (; i < to; i++) {
+				byte b = this.map.get(i);
+				if (b >= '0' && b <= '9') {
+					digits++;
+					if (mantissa != 0 || b != '0') {
+						significant++;
+					}
+					mantissa = mantissa * 10 + (b - '0');
+					if (point) {
+						scale--;
+					}
+					if (significant > 15) {
+						return this.slowNumber(from, to);
+					}
+				}
+				else if (b == '.' && !point) {
+					point = true;
+				}
+				else {
+					break;
+				}
+			}
+			if (digits == 0) {
+				return this.slowNumber(from, to);
+			}
+			if (i < to && (this.map.get(i) == 'e' || this.map.get(i) == 'E')) {
+				i++;
+				boolean negative_exponent = false;
+				if (i < to && (this.map.get(i) == '-' || this.map.get(i) == '+')) {
+					negative_exponent = this.map.get(i) == '-';
+					i++;
+				}
+				int exponent = 0;
+				int exponent_digits = 0;
+				for (; i < to && this.map.get(i) >= '0' && this.map.get(i) <= '9'; i++) {
+					exponent = exponent * 10 + (this.map.get(i) - '0');
+					if (++exponent_digits > 3) {
+						return this.slowNumber(from, to);
+					}
+				}
+				if (exponent_digits == 0) {
+					return this.slowNumber(from, to);
+				}
+				scale += negative_exponent ? -exponent : exponent;
+			}
+			if (i != to || scale < -22 || scale > 22) {
+				return this.slowNumber(from, to);
+			}
+			double v = (scale < 0) ? mantissa / POWERS[-scale] : mantissa * POWERS[scale];
+			return negative ? -v : v;
+		}
+
+		/**
+		 * Parses the NUMERIC value in [from, to) as Double.parseDouble does
+		 */
+		private double slowNumber(int from, int to) {
+			String s = this.string(from, to);
+			try {
+				return Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				throw new DBException("Type mismatch for NUMERIC attribute: " + s + " in " + this.path);
+			}
+		}
+
+		private String string(int from, int to) {
+			int n = to - from;
+			if (this.scratch.length < n) {
+				this.scratch = new byte[Math.max(n, this.scratch.length * 2)];
+			}
+			for (int i = 0; i < n; i++) {
+				this.scratch[i] = this.map.get(from + i);
+			}
+			return new String(this.scratch, 0, n, this.charset);
+		}
+
+		private boolean sameBytes(int a, int b, int n) {
+			for (int k = 0; k < n; k++) {
+				if (this.map.get(a + k) != this.map.get(b + k)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void rehash() {
+			int[] old = this.slots;
+			this.slots = new int[old.length * 2];
+			int mask = this.slots.length - 1;
+			for (int s : old) {
+				if (s == 0) {
+					continue;
+				}
+				int h = 0x811C9DC5;
+				for (int k = this.starts[s - 1], end = k + this.lengths[s - 1]; k < end; k++) {
+					h = (h ^ this.map.get(k)) * 0x01000193;
+				}
+				int i = (h ^ (h >>> 16)) & mask;
+				while (this.slots[i] != 0) {
+					i = (i + 1) & mask;
+				}
+				this.slots[i] = s;
+			}
+		}
+
+		/**
+		 * Makes room for one more row
+		 */
+		private void grow() {
+			for (int c = 0; c < this.nums.length; c++) {
+				if (this.nums[c] != null && this.nums[c].length == this.rows) {
+					this.nums[c] = Arrays.copyOf(this.nums[c], this.rows * 2);
+				}
+				else if (this.codes[c] != null && this.codes[c].length == this.rows) {
+					this.codes[c] = Arrays.copyOf(this.codes[c], this.rows * 2);
+				}
+			}
+		}
+
+		/**
+		 * Recodes the TEXT columns against a dictionary, interning each distinct value once
+		 * @return a store over the range's rows, used only as the source of an addAll()
+		 */
+		ColumnStore toStore(Dictionary dictionary) {
+			int[] remap = new int[this.values.size()];
+			for (int code = 0; code < remap.length; code++) {
+				remap[code] = dictionary.encode(this.values.get(code));
+			}
+			for (int[] column : this.codes) {
+				if (column != null) {
+					for (int r = 0; r < this.rows; r++) {
+						if (column[r] >= 0) {
+							column[r] = remap[column[r]];
+						}
+					}
+				}
+			}
+			int n = TextLoader.this.numeric.length;
+			return new ColumnStore(TextLoader.this.numeric, this.nums, this.codes, new BitSet[n], dictionary, this.rows);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package vector;
+
+import java.util.BitSet;
+
+import storage.ColumnStore;
+import storage.Dictionary;
+
+/**
+ * A chunk of up to SIZE consecutive rows of a column store, held as column
+ * vectors: a double[] per NUMERIC column and an int[] of dictionary codes per
+ * TEXT column, plus a null bitmap for NUMERIC columns that have nulls (TEXT
+ * nulls are code -1). Only the columns a consumer asked for are loaded.
+ *
+ * The selection vector lists, in ascending order, the rows of the batch that
+ * are still live; filters narrow it instead of moving data.
+ */
+public class Batch {
+	/** rows per batch */
+	public static final int SIZE = 1024;
+
+	private final ColumnStore store;
+	final double[][] nums;
+	final int[][] codes;
+	final long[][] nulls;
+	final int[] sel = new int[SIZE];
+	int selected;
+	private int start;
+	private int length;
+
+	/**
+	 * @param store	the store the batch reads from
+	 */
+	Batch(ColumnStore store) {
+		this.store = store;
+		this.nums = new double[store.columnCount()][];
+		this.codes = new int[store.columnCount()][];
+		this.nulls = new long[store.columnCount()][];
+	}
+
+	/**
+	 * Loads rows [start, start + length) of the given columns and selects them all
+	 */
+	void load(int start, int length, boolean[] columns) {
+		this.start = start;
+		this.length = length;
+		for (int c = 0; c < columns.length; c++) {
+			if (!columns[c]) {
+				continue;
+			}
+			if (this.store.isNumeric(c)) {
+				if (this.nums[c] == null) {
+					this.nums[c] = new double[SIZE];
+				}
+				System.arraycopy(this.store.numbers(c), start, this.nums[c], 0, length);
+				BitSet bits = this.store.nulls(c);
+				if (bits == null) {
+					this.nulls[c] = null;
+				}
+				else {
+					long[] words = bits.get(start, start + length).toLongArray();
+					this.nulls[c] = new long[SIZE / 64];
+					System.arraycopy(words, 0, this.nulls[c], 0, words.length);
+				}
+			}
+			else {
+				if (this.codes[c] == null) {
+					this.codes[c] = new int[SIZE];
+				}
+				System.arraycopy(this.store.codes(c), start, this.codes[c], 0, length);
+			}
+		}
+		for (int i = 0; i < length; i++) {
+			this.sel[i] = i;
+		}
+		this.selected = length;
+	}
+
+	/**
+	 * @return the row of the store that row 0 of the batch holds
+	 */
+	public int start() {
+		return this.start;
+	}
+
+	/**
+	 * @return the number of rows loaded
+	 */
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * @return the selection vector; its first selected() entries are the live rows
+	 */
+	public int[] selection() {
+		return this.sel;
+	}
+
+	/**
+	 * @return the number of live rows
+	 */
+	public int selected() {
+		return this.selected;
+	}
+
+	/**
+	 * @param col	a loaded NUMERIC column
+	 * @return the column vector, indexed by row of the batch
+	 */
+	public double[] numbers(int col) {
+		return this.nums[col];
+	}
+
+	/**
+	 * @param col	a loaded TEXT column
+	 * @return the code vector, indexed by row of the batch
+	 */
+	public int[] codes(int col) {
+		return this.codes[col];
+	}
+
+	/**
+	 * @param col	a loaded NUMERIC column
+	 * @return the null bitmap, or null if the column has no nulls in this batch
+	 */
+	public long[] nulls(int col) {
+		return this.nulls[col];
+	}
+
+	/**
+	 * @param row	a row of the batch
+	 * @param col	a loaded column
+	 * @return true if the value is null
+	 */
+	public boolean isNull(int row, int col) {
+		if (this.store.isNumeric(col)) {
+			return this.nulls[col] != null && (this.nulls[col][row >>> 6] & (1L << row)) != 0;
+		}
+		return this.codes[col][row] < 0;
+	}
+
+	/**
+	 * @return the dictionary of the TEXT codes
+	 */
+	public Dictionary dictionary() {
+		return this.store.getDictionary();
+	}
+
+	/**
+	 * @param col	a column
+	 * @return true if the column is NUMERIC
+	 */
+	public boolean isNumeric(int col) {
+		return this.store.isNumeric(col);
+	}
+}
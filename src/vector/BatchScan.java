@@ -0,0 +1,52 @@
+package vector;
+
+import storage.ColumnStore;
+
+/**
+ * Steps through a column store one Batch at a time. The same Batch object is
+ * refilled on every call, so a consumer must finish with a batch before asking
+ * for the next.
+ */
+public class BatchScan {
+	private final ColumnStore store;
+	private final boolean[] columns;
+	private final Batch batch;
+	private final int end;
+	private int next_row;
+
+	/**
+	 * @param store		the store to scan
+	 * @param columns	for each column of the store, true if it must be loaded
+	 */
+	public BatchScan(ColumnStore store, boolean[] columns) {
+		this(store, columns, 0, store.size());
+	}
+
+	/**
+	 * Scans a range of rows
+	 * @param store		the store to scan
+	 * @param columns	for each column of the store, true if it must be loaded
+	 * @param from		first row to scan
+	 * @param to		row just past the last row to scan
+	 */
+	public BatchScan(ColumnStore store, boolean[] columns, int from, int to) {
+		this.store = store;
+		this.columns = columns.clone();
+		this.batch = new Batch(store);
+		this.next_row = from;
+		this.end = to;
+	}
+
+	/**
+	 * @return the next batch, or null once every row has been produced
+	 */
+	public Batch next() {
+		int length = Math.min(Batch.SIZE, this.end - this.next_row);
+		if (length <= 0) {
+			return null;
+		}
+		this.batch.load(this.next_row, length, this.columns);
+		this.next_row += length;
+		return this.batch;
+	}
+}
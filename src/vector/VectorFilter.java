@@ -0,0 +1,520 @@
+package vector;
+
+import java.util.Arrays;
+
+import solver.ArithmeticNode;
+import solver.ColumnNode;
+import solver.ComparisonNode;
+import solver.LiteralNode;
+import solver.LogicalNode;
+import solver.Node;
+import solver.NotNode;
+import solver.Ops;
+import solver.Row;
+import storage.Dictionary;
+
+/**
+ * A bound condition translated into steps that narrow the selection vector of
+ * a Batch. Numeric comparisons and arithmetic run as tight loops over whole
+ * column vectors; comparisons of a TEXT column with a literal test each
+ * dictionary code once and then only look codes up; && applies its operands
+ * one after the other, and || and ! combine selection vectors. Anything else
+ * is evaluated row by row with the interpreted tree, so every condition select
+ * accepts can be run here with the same result.
+ */
+public class VectorFilter {
+	private final Step root;
+	private final boolean[] columns;
+
+	private VectorFilter(Step root, boolean[] columns) {
+		this.root = root;
+		this.columns = columns;
+	}
+
+	/**
+	 * Translates a bound condition
+	 * @param bound			a bound BOOLEAN expression (see Condition.bind)
+	 * @param column_count	number of columns of the relation it is bound to
+	 * @return the vectorized filter
+	 */
+	public static VectorFilter compile(Node bound, int column_count) {
+		boolean[] columns = new boolean[column_count];
+		collect(bound, columns);
+		return new VectorFilter(step(bound), columns);
+	}
+
+	/**
+	 * @return for each column, true if the condition reads it
+	 */
+	public boolean[] columns() {
+		return this.columns.clone();
+	}
+
+	/**
+	 * Removes the rows that fail the condition from the batch's selection
+	 * @param batch	a batch holding at least the columns the condition reads
+	 */
+	public void apply(Batch batch) {
+		this.root.apply(batch);
+	}
+
+	private static void collect(Node node, boolean[] columns) {
+		if (node instanceof ColumnNode) {
+			columns[((ColumnNode) node).getPos()] = true;
+		}
+		else if (node instanceof ComparisonNode) {
+			collect(((ComparisonNode) node).getLeft(), columns);
+			collect(((ComparisonNode) node).getRight(), columns);
+		}
+		else if (node instanceof LogicalNode) {
+			collect(((LogicalNode) node).getLeft(), columns);
+			collect(((LogicalNode) node).getRight(), columns);
+		}
+		else if (node instanceof ArithmeticNode) {
+			collect(((ArithmeticNode) node).getLeft(), columns);
+			collect(((ArithmeticNode) node).getRight(), columns);
+		}
+		else if (node instanceof NotNode) {
+			collect(((NotNode) node).getChild(), columns);
+		}
+	}
+
+	private static Step step(Node node) {
+		if (node instanceof LogicalNode) {
+			LogicalNode l = (LogicalNode) node;
+			Step left = step(l.getLeft());
+			Step right = step(l.getRight());
+			return l.getOp().equals("&&") ? new And(left, right) : new Or(left, right);
+		}
+		if (node instanceof NotNode) {
+			return new Not(step(((NotNode) node).getChild()));
+		}
+		if (node instanceof ComparisonNode) {
+			ComparisonNode c = (ComparisonNode) node;
+			Node l = c.getLeft();
+			Node r = c.getRight();
+			if (c.operandType() == Node.Type.NUMBER) {
+				return new NumCompare(c.getCode(), expr(l), expr(r));
+			}
+			if (c.operandType() == Node.Type.TEXT) {
+				if (l instanceof ColumnNode && r instanceof LiteralNode) {
+					return new TextCompare(c.getCode(), ((ColumnNode) l).getPos(),
+							(String) ((LiteralNode) r).getValue(), false);
+				}
+				if (r instanceof ColumnNode && l instanceof LiteralNode) {
+					return new TextCompare(c.getCode(), ((ColumnNode) r).getPos(),
+							(String) ((LiteralNode) l).getValue(), true);
+				}
+			}
+		}
+		return new RowStep(node);
+	}
+
+	private static NumExpr expr(Node node) {
+		if (node instanceof ColumnNode) {
+			return new ColumnExpr(((ColumnNode) node).getPos());
+		}
+		if (node instanceof LiteralNode) {
+			return new ConstExpr(((Number) ((LiteralNode) node).getValue()).doubleValue());
+		}
+		if (node instanceof ArithmeticNode) {
+			ArithmeticNode a = (ArithmeticNode) node;
+			return new ArithExpr(a.getOp().charAt(0), expr(a.getLeft()), expr(a.getRight()));
+		}
+		return new RowExpr(node);
+	}
+
+	/**
+	 * Narrows the selection of a batch
+	 */
+	private abstract static class Step {
+		abstract void apply(Batch b);
+	}
+
+	/**
+	 * Produces a vector of values indexed by row of the batch; only the
+	 * entries of selected rows are meaningful
+	 */
+	private abstract static class NumExpr {
+		abstract double[] eval(Batch b);
+	}
+
+	private static class ColumnExpr extends NumExpr {
+		private final int pos;
+
+		ColumnExpr(int pos) {
+			this.pos = pos;
+		}
+
+		@Override
+		double[] eval(Batch b) {
+			return b.nums[this.pos];
+		}
+	}
+
+	private static class ConstExpr extends NumExpr {
+		private final double[] values = new double[Batch.SIZE];
+
+		ConstExpr(double value) {
+			Arrays.fill(this.values, value);
+		}
+
+		@Override
+		double[] eval(Batch b) {
+			return this.values;
+		}
+	}
+
+	private static class ArithExpr extends NumExpr {
+		private final char op;
+		private final NumExpr left;
+		private final NumExpr right;
+		private final double[] out = new double[Batch.SIZE];
+
+		ArithExpr(char op, NumExpr left, NumExpr right) {
+			this.op = op;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		double[] eval(Batch b) {
+			double[] x = this.left.eval(b);
+			double[] y = this.right.eval(b);
+			double[] out = this.out;
+			int[] sel = b.sel;
+			int n = b.selected;
+			switch (this.op) {
+				case '+':
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						out[i] = x[i] + y[i];
+					}
+					break;
+				case '-':
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						out[i] = x[i] - y[i];
+					}
+					break;
+				case '*':
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						out[i] = x[i] * y[i];
+					}
+					break;
+				case '/':
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						out[i] = x[i] / y[i];
+					}
+					break;
+				default:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						out[i] = x[i] % y[i];
+					}
+					break;
+			}
+			return out;
+		}
+	}
+
+	/**
+	 * Evaluates a numeric expression with the interpreted tree
+	 */
+	private static class RowExpr extends NumExpr {
+		private final Node node;
+		private final BatchRow row = new BatchRow();
+		private final double[] out = new double[Batch.SIZE];
+
+		RowExpr(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		double[] eval(Batch b) {
+			this.row.batch = b;
+			for (int k = 0; k < b.selected; k++) {
+				this.row.row = b.sel[k];
+				this.out[this.row.row] = this.node.number(this.row);
+			}
+			return this.out;
+		}
+	}
+
+	private static class NumCompare extends Step {
+		private final int code;
+		private final NumExpr left;
+		private final NumExpr right;
+
+		NumCompare(int code, NumExpr left, NumExpr right) {
+			this.code = code;
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		void apply(Batch b) {
+			double[] x = this.left.eval(b);
+			double[] y = this.right.eval(b);
+			int[] sel = b.sel;
+			int n = b.selected;
+			int m = 0;
+			switch (this.code) {
+				case Ops.EQ:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						if (x[i] == y[i]) {
+							sel[m++] = i;
+						}
+					}
+					break;
+				case Ops.NE:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						if (x[i] != y[i]) {
+							sel[m++] = i;
+						}
+					}
+					break;
+				case Ops.LT:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						if (x[i] < y[i]) {
+							sel[m++] = i;
+						}
+					}
+					break;
+				case Ops.LE:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						if (x[i] <= y[i]) {
+							sel[m++] = i;
+						}
+					}
+					break;
+				case Ops.GT:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						if (x[i] > y[i]) {
+							sel[m++] = i;
+						}
+					}
+					break;
+				default:
+					for (int k = 0; k < n; k++) {
+						int i = sel[k];
+						if (x[i] >= y[i]) {
+							sel[m++] = i;
+						}
+					}
+					break;
+			}
+			b.selected = m;
+		}
+	}
+
+	/**
+	 * Compares a TEXT column with a literal through a table of results per dictionary code
+	 */
+	private static class TextCompare extends Step {
+		private final int code;
+		private final int pos;
+		private final String literal;
+		private final boolean literal_left;
+		private final boolean null_result;
+		private Dictionary dictionary;
+		private boolean[] table = new boolean[0];
+
+		TextCompare(int code, int pos, String literal, boolean literal_left) {
+			this.code = code;
+			this.pos = pos;
+			this.literal = literal;
+			this.literal_left = literal_left;
+			this.null_result = this.test(null);
+		}
+
+		private boolean test(String value) {
+			return this.literal_left ? Ops.testText(this.literal, value, this.code)
+					: Ops.testText(value, this.literal, this.code);
+		}
+
+		@Override
+		void apply(Batch b) {
+			Dictionary d = b.dictionary();
+			if (d != this.dictionary || this.table.length < d.size()) {
+				// codes are only ever added, so a grown dictionary just extends the table
+				int from = (d == this.dictionary) ? this.table.length : 0;
+				this.table = Arrays.copyOf(this.table, d.size());
+				for (int c = from; c < this.table.length; c++) {
+					this.table[c] = this.test(d.decode(c));
+				}
+				this.dictionary = d;
+			}
+			int[] codes = b.codes[this.pos];
+			boolean[] table = this.table;
+			int[] sel = b.sel;
+			int n = b.selected;
+			int m = 0;
+			for (int k = 0; k < n; k++) {
+				int i = sel[k];
+				int c = codes[i];
+				if ((c < 0) ? this.null_result : table[c]) {
+					sel[m++] = i;
+				}
+			}
+			b.selected = m;
+		}
+	}
+
+	private static class And extends Step {
+		private final Step left;
+		private final Step right;
+
+		And(Step left, Step right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		void apply(Batch b) {
+			this.left.apply(b);
+			this.right.apply(b);
+		}
+	}
+
+	/**
+	 * Runs both operands on the incoming selection and merges what they keep
+	 */
+	private static class Or extends Step {
+		private final Step left;
+		private final Step right;
+		private final int[] saved = new int[Batch.SIZE];
+		private final int[] kept = new int[Batch.SIZE];
+
+		Or(Step left, Step right) {
+			this.left = left;
+			this.right = right;
+		}
+
+		@Override
+		void apply(Batch b) {
+			int n = b.selected;
+			System.arraycopy(b.sel, 0, this.saved, 0, n);
+			this.left.apply(b);
+			int nl = b.selected;
+			System.arraycopy(b.sel, 0, this.kept, 0, nl);
+			System.arraycopy(this.saved, 0, b.sel, 0, n);
+			b.selected = n;
+			this.right.apply(b);
+			int nr = b.selected;
+			// both lists are ascending; merge them into saved, then copy back
+			int i = 0, j = 0, m = 0;
+			while (i < nl || j < nr) {
+				int x = (i < nl) ? this.kept[i] : Integer.MAX_VALUE;
+				int y = (j < nr) ? b.sel[j] : Integer.MAX_VALUE;
+				this.saved[m++] = Math.min(x, y);
+				if (x <= y) {
+					i++;
+				}
+				if (y <= x) {
+					j++;
+				}
+			}
+			System.arraycopy(this.saved, 0, b.sel, 0, m);
+			b.selected = m;
+		}
+	}
+
+	/**
+	 * Keeps the incoming rows its operand would remove
+	 */
+	private static class Not extends Step {
+		private final Step child;
+		private final int[] saved = new int[Batch.SIZE];
+		private final int[] removed = new int[Batch.SIZE];
+
+		Not(Step child) {
+			this.child = child;
+		}
+
+		@Override
+		void apply(Batch b) {
+			int n = b.selected;
+			System.arraycopy(b.sel, 0, this.saved, 0, n);
+			this.child.apply(b);
+			int nc = b.selected;
+			System.arraycopy(b.sel, 0, this.removed, 0, nc);
+			// saved minus the child's (ascending) result
+			int j = 0, m = 0;
+			for (int k = 0; k < n; k++) {
+				int i = this.saved[k];
+				if (j < nc && this.removed[j] == i) {
+					j++;
+				}
+				else {
+					b.sel[m++] = i;
+				}
+			}
+			b.selected = m;
+		}
+	}
+
+	/**
+	 * Tests a condition with the interpreted tree, one row at a time
+	 */
+	private static class RowStep extends Step {
+		private final Node node;
+		private final BatchRow row = new BatchRow();
+
+		RowStep(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		void apply(Batch b) {
+			this.row.batch = b;
+			int[] sel = b.sel;
+			int n = b.selected;
+			int m = 0;
+			for (int k = 0; k < n; k++) {
+				this.row.row = sel[k];
+				if (this.node.test(this.row)) {
+					sel[m++] = this.row.row;
+				}
+			}
+			b.selected = m;
+		}
+	}
+
+	/**
+	 * A Row view over one row of a batch
+	 */
+	@SuppressWarnings("rawtypes")
+	private static class BatchRow implements Row {
+		Batch batch;
+		int row;
+
+		@Override
+		public Comparable get(int pos) {
+			if (this.batch.isNull(this.row, pos)) {
+				return null;
+			}
+			if (this.batch.isNumeric(pos)) {
+				return this.batch.nums[pos][this.row];
+			}
+			return this.batch.dictionary().decode(this.batch.codes[pos][this.row]);
+		}
+
+		@Override
+		public double getNumber(int pos) {
+			return this.batch.nums[pos][this.row];
+		}
+
+		@Override
+		public boolean isNull(int pos) {
+			return this.batch.isNull(this.row, pos);
+		}
+	}
+}